@@ -0,0 +1,68 @@
+package simpledb;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded buffer of page accesses, by frame number, that an
+ * EvictionPolicy with ordered state fills on the hit path without taking
+ * its monitor and applies later under it. Any number of threads may add;
+ * one at a time, under the policy's monitor, may drain.
+ * <p>
+ * An access that finds the buffer full is not recorded; the caller then
+ * drains the buffer under the policy's monitor and adds it again. So hits
+ * take the monitor once every SIZE accesses or so, and no access is lost.
+ */
+class AccessBuffer {
+
+    /** Applies the accesses drained from the buffer. */
+    interface Sink {
+        void apply(int frame);
+    }
+
+    static final int SIZE = 256;
+    private static final int MASK = SIZE - 1;
+
+    /** frame + 1 of each access; 0 while the slot is empty */
+    private final AtomicIntegerArray slots = new AtomicIntegerArray(SIZE);
+    /** number of slots ever claimed */
+    private final AtomicLong tail = new AtomicLong();
+    /** number of slots ever drained */
+    private volatile long head;
+
+    /**
+     * Records an access to the frame.
+     *
+     * @return false if the buffer is full and the access was not recorded
+     */
+    boolean add(int frame) {
+        while (true) {
+            long t = tail.get();
+            if (t - head >= SIZE)
+                return false;
+            if (tail.compareAndSet(t, t + 1)) {
+                slots.lazySet((int) (t & MASK), frame + 1);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Hands the recorded accesses, oldest first, to the sink. A slot that
+     * was claimed but is not written yet ends the drain; it and the ones
+     * after it are drained next time.
+     */
+    void drain(Sink sink) {
+        long h = head;
+        long t = tail.get();
+        for (; h < t; h++) {
+            int i = (int) (h & MASK);
+            int v = slots.get(i);
+            if (v == 0)
+                break;
+            slots.lazySet(i, 0);
+            sink.apply(v - 1);
+        }
+        head = h;
+    }
+}
@@ -0,0 +1,408 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * BTreeFile is a DbFile that keeps its tuples sorted on one field, the key,
+ * in a B+ tree: a table clustered on its key. A lookup of a key, or of a
+ * range of keys, reads one page per level of the tree and then the leaves
+ * that hold the answer, instead of every page of the table; see
+ * {@link BTreeIndexScan}.
+ * <p>
+ * Page 0 of the file is a {@link BTreeHeaderPage}, which records the root.
+ * The other pages are {@link BTreeInternalPage}s, which hold keys and the
+ * page numbers of their children, and {@link BTreeLeafPage}s, which hold
+ * the tuples and the page numbers of the leaves on either side. A new file
+ * is a header page and one empty leaf. Every page is read and changed
+ * through the buffer pool, so pages are locked, logged and rolled back
+ * like those of a HeapFile.
+ * <p>
+ * A full page is split in two, and the key between the halves goes to
+ * its parent; a full root gets a new root above it. Pages are not merged:
+ * a tuple is deleted from its leaf, and a leaf that deletes empty stays
+ * in the tree. An insert locks the pages it descends through for reading,
+ * the leaf it inserts into for writing, and the parents it adds
+ * separators to for writing as well.
+ *
+ * @see BTreeIndexScan
+ */
+public class BTreeFile implements DbFile, Closeable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final File file;
+    private final TupleDesc td;
+    private final int keyField;
+    private final int id;
+    /** open while pages are being read or written; null once closed */
+    private transient volatile FileChannel channel;
+
+    /**
+     * Constructs a B+ tree file backed by the specified file.
+     *
+     * @param f the file that stores the tree
+     * @param keyField the field the tuples are sorted and looked up by
+     * @param td the schema of the tuples
+     */
+    public BTreeFile(File f, int keyField, TupleDesc td) {
+        this.file = f;
+        this.keyField = keyField;
+        this.td = td;
+        id = f.getAbsoluteFile().hashCode();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /** Like a HeapFile's, the ID is the hash of the file's absolute path. */
+    public int getId() {
+        return id;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /** @return the field the tuples are sorted on */
+    public int keyField() {
+        return keyField;
+    }
+
+    Type keyType() {
+        return td.getFieldType(keyField);
+    }
+
+    /** @return the number of pages in the file, the header page included */
+    public int numPages() {
+        return (int) (file.length() / BufferPool.PAGE_SIZE);
+    }
+
+    private FileChannel channel() throws IOException {
+        FileChannel ch = channel;
+        if (ch != null && ch.isOpen())
+            return ch;
+        synchronized (this) {
+            if (channel == null || !channel.isOpen())
+                channel = new RandomAccessFile(file, "rw").getChannel();
+            return channel;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        BTreePageId id = (BTreePageId) pid;
+        try {
+            if (numPages() == 0)
+                create();
+            ByteBuffer buffer = ByteBuffer.allocate(BufferPool.PAGE_SIZE);
+            long offset = (long) pid.pageNumber() * BufferPool.PAGE_SIZE;
+            FileChannel ch = channel();
+            while (buffer.hasRemaining() && ch.read(buffer, offset + buffer.position()) >= 0)
+                ;
+            Database.getBufferPool().recordRead(this.id, BufferPool.PAGE_SIZE);
+            byte[] data = buffer.array();
+            switch (id.category()) {
+            case BTreePageId.HEADER:
+                return new BTreeHeaderPage(id, data);
+            case BTreePageId.INTERNAL:
+                return new BTreeInternalPage(id, data);
+            default:
+                return new BTreeLeafPage(id, data);
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        writePageData(page.getId().pageNumber(), page.getPageData());
+    }
+
+    private void writePageData(int pgNo, byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data, 0, BufferPool.PAGE_SIZE);
+        long offset = (long) pgNo * BufferPool.PAGE_SIZE;
+        FileChannel ch = channel();
+        while (buffer.hasRemaining())
+            ch.write(buffer, offset + buffer.position());
+        Database.getBufferPool().recordWrite(id, BufferPool.PAGE_SIZE);
+    }
+
+    /** Writes the header page and the empty root leaf of a new tree. */
+    private synchronized void create() throws IOException {
+        if (numPages() > 0)
+            return;
+        writePageData(1, new byte[BufferPool.PAGE_SIZE]);
+        writePageData(0, BTreeHeaderPage.createEmptyPageData());
+    }
+
+    /**
+     * Extends the file by one empty page, written straight to disk like a
+     * HeapFile's new pages; serialized so that two splits never pick the
+     * same page.
+     *
+     * @return the ID of the new page
+     */
+    private synchronized BTreePageId appendEmptyPage(int category) throws IOException {
+        if (numPages() == 0)
+            create();
+        BTreePageId pid = new BTreePageId(id, numPages(), category);
+        writePageData(pid.pageNumber(), new byte[BufferPool.PAGE_SIZE]);
+        return pid;
+    }
+
+    private BTreePageId headerId() {
+        return new BTreePageId(id, 0, BTreePageId.HEADER);
+    }
+
+    /**
+     * @return the ID of the leftmost leaf that may hold the key, or of the
+     *         leftmost leaf if key is null. Internal pages are locked for
+     *         reading, and pinned only while they are read.
+     */
+    private BTreePageId findLeaf(TransactionId tid, Field key)
+            throws DbException, TransactionAbortedException {
+        BufferPool pool = Database.getBufferPool();
+        BTreeHeaderPage header = (BTreeHeaderPage) pool.getPage(tid, headerId(), Permissions.READ_ONLY);
+        BTreePageId pid = header.getRootId();
+        pool.unpinPage(tid, header.getId());
+        while (pid.category() == BTreePageId.INTERNAL) {
+            BTreeInternalPage page = (BTreeInternalPage) pool.getPage(tid, pid, Permissions.READ_ONLY);
+            pid = page.getChildId(key == null ? 0 : page.findChild(key));
+            pool.unpinPage(tid, page.getId());
+        }
+        return pid;
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        if (!t.getTupleDesc().equals(td))
+            throw new DbException("Tuple Descriptors do not match");
+        Field key = t.getField(keyField);
+        Pages pages = new Pages(tid);
+        try {
+            // descend, remembering the way down for splits
+            BTreeHeaderPage header = (BTreeHeaderPage) pages.get(headerId(), Permissions.READ_ONLY);
+            BTreePageId pid = header.getRootId();
+            ArrayList<BTreeInternalPage> path = new ArrayList<BTreeInternalPage>();
+            ArrayList<Integer> slots = new ArrayList<Integer>();
+            while (pid.category() == BTreePageId.INTERNAL) {
+                BTreeInternalPage page = (BTreeInternalPage) pages.get(pid, Permissions.READ_ONLY);
+                int i = page.findChild(key);
+                path.add(page);
+                slots.add(i);
+                pid = page.getChildId(i);
+            }
+            BTreeLeafPage leaf = (BTreeLeafPage) pages.write(pid);
+            if (!leaf.isFull()) {
+                leaf.insertTuple(t);
+                return pages.done();
+            }
+
+            BTreeLeafPage right = (BTreeLeafPage) pages.write(appendEmptyPage(BTreePageId.LEAF));
+            Field separator = leaf.splitInto(right);
+            BTreePageId after = right.getRightSiblingId();
+            if (after != null)
+                ((BTreeLeafPage) pages.write(after)).setLeftSiblingId(right.getId());
+            if (key.compare(Predicate.Op.LESS_THAN_OR_EQ, separator))
+                leaf.insertTuple(t);
+            else
+                right.insertTuple(t);
+
+            // add the new page to the parent, splitting parents that are full
+            BTreePageId left = leaf.getId();
+            BTreePageId added = right.getId();
+            for (int level = path.size() - 1; level >= 0; level--) {
+                BTreeInternalPage parent = (BTreeInternalPage) pages.write(path.get(level).getId());
+                int slot = slots.get(level);
+                if (!parent.isFull()) {
+                    parent.insertEntry(slot, separator, added);
+                    return pages.done();
+                }
+                BTreeInternalPage sibling = (BTreeInternalPage) pages.write(
+                        appendEmptyPage(BTreePageId.INTERNAL));
+                int kept = parent.numKeys() / 2;
+                Field up = parent.splitInto(sibling);
+                if (slot <= kept)
+                    parent.insertEntry(slot, separator, added);
+                else
+                    sibling.insertEntry(slot - kept - 1, separator, added);
+                separator = up;
+                left = parent.getId();
+                added = sibling.getId();
+            }
+
+            // the root was split: a new root goes above it
+            BTreeInternalPage root = (BTreeInternalPage) pages.write(
+                    appendEmptyPage(BTreePageId.INTERNAL));
+            root.setRoot(left, separator, added);
+            ((BTreeHeaderPage) pages.write(headerId())).setRootId(root.getId());
+            return pages.done();
+        } catch (DbException e) {
+            pages.release();
+            throw e;
+        } catch (TransactionAbortedException e) {
+            pages.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Deletes the tuple: the one at its RecordId, or if it has none in this
+     * file, a tuple with the same fields.
+     */
+    public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t)
+            throws DbException, TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        boolean here = rid != null && rid.getPageId() instanceof BTreePageId
+                && rid.getPageId().getTableId() == id;
+        Pages pages = new Pages(tid);
+        try {
+            BTreePageId pid = here ? (BTreePageId) rid.getPageId() : null;
+            if (pid == null || ((BTreeLeafPage) pages.get(pid, Permissions.READ_ONLY)).find(t) < 0) {
+                // a split moved it, or it was not read from this file: look
+                // from the first leaf that may hold it
+                Field key = t.getField(keyField);
+                pid = findLeaf(tid, key);
+                BTreeLeafPage leaf = (BTreeLeafPage) pages.get(pid, Permissions.READ_ONLY);
+                while (leaf.find(t) < 0) {
+                    pid = leaf.getRightSiblingId();
+                    if (pid == null || (leaf.numTuples() > 0
+                            && leaf.getKey(leaf.numTuples() - 1).compare(Predicate.Op.GREATER_THAN, key)))
+                        throw new DbException("tuple is not in table " + id);
+                    leaf = (BTreeLeafPage) pages.get(pid, Permissions.READ_ONLY);
+                }
+            }
+            ((BTreeLeafPage) pages.write(pid)).deleteTuple(t);
+            return pages.done();
+        } catch (DbException e) {
+            pages.release();
+            throw e;
+        } catch (TransactionAbortedException e) {
+            pages.release();
+            throw e;
+        }
+    }
+
+    /** @return an iterator over every tuple, in key order */
+    public DbFileIterator iterator(TransactionId tid) {
+        return new BTreeFileIterator(tid, null);
+    }
+
+    /**
+     * @return an iterator over the tuples that satisfy the predicate, in
+     *         key order. An =, &lt;, &lt;=, &gt; or &gt;= predicate reads
+     *         only the leaves that hold those tuples; any other is applied
+     *         to every tuple.
+     * @throws IllegalArgumentException if the predicate is not on the key
+     */
+    public DbFileIterator indexIterator(TransactionId tid, Predicate p) {
+        if (p.getField() != keyField)
+            throw new IllegalArgumentException("field " + p.getField() + " is not the key of " + file);
+        return new BTreeFileIterator(tid, p);
+    }
+
+    /**
+     * Walks the leaves from left to right. The tuples of each leaf are
+     * copied when it is reached and the leaf unpinned, so a caller may
+     * delete the tuples it is given.
+     */
+    private class BTreeFileIterator implements DbFileIterator {
+
+        private static final long serialVersionUID = 1L;
+
+        private final TransactionId tid;
+        /** null for every tuple */
+        private final Predicate p;
+        /** whether the tuples that satisfy p come together, so the first
+            that does not after them ends the scan */
+        private final boolean range;
+        private BTreePageId next;
+        private Iterator<Tuple> tuples;
+        private Tuple found;
+        private boolean done;
+
+        BTreeFileIterator(TransactionId tid, Predicate p) {
+            this.tid = tid;
+            this.p = p;
+            Predicate.Op op = p == null ? null : p.getOp();
+            range = op == Predicate.Op.EQUALS || op == Predicate.Op.LESS_THAN
+                    || op == Predicate.Op.LESS_THAN_OR_EQ;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            done = false;
+            found = null;
+            Predicate.Op op = p == null ? null : p.getOp();
+            boolean seek = op == Predicate.Op.EQUALS || op == Predicate.Op.GREATER_THAN
+                    || op == Predicate.Op.GREATER_THAN_OR_EQ;
+            Field key = seek ? p.getOperand() : null;
+            BTreePageId pid = findLeaf(tid, key);
+            BTreeLeafPage leaf = (BTreeLeafPage) Database.getBufferPool().getPage(
+                    tid, pid, Permissions.READ_ONLY);
+            int from = key == null ? 0
+                    : op == Predicate.Op.GREATER_THAN ? leaf.upperBound(key) : leaf.lowerBound(key);
+            read(leaf, from);
+        }
+
+        private void read(BTreeLeafPage leaf, int from) {
+            tuples = leaf.tuplesFrom(from).iterator();
+            next = leaf.getRightSiblingId();
+            Database.getBufferPool().unpinPage(tid, leaf.getId());
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            if (tuples == null)
+                return false;
+            while (found == null && !done) {
+                while (!tuples.hasNext()) {
+                    if (next == null) {
+                        done = true;
+                        return false;
+                    }
+                    read((BTreeLeafPage) Database.getBufferPool().getPage(
+                            tid, next, Permissions.READ_ONLY), 0);
+                }
+                Tuple t = tuples.next();
+                if (p == null || p.filter(t))
+                    found = t;
+                else if (range)
+                    done = true;
+            }
+            return found != null;
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException,
+                NoSuchElementException {
+            if (!hasNext())
+                throw new NoSuchElementException("No more Tuples");
+            Tuple t = found;
+            found = null;
+            return t;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            close();
+            open();
+        }
+
+        public void close() {
+            tuples = null;
+            next = null;
+            found = null;
+        }
+    }
+
+    /** Closes the file; the next page read or written opens it again. */
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
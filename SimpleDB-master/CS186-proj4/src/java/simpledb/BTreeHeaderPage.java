@@ -0,0 +1,66 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * The header page of a BTreeFile, always page 0. It records the root of
+ * the tree: its page number and whether it is an internal page or a leaf.
+ * The rest of the page is unused.
+ *
+ * @see BTreeFile
+ */
+public class BTreeHeaderPage extends BTreePage {
+
+    private int root;
+    private int rootCategory;
+
+    public BTreeHeaderPage(BTreePageId id, byte[] data) throws IOException {
+        super(id);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        root = in.readInt();
+        rootCategory = in.readInt();
+    }
+
+    /** @return the bytes of a header page whose root is an empty leaf at page 1 */
+    static byte[] createEmptyPageData() {
+        byte[] data = new byte[BufferPool.PAGE_SIZE];
+        data[3] = 1;
+        data[7] = BTreePageId.LEAF;
+        return data;
+    }
+
+    /** @return the ID of the root page */
+    synchronized BTreePageId getRootId() {
+        return new BTreePageId(pid.getTableId(), root, rootCategory);
+    }
+
+    synchronized void setRootId(BTreePageId id) {
+        takeBeforeImage();
+        root = id.pageNumber();
+        rootCategory = id.category();
+    }
+
+    public synchronized byte[] getPageData() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(BufferPool.PAGE_SIZE);
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            dos.writeInt(root);
+            dos.writeInt(rootCategory);
+            dos.write(new byte[BufferPool.PAGE_SIZE - 8]);
+        } catch (IOException e) {
+            // a ByteArrayOutputStream does not throw
+            throw new RuntimeException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    /** Return a view of this page before it was modified -- used by recovery */
+    public BTreeHeaderPage getBeforeImage() {
+        try {
+            return new BTreeHeaderPage(pid, beforeImageData());
+        } catch (IOException e) {
+            // we parsed it OK before
+            throw new RuntimeException(e);
+        }
+    }
+}
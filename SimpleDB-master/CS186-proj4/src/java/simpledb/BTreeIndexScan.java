@@ -0,0 +1,97 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * BTreeIndexScan reads the tuples of a BTreeFile that satisfy a predicate
+ * on its key, in key order. For =, &lt;, &lt;=, &gt; and &gt;= it reads
+ * only the path to the first leaf that can hold a match and the leaves
+ * from there to the last match, following the leaves' sibling pointers;
+ * other predicates are checked against every tuple.
+ *
+ * @see BTreeFile#indexIterator
+ */
+public class BTreeIndexScan implements DbIterator {
+
+    private static final long serialVersionUID = 1L;
+    private final TransactionId tid;
+    private final int tableid;
+    private final String tableAlias;
+    private final Predicate p;
+    private DbFileIterator iter;
+
+    /**
+     * Creates a scan of the tuples of a BTreeFile that satisfy a predicate
+     * on its key, as a part of the specified transaction.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param tableid
+     *            the table to scan, which must be a BTreeFile
+     * @param tableAlias
+     *            the alias of this table; the returned tupleDesc has
+     *            fields named tableAlias.fieldName, as SeqScan's does
+     * @param p
+     *            the predicate, on the key field of the table
+     */
+    public BTreeIndexScan(TransactionId tid, int tableid, String tableAlias, Predicate p) {
+        this.tid = tid;
+        this.tableid = tableid;
+        this.tableAlias = tableAlias;
+        this.p = p;
+    }
+
+    /** @return the alias of the table this operator scans */
+    public String getAlias() {
+        return tableAlias;
+    }
+
+    public Predicate getPredicate() {
+        return p;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        BTreeFile f = (BTreeFile) Database.getCatalog().getDbFile(tableid);
+        iter = f.indexIterator(tid, p);
+        iter.open();
+    }
+
+    /**
+     * @return the TupleDesc of the table, with field names prefixed with
+     *         the tableAlias string from the constructor
+     */
+    public TupleDesc getTupleDesc() {
+        TupleDesc td = Database.getCatalog().getTupleDesc(tableid);
+        Type[] types = new Type[td.numFields()];
+        String[] names = new String[td.numFields()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = td.getFieldType(i);
+            names[i] = tableAlias + "." + td.getFieldName(i);
+        }
+        return new TupleDesc(types, names);
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        if (iter == null)
+            return false;
+        return iter.hasNext();
+    }
+
+    public Tuple next() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (iter == null || !iter.hasNext())
+            throw new NoSuchElementException();
+        return iter.next();
+    }
+
+    public void close() {
+        if (iter != null)
+            iter.close();
+        iter = null;
+    }
+
+    public void rewind() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        iter.rewind();
+    }
+}
@@ -0,0 +1,163 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * An internal page of a BTreeFile: n keys and the n + 1 children between
+ * them, which are all internal pages or all leaves. Every key in the
+ * subtree of child i is at least key i - 1 and at most key i, so a key
+ * equal to a separator may be on either side of it.
+ * <p>
+ * The page starts with the number of keys and the category of the
+ * children (ints), then room for the page numbers of
+ * {@link #maxKeys} + 1 children, then room for maxKeys keys, each as long
+ * as the key's type. Keys are decoded when the page is read; there are
+ * few internal pages, and a lookup compares against several keys of each.
+ *
+ * @see BTreeFile
+ */
+public class BTreeInternalPage extends BTreePage {
+
+    static final int HEADER_SIZE = 8;
+
+    private final Type keyType;
+    private final int maxKeys;
+    private int numKeys;
+    private int childCategory;
+    private final int[] children;
+    private final Field[] keys;
+
+    public BTreeInternalPage(BTreePageId id, byte[] data) throws IOException {
+        super(id);
+        BTreeFile f = (BTreeFile) Database.getCatalog().getDbFile(id.getTableId());
+        keyType = f.keyType();
+        maxKeys = maxKeys(keyType);
+        children = new int[maxKeys + 1];
+        keys = new Field[maxKeys];
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        numKeys = in.readInt();
+        childCategory = in.readInt();
+        if (numKeys < 0 || numKeys > maxKeys)
+            throw new IOException("page " + id + " says it has " + numKeys + " keys");
+        for (int i = 0; i < children.length; i++)
+            children[i] = in.readInt();
+        int at = HEADER_SIZE + 4 * children.length;
+        for (int i = 0; i < numKeys; i++)
+            keys[i] = keyType.parse(data, at + i * keyType.getLen());
+    }
+
+    /** @return the most keys an internal page of keys of the given type holds */
+    static int maxKeys(Type keyType) {
+        return (BufferPool.PAGE_SIZE - HEADER_SIZE - 4) / (keyType.getLen() + 4);
+    }
+
+    synchronized int numKeys() {
+        return numKeys;
+    }
+
+    synchronized boolean isFull() {
+        return numKeys == maxKeys;
+    }
+
+    synchronized Field getKey(int i) {
+        return keys[i];
+    }
+
+    /** @return the ID of child i, 0 &lt;= i &lt;= numKeys() */
+    synchronized BTreePageId getChildId(int i) {
+        return new BTreePageId(pid.getTableId(), children[i], childCategory);
+    }
+
+    /**
+     * @return the leftmost child whose subtree may hold the key: the first
+     *         whose key on the right is at least the key
+     */
+    synchronized int findChild(Field key) {
+        int lo = 0, hi = numKeys;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compare(Predicate.Op.LESS_THAN, key))
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /** Makes the page a new root over two children split from the old one. */
+    synchronized void setRoot(BTreePageId left, Field key, BTreePageId right) {
+        takeBeforeImage();
+        numKeys = 1;
+        childCategory = left.category();
+        children[0] = left.pageNumber();
+        children[1] = right.pageNumber();
+        keys[0] = key;
+    }
+
+    /**
+     * Adds a separator, and the child right of it, after child i: the
+     * entry for a child that was split in two.
+     */
+    synchronized void insertEntry(int i, Field key, BTreePageId right) {
+        if (numKeys == maxKeys)
+            throw new IllegalStateException("page " + pid + " is full");
+        takeBeforeImage();
+        System.arraycopy(keys, i, keys, i + 1, numKeys - i);
+        System.arraycopy(children, i + 1, children, i + 2, numKeys - i);
+        keys[i] = key;
+        children[i + 1] = right.pageNumber();
+        numKeys++;
+    }
+
+    /**
+     * Moves the upper half of the entries to an empty page.
+     *
+     * @return the key between the halves, which is on neither page now
+     *         and goes to the parent
+     */
+    synchronized Field splitInto(BTreeInternalPage right) {
+        takeBeforeImage();
+        right.takeBeforeImage();
+        int mid = numKeys / 2;
+        Field up = keys[mid];
+        int moved = numKeys - mid - 1;
+        synchronized (right) {
+            System.arraycopy(keys, mid + 1, right.keys, 0, moved);
+            System.arraycopy(children, mid + 1, right.children, 0, moved + 1);
+            right.numKeys = moved;
+            right.childCategory = childCategory;
+        }
+        Arrays.fill(keys, mid, numKeys, null);
+        numKeys = mid;
+        return up;
+    }
+
+    public synchronized byte[] getPageData() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(BufferPool.PAGE_SIZE);
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            dos.writeInt(numKeys);
+            dos.writeInt(childCategory);
+            for (int i = 0; i < children.length; i++)
+                dos.writeInt(i <= numKeys ? children[i] : 0);
+            for (int i = 0; i < numKeys; i++)
+                keys[i].serialize(dos);
+            dos.write(new byte[BufferPool.PAGE_SIZE - dos.size()]);
+        } catch (IOException e) {
+            // a ByteArrayOutputStream does not throw
+            throw new RuntimeException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    /** Return a view of this page before it was modified -- used by recovery */
+    public BTreeInternalPage getBeforeImage() {
+        try {
+            return new BTreeInternalPage(pid, beforeImageData());
+        } catch (IOException e) {
+            // we parsed it OK before
+            throw new RuntimeException(e);
+        }
+    }
+}
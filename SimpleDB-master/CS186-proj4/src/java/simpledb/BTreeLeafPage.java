@@ -0,0 +1,246 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A leaf page of a BTreeFile: tuples sorted by the key field, and the page
+ * numbers of the leaves left and right of it, so that a range scan walks
+ * from leaf to leaf without going back up the tree.
+ * <p>
+ * The page starts with the left and right siblings (0 for none) and the
+ * number of tuples (ints), followed by the tuples, packed. Like HeapPage,
+ * the page keeps the bytes it was read from and decodes a field of a
+ * tuple only when it is asked for.
+ * <p>
+ * Inserts and deletes shift the tuples after them, so the RecordId of a
+ * tuple read from a leaf is where it was when it was read; deleteTuple
+ * looks for the tuple if it is no longer there.
+ *
+ * @see BTreeFile
+ */
+public class BTreeLeafPage extends BTreePage {
+
+    static final int HEADER_SIZE = 12;
+
+    private final TupleDesc td;
+    private final int keyField;
+    private final int maxTuples;
+    /** the image the page was read from; never written to */
+    private final byte[] data;
+    private final ArrayList<Tuple> tuples;
+    private int left;
+    private int right;
+
+    public BTreeLeafPage(BTreePageId id, byte[] data) throws IOException {
+        super(id);
+        BTreeFile f = (BTreeFile) Database.getCatalog().getDbFile(id.getTableId());
+        td = f.getTupleDesc();
+        keyField = f.keyField();
+        maxTuples = maxTuples(td);
+        this.data = data;
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        left = in.readInt();
+        right = in.readInt();
+        int n = in.readInt();
+        if (n < 0 || n > maxTuples)
+            throw new IOException("page " + id + " says it has " + n + " tuples");
+        tuples = new ArrayList<Tuple>(maxTuples);
+        for (int i = 0; i < n; i++)
+            tuples.add(new Tuple(td, data, HEADER_SIZE + i * td.getSize()));
+    }
+
+    /** @return the most tuples a leaf of the given schema holds */
+    static int maxTuples(TupleDesc td) {
+        return (BufferPool.PAGE_SIZE - HEADER_SIZE) / td.getSize();
+    }
+
+    synchronized int numTuples() {
+        return tuples.size();
+    }
+
+    synchronized boolean isFull() {
+        return tuples.size() == maxTuples;
+    }
+
+    /** @return the ID of the leaf on the left, or null if this is the first */
+    synchronized BTreePageId getLeftSiblingId() {
+        return left == 0 ? null : new BTreePageId(pid.getTableId(), left, BTreePageId.LEAF);
+    }
+
+    /** @return the ID of the leaf on the right, or null if this is the last */
+    synchronized BTreePageId getRightSiblingId() {
+        return right == 0 ? null : new BTreePageId(pid.getTableId(), right, BTreePageId.LEAF);
+    }
+
+    synchronized void setLeftSiblingId(BTreePageId id) {
+        takeBeforeImage();
+        left = id == null ? 0 : id.pageNumber();
+    }
+
+    /** @return the tuple at position i, with its RecordId set to there */
+    synchronized Tuple getTuple(int i) {
+        Tuple t = tuples.get(i);
+        t.setRecordId(new RecordId(pid, i));
+        return t;
+    }
+
+    synchronized Field getKey(int i) {
+        return tuples.get(i).getField(keyField);
+    }
+
+    /** @return the position of the first tuple whose key is at least key */
+    synchronized int lowerBound(Field key) {
+        int lo = 0, hi = tuples.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getKey(mid).compare(Predicate.Op.LESS_THAN, key))
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /** @return the position of the first tuple whose key is more than key */
+    synchronized int upperBound(Field key) {
+        int lo = 0, hi = tuples.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getKey(mid).compare(Predicate.Op.LESS_THAN_OR_EQ, key))
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Adds the tuple after the tuples with keys no greater than its own, and
+     * sets its RecordId.
+     *
+     * @throws DbException if the page is full, or the tuple's schema is
+     *         not the page's
+     */
+    public synchronized void insertTuple(Tuple t) throws DbException {
+        if (tuples.size() == maxTuples)
+            throw new DbException("Page is full");
+        if (!t.getTupleDesc().equals(td))
+            throw new DbException("Tuple Descriptors do not match");
+        takeBeforeImage();
+        int i = upperBound(t.getField(keyField));
+        tuples.add(i, t);
+        t.setRecordId(new RecordId(pid, i));
+    }
+
+    /**
+     * Deletes the tuple: the one at its RecordId, or if another is there
+     * now, the first tuple on the page with the same fields.
+     *
+     * @throws DbException if no such tuple is on the page
+     */
+    public synchronized void deleteTuple(Tuple t) throws DbException {
+        int i = find(t);
+        if (i < 0)
+            throw new DbException("tuple is not on page " + pid);
+        takeBeforeImage();
+        tuples.remove(i);
+    }
+
+    /** @return the position of the tuple, or -1 if it is not on the page */
+    synchronized int find(Tuple t) {
+        RecordId rid = t.getRecordId();
+        if (rid != null && pid.equals(rid.getPageId()) && rid.tupleno() < tuples.size()
+                && sameFields(tuples.get(rid.tupleno()), t))
+            return rid.tupleno();
+        Field key = t.getField(keyField);
+        for (int i = lowerBound(key); i < tuples.size() && getKey(i).equals(key); i++) {
+            if (sameFields(tuples.get(i), t))
+                return i;
+        }
+        return -1;
+    }
+
+    private boolean sameFields(Tuple a, Tuple b) {
+        if (a == b)
+            return true;
+        for (int i = 0; i < td.numFields(); i++) {
+            if (!a.getField(i).equals(b.getField(i)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Moves the upper half of the tuples to an empty leaf, which goes right
+     * of this one. The caller sets the left sibling of the leaf that was on
+     * the right of this one.
+     *
+     * @return the greatest key left on this page, which separates the two
+     */
+    synchronized Field splitInto(BTreeLeafPage page) {
+        takeBeforeImage();
+        page.takeBeforeImage();
+        int mid = tuples.size() / 2;
+        List<Tuple> upper = tuples.subList(mid, tuples.size());
+        synchronized (page) {
+            page.tuples.addAll(upper);
+            page.left = pid.pageNumber();
+            page.right = right;
+        }
+        upper.clear();
+        right = page.pid.pageNumber();
+        return getKey(mid - 1);
+    }
+
+    /**
+     * @return the tuples from position from on, as they are now, with their
+     *         RecordIds set
+     */
+    synchronized List<Tuple> tuplesFrom(int from) {
+        ArrayList<Tuple> out = new ArrayList<Tuple>(Math.max(0, tuples.size() - from));
+        for (int i = from; i < tuples.size(); i++)
+            out.add(getTuple(i));
+        return out;
+    }
+
+    public synchronized byte[] getPageData() {
+        byte[] out = new byte[BufferPool.PAGE_SIZE];
+        int size = td.getSize();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(size);
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            dos.writeInt(left);
+            dos.writeInt(right);
+            dos.writeInt(tuples.size());
+            System.arraycopy(baos.toByteArray(), 0, out, 0, HEADER_SIZE);
+            for (int i = 0; i < tuples.size(); i++) {
+                int offset = HEADER_SIZE + i * size;
+                Tuple t = tuples.get(i);
+                if (t.isStoredAt(data, offset)) {
+                    // unchanged since the page was read
+                    System.arraycopy(data, offset, out, offset, size);
+                    continue;
+                }
+                baos.reset();
+                for (int j = 0; j < td.numFields(); j++)
+                    t.getField(j).serialize(dos);
+                System.arraycopy(baos.toByteArray(), 0, out, offset, size);
+            }
+        } catch (IOException e) {
+            // a ByteArrayOutputStream does not throw
+            throw new RuntimeException(e);
+        }
+        return out;
+    }
+
+    /** Return a view of this page before it was modified -- used by recovery */
+    public BTreeLeafPage getBeforeImage() {
+        try {
+            return new BTreeLeafPage(pid, beforeImageData());
+        } catch (IOException e) {
+            // we parsed it OK before
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package simpledb;
+
+/**
+ * Unique identifier for the pages of a BTreeFile. Besides the table and
+ * the page number it names the kind of page, which decides how the bytes
+ * of the page are read.
+ *
+ * @see BTreeFile
+ */
+public class BTreePageId implements PageId {
+
+    /** page 0 of every BTreeFile, which records the root */
+    public static final int HEADER = 0;
+    public static final int INTERNAL = 1;
+    public static final int LEAF = 2;
+
+    private final int tableId;
+    private final int pgNo;
+    private final int category;
+
+    /**
+     * @param tableId The table that is being referenced
+     * @param pgNo The page number in that table
+     * @param category HEADER, INTERNAL or LEAF
+     */
+    public BTreePageId(int tableId, int pgNo, int category) {
+        this.tableId = tableId;
+        this.pgNo = pgNo;
+        this.category = category;
+    }
+
+    public int getTableId() {
+        return tableId;
+    }
+
+    public int pageNumber() {
+        return pgNo;
+    }
+
+    /** @return HEADER, INTERNAL or LEAF */
+    public int category() {
+        return category;
+    }
+
+    /** Like HeapPageId's, consecutive pages get consecutive codes. */
+    public int hashCode() {
+        return 31 * tableId + pgNo;
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof BTreePageId))
+            return false;
+        BTreePageId p = (BTreePageId) o;
+        return p.tableId == tableId && p.pgNo == pgNo && p.category == category;
+    }
+
+    public String toString() {
+        return "BTreePageId(" + tableId + ", " + pgNo + ", " + category + ")";
+    }
+
+    /**
+     * @return the table, the page number and the category, as the
+     *         constructor takes them, for writing to the log
+     */
+    public int[] serialize() {
+        return new int[] { tableId, pgNo, category };
+    }
+}
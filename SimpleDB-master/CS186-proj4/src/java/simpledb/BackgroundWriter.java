@@ -0,0 +1,118 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BackgroundWriter trickles dirty pages of a BufferPool to disk from a
+ * daemon thread, so that evictions find clean victims and do not wait for
+ * a synchronous write. Every round it tops the pool up to a target number
+ * of clean (or empty) frames, writing at most a fixed number of pages,
+ * then sleeps; the two together bound the rate of background I/O. Pages
+ * that are pinned are skipped, since an operator may be changing them.
+ * <p>
+ * Pages are written through the BufferPool, which logs each update and
+ * forces the log before the page reaches its file (write-ahead logging).
+ * Pages of running transactions may be written this way (STEAL). The
+ * pool keeps the before-image of each such page until its transaction
+ * completes, and an abort writes it back, whether or not the log is
+ * rolled back as well by {@link LogFile#rollback}.
+ *
+ * @see BufferPool#startBackgroundWriter
+ */
+public class BackgroundWriter implements Runnable {
+
+    private final BufferPool pool;
+    private final int targetCleanFrames;
+    private final int maxWritesPerRound;
+    private final long roundMillis;
+
+    private final Thread thread;
+    private volatile boolean running;
+
+    private final AtomicLong rounds = new AtomicLong();
+    private final AtomicLong pagesWritten = new AtomicLong();
+
+    /**
+     * @param pool the buffer pool to clean
+     * @param targetCleanFrames how many frames to keep empty or clean
+     * @param maxWritesPerRound most pages to write in one round
+     * @param roundMillis how long to sleep between rounds
+     */
+    BackgroundWriter(BufferPool pool, int targetCleanFrames, int maxWritesPerRound,
+                     long roundMillis) {
+        if (targetCleanFrames < 0 || maxWritesPerRound < 1 || roundMillis < 1)
+            throw new IllegalArgumentException("bad background writer settings");
+        this.pool = pool;
+        this.targetCleanFrames = Math.min(targetCleanFrames, pool.getNumPages());
+        this.maxWritesPerRound = maxWritesPerRound;
+        this.roundMillis = roundMillis;
+        thread = new Thread(this, "simpledb-bgwriter");
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Stop the writer and wait for its current round to finish. The
+     * thread is woken from its sleep, not interrupted: an interrupt in the
+     * middle of a write closes the table's FileChannel, which scans share.
+     */
+    void shutdown() {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void run() {
+        while (running) {
+            try {
+                pagesWritten.addAndGet(pool.writeBack(targetCleanFrames, maxWritesPerRound));
+                rounds.incrementAndGet();
+            } catch (IOException e) {
+                // the page stays dirty; eviction or commit will write it
+                e.printStackTrace();
+            }
+            synchronized (this) {
+                if (!running)
+                    break;
+                try {
+                    wait(roundMillis);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+    }
+
+    public int getTargetCleanFrames() {
+        return targetCleanFrames;
+    }
+
+    public int getMaxWritesPerRound() {
+        return maxWritesPerRound;
+    }
+
+    public long getRoundMillis() {
+        return roundMillis;
+    }
+
+    /** @return the number of rounds completed */
+    public long getRoundCount() {
+        return rounds.get();
+    }
+
+    /** @return the number of pages this writer has written */
+    public long getPagesWritten() {
+        return pagesWritten.get();
+    }
+}
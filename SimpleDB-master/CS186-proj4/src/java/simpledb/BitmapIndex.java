@@ -0,0 +1,215 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A bitmap index of an int column of a table stored in a HeapFile (or a
+ * file of one of its formats): for each distinct value of the column, a
+ * {@link RowBitmap} of the rows that hold it, plus one of every row, which
+ * NOT is taken against. A row is numbered page * {@link HeapFile#maxSlots}
+ * + slot, so the rows of a page are together and in slot order. It suits a
+ * column with few distinct values, where a secondary index would keep long
+ * runs of equal keys; {@link BitmapPredicate}s combine the bitmaps of
+ * several columns before {@link BitmapScan} reads a page.
+ * <p>
+ * The index is kept in memory. It is built by a scan of the table when it
+ * is added to the {@link Catalog}, and BufferPool.insertTuple and
+ * deleteTuple keep it up to date: the changes of a transaction are kept
+ * apart, and seen by that transaction only, until it commits; an abort
+ * drops them. It is not logged, and is built again when the catalog is
+ * next loaded.
+ *
+ * @see Catalog#addBitmapIndex
+ */
+public class BitmapIndex {
+
+    private final int tableId;
+    private final int field;
+    private final int slots;
+    /** the committed rows of each value */
+    private final Map<Integer, RowBitmap> values = new HashMap<Integer, RowBitmap>();
+    /** every committed row */
+    private RowBitmap rows = new RowBitmap();
+    /** the changes of transactions that have not completed */
+    private final Map<TransactionId, Changes> pending = new HashMap<TransactionId, Changes>();
+
+    /** The rows a transaction added and removed, by value and in all. */
+    private static class Changes {
+        final Map<Integer, RowBitmap> added = new HashMap<Integer, RowBitmap>();
+        final Map<Integer, RowBitmap> removed = new HashMap<Integer, RowBitmap>();
+        final RowBitmap addedRows = new RowBitmap();
+        final RowBitmap removedRows = new RowBitmap();
+    }
+
+    /**
+     * @param tableId the table indexed, which must be in a HeapFile
+     * @param field the column indexed, which must be an int column
+     */
+    public BitmapIndex(int tableId, int field) {
+        this.tableId = tableId;
+        this.field = field;
+        this.slots = ((HeapFile) Database.getCatalog().getDbFile(tableId)).maxSlots();
+    }
+
+    public int getTableId() {
+        return tableId;
+    }
+
+    /** @return the column indexed */
+    public int getField() {
+        return field;
+    }
+
+    /** @return the row number of a RecordId of the table */
+    int row(RecordId rid) {
+        return rid.getPageId().pageNumber() * slots + rid.tupleno();
+    }
+
+    /**
+     * Adds every tuple of the table to the index, as committed rows. The
+     * table is read in a transaction of its own.
+     */
+    public void build() throws DbException, TransactionAbortedException {
+        Transaction scan = new Transaction();
+        scan.start();
+        HeapFile f = (HeapFile) Database.getCatalog().getDbFile(tableId);
+        DbFileIterator it = f.iterator(scan.getId(), new int[] { field });
+        it.open();
+        try {
+            while (it.hasNext()) {
+                Tuple t = it.next();
+                int row = row(t.getRecordId());
+                synchronized (this) {
+                    bitmap(values, value(t)).add(row);
+                    rows.add(row);
+                }
+            }
+        } finally {
+            it.close();
+            try {
+                scan.commit();
+            } catch (IOException e) {
+                throw new DbException("cannot commit the scan: " + e.getMessage());
+            }
+        }
+    }
+
+    private int value(Tuple t) {
+        return ((IntField) t.getField(field)).getValue();
+    }
+
+    private static RowBitmap bitmap(Map<Integer, RowBitmap> m, int value) {
+        RowBitmap b = m.get(value);
+        if (b == null) {
+            b = new RowBitmap();
+            m.put(value, b);
+        }
+        return b;
+    }
+
+    private Changes changes(TransactionId tid) {
+        Changes c = pending.get(tid);
+        if (c == null) {
+            c = new Changes();
+            pending.put(tid, c);
+        }
+        return c;
+    }
+
+    /** Records that the transaction inserted the tuple, which has its RecordId. */
+    synchronized void insert(TransactionId tid, Tuple t) {
+        int row = row(t.getRecordId());
+        int v = value(t);
+        Changes c = changes(tid);
+        RowBitmap removed = c.removed.get(v);
+        if (removed != null)
+            removed.remove(row);
+        bitmap(c.added, v).add(row);
+        c.removedRows.remove(row);
+        c.addedRows.add(row);
+    }
+
+    /** Records that the transaction deleted the tuple, which has its RecordId. */
+    synchronized void delete(TransactionId tid, Tuple t) {
+        int row = row(t.getRecordId());
+        int v = value(t);
+        Changes c = changes(tid);
+        RowBitmap added = c.added.get(v);
+        if (added != null)
+            added.remove(row);
+        bitmap(c.removed, v).add(row);
+        c.addedRows.remove(row);
+        c.removedRows.add(row);
+    }
+
+    /**
+     * @return the rows that hold the value, as the transaction sees them:
+     *         those committed, with its own changes. The caller may change
+     *         the bitmap.
+     */
+    public synchronized RowBitmap lookup(TransactionId tid, int value) {
+        RowBitmap b = values.get(value);
+        b = b == null ? new RowBitmap() : b.copy();
+        Changes c = pending.get(tid);
+        if (c == null)
+            return b;
+        return apply(b, c.added.get(value), c.removed.get(value));
+    }
+
+    /** @return every row of the table, as the transaction sees them */
+    public synchronized RowBitmap rows(TransactionId tid) {
+        Changes c = pending.get(tid);
+        if (c == null)
+            return rows.copy();
+        return apply(rows, c.addedRows, c.removedRows);
+    }
+
+    private static RowBitmap apply(RowBitmap b, RowBitmap added, RowBitmap removed) {
+        if (removed != null)
+            b = b.andNot(removed);
+        if (added != null)
+            b = b.or(added);
+        return b;
+    }
+
+    /**
+     * Makes the changes of the transaction visible to all, if it committed,
+     * or drops them, if it aborted.
+     */
+    public synchronized void transactionComplete(TransactionId tid, boolean commit) {
+        Changes c = pending.remove(tid);
+        if (c == null || !commit)
+            return;
+        for (Map.Entry<Integer, RowBitmap> e : c.removed.entrySet()) {
+            RowBitmap b = values.get(e.getKey());
+            if (b == null)
+                continue;
+            b = b.andNot(e.getValue());
+            if (b.isEmpty())
+                values.remove(e.getKey());
+            else
+                values.put(e.getKey(), b);
+        }
+        for (Map.Entry<Integer, RowBitmap> e : c.added.entrySet()) {
+            if (e.getValue().isEmpty())
+                continue;
+            RowBitmap b = values.get(e.getKey());
+            values.put(e.getKey(), b == null ? e.getValue() : b.or(e.getValue()));
+        }
+        rows = rows.andNot(c.removedRows).or(c.addedRows);
+    }
+
+    /** @return the number of distinct values committed */
+    public synchronized int numValues() {
+        return values.size();
+    }
+
+    /** @return the bytes the committed bitmaps take, roughly */
+    public synchronized long sizeInBytes() {
+        long n = rows.sizeInBytes();
+        for (RowBitmap b : values.values())
+            n += b.sizeInBytes();
+        return n;
+    }
+}
@@ -0,0 +1,115 @@
+package simpledb;
+
+import java.io.Serializable;
+
+/**
+ * A condition on the int columns of a table that have bitmap indexes:
+ * equalities combined with AND, OR and NOT. It is evaluated over the
+ * bitmaps, before any page of the table is read ({@link #evaluate}), and
+ * can be checked against a tuple ({@link #filter}), as BitmapScan does for
+ * the tuples it reads.
+ *
+ * @see BitmapScan
+ * @see BitmapIndex
+ */
+public abstract class BitmapPredicate implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** @return the condition that the column equals the value */
+    public static BitmapPredicate eq(final int field, final int value) {
+        return new BitmapPredicate() {
+            private static final long serialVersionUID = 1L;
+
+            public RowBitmap evaluate(TransactionId tid, int tableid) throws DbException {
+                return index(tableid, field).lookup(tid, value);
+            }
+
+            public boolean filter(Tuple t) {
+                return ((IntField) t.getField(field)).getValue() == value;
+            }
+
+            public String toString() {
+                return "f" + field + " = " + value;
+            }
+        };
+    }
+
+    /** @return the condition that both a and b hold */
+    public static BitmapPredicate and(final BitmapPredicate a, final BitmapPredicate b) {
+        return new BitmapPredicate() {
+            private static final long serialVersionUID = 1L;
+
+            public RowBitmap evaluate(TransactionId tid, int tableid) throws DbException {
+                return a.evaluate(tid, tableid).and(b.evaluate(tid, tableid));
+            }
+
+            public boolean filter(Tuple t) {
+                return a.filter(t) && b.filter(t);
+            }
+
+            public String toString() {
+                return "(" + a + " AND " + b + ")";
+            }
+        };
+    }
+
+    /** @return the condition that a or b holds */
+    public static BitmapPredicate or(final BitmapPredicate a, final BitmapPredicate b) {
+        return new BitmapPredicate() {
+            private static final long serialVersionUID = 1L;
+
+            public RowBitmap evaluate(TransactionId tid, int tableid) throws DbException {
+                return a.evaluate(tid, tableid).or(b.evaluate(tid, tableid));
+            }
+
+            public boolean filter(Tuple t) {
+                return a.filter(t) || b.filter(t);
+            }
+
+            public String toString() {
+                return "(" + a + " OR " + b + ")";
+            }
+        };
+    }
+
+    /** @return the condition that a does not hold */
+    public static BitmapPredicate not(final BitmapPredicate a) {
+        return new BitmapPredicate() {
+            private static final long serialVersionUID = 1L;
+
+            public RowBitmap evaluate(TransactionId tid, int tableid) throws DbException {
+                RowBitmap match = a.evaluate(tid, tableid);
+                // any bitmap index of the table knows every row
+                BitmapIndex any = Database.getCatalog().getBitmapIndexes(tableid).get(0);
+                return any.rows(tid).andNot(match);
+            }
+
+            public boolean filter(Tuple t) {
+                return !a.filter(t);
+            }
+
+            public String toString() {
+                return "NOT " + a;
+            }
+        };
+    }
+
+    /**
+     * @return the rows of the table that meet the condition, as the
+     *         transaction sees them, from the bitmap indexes of the table
+     * @throws DbException if a column in the condition has no bitmap index
+     */
+    public abstract RowBitmap evaluate(TransactionId tid, int tableid) throws DbException;
+
+    /** @return whether the tuple meets the condition */
+    public abstract boolean filter(Tuple t);
+
+    /** @return the bitmap index of the column */
+    static BitmapIndex index(int tableid, int field) throws DbException {
+        BitmapIndex index = Database.getCatalog().getBitmapIndex(tableid, field);
+        if (index == null)
+            throw new DbException("column " + field + " of table " + tableid + " has no bitmap index");
+        return index;
+    }
+}
@@ -0,0 +1,118 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * BitmapScan reads the tuples of a table that meet a
+ * {@link BitmapPredicate} on columns with bitmap indexes. It evaluates the
+ * predicate over the bitmaps first, combining the bitmaps of its columns
+ * with AND, OR and NOT, and then reads only the heap pages that hold a row
+ * of the result, each once, in file order. Each tuple read is checked
+ * against the predicate again. The planner uses it in place of a SeqScan
+ * and Filters for equality and inequality filters on such columns.
+ *
+ * @see Catalog#addBitmapIndex
+ * @see LogicalPlan#physicalPlan
+ */
+public class BitmapScan implements DbIterator {
+
+    private static final long serialVersionUID = 1L;
+    private final TransactionId tid;
+    private final int tableid;
+    private final String tableAlias;
+    private final BitmapPredicate p;
+    /** reads the matches; null until opened */
+    private HeapFetch fetch;
+
+    /**
+     * Creates a scan of the tuples that meet a predicate on columns with
+     * bitmap indexes, as a part of the specified transaction.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param tableid
+     *            the table to scan
+     * @param tableAlias
+     *            the alias of this table; the returned tupleDesc has
+     *            fields named tableAlias.fieldName, as SeqScan's does
+     * @param p
+     *            the predicate, on columns of the table that have bitmap
+     *            indexes
+     */
+    public BitmapScan(TransactionId tid, int tableid, String tableAlias, BitmapPredicate p) {
+        this.tid = tid;
+        this.tableid = tableid;
+        this.tableAlias = tableAlias;
+        this.p = p;
+    }
+
+    /** @return the name of the table this operator scans */
+    public String getTableName() {
+        return Database.getCatalog().getTableName(tableid);
+    }
+
+    /** @return the alias of the table this operator scans */
+    public String getAlias() {
+        return tableAlias;
+    }
+
+    public BitmapPredicate getPredicate() {
+        return p;
+    }
+
+    /**
+     * Evaluates the predicate over the bitmap indexes.
+     *
+     * @throws DbException if a column of the predicate has no bitmap index
+     */
+    public void open() throws DbException, TransactionAbortedException {
+        final int slots = ((HeapFile) Database.getCatalog().getDbFile(tableid)).maxSlots();
+        final RowBitmap.Cursor rows = p.evaluate(tid, tableid).cursor();
+        fetch = new HeapFetch(tid, tableid) {
+            long nextRid() {
+                int row = rows.next();
+                return row < 0 ? -1 : (long) (row / slots) << 32 | (row % slots);
+            }
+
+            boolean accept(Tuple t) {
+                return p.filter(t);
+            }
+        };
+    }
+
+    /**
+     * @return the TupleDesc of the table, with field names prefixed with
+     *         the tableAlias string from the constructor
+     */
+    public TupleDesc getTupleDesc() {
+        TupleDesc td = Database.getCatalog().getTupleDesc(tableid);
+        Type[] types = new Type[td.numFields()];
+        String[] names = new String[td.numFields()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = td.getFieldType(i);
+            names[i] = tableAlias + "." + td.getFieldName(i);
+        }
+        return new TupleDesc(types, names);
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        return fetch != null && fetch.hasNext();
+    }
+
+    public Tuple next() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (fetch == null)
+            throw new NoSuchElementException();
+        return fetch.next();
+    }
+
+    public void close() {
+        fetch = null;
+    }
+
+    public void rewind() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        close();
+        open();
+    }
+}
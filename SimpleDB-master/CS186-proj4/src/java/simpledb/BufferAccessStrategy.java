@@ -0,0 +1,116 @@
+package simpledb;
+
+/**
+ * BufferAccessStrategy tells the BufferPool how to find a frame when a
+ * page misses. Operators that read a table much bigger than the pool
+ * (sequential scans) use a BULK_READ strategy: the first few misses take
+ * frames from the shared pool as usual, and after that the scan keeps
+ * recycling that small private ring of frames instead of evicting the
+ * rest of the pool. Point queries running at the same time keep their hot
+ * pages.
+ * <p>
+ * A strategy belongs to one operator and is not shared between threads,
+ * except with the {@link Prefetcher} reading ahead of the operator: the
+ * BufferPool only uses a partition's part of the ring under that
+ * partition's monitor.
+ *
+ * @see BufferPool#getPage(TransactionId, PageId, Permissions, BufferAccessStrategy)
+ */
+public class BufferAccessStrategy {
+
+    /** The kinds of access the BufferPool keeps separate counters for. */
+    public enum Kind {
+        /** Ordinary access through the shared pool. */
+        NORMAL,
+        /** Large sequential read recycling a private ring of frames. */
+        BULK_READ
+    }
+
+    /**
+     * Scans of tables with more pages than this fraction of the pool use a
+     * ring. Tables below it are worth caching whole, so they are read
+     * through the shared pool.
+     */
+    private static volatile double scanRingThreshold = 0.75;
+
+    /** Most frames a scan ring may hold. */
+    public static final int MAX_RING_SIZE = 32;
+
+    private final Kind kind;
+    /**
+     * The BufferPool reads each page into a frame of the partition the
+     * page hashes to, so the ring is kept as one small sub-ring of frames
+     * per partition; a scan spreads its pages across all of them.
+     */
+    private final int[][] ring;
+    private final PageId[][] ringPages;
+    private final int[] current;
+
+    private BufferAccessStrategy(Kind kind, int ringSize, int numPartitions) {
+        this.kind = kind;
+        int perPartition = Math.max(1, ringSize / numPartitions);
+        ring = new int[numPartitions][perPartition];
+        ringPages = new PageId[numPartitions][perPartition];
+        current = new int[numPartitions];
+    }
+
+    /**
+     * Returns the strategy a sequential scan over the given file should
+     * use: a ring when the file is large relative to the current buffer
+     * pool, or null to read through the shared pool.
+     */
+    public static BufferAccessStrategy forScan(HeapFile f) {
+        BufferPool pool = Database.getBufferPool();
+        int poolPages = pool.getNumPages();
+        if (f.numPages() <= scanRingThreshold * poolPages)
+            return null;
+        // leave most of a small pool to everyone else
+        int ringSize = Math.max(2, Math.min(MAX_RING_SIZE, poolPages / 8));
+        return new BufferAccessStrategy(Kind.BULK_READ, ringSize, pool.getNumPartitions());
+    }
+
+    /** @return the fraction of the pool above which scans use a ring */
+    public static double getScanRingThreshold() {
+        return scanRingThreshold;
+    }
+
+    /**
+     * Sets the fraction of the buffer pool a table must exceed before
+     * sequential scans over it use a ring of frames.
+     */
+    public static void setScanRingThreshold(double fraction) {
+        if (fraction <= 0)
+            throw new IllegalArgumentException("threshold must be positive");
+        scanRingThreshold = fraction;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getRingSize() {
+        return ring.length * ring[0].length;
+    }
+
+    /**
+     * @return the frame of the given partition the next miss there should
+     *   recycle, or -1 while that part of the ring still has empty slots
+     */
+    int nextFrame(int partition) {
+        int c = current[partition];
+        return ringPages[partition][c] == null ? -1 : ring[partition][c];
+    }
+
+    /** @return the page this strategy last put in the frame nextFrame returns */
+    PageId nextFramePage(int partition) {
+        return ringPages[partition][current[partition]];
+    }
+
+    /** Record that a miss was served by reading pid into frame of partition. */
+    void frameLoaded(int partition, int frame, PageId pid) {
+        int c = current[partition];
+        ring[partition][c] = frame;
+        ringPages[partition][c] = pid;
+        current[partition] = (c + 1) % ring[partition].length;
+    }
+}
@@ -1,8 +1,11 @@
 package simpledb;
 
 import java.io.*;
-
+import java.nio.ByteBuffer;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -26,22 +29,876 @@ public class BufferPool {
     constructor instead. */
     public static final int DEFAULT_PAGES = 50;
 
+    /**
+     * Decides which frame gives up its page when the pool is full. The pool
+     * reports every frame it fills, hits and empties; chooseVictim must only
+     * return an occupied frame that the filter accepts.
+     */
+    public interface EvictionPolicy {
+        /** A page was read into the frame. */
+        public void pageLoaded(int frame, PageId pid);
+
+        /**
+         * The page in the frame was requested again. Called on the hit
+         * path, without the partition's monitor and from many threads at
+         * once, so it should not block.
+         */
+        public void pageAccessed(int frame);
+
+        /** The frame was emptied, by eviction or by discardPage. */
+        public void pageRemoved(int frame);
+
+        /**
+         * The pool was resized: frames are now numbered below numFrames,
+         * new ones empty, and at most capacity of them hold a page.
+         */
+        public void resized(int numFrames, int capacity);
+
+        /** @return the frame to evict, or -1 if no frame may be evicted */
+        public int chooseVictim(FrameFilter filter);
+    }
+
+    /** Tells an EvictionPolicy which occupied frames may be evicted right now. */
+    public interface FrameFilter {
+        public boolean canEvict(int frame);
+    }
+
+    /**
+     * The replacement policies a BufferPool can be built with. Each
+     * partition has its own instance. Only CLOCK records a hit lock-free
+     * every time; LRU_K and TWO_Q buffer hits without a lock, but take the
+     * policy's monitor to apply them whenever the buffer fills.
+     */
+    public enum Replacement {
+        CLOCK, LRU_K, TWO_Q;
+
+        EvictionPolicy newPolicy(int numFrames) {
+            switch (this) {
+            case LRU_K:
+                return new LruKPolicy(numFrames, LruKPolicy.DEFAULT_K);
+            case TWO_Q:
+                return new TwoQPolicy(numFrames);
+            default:
+                return new ClockPolicy(numFrames);
+            }
+        }
+    }
+
+    /** Replacement policy used when none is given to the constructor. */
+    public static final Replacement DEFAULT_REPLACEMENT = Replacement.CLOCK;
+
+    /**
+     * Pools with fewer frames than this per partition are not split
+     * further; small pools keep a single partition and exact LRU-style
+     * behaviour.
+     */
+    public static final int MIN_PARTITION_FRAMES = 32;
+
+    /** Most partitions a pool is split into unless asked for more. */
+    public static final int DEFAULT_PARTITIONS = 16;
+
+    /**
+     * Where a BufferPool keeps its cached pages.
+     */
+    public enum Storage {
+        /** Every cached page is a decoded Page object on the Java heap. */
+        HEAP,
+        /**
+         * Cached pages are kept in their on-disk format in an arena of
+         * direct memory outside the heap. A page is decoded into a Page
+         * object when a transaction asks for it, and the object is dropped
+         * again when no transaction holds a lock on the page and it is
+         * clean, so the heap only holds the pages in use.
+         */
+        OFF_HEAP
+    }
+
+    /**
+     * Frame descriptor: one slot of a partition and the page cached in it.
+     * A frame with a null pid is on the free list. In OFF_HEAP mode buf is
+     * the frame's slice of the arena, and page is null while the page is
+     * only held there in encoded form.
+     * <p>
+     * state packs the frame's generation, bumped every time the frame is
+     * emptied, with its pin count, the number of getPage calls whose
+     * caller has not unpinned the page yet. A pin count of -1 means the
+     * frame is being emptied and cannot be pinned. Keeping both in one
+     * word lets the hit path pin with a single compare-and-set, and lets
+     * an unpin tell whether its pin was dropped along with the page.
+     */
+    private static class Frame {
+        volatile PageId pid;
+        volatile Page page;
+        ByteBuffer buf;
+        Class<? extends Page> pageClass;
+        /** page may differ from its image in buf; guarded by the frame's monitor */
+        boolean unencoded;
+        final AtomicLong state = new AtomicLong();
+
+        static int generation(long state) {
+            return (int) (state >>> 32);
+        }
+
+        static int pinCount(long state) {
+            return (int) state;
+        }
+
+        static long state(int generation, int pinCount) {
+            return ((long) generation << 32) | (pinCount & 0xffffffffL);
+        }
+
+        /**
+         * Pin the frame if it still holds the page.
+         * @return the pin, or null if the frame holds another page or is
+         *   being emptied
+         */
+        Pin pin(PageId pid) {
+            while (true) {
+                long s = state.get();
+                if (pinCount(s) < 0 || !pid.equals(this.pid))
+                    return null;
+                if (state.compareAndSet(s, s + 1))
+                    return new Pin(this, generation(s), pid);
+            }
+        }
+
+        /** Drop a pin taken in the given generation, if it is still held. */
+        void unpin(int generation) {
+            while (true) {
+                long s = state.get();
+                if (generation(s) != generation || pinCount(s) <= 0)
+                    return;
+                if (state.compareAndSet(s, s - 1))
+                    return;
+            }
+        }
+
+        /** Claim an unpinned frame for eviction; new pins fail until it is emptied. */
+        boolean claim() {
+            long s = state.get();
+            return pinCount(s) == 0 && state.compareAndSet(s, state(generation(s), -1));
+        }
+
+        /** Claim the frame for eviction even if it is pinned; its pins are dropped. */
+        void forceClaim() {
+            while (true) {
+                long s = state.get();
+                if (state.compareAndSet(s, state(generation(s), -1)))
+                    return;
+            }
+        }
+
+        /** Give up a claim without emptying the frame. */
+        void unclaim() {
+            state.set(state(generation(state.get()), 0));
+        }
+
+        /** End a claim on the frame, which has been emptied. */
+        void emptied() {
+            state.set(state(generation(state.get()) + 1, 0));
+        }
+
+        int pinCount() {
+            return Math.max(0, pinCount(state.get()));
+        }
+    }
+
+    /** A getPage call's pin on a frame, held until its caller unpins the page. */
+    private static class Pin {
+        final Frame frame;
+        final int generation;
+        final PageId pid;
+        Page page;
+        /** true if getPage had to read the page from disk */
+        boolean loaded;
+
+        Pin(Frame frame, int generation, PageId pid) {
+            this.frame = frame;
+            this.generation = generation;
+            this.pid = pid;
+        }
+
+        void release() {
+            frame.unpin(generation);
+        }
+    }
+
+    /**
+     * One partition of the pool. Every page maps to exactly one partition
+     * by the hash of its PageId, and each partition has its own frames,
+     * page table, free list, eviction policy and counters. Misses, flushes
+     * and evictions hold only the partition's own monitor, so threads that
+     * miss on pages of different partitions do not wait for each other.
+     * Hits take no partition monitor; see {@link Replacement} for the
+     * eviction policy's.
+     * <p>
+     * Frame numbers handed to the eviction policy and to scan rings are
+     * local to the partition.
+     * <p>
+     * A partition holds at most capacity pages. Growing it appends frames;
+     * shrinking it lowers the capacity and evicts down to it, leaving the
+     * surplus frames empty for a later grow. Pages that cannot be evicted
+     * yet are evicted on later misses and commits, as they become
+     * evictable.
+     */
+    private class Partition {
+        final int index;
+        /** replaced, never changed, when the partition grows */
+        volatile Frame[] frames;
+        /** most pages the partition may hold; changed under its monitor */
+        volatile int capacity;
+        /** page table: maps each cached page to the index of its frame */
+        final ConcurrentHashMap<PageId, Integer> pageTable;
+        /** indexes of frames that hold no page */
+        final LinkedList<Integer> freeFrames;
+        final EvictionPolicy policy;
+        /**
+         * Frames that may give up their page: occupied, unpinned and clean.
+         * A dirty page holds changes of a running transaction, which must
+         * not reach disk before it commits (NO STEAL).
+         */
+        final FrameFilter evictable = new FrameFilter() {
+            public boolean canEvict(int frame) {
+                Frame fr = frames[frame];
+                Page page = fr.page;
+                return fr.pid != null && fr.pinCount() == 0
+                    && (page == null || page.isDirty() == null);
+            }
+        };
+
+        /** hit and miss counts, indexed by BufferAccessStrategy.Kind */
+        final LongAdder[] hits = newCounters();
+        final LongAdder[] misses = newCounters();
+        /** pages emptied to make room for a miss, ring reuses included */
+        final LongAdder evictions = new LongAdder();
+        final LongAdder ringReuses = new LongAdder();
+        final LongAdder shrinkEvictions = new LongAdder();
+        /** dirty pages written to their files */
+        final LongAdder flushes = new LongAdder();
+        final LongAdder decodes = new LongAdder();
+
+        /**
+         * @param firstFrame the arena frame of this partition's frame 0,
+         *   if the pool is OFF_HEAP
+         */
+        Partition(int index, int numFrames, int firstFrame, Replacement replacement) {
+            this.index = index;
+            frames = new Frame[numFrames];
+            capacity = numFrames;
+            pageTable = new ConcurrentHashMap<PageId, Integer>(numFrames);
+            freeFrames = new LinkedList<Integer>();
+            for (int i = 0; i < numFrames; i++) {
+                frames[i] = new Frame();
+                if (arena != null)
+                    frames[i].buf = arena.frame(firstFrame + i);
+                freeFrames.add(i);
+            }
+            policy = replacement.newPolicy(numFrames);
+        }
+
+        /**
+         * Sets the number of pages the partition may hold, adding frames
+         * if it has too few. Running lookups keep working on the frames
+         * they found; only misses in this partition wait.
+         *
+         * @param arenaBytes receives the bytes of direct memory allocated
+         *   for new OFF_HEAP frames
+         */
+        synchronized void resize(int newCapacity, AtomicLong arenaBytes) {
+            Frame[] old = frames;
+            if (newCapacity > old.length) {
+                Frame[] grown = Arrays.copyOf(old, newCapacity);
+                PageArena more = arena == null ? null
+                    : new PageArena(newCapacity - old.length, getPageSize());
+                for (int i = old.length; i < newCapacity; i++) {
+                    grown[i] = new Frame();
+                    if (more != null)
+                        grown[i].buf = more.frame(i - old.length);
+                    freeFrames.add(i);
+                }
+                if (more != null)
+                    arenaBytes.addAndGet(more.capacity());
+                // the policy must know the new frames before any is loaded
+                policy.resized(grown.length, newCapacity);
+                frames = grown;
+            } else {
+                policy.resized(old.length, newCapacity);
+            }
+            capacity = newCapacity;
+            trim();
+        }
+
+        /**
+         * Evicts pages while the partition holds more than its capacity,
+         * as far as unpinned clean pages allow.
+         */
+        synchronized void trim() {
+            while (pageTable.size() > capacity) {
+                int victim = policy.chooseVictim(evictable);
+                if (victim < 0)
+                    return;
+                if (claimVictim(victim)) {
+                    clearFrame(victim);
+                    freeFrames.add(victim);
+                    shrinkEvictions.increment();
+                }
+            }
+        }
+
+        /**
+         * @return a pin on the cached page, or null on a miss; never blocks
+         *   unless the page has to be decoded from the arena
+         */
+        Pin lookup(PageId pid, BufferAccessStrategy strategy) throws DbException {
+            Integer frame = pageTable.get(pid);
+            if (frame == null)
+                return null;
+            Pin pin = frames[frame].pin(pid);
+            if (pin == null)
+                return null;
+            pin.page = resident(frame, pid);
+            if (pin.page == null) {
+                pin.release();
+                return null;
+            }
+            hits[kindOf(strategy)].increment();
+            policy.pageAccessed(frame);
+            return pin;
+        }
+
+        /**
+         * The caller must have pinned the frame. In an OFF_HEAP pool the
+         * page is read under the frame's monitor, so that park, which
+         * leaves pinned frames alone, cannot drop the copy returned here.
+         *
+         * @return the page held in the frame, decoding it from the arena if
+         *   needed, or null if the frame has been recycled since it was
+         *   looked up
+         */
+        private Page resident(int frame, PageId pid) throws DbException {
+            Frame fr = frames[frame];
+            if (arena == null) {
+                Page page = fr.page;
+                return page != null && pid.equals(page.getId()) ? page : null;
+            }
+            synchronized (fr) {
+                if (!pid.equals(fr.pid))
+                    return null;
+                if (fr.page == null) {
+                    fr.page = PageArena.decode(fr.pageClass, pid, fr.buf);
+                    decodes.increment();
+                }
+                return fr.page;
+            }
+        }
+
+        /**
+         * Note that the decoded copy of an OFF_HEAP page may have been
+         * changed, so whichever park drops it encodes it first. Called
+         * before the changing transaction releases its lock: once it is
+         * released, a reader's park may come before the writer's own.
+         */
+        void changed(PageId pid) {
+            Integer frame = pageTable.get(pid);
+            if (frame == null)
+                return;
+            Frame fr = frames[frame];
+            synchronized (fr) {
+                if (fr.page != null && pid.equals(fr.pid))
+                    fr.unencoded = true;
+            }
+        }
+
+        /**
+         * Drop the decoded copy of an OFF_HEAP page once nobody uses it:
+         * no transaction holds a lock on it or a pin on its frame, and it
+         * is clean. If it may have been changed since it was decoded, its
+         * image in the arena is refreshed first. A transaction that locks
+         * the page after the check pins the frame before it reads the page
+         * in resident, under the same monitor, so it either keeps this
+         * copy from being dropped or decodes a new one.
+         */
+        void park(PageId pid) {
+            Integer frame = pageTable.get(pid);
+            if (frame == null)
+                return;
+            Frame fr = frames[frame];
+            synchronized (fr) {
+                Page page = fr.page;
+                if (page == null || !pid.equals(fr.pid) || page.isDirty() != null
+                        || fr.pinCount() > 0 || lockManager.isLocked(pid))
+                    return;
+                if (fr.unencoded)
+                    PageArena.encode(page, fr.buf);
+                fr.unencoded = false;
+                fr.page = null;
+            }
+        }
+
+        /**
+         * Reads a page that missed in the page table into a frame: the
+         * next frame of the strategy's ring if it can be recycled,
+         * otherwise a free frame, otherwise a frame freed by evicting a
+         * page.
+         *
+         * @return a pin on the page
+         */
+        synchronized Pin loadPage(PageId pid, BufferAccessStrategy strategy)
+            throws DbException {
+            // another thread may have loaded the page while we waited
+            Integer frame = pageTable.get(pid);
+            if (frame != null) {
+                hits[kindOf(strategy)].increment();
+                policy.pageAccessed(frame);
+                Pin pin = frames[frame].pin(pid);
+                pin.page = resident(frame, pid);
+                return pin;
+            }
+            misses[kindOf(strategy)].increment();
+            int f = strategy == null ? -1 : recycleRingFrame(strategy);
+            if (f < 0) {
+                f = pageTable.size() >= capacity || freeFrames.isEmpty()
+                    ? evictPage() : freeFrames.removeFirst();
+            }
+            Page page;
+            try {
+                DbFile file = Database.getCatalog().getDbFile(pid.getTableId());
+                page = file.readPage(pid);
+            } catch (RuntimeException e) {
+                freeFrames.add(f);
+                throw e;
+            }
+            Frame fr = frames[f];
+            synchronized (fr) {
+                if (arena != null) {
+                    PageArena.encode(page, fr.buf);
+                    fr.pageClass = page.getClass();
+                }
+                fr.page = page;
+                fr.pid = pid;
+                fr.unencoded = false;
+            }
+            Pin pin = fr.pin(pid);
+            pin.page = page;
+            pin.loaded = true;
+            pageTable.put(pid, f);
+            policy.pageLoaded(f, pid);
+            if (strategy != null)
+                strategy.frameLoaded(index, f, pid);
+            // still over capacity after a shrink that found pinned pages
+            if (pageTable.size() > capacity)
+                trim();
+            return pin;
+        }
+
+        /**
+         * Empties the next frame of the strategy's ring in this partition
+         * so the miss can reuse it.
+         * @return the emptied frame, or -1 if the ring is not full yet or
+         *   the frame has since been taken over or cannot be evicted
+         */
+        private int recycleRingFrame(BufferAccessStrategy strategy) {
+            int f = strategy.nextFrame(index);
+            if (f < 0)
+                return -1;
+            PageId owned = strategy.nextFramePage(index);
+            if (!owned.equals(frames[f].pid) || !claimVictim(f))
+                return -1;
+            clearFrame(f);
+            ringReuses.increment();
+            evictions.increment();
+            return f;
+        }
+
+        /** @return the cached copy of the page, or null if it is not here */
+        Page cachedPage(PageId pid) {
+            Integer frame = pageTable.get(pid);
+            if (frame == null)
+                return null;
+            Page page = frames[frame].page;
+            return page != null && pid.equals(page.getId()) ? page : null;
+        }
+
+        /** @return the number of unreleased pins on the page; 0 if it is not here */
+        int pinCount(PageId pid) {
+            Integer frame = pageTable.get(pid);
+            if (frame == null)
+                return 0;
+            Frame fr = frames[frame];
+            return pid.equals(fr.pid) ? fr.pinCount() : 0;
+        }
+
+        /** Drop the page even if it is pinned; the pins lapse with it. */
+        synchronized void discardPage(PageId pid) {
+            Integer frame = pageTable.get(pid);
+            if (frame == null)
+                return;
+            frames[frame].forceClaim();
+            clearFrame(frame);
+            freeFrames.add(frame);
+        }
+
+        /**
+         * Unmap the page held in the frame, leaving the frame empty. The
+         * caller must have claimed the frame.
+         */
+        private void clearFrame(int frame) {
+            Frame fr = frames[frame];
+            pageTable.remove(fr.pid);
+            policy.pageRemoved(frame);
+            synchronized (fr) {
+                fr.pid = null;
+                fr.page = null;
+                fr.unencoded = false;
+            }
+            fr.emptied();
+        }
+
+        synchronized void flushPage(PageId pid) throws IOException {
+            Integer frame = pageTable.get(pid);
+            if (frame == null)
+                return;
+            // a page that is only in the arena is clean
+            Page page = frames[frame].page;
+            if (page != null)
+                writePage(page);
+        }
+
+        synchronized void flushAllPages() throws IOException {
+            for (PageId pid : pageTable.keySet())
+                flushPage(pid);
+        }
+
+        /**
+         * Writes the transaction's dirty pages. They are logged first and
+         * the log is forced once for all of them.
+         */
+        synchronized void flushPages(TransactionId tid) throws IOException {
+            List<Page> dirty = new ArrayList<Page>();
+            for (Frame frame : frames) {
+                Page page = frame.page;
+                if (page != null && tid.equals(page.isDirty()))
+                    dirty.add(page);
+            }
+            if (dirty.isEmpty())
+                return;
+            LogFile log = Database.getLogFile();
+            for (Page page : dirty)
+                log.logWrite(tid, page.getBeforeImage(), page);
+            log.force();
+            for (Page page : dirty) {
+                synchronized (page) {
+                    Database.getCatalog().getDbFile(page.getId().getTableId()).writePage(page);
+                    page.markDirty(false, null);
+                }
+                flushes.increment();
+            }
+        }
+
+        /** Drop every page the transaction dirtied, without writing it. */
+        synchronized void discardDirtyPages(TransactionId tid) {
+            for (int f = 0; f < frames.length; f++) {
+                Page page = frames[f].page;
+                if (page != null && tid.equals(page.isDirty())) {
+                    frames[f].forceClaim();
+                    clearFrame(f);
+                    freeFrames.add(f);
+                }
+            }
+        }
+
+        /**
+         * Writes the page if it is dirty. The write-ahead rule applies:
+         * the update is logged, and the log forced, before the page
+         * reaches its file. Holding the page's monitor keeps operators
+         * from changing it halfway through.
+         */
+        private void writePage(Page page) throws IOException {
+            synchronized (page) {
+                TransactionId dirtier = page.isDirty();
+                if (dirtier == null)
+                    return;
+                LogFile log = Database.getLogFile();
+                log.logWrite(dirtier, page.getBeforeImage(), page);
+                log.force();
+                Database.getCatalog().getDbFile(page.getId().getTableId()).writePage(page);
+                page.markDirty(false, null);
+                flushes.increment();
+            }
+        }
+
+        /**
+         * Discards a page from the partition. The victim is chosen by the
+         * partition's EvictionPolicy among unpinned, clean pages; dirty
+         * pages stay until their transaction commits or aborts (NO STEAL),
+         * so eviction never writes.
+         *
+         * @return the frame that was emptied; it is not put on the free list
+         * @throws DbException if every frame is pinned or dirty
+         */
+        private int evictPage() throws DbException {
+            while (true) {
+                int victim = policy.chooseVictim(evictable);
+                if (victim < 0)
+                    throw noVictim();
+                // a reader may pin the victim between the choice and the claim
+                if (claimVictim(victim)) {
+                    clearFrame(victim);
+                    evictions.increment();
+                    return victim;
+                }
+            }
+        }
+
+        /**
+         * Claim the frame for eviction if it may be evicted.
+         * @return true if the frame was claimed; false leaves it untouched
+         */
+        private boolean claimVictim(int frame) {
+            Frame fr = frames[frame];
+            if (!evictable.canEvict(frame) || !fr.claim())
+                return false;
+            // the page may have been dirtied before the claim
+            Page page = fr.page;
+            if (page != null && page.isDirty() != null) {
+                fr.unclaim();
+                return false;
+            }
+            return true;
+        }
+
+        private DbException noVictim() {
+            int occupied = 0;
+            int pinned = 0;
+            for (Frame frame : frames) {
+                if (frame.pid != null)
+                    occupied++;
+                if (frame.pinCount() > 0)
+                    pinned++;
+            }
+            if (pinned == occupied)
+                return new DbException("all " + occupied + " frames of buffer pool partition "
+                        + index + " are pinned");
+            return new DbException("no page in buffer pool partition " + index + " can be evicted: "
+                    + pinned + " of " + occupied + " frames are pinned and the rest hold"
+                    + " uncommitted changes");
+        }
+
+        /**
+         * @return the number of pages the partition can hold that are not
+         *   taken by a dirty page
+         */
+        int cleanFrames() {
+            int n = capacity;
+            for (Frame frame : frames) {
+                Page page = frame.page;
+                if (page != null && page.isDirty() != null)
+                    n--;
+            }
+            return n;
+        }
+
+        /**
+         * Writes the page in the frame for the background writer, if the
+         * frame still holds it, it is still dirty and no one has it pinned;
+         * an operator holding a pin may be changing the page. The page's
+         * before-image is kept until its transaction completes.
+         * @return true if the page was written
+         */
+        synchronized boolean writeBack(int frame, PageId pid) throws IOException {
+            Page page = frames[frame].page;
+            if (page == null || !pid.equals(page.getId()) || page.isDirty() == null
+                    || frames[frame].pinCount() > 0)
+                return false;
+            synchronized (page) {
+                TransactionId dirtier = page.isDirty();
+                if (dirtier == null)
+                    return false;
+                Map<PageId, Page> befores = stolen.get(dirtier);
+                if (befores == null) {
+                    befores = new ConcurrentHashMap<PageId, Page>();
+                    Map<PageId, Page> raced = stolen.putIfAbsent(dirtier, befores);
+                    if (raced != null)
+                        befores = raced;
+                }
+                // the first before-image is the committed one
+                if (!befores.containsKey(pid))
+                    befores.put(pid, page.getBeforeImage());
+                writePage(page);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * What the pool tracks for a running transaction: the pins it has not
+     * released yet, oldest first, and how many pages it has read. Guarded
+     * by its own monitor.
+     */
+    private static class TransactionState {
+        final List<Pin> pins = new ArrayList<Pin>();
+        long pageReads;
+        long diskReads;
+    }
+
+    /** Bytes and pages read from and written to one table's file. */
+    private static class TableIo {
+        final LongAdder reads = new LongAdder();
+        final LongAdder readBytes = new LongAdder();
+        final LongAdder writes = new LongAdder();
+        final LongAdder writeBytes = new LongAdder();
+    }
+
+    /** A dirty page the background writer may write, and where it lives. */
+    private static class WriteCandidate implements Comparable<WriteCandidate> {
+        final Partition partition;
+        final int frame;
+        final PageId pid;
+
+        WriteCandidate(Partition partition, int frame, PageId pid) {
+            this.partition = partition;
+            this.frame = frame;
+            this.pid = pid;
+        }
+
+        /** table by table, in page number order */
+        public int compareTo(WriteCandidate o) {
+            if (pid.getTableId() != o.pid.getTableId())
+                return pid.getTableId() < o.pid.getTableId() ? -1 : 1;
+            return pid.pageNumber() - o.pid.pageNumber();
+        }
+    }
+
+    private final Partition[] partitions;
+    private volatile int numPages;
+    /** page storage of an OFF_HEAP pool; null for HEAP */
+    private final PageArena arena;
+    /** direct memory of an OFF_HEAP pool, including frames added by resize */
+    private final AtomicLong offHeapBytes = new AtomicLong();
+    private final AtomicLong resizes = new AtomicLong();
+
+    private final LockManager lockManager = new LockManager();
+    private BackgroundWriter writer;
+    private volatile Prefetcher prefetcher;
+    private final ConcurrentHashMap<TransactionId, TransactionState> transactions =
+        new ConcurrentHashMap<TransactionId, TransactionState>();
+    /**
+     * by running transaction, the before-images of the pages the
+     * background writer wrote for it, which an abort writes back
+     */
+    private final ConcurrentHashMap<TransactionId, Map<PageId, Page>> stolen =
+        new ConcurrentHashMap<TransactionId, Map<PageId, Page>>();
+    /** file I/O by table id, as reported by the DbFiles */
+    private final ConcurrentHashMap<Integer, TableIo> tableIo =
+        new ConcurrentHashMap<Integer, TableIo>();
+
     /**
      * Creates a BufferPool that caches up to numPages pages.
      *
      * @param numPages maximum number of pages in this buffer pool.
      */
-    private Page[] pages;
-    private int maxPages;
-    private int currentPage;
-    private int mru;
     public BufferPool(int numPages) {
-        pages = new Page[numPages];
-	maxPages = numPages;
-	currentPage = 0;
-	mru = 0;
+        this(numPages, DEFAULT_REPLACEMENT);
     }
-    
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages and evicts
+     * according to the given replacement policy.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param replacement the policy that picks eviction victims
+     */
+    public BufferPool(int numPages, Replacement replacement) {
+        this(numPages, replacement, defaultPartitions(numPages));
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages split into the
+     * given number of independently latched partitions.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param replacement the policy that picks eviction victims
+     * @param numPartitions how many partitions to split the frames into
+     */
+    public BufferPool(int numPages, Replacement replacement, int numPartitions) {
+        this(numPages, replacement, numPartitions, Storage.HEAP);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages split into the
+     * given number of partitions, keeping pages as the given storage says.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param replacement the policy that picks eviction victims
+     * @param numPartitions how many partitions to split the frames into
+     * @param storage whether to keep cached pages on or off the Java heap
+     */
+    public BufferPool(int numPages, Replacement replacement, int numPartitions,
+                      Storage storage) {
+        if (numPartitions < 1 || numPartitions > numPages)
+            throw new IllegalArgumentException("cannot split " + numPages
+                    + " pages into " + numPartitions + " partitions");
+        this.numPages = numPages;
+        arena = storage == Storage.OFF_HEAP ? new PageArena(numPages, getPageSize()) : null;
+        if (arena != null)
+            offHeapBytes.set(arena.capacity());
+        partitions = new Partition[numPartitions];
+        int firstFrame = 0;
+        for (int i = 0; i < numPartitions; i++) {
+            // spread the remainder over the first partitions
+            int frames = shareOf(numPages, numPartitions, i);
+            partitions[i] = new Partition(i, frames, firstFrame, replacement);
+            firstFrame += frames;
+        }
+    }
+
+    /** @return partition i's share of numPages; the remainder goes to the first partitions */
+    private static int shareOf(int numPages, int numPartitions, int i) {
+        return numPages / numPartitions + (i < numPages % numPartitions ? 1 : 0);
+    }
+
+    /**
+     * Changes the number of pages the pool caches, keeping the pages it
+     * already holds where it can. Growing adds empty frames; getPage calls
+     * that hit keep running meanwhile. Shrinking evicts pages through the
+     * eviction policy, as misses do. Pinned and dirty pages are never
+     * evicted, so a shrink may leave the pool over its new size until
+     * they are unpinned or their transactions complete; it gets there on
+     * the following misses and commits.
+     * <p>
+     * Frames freed by a shrink are kept for the next grow. In OFF_HEAP
+     * mode their direct memory is not returned to the system.
+     *
+     * @param numPages the new maximum number of pages in this buffer pool
+     * @throws IllegalArgumentException if the pool cannot give every
+     *   partition a frame
+     */
+    public synchronized void resize(int numPages) {
+        if (numPages < partitions.length)
+            throw new IllegalArgumentException("cannot split " + numPages
+                    + " pages into " + partitions.length + " partitions");
+        for (int i = 0; i < partitions.length; i++)
+            partitions[i].resize(shareOf(numPages, partitions.length, i), offHeapBytes);
+        this.numPages = numPages;
+        resizes.incrementAndGet();
+    }
+
+    /**
+     * @return the number of partitions a pool of numPages pages gets by
+     *   default: at most DEFAULT_PARTITIONS, with at least
+     *   MIN_PARTITION_FRAMES frames each
+     */
+    public static int defaultPartitions(int numPages) {
+        return Math.max(1, Math.min(DEFAULT_PARTITIONS, numPages / MIN_PARTITION_FRAMES));
+    }
+
+    /** @return the partition that caches the given page */
+    private Partition partitionFor(PageId pid) {
+        int h = pid.hashCode();
+        h ^= h >>> 16;
+        return partitions[(h & 0x7fffffff) % partitions.length];
+    }
+
     public static int getPageSize() {
       return pageSize;
     }
@@ -61,6 +918,10 @@ public class BufferPool {
      * be added to the buffer pool and returned.  If there is insufficient
      * space in the buffer pool, an page should be evicted and the new page
      * should be added in its place.
+     * <p>
+     * The page is pinned in the pool until the caller passes it to
+     * {@link #unpinPage}, or the transaction completes; pinned pages are
+     * never evicted.
      *
      * @param tid the ID of the transaction requesting the page
      * @param pid the ID of the requested page
@@ -68,30 +929,420 @@ public class BufferPool {
      */
     public  Page getPage(TransactionId tid, PageId pid, Permissions perm)
         throws TransactionAbortedException, DbException {
-	for( int i = 0; i < currentPage; i++)
-	{
-		if (pages[i].getId().equals(pid))
-		{
-			mru = i;
-			return pages[i];
-		}
-	}
-	if (currentPage == maxPages) //mru: replace most recently used page
-	{
-		evictPage();
-		int tableid = pid.getTableId();
-		DbFile file = Database.getCatalog().getDbFile(tableid);
-		Page temp = file.readPage(pid);
-		pages[mru] = temp;
-		return temp;
-	}
-	mru = currentPage;
-	int tableid = pid.getTableId();
-	DbFile file = Database.getCatalog().getDbFile(tableid);
-	Page temp = file.readPage(pid);
-	pages[currentPage] = temp;
-	currentPage++;
-	return temp;
+        return getPage(tid, pid, perm, null);
+    }
+
+    /**
+     * Retrieve the specified page as {@link #getPage(TransactionId, PageId, Permissions)}
+     * does, but serve a miss according to the given access strategy.
+     *
+     * @param tid the ID of the transaction requesting the page
+     * @param pid the ID of the requested page
+     * @param perm the requested permissions on the page
+     * @param strategy how to find a frame on a miss, or null to use the
+     *   shared pool
+     */
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm,
+            BufferAccessStrategy strategy)
+        throws TransactionAbortedException, DbException {
+        lockManager.acquire(tid, pid, perm == Permissions.READ_WRITE);
+        Partition p = partitionFor(pid);
+        Pin pin = p.lookup(pid, strategy);
+        if (pin == null)
+            pin = p.loadPage(pid, strategy);
+        TransactionState ts = transactions.get(tid);
+        if (ts == null) {
+            TransactionState fresh = new TransactionState();
+            ts = transactions.putIfAbsent(tid, fresh);
+            if (ts == null)
+                ts = fresh;
+        }
+        synchronized (ts) {
+            ts.pins.add(pin);
+            ts.pageReads++;
+            if (pin.loaded)
+                ts.diskReads++;
+        }
+        return pin.page;
+    }
+
+    /**
+     * Releases one pin the transaction took on the page with getPage, so
+     * that the page may be evicted once nobody else pins it. Locks are not
+     * affected. Unpinning a page the transaction has not pinned does
+     * nothing.
+     *
+     * @param tid the ID of the transaction that pinned the page
+     * @param pid the ID of the page to unpin
+     */
+    public void unpinPage(TransactionId tid, PageId pid) {
+        TransactionState ts = transactions.get(tid);
+        if (ts == null)
+            return;
+        synchronized (ts) {
+            for (int i = ts.pins.size() - 1; i >= 0; i--) {
+                if (ts.pins.get(i).pid.equals(pid)) {
+                    ts.pins.remove(i).release();
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Release every pin the transaction still holds. */
+    private void unpinAll(TransactionId tid) {
+        TransactionState ts = transactions.remove(tid);
+        if (ts == null)
+            return;
+        synchronized (ts) {
+            for (Pin pin : ts.pins)
+                pin.release();
+        }
+    }
+
+    /** @return the number of unreleased pins on the page, over all transactions */
+    public int getPinCount(PageId pid) {
+        return partitionFor(pid).pinCount(pid);
+    }
+
+    /** @return the number of frames in this buffer pool */
+    public int getNumPages() {
+        return numPages;
+    }
+
+    /** @return where this pool keeps its cached pages */
+    public Storage getStorage() {
+        return arena == null ? Storage.HEAP : Storage.OFF_HEAP;
+    }
+
+    /** @return the bytes of direct memory holding OFF_HEAP pages; 0 for HEAP */
+    public long getOffHeapBytes() {
+        return offHeapBytes.get();
+    }
+
+    /**
+     * @return the number of cached pages currently decoded into Page
+     *   objects on the Java heap; all cached pages for a HEAP pool
+     */
+    public int getDecodedPageCount() {
+        int n = 0;
+        for (Partition p : partitions) {
+            for (Frame frame : p.frames) {
+                if (frame.page != null)
+                    n++;
+            }
+        }
+        return n;
+    }
+
+    /** @return the number of pages the pool holds right now */
+    public int getCachedPageCount() {
+        int n = 0;
+        for (Partition p : partitions)
+            n += p.pageTable.size();
+        return n;
+    }
+
+    /**
+     * @return the number of frames the pool has allocated; more than
+     *   getNumPages after a shrink
+     */
+    public int getFrameCount() {
+        int n = 0;
+        for (Partition p : partitions)
+            n += p.frames.length;
+        return n;
+    }
+
+    /** @return the number of times the pool was resized */
+    public long getResizeCount() {
+        return resizes.get();
+    }
+
+    /** @return the number of pages evicted to bring the pool down to a smaller size */
+    public long getShrinkEvictionCount() {
+        long total = 0;
+        for (Partition p : partitions)
+            total += p.shrinkEvictions.sum();
+        return total;
+    }
+
+    /** @return the number of pages evicted to make room for other pages */
+    public long getEvictionCount() {
+        long total = 0;
+        for (Partition p : partitions)
+            total += p.evictions.sum();
+        return total;
+    }
+
+    /** @return the number of dirty pages the pool has written to their files */
+    public long getDirtyFlushCount() {
+        long total = 0;
+        for (Partition p : partitions)
+            total += p.flushes.sum();
+        return total;
+    }
+
+    /**
+     * Records that a DbFile read a page of the given table from disk.
+     * DbFile implementations call this from readPage.
+     */
+    void recordRead(int tableId, int bytes) {
+        TableIo io = tableIo(tableId);
+        io.reads.increment();
+        io.readBytes.add(bytes);
+    }
+
+    /**
+     * Records that a DbFile wrote a page of the given table to disk.
+     * DbFile implementations call this from writePage.
+     */
+    void recordWrite(int tableId, int bytes) {
+        TableIo io = tableIo(tableId);
+        io.writes.increment();
+        io.writeBytes.add(bytes);
+    }
+
+    private TableIo tableIo(int tableId) {
+        TableIo io = tableIo.get(tableId);
+        if (io == null) {
+            TableIo fresh = new TableIo();
+            io = tableIo.putIfAbsent(tableId, fresh);
+            if (io == null)
+                io = fresh;
+        }
+        return io;
+    }
+
+    /**
+     * @return the number of getPage calls the transaction has made; 0 once
+     *   it has completed
+     */
+    public long getPageReads(TransactionId tid) {
+        TransactionState ts = transactions.get(tid);
+        if (ts == null)
+            return 0;
+        synchronized (ts) {
+            return ts.pageReads;
+        }
+    }
+
+    /**
+     * @return a snapshot of this pool's counters. Counters keep moving
+     *   while it is taken, so its totals may disagree slightly.
+     */
+    public BufferPoolStats getStats() {
+        Map<Integer, Long> tableReads = new HashMap<Integer, Long>();
+        Map<Integer, Long> tableReadBytes = new HashMap<Integer, Long>();
+        Map<Integer, Long> tableWrites = new HashMap<Integer, Long>();
+        Map<Integer, Long> tableWriteBytes = new HashMap<Integer, Long>();
+        for (Map.Entry<Integer, TableIo> e : tableIo.entrySet()) {
+            TableIo io = e.getValue();
+            tableReads.put(e.getKey(), io.reads.sum());
+            tableReadBytes.put(e.getKey(), io.readBytes.sum());
+            tableWrites.put(e.getKey(), io.writes.sum());
+            tableWriteBytes.put(e.getKey(), io.writeBytes.sum());
+        }
+        Map<TransactionId, Long> pageReads = new HashMap<TransactionId, Long>();
+        Map<TransactionId, Long> diskReads = new HashMap<TransactionId, Long>();
+        for (Map.Entry<TransactionId, TransactionState> e : transactions.entrySet()) {
+            TransactionState ts = e.getValue();
+            synchronized (ts) {
+                pageReads.put(e.getKey(), ts.pageReads);
+                diskReads.put(e.getKey(), ts.diskReads);
+            }
+        }
+        return new BufferPoolStats(numPages, getCachedPageCount(), getHitCount(), getMissCount(),
+                getEvictionCount(), getDirtyFlushCount(), tableReads, tableReadBytes,
+                tableWrites, tableWriteBytes, pageReads, diskReads);
+    }
+
+    /** @return the number of times an OFF_HEAP page was decoded from the arena */
+    public long getDecodeCount() {
+        long total = 0;
+        for (Partition p : partitions)
+            total += p.decodes.sum();
+        return total;
+    }
+
+    /** @return the number of independently latched partitions of this pool */
+    public int getNumPartitions() {
+        return partitions.length;
+    }
+
+    /** @return the number of getPage calls served from the pool */
+    public long getHitCount() {
+        long total = 0;
+        for (Partition p : partitions)
+            total += sum(p.hits);
+        return total;
+    }
+
+    /** @return the number of getPage calls that had to read from disk */
+    public long getMissCount() {
+        long total = 0;
+        for (Partition p : partitions)
+            total += sum(p.misses);
+        return total;
+    }
+
+    /** @return the number of hits for accesses of the given kind */
+    public long getHitCount(BufferAccessStrategy.Kind kind) {
+        long total = 0;
+        for (Partition p : partitions)
+            total += p.hits[kind.ordinal()].sum();
+        return total;
+    }
+
+    /** @return the number of misses for accesses of the given kind */
+    public long getMissCount(BufferAccessStrategy.Kind kind) {
+        long total = 0;
+        for (Partition p : partitions)
+            total += p.misses[kind.ordinal()].sum();
+        return total;
+    }
+
+    /** @return the number of misses served by recycling a scan ring frame */
+    public long getRingReuseCount() {
+        long total = 0;
+        for (Partition p : partitions)
+            total += p.ringReuses.sum();
+        return total;
+    }
+
+    /**
+     * Starts a background writer that keeps at least targetCleanFrames
+     * frames of this pool empty or clean, writing at most
+     * maxWritesPerRound pages every roundMillis milliseconds. A writer
+     * that is already running is stopped first.
+     *
+     * @return the started writer
+     */
+    public synchronized BackgroundWriter startBackgroundWriter(int targetCleanFrames,
+            int maxWritesPerRound, long roundMillis) {
+        stopBackgroundWriter();
+        writer = new BackgroundWriter(this, targetCleanFrames, maxWritesPerRound, roundMillis);
+        writer.start();
+        return writer;
+    }
+
+    /** Stops the background writer, if one is running. */
+    public synchronized void stopBackgroundWriter() {
+        if (writer != null) {
+            writer.shutdown();
+            writer = null;
+        }
+    }
+
+    /** @return the running background writer, or null */
+    public synchronized BackgroundWriter getBackgroundWriter() {
+        return writer;
+    }
+
+    /**
+     * Starts reading pages ahead of sequential scans on the given number
+     * of I/O threads, each scan at most maxWindow pages ahead. Scans
+     * opened from now on use it. A prefetcher that is already running is
+     * stopped first.
+     *
+     * @return the started prefetcher
+     */
+    public synchronized Prefetcher startPrefetcher(int threads, int maxWindow) {
+        stopPrefetcher();
+        prefetcher = new Prefetcher(this, threads, maxWindow);
+        return prefetcher;
+    }
+
+    /** Stops reading ahead, if a prefetcher is running. */
+    public synchronized void stopPrefetcher() {
+        if (prefetcher != null) {
+            prefetcher.shutdown();
+            prefetcher = null;
+        }
+    }
+
+    /** @return the running prefetcher, or null */
+    public Prefetcher getPrefetcher() {
+        return prefetcher;
+    }
+
+    /**
+     * Reads the page into the pool for the prefetcher, unless it is cached
+     * already. No lock is taken and the page is not left pinned: whoever
+     * uses it still goes through getPage.
+     *
+     * @return true if the page was read from its file
+     */
+    boolean prefetchPage(PageId pid, BufferAccessStrategy strategy) throws DbException {
+        Partition p = partitionFor(pid);
+        if (p.pageTable.containsKey(pid))
+            return false;
+        Pin pin = p.loadPage(pid, strategy);
+        pin.release();
+        return pin.loaded;
+    }
+
+    /** @return whether the page is in the pool */
+    boolean isCached(PageId pid) {
+        return partitionFor(pid).pageTable.containsKey(pid);
+    }
+
+    /**
+     * One round of the background writer: in each partition with fewer
+     * clean frames than its share of targetCleanFrames, write dirty pages
+     * until it has enough, at most budget pages in all. Pages are written
+     * in table and page number order, so that neighbouring pages go out
+     * together. Pinned pages are left alone.
+     *
+     * @return the number of pages written
+     */
+    int writeBack(int targetCleanFrames, int budget) throws IOException {
+        Map<Partition, Integer> needed = new HashMap<Partition, Integer>();
+        List<WriteCandidate> candidates = new ArrayList<WriteCandidate>();
+        for (Partition p : partitions) {
+            int share = (int) Math.ceil((double) targetCleanFrames * p.capacity / numPages);
+            int need = share - p.cleanFrames();
+            if (need <= 0)
+                continue;
+            needed.put(p, need);
+            for (int f = 0; f < p.frames.length; f++) {
+                Page page = p.frames[f].page;
+                if (page != null && page.isDirty() != null && p.frames[f].pinCount() == 0)
+                    candidates.add(new WriteCandidate(p, f, page.getId()));
+            }
+        }
+        Collections.sort(candidates);
+        int written = 0;
+        for (WriteCandidate c : candidates) {
+            if (written >= budget)
+                break;
+            int need = needed.get(c.partition);
+            if (need > 0 && c.partition.writeBack(c.frame, c.pid)) {
+                needed.put(c.partition, need - 1);
+                written++;
+            }
+        }
+        return written;
+    }
+
+    private static int kindOf(BufferAccessStrategy strategy) {
+        BufferAccessStrategy.Kind kind = strategy == null
+            ? BufferAccessStrategy.Kind.NORMAL : strategy.getKind();
+        return kind.ordinal();
+    }
+
+    private static LongAdder[] newCounters() {
+        LongAdder[] counters = new LongAdder[BufferAccessStrategy.Kind.values().length];
+        for (int i = 0; i < counters.length; i++)
+            counters[i] = new LongAdder();
+        return counters;
+    }
+
+    private static long sum(LongAdder[] counters) {
+        long total = 0;
+        for (LongAdder c : counters)
+            total += c.sum();
+        return total;
     }
 
     /**
@@ -104,8 +1355,7 @@ public class BufferPool {
      * @param pid the ID of the page to unlock
      */
     public  void releasePage(TransactionId tid, PageId pid) {
-        // some code goes here
-        // not necessary for lab1|lab2
+        lockManager.release(tid, pid);
     }
 
     /**
@@ -114,28 +1364,88 @@ public class BufferPool {
      * @param tid the ID of the transaction requesting the unlock
      */
     public void transactionComplete(TransactionId tid) throws IOException {
-        // some code goes here
-        // not necessary for lab1|lab2
+        transactionComplete(tid, true);
     }
 
     /** Return true if the specified transaction has a lock on the specified page */
     public boolean holdsLock(TransactionId tid, PageId p) {
-        // some code goes here
-        // not necessary for lab1|lab2
-        return false;
+        return lockManager.holdsLock(tid, p);
+    }
+
+    /** @return the lock manager guarding the pages of this pool */
+    public LockManager getLockManager() {
+        return lockManager;
     }
 
     /**
-     * Commit or abort a given transaction; release all locks associated to
-     * the transaction.
+     * Commit or abort a given transaction; release all locks and pins
+     * associated to the transaction.
+     * <p>
+     * On commit the transaction's dirty pages are forced to disk and the
+     * pages it write-locked take their current contents as before-images.
+     * On abort its dirty pages are dropped from the pool, so the next
+     * reader gets the committed version from disk; pages the background
+     * writer wrote for it get their before-images written back and are
+     * dropped too. Either way, the bitmap indexes in the catalog take or
+     * drop its changes.
      *
      * @param tid the ID of the transaction requesting the unlock
      * @param commit a flag indicating whether we should commit or abort
      */
     public void transactionComplete(TransactionId tid, boolean commit)
         throws IOException {
-        // some code goes here
-        // not necessary for lab1|lab2
+        unpinAll(tid);
+        Set<PageId> locked = lockManager.getLockedPages(tid);
+        if (commit) {
+            flushPages(tid);
+            // only pages the transaction could have changed need a new
+            // before-image; copying every page it read made read-only
+            // commits expensive
+            for (PageId pid : locked) {
+                Page page = cachedPage(pid);
+                if (page != null && lockManager.holdsExclusiveLock(tid, pid))
+                    page.setBeforeImage();
+            }
+        } else {
+            for (PageId pid : locked) {
+                Page page = cachedPage(pid);
+                if (page != null && tid.equals(page.isDirty()))
+                    discardPage(pid);
+            }
+        }
+        Map<PageId, Page> befores = stolen.remove(tid);
+        if (befores != null && !commit) {
+            for (Page before : befores.values()) {
+                PageId pid = before.getId();
+                Database.getCatalog().getDbFile(pid.getTableId()).writePage(before);
+                discardPage(pid);
+            }
+        }
+        if (arena != null) {
+            for (PageId pid : locked) {
+                if (lockManager.holdsExclusiveLock(tid, pid))
+                    partitionFor(pid).changed(pid);
+            }
+        }
+        // before the locks go, so no one reads the pages without the rows
+        for (BitmapIndex index : Database.getCatalog().getBitmapIndexes())
+            index.transactionComplete(tid, commit);
+        lockManager.releaseAll(tid);
+        if (arena != null) {
+            // pages nobody else is using go back to their encoded form
+            for (PageId pid : locked)
+                partitionFor(pid).park(pid);
+        }
+        // pages a shrink could not evict may be evictable now
+        for (Partition p : partitions) {
+            if (p.pageTable.size() > p.capacity)
+                p.trim();
+        }
+    }
+
+    /** @return the cached copy of the page, or null if it is not in the pool */
+    private Page cachedPage(PageId pid) {
+        return partitionFor(pid).cachedPage(pid);
     }
 
     /**
@@ -146,7 +1456,13 @@ public class BufferPool {
      * 
      * Marks any pages that were dirtied by the operation as dirty by calling
      * their markDirty bit, and updates cached versions of any pages that have 
-     * been dirtied so that future requests see up-to-date pages. 
+     * been dirtied so that future requests see up-to-date pages. The pages
+     * are unpinned again; being dirty keeps them in the pool until the
+     * transaction completes.
+     * <p>
+     * The tuple's entry is added to each secondary index of the table in
+     * the catalog, in the same transaction, and its row to each bitmap
+     * index.
      *
      * @param tid the transaction adding the tuple
      * @param tableId the table to add the tuple to
@@ -155,8 +1471,20 @@ public class BufferPool {
     public void insertTuple(TransactionId tid, int tableId, Tuple t)
         throws DbException, IOException, TransactionAbortedException {
 	DbFile file = Database.getCatalog().getDbFile(tableId);
-	Page page = file.insertTuple(tid, t).get(0);
-	page.markDirty(true, tid);	
+	dirtied(tid, file.insertTuple(tid, t));
+	for (SecondaryIndex index : Database.getCatalog().getIndexes(tableId))
+		dirtied(tid, index.getFile().insertTuple(tid, index.entry(t)));
+	for (BitmapIndex index : Database.getCatalog().getBitmapIndexes(tableId))
+		index.insert(tid, t);
+    }
+
+    /** Marks the pages an insert or delete changed dirty, and unpins them. */
+    private void dirtied(TransactionId tid, ArrayList<Page> pages) {
+	// a B+ tree insert that splits pages changes several
+	for (Page page : pages) {
+		page.markDirty(true, tid);
+		unpinPage(tid, page.getId());
+	}
     }
 
     /**
@@ -166,29 +1494,28 @@ public class BufferPool {
      *
      * Marks any pages that were dirtied by the operation as dirty by calling
      * their markDirty bit, and updates cached versions of any pages that have 
-     * been dirtied so that future requests see up-to-date pages. 
+     * been dirtied so that future requests see up-to-date pages. The pages
+     * are unpinned again, as by insertTuple. The tuple's entries are
+     * deleted from the table's secondary indexes in the same transaction,
+     * and its row from its bitmap indexes.
      *
      * @param tid the transaction deleting the tuple.
      * @param t the tuple to delete
      */
     public  void deleteTuple(TransactionId tid, Tuple t)
         throws DbException, IOException, TransactionAbortedException {
-	DbFile file = Database.getCatalog().getDbFile(t.getRecordId().getPageId().getTableId());
-        try
-        {
-    	int tableId = t.getRecordId().getPageId().getTableId(); 
-    	DbFile dbFile = Database.getCatalog().getDbFile(tableId);
-    	HeapFile heapFile = (HeapFile)dbFile;
-    	Page affectedPage = heapFile.deleteTuple(tid, t).get(0);
-    	//iterate through affectedPages and markDirty
-        affectedPage.markDirty(true,tid);
-        }
-        catch (DbException e){
-                e.printStackTrace();
-            }
-        catch (TransactionAbortedException e){
-                e.printStackTrace();
-            }
+	int tableId = t.getRecordId().getPageId().getTableId();
+	DbFile file = Database.getCatalog().getDbFile(tableId);
+	List<SecondaryIndex> indexes = Database.getCatalog().getIndexes(tableId);
+	// the entries point at where the tuple is before it is deleted
+	ArrayList<Tuple> entries = new ArrayList<Tuple>(indexes.size());
+	for (SecondaryIndex index : indexes)
+		entries.add(index.entry(t));
+	dirtied(tid, file.deleteTuple(tid, t));
+	for (int i = 0; i < indexes.size(); i++)
+		dirtied(tid, indexes.get(i).getFile().deleteTuple(tid, entries.get(i)));
+	for (BitmapIndex index : Database.getCatalog().getBitmapIndexes(tableId))
+		index.delete(tid, t);
     }
 
     /**
@@ -196,12 +1523,9 @@ public class BufferPool {
      * NB: Be careful using this routine -- it writes dirty data to disk so will
      *     break simpledb if running in NO STEAL mode.
      */
-    public synchronized void flushAllPages() throws IOException {
-        for ( int i = 0; i < currentPage; i++)
-        {
-                flushPage(pages[i].getId());
-        }
-
+    public void flushAllPages() throws IOException {
+        for (Partition p : partitions)
+            p.flushAllPages();
     }
 
     /** Remove the specific page id from the buffer pool.
@@ -209,52 +1533,32 @@ public class BufferPool {
         buffer pool doesn't keep a rolled back page in its
         cache.
     */
-    public synchronized void discardPage(PageId pid) {
-        // some code goes here
-        // only necessary for lab5
+    public void discardPage(PageId pid) {
+        partitionFor(pid).discardPage(pid);
     }
 
     /**
-     * Flushes a certain page to disk
-     * @param pid an ID indicating the page to flush
+     * Drops every page the transaction dirtied from the buffer pool,
+     * without writing it. Used by the recovery manager on rollback.
      */
-    private synchronized  void flushPage(PageId pid) throws IOException {
-	//get the page
-	Page page = null;
-        for( int i = 0; i < currentPage; i++)
-        {
-                if (pages[i].getId().equals(pid))
-                {
-                        page = pages[i];
-			int tableid = ((HeapPageId) pid).getTableId();
-			HeapFile f = (HeapFile) Database.getCatalog().getDbFile(tableid);
-			f.writePage(page);
-			page.markDirty(false,null);
-                }
-        }
+    public void discardDirtyPages(TransactionId tid) {
+        for (Partition p : partitions)
+            p.discardDirtyPages(tid);
     }
 
-    /** Write all pages of the specified transaction to disk.
+    /**
+     * Flushes a certain page to disk
+     * @param pid an ID indicating the page to flush
      */
-    public synchronized  void flushPages(TransactionId tid) throws IOException {
-	for ( int i = 0; i < currentPage; i++)
-	{
-		if(pages[i].isDirty() == tid)
-			flushPage(pages[i].getId());
-	}
+    private void flushPage(PageId pid) throws IOException {
+        partitionFor(pid).flushPage(pid);
     }
 
-    /**
-     * Discards a page from the buffer pool.
-     * Flushes the page to disk to ensure dirty pages are updated on disk.
+    /** Write all pages of the specified transaction to disk.
      */
-    private synchronized  void evictPage() throws DbException {
-                PageId evictPid = pages[mru].getId();
-                try{
-                flushPage(evictPid);
-                }
-                catch(IOException exception){}
-
+    public void flushPages(TransactionId tid) throws IOException {
+        for (Partition p : partitions)
+            p.flushPages(tid);
     }
 
 }
@@ -0,0 +1,43 @@
+package simpledb;
+
+import java.util.Map;
+
+/**
+ * Management interface of the database's buffer pool, registered with the
+ * platform MBean server as <code>simpledb:type=BufferPool</code>. Every
+ * attribute is read from a fresh {@link BufferPoolStats} snapshot of the
+ * current pool, so the bean keeps working across
+ * {@link Database#resetBufferPool}.
+ */
+public interface BufferPoolMXBean {
+    /** @return the number of pages the pool may hold */
+    public int getNumPages();
+
+    /** Grow or shrink the pool; see {@link BufferPool#resize}. */
+    public void setNumPages(int numPages);
+
+    public int getCachedPages();
+
+    public long getHits();
+
+    public long getMisses();
+
+    public double getHitRatio();
+
+    public long getEvictions();
+
+    public long getDirtyFlushes();
+
+    public long getReadBytes();
+
+    public long getWriteBytes();
+
+    /** @return bytes read from disk, by table id */
+    public Map<Integer, Long> getTableReadBytes();
+
+    /** @return bytes written to disk, by table id */
+    public Map<Integer, Long> getTableWriteBytes();
+
+    /** @return getPage calls of each running transaction, by transaction id */
+    public Map<Long, Long> getTransactionPageReads();
+}
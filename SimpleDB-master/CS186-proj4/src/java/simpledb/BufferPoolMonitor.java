@@ -0,0 +1,90 @@
+package simpledb;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * BufferPoolMonitor exposes the counters of {@link Database#getBufferPool}
+ * over JMX.
+ */
+class BufferPoolMonitor implements BufferPoolMXBean {
+
+    static final String OBJECT_NAME = "simpledb:type=BufferPool";
+
+    /** Register the monitor with the platform MBean server, once per JVM. */
+    static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name))
+                server.registerMBean(new BufferPoolMonitor(), name);
+        } catch (JMException e) {
+            // the database works without it
+            e.printStackTrace();
+        }
+    }
+
+    private static BufferPoolStats stats() {
+        return Database.getBufferPool().getStats();
+    }
+
+    public int getNumPages() {
+        return Database.getBufferPool().getNumPages();
+    }
+
+    public void setNumPages(int numPages) {
+        Database.getBufferPool().resize(numPages);
+    }
+
+    public int getCachedPages() {
+        return Database.getBufferPool().getCachedPageCount();
+    }
+
+    public long getHits() {
+        return stats().getHits();
+    }
+
+    public long getMisses() {
+        return stats().getMisses();
+    }
+
+    public double getHitRatio() {
+        return stats().getHitRatio();
+    }
+
+    public long getEvictions() {
+        return stats().getEvictions();
+    }
+
+    public long getDirtyFlushes() {
+        return stats().getDirtyFlushes();
+    }
+
+    public long getReadBytes() {
+        return stats().getReadBytes();
+    }
+
+    public long getWriteBytes() {
+        return stats().getWriteBytes();
+    }
+
+    public Map<Integer, Long> getTableReadBytes() {
+        return stats().getTableReadBytes();
+    }
+
+    public Map<Integer, Long> getTableWriteBytes() {
+        return stats().getTableWriteBytes();
+    }
+
+    public Map<Long, Long> getTransactionPageReads() {
+        Map<Long, Long> reads = new HashMap<Long, Long>();
+        for (Map.Entry<TransactionId, Long> e : stats().getTransactionPageReads().entrySet())
+            reads.put(e.getKey().getId(), e.getValue());
+        return reads;
+    }
+}
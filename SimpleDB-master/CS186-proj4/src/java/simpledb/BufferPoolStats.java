@@ -0,0 +1,152 @@
+package simpledb;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * BufferPoolStats is a snapshot of the counters of a BufferPool: cache
+ * hits and misses, evictions, dirty page flushes, file I/O broken down
+ * by table, and the page reads of every running transaction.
+ * <p>
+ * Hits, misses, evictions and flushes count from the creation of the
+ * pool. Table I/O is reported by the DbFiles as they read and write
+ * pages, and counts from the creation of the pool as well. Transaction
+ * counts cover transactions that have not completed yet.
+ *
+ * @see BufferPool#getStats
+ */
+public class BufferPoolStats {
+
+    private final int numPages;
+    private final int cachedPages;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long dirtyFlushes;
+    private final Map<Integer, Long> tableReads;
+    private final Map<Integer, Long> tableReadBytes;
+    private final Map<Integer, Long> tableWrites;
+    private final Map<Integer, Long> tableWriteBytes;
+    private final Map<TransactionId, Long> transactionPageReads;
+    private final Map<TransactionId, Long> transactionDiskReads;
+
+    BufferPoolStats(int numPages, int cachedPages, long hits, long misses,
+                    long evictions, long dirtyFlushes,
+                    Map<Integer, Long> tableReads, Map<Integer, Long> tableReadBytes,
+                    Map<Integer, Long> tableWrites, Map<Integer, Long> tableWriteBytes,
+                    Map<TransactionId, Long> transactionPageReads,
+                    Map<TransactionId, Long> transactionDiskReads) {
+        this.numPages = numPages;
+        this.cachedPages = cachedPages;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.dirtyFlushes = dirtyFlushes;
+        this.tableReads = Collections.unmodifiableMap(tableReads);
+        this.tableReadBytes = Collections.unmodifiableMap(tableReadBytes);
+        this.tableWrites = Collections.unmodifiableMap(tableWrites);
+        this.tableWriteBytes = Collections.unmodifiableMap(tableWriteBytes);
+        this.transactionPageReads = Collections.unmodifiableMap(transactionPageReads);
+        this.transactionDiskReads = Collections.unmodifiableMap(transactionDiskReads);
+    }
+
+    /** @return the number of pages the pool may hold */
+    public int getNumPages() {
+        return numPages;
+    }
+
+    /** @return the number of pages the pool held */
+    public int getCachedPages() {
+        return cachedPages;
+    }
+
+    /** @return the number of getPage calls served from the pool */
+    public long getHits() {
+        return hits;
+    }
+
+    /** @return the number of getPage calls that read the page from disk */
+    public long getMisses() {
+        return misses;
+    }
+
+    /** @return hits over all getPage calls, or 0 if there were none */
+    public double getHitRatio() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    /** @return the number of pages evicted to make room for others */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /** @return the number of dirty pages written to their files by the pool */
+    public long getDirtyFlushes() {
+        return dirtyFlushes;
+    }
+
+    /** @return pages read from disk, over all tables */
+    public long getPagesRead() {
+        return total(tableReads);
+    }
+
+    /** @return bytes read from disk, over all tables */
+    public long getReadBytes() {
+        return total(tableReadBytes);
+    }
+
+    /** @return pages written to disk, over all tables */
+    public long getPagesWritten() {
+        return total(tableWrites);
+    }
+
+    /** @return bytes written to disk, over all tables */
+    public long getWriteBytes() {
+        return total(tableWriteBytes);
+    }
+
+    /** @return pages read from disk, by table id */
+    public Map<Integer, Long> getTableReads() {
+        return tableReads;
+    }
+
+    /** @return bytes read from disk, by table id */
+    public Map<Integer, Long> getTableReadBytes() {
+        return tableReadBytes;
+    }
+
+    /** @return pages written to disk, by table id */
+    public Map<Integer, Long> getTableWrites() {
+        return tableWrites;
+    }
+
+    /** @return bytes written to disk, by table id */
+    public Map<Integer, Long> getTableWriteBytes() {
+        return tableWriteBytes;
+    }
+
+    /** @return getPage calls made by each running transaction */
+    public Map<TransactionId, Long> getTransactionPageReads() {
+        return transactionPageReads;
+    }
+
+    /** @return getPage calls of each running transaction that missed */
+    public Map<TransactionId, Long> getTransactionDiskReads() {
+        return transactionDiskReads;
+    }
+
+    private static long total(Map<Integer, Long> counts) {
+        long total = 0;
+        for (Long c : counts.values())
+            total += c;
+        return total;
+    }
+
+    public String toString() {
+        return "BufferPoolStats(pages " + cachedPages + "/" + numPages
+            + ", hits " + hits + ", misses " + misses
+            + ", evictions " + evictions + ", dirty flushes " + dirtyFlushes
+            + ", read " + getReadBytes() + " bytes, written " + getWriteBytes() + " bytes"
+            + ", " + transactionPageReads.size() + " running transactions)";
+    }
+}
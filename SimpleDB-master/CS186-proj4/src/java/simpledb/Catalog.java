@@ -18,6 +18,12 @@ public class Catalog {
      */
      //I added this 
     private Map<Integer, Table> cataMap;
+    /** the secondary indexes of each table that has any */
+    private Map<Integer, List<SecondaryIndex>> indexes;
+    /** the files of the indexes, by file id; they are not tables */
+    private Map<Integer, BTreeFile> indexFiles;
+    /** the bitmap indexes of each table that has any */
+    private Map<Integer, List<BitmapIndex>> bitmapIndexes;
     /**
      * Constructor.
      * Creates a new, empty catalog.
@@ -25,6 +31,9 @@ public class Catalog {
     public Catalog() {
         // some code goes here
         cataMap = new HashMap<Integer,Table>();
+        indexes = new HashMap<Integer, List<SecondaryIndex>>();
+        indexFiles = new HashMap<Integer, BTreeFile>();
+        bitmapIndexes = new HashMap<Integer, List<BitmapIndex>>();
     }
 
     /**
@@ -91,6 +100,8 @@ public class Catalog {
         // some code goes here
         if (cataMap.containsKey(tableid)){
             return cataMap.get(tableid).get_file().getTupleDesc();
+        }else if (indexFiles.containsKey(tableid)){
+            return indexFiles.get(tableid).getTupleDesc();
         }else{
             throw new NoSuchElementException("no table has this tableid");
         }
@@ -98,19 +109,120 @@ public class Catalog {
 
     /**
      * Returns the DbFile that can be used to read the contents of the
-     * specified table.
+     * specified table, or of the specified index file.
      * @param tableid The id of the table, as specified by the DbFile.getId()
      *     function passed to addTable
      */
     public DbFile getDbFile(int tableid) throws NoSuchElementException {
         // some code goes here
-        if (cataMap.containsKey(tableid)){
-            return cataMap.get(tableid).get_file();
+        Table t = cataMap.get(tableid);
+        if (t != null){
+            return t.get_file();
+        }else if (indexFiles.containsKey(tableid)){
+            return indexFiles.get(tableid);
         }else{
             throw new NoSuchElementException("no table has this tableid");
         }
     }
 
+    /**
+     * Records a secondary index of a column of a table. The index is kept
+     * up to date from now on; tuples already in the table are added by
+     * {@link SecondaryIndex#build}.
+     *
+     * @param tableid the table, which must be stored in a HeapFile
+     * @param field the column to index
+     * @param file the entries, made by {@link SecondaryIndex#indexFile}
+     * @return the index
+     * @throws IllegalArgumentException if the table is not in a HeapFile,
+     *     or the entries are not of the column's type
+     */
+    public SecondaryIndex addIndex(int tableid, int field, BTreeFile file) {
+        if (!(getDbFile(tableid) instanceof HeapFile))
+            throw new IllegalArgumentException("only tables in HeapFiles can be indexed");
+        Type keyType = getTupleDesc(tableid).getFieldType(field);
+        if (!file.getTupleDesc().equals(SecondaryIndex.entryDesc(keyType)))
+            throw new IllegalArgumentException("index entries must be " + SecondaryIndex.entryDesc(keyType));
+        SecondaryIndex index = new SecondaryIndex(tableid, field, file);
+        List<SecondaryIndex> list = indexes.get(tableid);
+        if (list == null) {
+            list = new ArrayList<SecondaryIndex>();
+            indexes.put(tableid, list);
+        }
+        list.add(index);
+        indexFiles.put(file.getId(), file);
+        return index;
+    }
+
+    /** @return the secondary indexes of the table; empty if it has none */
+    public List<SecondaryIndex> getIndexes(int tableid) {
+        List<SecondaryIndex> list = indexes.get(tableid);
+        if (list == null)
+            return Collections.emptyList();
+        return Collections.unmodifiableList(list);
+    }
+
+    /** @return an index of the column of the table, or null if it has none */
+    public SecondaryIndex getIndex(int tableid, int field) {
+        for (SecondaryIndex index : getIndexes(tableid)) {
+            if (index.getField() == field)
+                return index;
+        }
+        return null;
+    }
+
+    /**
+     * Adds a bitmap index of an int column of a table, built from the
+     * tuples the table has now, and kept up to date from now on.
+     *
+     * @param tableid the table, which must be stored in a HeapFile
+     * @param field the column to index, which must be of int type
+     * @return the index
+     * @throws IllegalArgumentException if the table is not in a HeapFile,
+     *     or the column is not of int type
+     */
+    public BitmapIndex addBitmapIndex(int tableid, int field)
+            throws DbException, TransactionAbortedException {
+        if (!(getDbFile(tableid) instanceof HeapFile))
+            throw new IllegalArgumentException("only tables in HeapFiles can be indexed");
+        if (getTupleDesc(tableid).getFieldType(field) != Type.INT_TYPE)
+            throw new IllegalArgumentException("only int columns can have bitmap indexes");
+        BitmapIndex index = new BitmapIndex(tableid, field);
+        index.build();
+        List<BitmapIndex> list = bitmapIndexes.get(tableid);
+        if (list == null) {
+            list = new ArrayList<BitmapIndex>();
+            bitmapIndexes.put(tableid, list);
+        }
+        list.add(index);
+        return index;
+    }
+
+    /** @return the bitmap indexes of the table; empty if it has none */
+    public List<BitmapIndex> getBitmapIndexes(int tableid) {
+        List<BitmapIndex> list = bitmapIndexes.get(tableid);
+        if (list == null)
+            return Collections.emptyList();
+        return Collections.unmodifiableList(list);
+    }
+
+    /** @return the bitmap indexes of every table */
+    public List<BitmapIndex> getBitmapIndexes() {
+        List<BitmapIndex> all = new ArrayList<BitmapIndex>();
+        for (List<BitmapIndex> list : bitmapIndexes.values())
+            all.addAll(list);
+        return all;
+    }
+
+    /** @return a bitmap index of the column of the table, or null if it has none */
+    public BitmapIndex getBitmapIndex(int tableid, int field) {
+        for (BitmapIndex index : getBitmapIndexes(tableid)) {
+            if (index.getField() == field)
+                return index;
+        }
+        return null;
+    }
+
     public String getPrimaryKey(int tableid) {
         // some code goes here
         if (cataMap.containsKey(tableid)){
@@ -134,14 +246,40 @@ public class Catalog {
         }
     }
     
-    /** Delete all tables from the catalog */
+    /** Delete all tables from the catalog, closing the files that can be closed */
     public void clear() {
         // some code goes here
+        for (Table t : cataMap.values()) {
+            if (t.get_file() instanceof Closeable) {
+                try {
+                    ((Closeable) t.get_file()).close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        for (BTreeFile f : indexFiles.values()) {
+            try {
+                f.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
         cataMap.clear();
+        indexes.clear();
+        indexFiles.clear();
+        bitmapIndexes.clear();
     }
     
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * Each line is a table, <code>name (field type [pk|index|bitmap], ...) [format]</code>,
+     * where the optional format is "heap" (the default), "var",
+     * "compressed", "pax", "dict", "mapped" or "hash"; a "hash" table is a HashFile
+     * keyed on the field marked "pk". A field marked "index" gets a
+     * secondary index, kept in the file name.field.idx; an index file that
+     * does not exist yet is built from the table. An int field marked
+     * "bitmap" gets a bitmap index, built from the table.
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
@@ -159,6 +297,8 @@ public class Catalog {
                 ArrayList<String> names = new ArrayList<String>();
                 ArrayList<Type> types = new ArrayList<Type>();
                 String primaryKey = "";
+                ArrayList<Integer> indexed = new ArrayList<Integer>();
+                ArrayList<Integer> bitmapped = new ArrayList<Integer>();
                 for (String e : els) {
                     String[] els2 = e.trim().split(" ");
                     names.add(els2[0].trim());
@@ -173,6 +313,10 @@ public class Catalog {
                     if (els2.length == 3) {
                         if (els2[2].trim().equals("pk"))
                             primaryKey = els2[0].trim();
+                        else if (els2[2].trim().equals("index"))
+                            indexed.add(names.size() - 1);
+                        else if (els2[2].trim().equals("bitmap"))
+                            bitmapped.add(names.size() - 1);
                         else {
                             System.out.println("Unknown annotation " + els2[2]);
                             System.exit(0);
@@ -182,13 +326,48 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder,name + ".dat"), t);
+                // an optional word after the schema names the file format
+                String format = line.substring(line.indexOf(")") + 1).trim().toLowerCase();
+                DbFile tabHf;
+                if (format.equals("hash")) {
+                    if (primaryKey.equals("")) {
+                        System.out.println("Table " + name + " is hashed on its pk, and has none");
+                        System.exit(0);
+                    }
+                    tabHf = new HashFile(new File(baseFolder,name + ".dat"),
+                            names.indexOf(primaryKey), t);
+                } else {
+                    tabHf = openTable(new File(baseFolder,name + ".dat"), t, format);
+                }
+                if (tabHf == null) {
+                    System.out.println("Unknown table format " + format);
+                    System.exit(0);
+                }
                 addTable(tabHf,name,primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
+                for (int field : indexed) {
+                    File idx = new File(baseFolder, name + "." + namesAr[field] + ".idx");
+                    boolean built = idx.exists();
+                    SecondaryIndex index = addIndex(tabHf.getId(), field,
+                            SecondaryIndex.indexFile(idx, typeAr[field]));
+                    if (!built)
+                        index.build(1000);
+                    System.out.println("Added index : " + idx.getName());
+                }
+                for (int field : bitmapped) {
+                    addBitmapIndex(tabHf.getId(), field);
+                    System.out.println("Added bitmap index : " + name + "." + namesAr[field]);
+                }
             }
         } catch (IOException e) {
             e.printStackTrace();
             System.exit(0);
+        } catch (DbException e) {
+            e.printStackTrace();
+            System.exit(0);
+        } catch (TransactionAbortedException e) {
+            e.printStackTrace();
+            System.exit(0);
         } catch (IndexOutOfBoundsException e) {
             System.out.println ("Invalid catalog entry : " + line);
             System.exit(0);
@@ -196,6 +375,29 @@ public class Catalog {
     }
 
 
+    /**
+     * @return the table file of the given format: "" or "heap" for a
+     *         HeapFile, "var" for a VarHeapFile, "compressed" for a
+     *         CompressedHeapFile, "pax" for a PaxFile, "dict" for a
+     *         DictHeapFile, "mapped" for a MappedHeapFile; null for an
+     *         unknown format
+     */
+    private static HeapFile openTable(File f, TupleDesc td, String format) {
+        if (format.equals("") || format.equals("heap"))
+            return new HeapFile(f, td);
+        if (format.equals("var"))
+            return new VarHeapFile(f, td);
+        if (format.equals("compressed"))
+            return new CompressedHeapFile(f, td);
+        if (format.equals("pax"))
+            return new PaxFile(f, td);
+        if (format.equals("dict"))
+            return new DictHeapFile(f, td);
+        if (format.equals("mapped"))
+            return new MappedHeapFile(f, td);
+        return null;
+    }
+
     public List<Table> getTables() {
         // some code goes here        
         List<Table> tableList = new LinkedList<Table>();
@@ -0,0 +1,61 @@
+package simpledb;
+
+import java.util.Arrays;
+
+/**
+ * CLOCK (second chance) replacement. Every frame has a reference bit that
+ * is set on each access; the hand sweeps the frames, clearing set bits and
+ * evicting the first frame whose bit is already clear.
+ * <p>
+ * Recording an access is a single array store, so hits never contend on
+ * the policy.
+ */
+class ClockPolicy implements BufferPool.EvictionPolicy {
+
+    // replaced when the pool grows; a hit racing with that may lose its bit
+    private volatile boolean[] referenced;
+    private volatile boolean[] occupied;
+    private int hand;
+
+    public ClockPolicy(int numFrames) {
+        referenced = new boolean[numFrames];
+        occupied = new boolean[numFrames];
+        hand = 0;
+    }
+
+    public void pageLoaded(int frame, PageId pid) {
+        occupied[frame] = true;
+        referenced[frame] = true;
+    }
+
+    public void pageAccessed(int frame) {
+        referenced[frame] = true;
+    }
+
+    public void pageRemoved(int frame) {
+        occupied[frame] = false;
+        referenced[frame] = false;
+    }
+
+    public synchronized void resized(int numFrames, int capacity) {
+        referenced = Arrays.copyOf(referenced, numFrames);
+        occupied = Arrays.copyOf(occupied, numFrames);
+    }
+
+    public synchronized int chooseVictim(BufferPool.FrameFilter filter) {
+        int n = occupied.length;
+        // two full sweeps: the first may only clear reference bits
+        for (int i = 0; i < 2 * n; i++) {
+            int frame = hand;
+            hand = (hand + 1) % n;
+            if (!occupied[frame] || !filter.canEvict(frame))
+                continue;
+            if (referenced[frame]) {
+                referenced[frame] = false;
+                continue;
+            }
+            return frame;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,106 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * A utility class, which tells the sequential scans of an operator tree
+ * which columns of their tables the operators above them use, so that a
+ * table stored by column ({@link PaxFile}) decodes only those.
+ * <p>
+ * Project, Filter, Aggregate, OrderBy and the joins pass down the fields
+ * they read and the fields their parents read; any other operator is
+ * taken to need every column. Pruning is only a hint: scans still return
+ * whole tuples, and a field not named is decoded if it is asked for.
+ */
+public class ColumnPruning {
+
+    /**
+     * Set the columns of every SeqScan in the tree, for a plan whose every
+     * output column is used.
+     */
+    public static void pruneColumns(DbIterator root) {
+        prune(root, null);
+    }
+
+    /**
+     * @param needed the output columns of it that are used, or null for
+     *            all of them
+     */
+    private static void prune(DbIterator it, Set<Integer> needed) {
+        if (it instanceof SeqScan) {
+            if (needed != null)
+                ((SeqScan) it).setColumns(toArray(needed));
+        } else if (it instanceof Project) {
+            Project p = (Project) it;
+            Set<Integer> child = new TreeSet<Integer>();
+            List<Integer> fields = p.getFieldList();
+            for (int i = 0; i < fields.size(); i++) {
+                if (needed == null || needed.contains(i))
+                    child.add(fields.get(i));
+            }
+            prune(p.getChildren()[0], child);
+        } else if (it instanceof Filter) {
+            Filter f = (Filter) it;
+            prune(f.getChildren()[0], with(needed, f.getPredicate().getField()));
+        } else if (it instanceof OrderBy) {
+            OrderBy o = (OrderBy) it;
+            prune(o.getChildren()[0], with(needed, o.getOrderByField()));
+        } else if (it instanceof Aggregate) {
+            Aggregate a = (Aggregate) it;
+            Set<Integer> child = new TreeSet<Integer>();
+            child.add(a.aggregateField());
+            if (a.groupField() != Aggregator.NO_GROUPING)
+                child.add(a.groupField());
+            prune(a.getChildren()[0], child);
+        } else if (it instanceof Join) {
+            pruneJoin((Operator) it, ((Join) it).getJoinPredicate(), needed);
+        } else if (it instanceof HashEquiJoin) {
+            pruneJoin((Operator) it, ((HashEquiJoin) it).getJoinPredicate(), needed);
+        } else if (it instanceof Operator) {
+            for (DbIterator child : ((Operator) it).getChildren()) {
+                if (child != null)
+                    prune(child, null);
+            }
+        }
+    }
+
+    /** A join's output is its left child's columns, then its right child's. */
+    private static void pruneJoin(Operator j, JoinPredicate p, Set<Integer> needed) {
+        DbIterator left = j.getChildren()[0];
+        DbIterator right = j.getChildren()[1];
+        if (needed == null) {
+            prune(left, null);
+            prune(right, null);
+            return;
+        }
+        int split = left.getTupleDesc().numFields();
+        Set<Integer> l = new TreeSet<Integer>();
+        Set<Integer> r = new TreeSet<Integer>();
+        for (int c : needed) {
+            if (c < split)
+                l.add(c);
+            else
+                r.add(c - split);
+        }
+        l.add(p.getField1());
+        r.add(p.getField2());
+        prune(left, l);
+        prune(right, r);
+    }
+
+    private static Set<Integer> with(Set<Integer> needed, int field) {
+        if (needed == null)
+            return null;
+        Set<Integer> s = new TreeSet<Integer>(needed);
+        s.add(field);
+        return s;
+    }
+
+    private static int[] toArray(Set<Integer> columns) {
+        int[] a = new int[columns.size()];
+        int i = 0;
+        for (int c : columns)
+            a[i++] = c;
+        return a;
+    }
+}
@@ -0,0 +1,254 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import com.jcraft.jzlib.JZlib;
+import com.jcraft.jzlib.ZStream;
+
+/**
+ * CompressedHeapFile is a HeapFile whose pages are compressed with zlib on
+ * disk. It trades CPU for I/O: a scan reads a fraction of the bytes it
+ * reads from a HeapFile, and inflates every page it reads. It suits cold
+ * tables that are scanned more than they are changed. In the buffer pool
+ * pages are ordinary HeapPages.
+ * <p>
+ * Compressed pages differ in size, so they are not at fixed offsets.
+ * Pages are stored one after the other in the table file, and an index
+ * file next to it, with the suffix ".idx", holds an entry of three numbers
+ * for each page: the offset of the page in the table file (a long), the
+ * length it is stored in and the room kept for it (ints). A page is
+ * stored as its zlib stream, or as its PAGE_SIZE bytes if it does not
+ * compress; a length of 0 is a page of zeros that was never written. Room
+ * is kept in multiples of {@link #ALIGN} bytes. A page rewritten into no
+ * more than its room stays in place; a larger one moves to the end of the
+ * file, and its old room is not used again.
+ * <p>
+ * A page is written to the table file before its index entry, so a page
+ * that moves is never pointed at before it is there. Like a HeapFile
+ * page, a page rewritten in place can be torn by a crash; recovery
+ * writes such pages again from the log.
+ * <p>
+ * Pick it for a table in the catalog file by adding "compressed" after the
+ * schema, e.g. <code>archive (id int, payload int) compressed</code>.
+ *
+ * @see Catalog#loadSchema
+ */
+public class CompressedHeapFile extends HeapFile {
+
+    private static final long serialVersionUID = 1L;
+
+    /** bytes of one index entry */
+    static final int ENTRY_SIZE = 16;
+    /** room for a page is kept in multiples of this many bytes */
+    static final int ALIGN = 64;
+
+    /** open while pages are being read or written; null once closed */
+    private transient FileChannel indexChannel;
+    /** the index, by page number; null until it is first needed */
+    private transient long[] offsets;
+    private transient int[] lengths;
+    private transient int[] rooms;
+    private transient int pages;
+    /** the end of the last page in the table file */
+    private transient long end;
+
+    /**
+     * Constructs a compressed heap file backed by the specified file, with
+     * its index in {@link #indexFile}.
+     */
+    public CompressedHeapFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    /**
+     * @return the file the index of the given table file is kept in
+     */
+    public static File indexFile(File f) {
+        return new File(f.getPath() + ".idx");
+    }
+
+    /** Reads the index, if it has not been read since the file was opened. */
+    private synchronized void openIndex() throws IOException {
+        if (offsets != null)
+            return;
+        File idx = indexFile(getFile());
+        if (!idx.exists() && getFile().length() > 0)
+            throw new FileNotFoundException("index " + idx + " of " + getFile() + " is missing");
+        indexChannel = new RandomAccessFile(idx, "rw").getChannel();
+        int n = (int) (indexChannel.size() / ENTRY_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate(n * ENTRY_SIZE);
+        while (buffer.hasRemaining() && indexChannel.read(buffer, buffer.position()) >= 0)
+            ;
+        buffer.flip();
+        offsets = new long[Math.max(16, n)];
+        lengths = new int[offsets.length];
+        rooms = new int[offsets.length];
+        end = 0;
+        for (int i = 0; i < n; i++) {
+            offsets[i] = buffer.getLong();
+            lengths[i] = buffer.getInt();
+            rooms[i] = buffer.getInt();
+            end = Math.max(end, offsets[i] + rooms[i]);
+        }
+        pages = n;
+    }
+
+    /**
+     * Returns the number of pages in this file, as its index counts them.
+     */
+    public int numPages() {
+        try {
+            synchronized (this) {
+                openIndex();
+                return pages;
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    byte[] readPageData(int pgNo) throws IOException {
+        long offset;
+        int length;
+        synchronized (this) {
+            openIndex();
+            if (pgNo >= pages)
+                return new byte[BufferPool.PAGE_SIZE];
+            offset = offsets[pgNo];
+            length = lengths[pgNo];
+        }
+        if (length == 0)
+            return new byte[BufferPool.PAGE_SIZE];
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        FileChannel ch = channel();
+        while (buffer.hasRemaining() && ch.read(buffer, offset + buffer.position()) >= 0)
+            ;
+        if (buffer.hasRemaining())
+            throw new EOFException("page " + pgNo + " of " + getFile() + " is cut short");
+        Database.getBufferPool().recordRead(getId(), length);
+        if (length == BufferPool.PAGE_SIZE)
+            return buffer.array();
+        return inflate(buffer.array(), pgNo);
+    }
+
+    synchronized void writePageData(int pgNo, byte[] data) throws IOException {
+        openIndex();
+        byte[] stored = deflate(data);
+        int length = stored == null ? BufferPool.PAGE_SIZE : stored.length;
+        if (stored == null)
+            stored = data;
+        if (pgNo >= offsets.length) {
+            int size = Math.max(pgNo + 1, offsets.length * 2);
+            offsets = Arrays.copyOf(offsets, size);
+            lengths = Arrays.copyOf(lengths, size);
+            rooms = Arrays.copyOf(rooms, size);
+        }
+        int first = Math.min(pgNo, pages);
+        if (pgNo >= pages || length > rooms[pgNo]) {
+            offsets[pgNo] = end;
+            rooms[pgNo] = (length + ALIGN - 1) / ALIGN * ALIGN;
+            end += rooms[pgNo];
+        }
+        lengths[pgNo] = length;
+        pages = Math.max(pages, pgNo + 1);
+
+        ByteBuffer buffer = ByteBuffer.wrap(stored, 0, length);
+        FileChannel ch = channel();
+        while (buffer.hasRemaining())
+            ch.write(buffer, offsets[pgNo] + buffer.position());
+        // entries of pages skipped over are zeros: pages never written
+        ByteBuffer entries = ByteBuffer.allocate((pgNo + 1 - first) * ENTRY_SIZE);
+        for (int i = first; i <= pgNo; i++)
+            entries.putLong(offsets[i]).putInt(lengths[i]).putInt(rooms[i]);
+        entries.flip();
+        while (entries.hasRemaining())
+            indexChannel.write(entries, (long) first * ENTRY_SIZE + entries.position());
+        Database.getBufferPool().recordWrite(getId(), length);
+    }
+
+    int readFreeSpace(int pgNo) throws IOException {
+        return freeSpace(newPage(new HeapPageId(getId(), pgNo), readPageData(pgNo)));
+    }
+
+    /** @return the zlib window size for a page: no larger than the page */
+    private static int windowBits() {
+        int bits = 9;
+        while (bits < 15 && (1 << bits) < BufferPool.PAGE_SIZE)
+            bits++;
+        return bits;
+    }
+
+    /** @return the page compressed, or null if it does not get smaller */
+    private static byte[] deflate(byte[] data) throws IOException {
+        ZStream z = new ZStream();
+        if (z.deflateInit(JZlib.Z_DEFAULT_COMPRESSION, windowBits()) != JZlib.Z_OK)
+            throw new IOException("cannot compress: " + z.msg);
+        byte[] out = new byte[BufferPool.PAGE_SIZE];
+        z.next_in = data;
+        z.next_in_index = 0;
+        z.avail_in = BufferPool.PAGE_SIZE;
+        z.next_out = out;
+        z.next_out_index = 0;
+        z.avail_out = out.length;
+        int err = z.deflate(JZlib.Z_FINISH);
+        int length = (int) z.total_out;
+        z.deflateEnd();
+        // out of room in out means the page did not compress
+        if (err != JZlib.Z_STREAM_END || length >= BufferPool.PAGE_SIZE)
+            return null;
+        return Arrays.copyOf(out, length);
+    }
+
+    private byte[] inflate(byte[] stored, int pgNo) throws IOException {
+        ZStream z = new ZStream();
+        if (z.inflateInit(windowBits()) != JZlib.Z_OK)
+            throw new IOException("cannot decompress: " + z.msg);
+        byte[] page = new byte[BufferPool.PAGE_SIZE];
+        z.next_in = stored;
+        z.next_in_index = 0;
+        z.avail_in = stored.length;
+        z.next_out = page;
+        z.next_out_index = 0;
+        z.avail_out = page.length;
+        int err;
+        do {
+            err = z.inflate(JZlib.Z_NO_FLUSH);
+        } while (err == JZlib.Z_OK && z.avail_in > 0 && z.avail_out > 0);
+        z.inflateEnd();
+        if (err != JZlib.Z_STREAM_END || z.total_out != BufferPool.PAGE_SIZE)
+            throw new IOException("page " + pgNo + " of " + getFile() + " is corrupt: " + z.msg);
+        return page;
+    }
+
+    /**
+     * Appends the pages of a HeapFile of the same schema to this file,
+     * compressing them. Used to archive a table; like HeapFileEncoder, it
+     * bypasses the buffer pool and transactions, and neither table may be
+     * in use. This file must be in the catalog.
+     */
+    public void bulkLoad(HeapFile source) throws IOException {
+        if (!source.getTupleDesc().equals(getTupleDesc()))
+            throw new IOException("cannot load a table of schema " + source.getTupleDesc());
+        int pgNo = numPages();
+        for (int i = 0; i < source.numPages(); i++)
+            writePage(newPage(new HeapPageId(getId(), pgNo++), source.readPageData(i)));
+    }
+
+    /**
+     * Closes the file and its index. The index is read again when it is
+     * next needed.
+     */
+    public synchronized void close() throws IOException {
+        offsets = null;
+        lengths = null;
+        rooms = null;
+        if (indexChannel != null) {
+            indexChannel.close();
+            indexChannel = null;
+        }
+        super.close();
+    }
+}
@@ -28,6 +28,7 @@ public class Database {
             e.printStackTrace();
             System.exit(1);
         }
+        BufferPoolMonitor.register();
         // startControllerThread();
     }
 
@@ -50,12 +51,49 @@ public class Database {
         buffer pool and return it
     */
     public static BufferPool resetBufferPool(int pages) {
+        stopBackgroundThreads();
         _instance._bufferpool = new BufferPool(pages);
         return _instance._bufferpool;
     }
 
+    /** Method used for testing -- create a new instance of the
+        buffer pool with the given replacement policy and return it
+    */
+    public static BufferPool resetBufferPool(int pages, BufferPool.Replacement replacement) {
+        stopBackgroundThreads();
+        _instance._bufferpool = new BufferPool(pages, replacement);
+        return _instance._bufferpool;
+    }
+
+    /** Method used for testing -- create a new instance of the
+        buffer pool split into the given number of partitions and return it
+    */
+    public static BufferPool resetBufferPool(int pages, BufferPool.Replacement replacement,
+                                             int partitions) {
+        stopBackgroundThreads();
+        _instance._bufferpool = new BufferPool(pages, replacement, partitions);
+        return _instance._bufferpool;
+    }
+
+    /** Method used for testing -- create a new instance of the
+        buffer pool keeping its pages in the given storage and return it
+    */
+    public static BufferPool resetBufferPool(int pages, BufferPool.Storage storage) {
+        stopBackgroundThreads();
+        _instance._bufferpool = new BufferPool(pages, BufferPool.DEFAULT_REPLACEMENT,
+                BufferPool.defaultPartitions(pages), storage);
+        return _instance._bufferpool;
+    }
+
+    private static void stopBackgroundThreads() {
+        _instance._bufferpool.stopBackgroundWriter();
+        _instance._bufferpool.stopPrefetcher();
+    }
+
     //reset the database, used for unit tests only.
     public static void reset() {
+        stopBackgroundThreads();
+        _instance._catalog.clear();
     	_instance = new Database();
     }
 
@@ -0,0 +1,215 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * DictHeapFile is a HeapFile that stores its string columns dictionary
+ * encoded: each value of a string column is numbered the first time it is
+ * stored, and pages hold the 4-byte number instead of the 132-byte string.
+ * It is meant for tables whose string columns take few distinct values,
+ * like a country or a status. Pages are DictPages, and hold as many tuples
+ * as a HeapPage of the same schema with every string an int.
+ * <p>
+ * Tuples read from the file have the table's TupleDesc; their strings are
+ * {@link DictStringField}s, shared by every tuple with the same value,
+ * which compare and hash by number against fields of the same column. An
+ * equality Predicate, a HashEquiJoin key or an Aggregate group on such a
+ * column thus works on numbers, and the strings are only looked at when
+ * the results are printed.
+ * <p>
+ * The dictionaries of all string columns are kept in a file next to the
+ * table, with the suffix ".dict": a record of the column (an int) and the
+ * value (in modified UTF-8) for each value, in the order they were
+ * numbered. A value is appended when it is first encoded, and the file is
+ * forced to disk before any page is written, so no page on disk has a
+ * number the file does not. Numbers are never reused; a value stays in the
+ * dictionary after the last tuple with it is deleted, and an aborted
+ * insert can leave a value no tuple has.
+ * <p>
+ * Pick it for a table in the catalog file by adding "dict" after the
+ * schema, e.g. <code>orders (id int, country string) dict</code>. The table
+ * file must be written through the file (e.g. {@link #bulkLoad}), not by
+ * HeapFileEncoder.
+ *
+ * @see DictPage
+ * @see Catalog#loadSchema
+ */
+public class DictHeapFile extends HeapFile {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TupleDesc stored;
+    /** the dictionary of each string column, null for other columns; null until read */
+    private transient StringDictionary[] dictionaries;
+    /** the dictionary file, open for appending; null until a value is added */
+    private transient FileOutputStream dictionaryOut;
+    private transient DataOutputStream out;
+    /** whether values were appended since the dictionary file was last forced */
+    private transient boolean unforced;
+
+    /**
+     * Constructs a dictionary-encoded heap file backed by the specified
+     * file, with its dictionaries in {@link #dictionaryFile}.
+     */
+    public DictHeapFile(File f, TupleDesc td) {
+        super(f, td);
+        Type[] types = new Type[td.numFields()];
+        String[] names = new String[td.numFields()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = td.getFieldType(i) == Type.STRING_TYPE ? Type.INT_TYPE : td.getFieldType(i);
+            names[i] = td.getFieldName(i);
+        }
+        stored = new TupleDesc(types, names);
+    }
+
+    /**
+     * @return the file the dictionaries of the given table file are kept in
+     */
+    public static File dictionaryFile(File f) {
+        return new File(f.getPath() + ".dict");
+    }
+
+    /** @return the layout of the pages: the table's, with every string an int */
+    TupleDesc storedTupleDesc() {
+        return stored;
+    }
+
+    Page newPage(HeapPageId pid, byte[] data) throws IOException {
+        return new DictPage(pid, data);
+    }
+
+    /**
+     * @return the dictionary of each string column, read from the
+     *         dictionary file if they have not been since the file was opened
+     */
+    private synchronized StringDictionary[] dictionaries() throws IOException {
+        if (dictionaries != null)
+            return dictionaries;
+        StringDictionary[] dicts = new StringDictionary[stored.numFields()];
+        for (int i = 0; i < dicts.length; i++) {
+            if (getTupleDesc().getFieldType(i) == Type.STRING_TYPE)
+                dicts[i] = new StringDictionary(this, i);
+        }
+        File file = dictionaryFile(getFile());
+        long good = 0;
+        if (file.exists()) {
+            // dictionaries of few values are small; read the file whole
+            byte[] bytes = new byte[(int) file.length()];
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                in.readFully(bytes);
+            } finally {
+                in.close();
+            }
+            ByteArrayInputStream records = new ByteArrayInputStream(bytes);
+            in = new DataInputStream(records);
+            try {
+                while (true) {
+                    int column = in.readInt();
+                    String value = in.readUTF();
+                    if (column < 0 || column >= dicts.length || dicts[column] == null)
+                        throw new IOException("dictionary " + file + " names column " + column);
+                    dicts[column].add(value);
+                    good = bytes.length - records.available();
+                }
+            } catch (EOFException e) {
+                // the end, or a record cut short by a crash
+            }
+            if (good < file.length()) {
+                // drop the torn record, so that new ones follow the last whole one
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                try {
+                    raf.setLength(good);
+                } finally {
+                    raf.close();
+                }
+            }
+        }
+        dictionaries = dicts;
+        return dicts;
+    }
+
+    /** Appends a value to the dictionary file; called as a value is numbered. */
+    synchronized void appendValue(int column, String value) throws DbException {
+        try {
+            if (out == null) {
+                dictionaryOut = new FileOutputStream(dictionaryFile(getFile()), true);
+                out = new DataOutputStream(new BufferedOutputStream(dictionaryOut));
+            }
+            out.writeInt(column);
+            out.writeUTF(value);
+            unforced = true;
+        } catch (IOException e) {
+            throw new DbException("cannot add to dictionary of " + getFile() + ": " + e);
+        }
+    }
+
+    /** Forces values added to the dictionary file to disk. */
+    private synchronized void forceDictionary() throws IOException {
+        if (!unforced)
+            return;
+        out.flush();
+        dictionaryOut.getFD().sync();
+        unforced = false;
+    }
+
+    void writePageData(int pgNo, byte[] data) throws IOException {
+        // a page may hold numbers given out since the file was last forced
+        forceDictionary();
+        super.writePageData(pgNo, data);
+    }
+
+    /**
+     * @return the tuple in the stored layout, its strings replaced by
+     *         their numbers, numbering new values
+     */
+    Tuple encode(Tuple t) throws DbException {
+        Tuple s = new Tuple(stored);
+        try {
+            StringDictionary[] dicts = dictionaries();
+            for (int i = 0; i < dicts.length; i++) {
+                Field f = t.getField(i);
+                if (dicts[i] != null)
+                    f = new IntField(dicts[i].encode(((StringField) f).getValue()));
+                s.setField(i, f);
+            }
+        } catch (IOException e) {
+            throw new DbException("cannot read dictionary of " + getFile() + ": " + e);
+        }
+        return s;
+    }
+
+    /** @return the tuple in the table's layout, its numbers replaced by their strings */
+    Tuple decode(Tuple s) {
+        Tuple t = new Tuple(getTupleDesc());
+        StringDictionary[] dicts;
+        try {
+            dicts = dictionaries();
+        } catch (IOException e) {
+            throw new RuntimeException("cannot read dictionary of " + getFile(), e);
+        }
+        for (int i = 0; i < dicts.length; i++) {
+            Field f = s.getField(i);
+            if (dicts[i] != null)
+                f = dicts[i].field(((IntField) f).getValue());
+            t.setField(i, f);
+        }
+        return t;
+    }
+
+    /**
+     * Closes the file and its dictionary file. The dictionaries are read
+     * again when they are next needed.
+     */
+    public synchronized void close() throws IOException {
+        dictionaries = null;
+        if (out != null) {
+            out.close();
+            out = null;
+            dictionaryOut = null;
+            unforced = false;
+        }
+        super.close();
+    }
+}
@@ -0,0 +1,73 @@
+package simpledb;
+
+import java.io.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * DictPage is a page of a DictHeapFile. On disk it is a HeapPage of the
+ * file's stored layout, in which every string column is an int code. The
+ * tuples it returns and takes have the table's own TupleDesc: codes are
+ * turned into the dictionary's shared DictStringFields as tuples are
+ * read, and strings into codes as tuples are inserted.
+ *
+ * @see DictHeapFile
+ */
+public class DictPage extends HeapPage {
+
+    private final DictHeapFile file;
+    /** tuples by slot in the table's layout; null if not made yet */
+    private final AtomicReferenceArray<Tuple> rows;
+
+    public DictPage(HeapPageId id, byte[] data) throws IOException {
+        super(id, data);
+        file = (DictHeapFile) Database.getCatalog().getDbFile(id.getTableId());
+        rows = new AtomicReferenceArray<Tuple>(numSlots);
+    }
+
+    /** @return the tuple in the slot, in the table's layout */
+    Tuple getTuple(int slot) {
+        Tuple t = rows.get(slot);
+        if (t != null)
+            return t;
+        Tuple stored = super.getTuple(slot);
+        t = file.decode(stored);
+        t.setRecordId(stored.getRecordId());
+        // another reader may have made it first, or a writer replaced it
+        if (!rows.compareAndSet(slot, null, t) && rows.get(slot) != null)
+            t = rows.get(slot);
+        return t;
+    }
+
+    /**
+     * Add the tuple, which has the table's TupleDesc, to the page, storing
+     * its strings as codes.
+     *
+     * @throws DbException if the page is full, or the tuple's schema is
+     *         not the table's
+     */
+    public synchronized void insertTuple(Tuple t) throws DbException {
+        if (getNumEmptySlots() == 0)
+            throw new DbException("Page is full");
+        if (!t.getTupleDesc().equals(file.getTupleDesc()))
+            throw new DbException("Tuple Descriptors do not match");
+        Tuple stored = file.encode(t);
+        super.insertTuple(stored);
+        t.setRecordId(stored.getRecordId());
+        rows.set(stored.getRecordId().tupleno(), t);
+    }
+
+    public synchronized void deleteTuple(Tuple t) throws DbException {
+        super.deleteTuple(t);
+        rows.set(t.getRecordId().tupleno(), null);
+    }
+
+    /** Return a view of this page before it was modified -- used by recovery */
+    public DictPage getBeforeImage() {
+        try {
+            return new DictPage(pid, beforeImageData());
+        } catch (IOException e) {
+            // we parsed it OK before
+            throw new RuntimeException(e);
+        }
+    }
+}
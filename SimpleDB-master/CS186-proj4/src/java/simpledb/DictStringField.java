@@ -0,0 +1,68 @@
+package simpledb;
+
+/**
+ * A StringField read from a dictionary-encoded column of a DictHeapFile. It
+ * carries the value's code as well as the value. Two fields from the same
+ * dictionary that both have codes are equal exactly when their codes are,
+ * so equality predicates, join keys and group keys compare ints. The value is the
+ * dictionary's own String, so nothing is decoded until the field is
+ * output. Against any other StringField it compares as a StringField.
+ * <p>
+ * The dictionary hands out one instance per code; the fields are
+ * immutable.
+ */
+public class DictStringField extends StringField {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient StringDictionary dictionary;
+    /** the value's code, or -1 for a value not in the dictionary */
+    private final int code;
+
+    DictStringField(StringDictionary dictionary, int code, String value) {
+        super(value, Type.STRING_LEN);
+        this.dictionary = dictionary;
+        this.code = code;
+    }
+
+    StringDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /** @return the code of the value in its column's dictionary */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @return whether o is a field of the same dictionary and both have
+     *         codes, so that the codes compare as the values do; a field
+     *         made for a value not in the dictionary has code -1 whatever
+     *         its value
+     */
+    private boolean comparableCodes(Object o) {
+        return o instanceof DictStringField && ((DictStringField) o).dictionary == dictionary
+            && dictionary != null && code >= 0 && ((DictStringField) o).code >= 0;
+    }
+
+    public boolean equals(Object field) {
+        if (comparableCodes(field))
+            return ((DictStringField) field).code == code;
+        return super.equals(field);
+    }
+
+    public int hashCode() {
+        // a String caches its hash, so this does not hash the characters again
+        return super.hashCode();
+    }
+
+    public boolean compare(Predicate.Op op, Field val) {
+        if (comparableCodes(val)) {
+            if (op == Predicate.Op.EQUALS)
+                return ((DictStringField) val).code == code;
+            if (op == Predicate.Op.NOT_EQUALS)
+                return ((DictStringField) val).code != code;
+        }
+        return super.compare(op, val);
+    }
+}
@@ -0,0 +1,133 @@
+package simpledb;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * FreeSpaceMap records the free space of each page of a HeapFile, in the
+ * units the file's page format counts it in (slots of a HeapPage, bytes of
+ * a VarHeapPage), so that inserts go straight to a page with room instead
+ * of trying every page in turn.
+ * <p>
+ * The map is a hint, not part of the transactional state of the table:
+ * inserts check the page they are sent to and correct the map when it was
+ * wrong, and every page HeapFile writes, including before-images written
+ * back by recovery, refreshes the count of that page. Until a page is
+ * written, an aborted insert leaves it counted with less free space than
+ * it has. The map is kept in a
+ * file next to the table, written when the HeapFile is closed. A map file
+ * older than its table, as after a crash, is not trusted, and the counts
+ * are read again from the page headers.
+ *
+ * @see HeapFile#insertTuple
+ */
+class FreeSpaceMap {
+
+    private final File file;
+    /** free space by page number */
+    private int[] free;
+    private int numPages;
+    /** pages with less free space than this have no room for any tuple */
+    private final int minRoom;
+    /** no page below this one has room for a tuple */
+    private int searchFrom;
+    /** whether the counts differ from the map file */
+    private boolean changed;
+
+    private FreeSpaceMap(File file, int[] free, int numPages, int minRoom) {
+        this.file = file;
+        this.minRoom = minRoom;
+        this.free = free;
+        this.numPages = numPages;
+    }
+
+    /**
+     * Loads the map of the given table from its map file, if the file is
+     * up to date, and reads the counts of any pages it does not cover from
+     * the table.
+     */
+    static FreeSpaceMap load(HeapFile table) throws IOException {
+        File file = HeapFile.freeSpaceFile(table.getFile());
+        int pages = table.numPages();
+        int[] free = new int[Math.max(16, pages)];
+        int known = 0;
+        if (file.exists() && file.lastModified() >= table.getFile().lastModified()) {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            try {
+                known = Math.min(in.readInt(), pages);
+                for (int i = 0; i < known; i++)
+                    free[i] = in.readInt();
+            } catch (EOFException e) {
+                known = 0;
+            } finally {
+                in.close();
+            }
+        }
+        for (int i = known; i < pages; i++)
+            free[i] = table.readFreeSpace(i);
+        FreeSpaceMap map = new FreeSpaceMap(file, free, pages, table.minSpaceNeeded());
+        map.changed = known < pages;
+        return map;
+    }
+
+    /**
+     * @return the lowest page with at least the given free space, or -1 if
+     *         none has
+     */
+    synchronized int pageWithRoom(int needed) {
+        while (searchFrom < numPages && free[searchFrom] < minRoom)
+            searchFrom++;
+        for (int i = searchFrom; i < numPages; i++) {
+            if (free[i] >= needed)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Record the free space of a page. Pages between the last one mapped
+     * and this one are holes in the file, which read as empty pages.
+     *
+     * @param emptyPageSpace the free space of an empty page
+     */
+    synchronized void update(int pgNo, int freeSpace, int emptyPageSpace) {
+        if (pgNo >= numPages) {
+            if (pgNo >= free.length)
+                free = Arrays.copyOf(free, Math.max(pgNo + 1, free.length * 2));
+            for (int i = numPages; i < pgNo; i++)
+                free[i] = emptyPageSpace;
+            if (pgNo > numPages)
+                searchFrom = Math.min(searchFrom, numPages);
+            numPages = pgNo + 1;
+            changed = true;
+        }
+        if (free[pgNo] != freeSpace) {
+            free[pgNo] = freeSpace;
+            changed = true;
+        }
+        if (freeSpace >= minRoom)
+            searchFrom = Math.min(searchFrom, pgNo);
+    }
+
+    /** @return the recorded free space of the page */
+    synchronized int freeSpace(int pgNo) {
+        return pgNo < numPages ? free[pgNo] : 0;
+    }
+
+    /** Write the map to its file, if it changed since it was read. */
+    synchronized void save() throws IOException {
+        if (!changed)
+            return;
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(numPages);
+            for (int i = 0; i < numPages; i++)
+                out.writeInt(free[i]);
+        } finally {
+            out.close();
+        }
+        changed = false;
+    }
+}
@@ -0,0 +1,211 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A bucket page of a HashFile: the tuples whose keys hash to the bucket,
+ * in no particular order. A bucket that cannot be split any further
+ * continues on overflow pages, chained from the first page of the bucket.
+ * <p>
+ * The page starts with the local depth of the bucket, the page number of
+ * the next page of the chain (0 for none) and the number of tuples
+ * (ints), followed by the tuples, packed. Like HeapPage, the page keeps
+ * the bytes it was read from and decodes a field of a tuple only when it
+ * is asked for. Only the first page of a bucket's local depth is used.
+ * <p>
+ * A delete shifts the tuples after it, so the RecordId of a tuple read
+ * from a bucket is where it was when it was read; deleteTuple looks for
+ * the tuple if it is no longer there.
+ *
+ * @see HashFile
+ */
+public class HashBucketPage extends HashPage {
+
+    static final int HEADER_SIZE = 12;
+
+    private final TupleDesc td;
+    private final int keyField;
+    private final int maxTuples;
+    /** the image the page was read from; never written to */
+    private final byte[] data;
+    private final ArrayList<Tuple> tuples;
+    private int depth;
+    private int next;
+
+    public HashBucketPage(HashPageId id, byte[] data) throws IOException {
+        super(id);
+        HashFile f = (HashFile) Database.getCatalog().getDbFile(id.getTableId());
+        td = f.getTupleDesc();
+        keyField = f.keyField();
+        maxTuples = maxTuples(td);
+        this.data = data;
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        depth = in.readInt();
+        next = in.readInt();
+        int n = in.readInt();
+        if (n < 0 || n > maxTuples)
+            throw new IOException("page " + id + " says it has " + n + " tuples");
+        tuples = new ArrayList<Tuple>(maxTuples);
+        for (int i = 0; i < n; i++)
+            tuples.add(new Tuple(td, data, HEADER_SIZE + i * td.getSize()));
+    }
+
+    /** @return the most tuples a bucket page of the given schema holds */
+    static int maxTuples(TupleDesc td) {
+        return (BufferPool.PAGE_SIZE - HEADER_SIZE) / td.getSize();
+    }
+
+    synchronized int numTuples() {
+        return tuples.size();
+    }
+
+    synchronized boolean isFull() {
+        return tuples.size() == maxTuples;
+    }
+
+    /** @return how many low bits of their hash values the keys of the bucket share */
+    synchronized int getLocalDepth() {
+        return depth;
+    }
+
+    synchronized void setLocalDepth(int depth) {
+        takeBeforeImage();
+        this.depth = depth;
+    }
+
+    /** @return the ID of the next page of the bucket, or null if this is the last */
+    synchronized HashPageId getNextId() {
+        return next == 0 ? null : new HashPageId(pid.getTableId(), next, HashPageId.BUCKET);
+    }
+
+    synchronized void setNextId(HashPageId id) {
+        takeBeforeImage();
+        next = id == null ? 0 : id.pageNumber();
+    }
+
+    synchronized Field getKey(int i) {
+        return tuples.get(i).getField(keyField);
+    }
+
+    /**
+     * Adds the tuple after the others, and sets its RecordId.
+     *
+     * @throws DbException if the page is full, or the tuple's schema is
+     *         not the page's
+     */
+    public synchronized void insertTuple(Tuple t) throws DbException {
+        if (tuples.size() == maxTuples)
+            throw new DbException("Page is full");
+        if (!t.getTupleDesc().equals(td))
+            throw new DbException("Tuple Descriptors do not match");
+        takeBeforeImage();
+        t.setRecordId(new RecordId(pid, tuples.size()));
+        tuples.add(t);
+    }
+
+    /**
+     * Deletes the tuple: the one at its RecordId, or if another is there
+     * now, the first tuple on the page with the same fields.
+     *
+     * @throws DbException if no such tuple is on the page
+     */
+    public synchronized void deleteTuple(Tuple t) throws DbException {
+        int i = find(t);
+        if (i < 0)
+            throw new DbException("tuple is not on page " + pid);
+        takeBeforeImage();
+        tuples.remove(i);
+    }
+
+    /** @return the position of the tuple, or -1 if it is not on the page */
+    synchronized int find(Tuple t) {
+        RecordId rid = t.getRecordId();
+        if (rid != null && pid.equals(rid.getPageId()) && rid.tupleno() < tuples.size()
+                && sameFields(tuples.get(rid.tupleno()), t))
+            return rid.tupleno();
+        Field key = t.getField(keyField);
+        for (int i = 0; i < tuples.size(); i++) {
+            if (getKey(i).equals(key) && sameFields(tuples.get(i), t))
+                return i;
+        }
+        return -1;
+    }
+
+    private boolean sameFields(Tuple a, Tuple b) {
+        if (a == b)
+            return true;
+        for (int i = 0; i < td.numFields(); i++) {
+            if (!a.getField(i).equals(b.getField(i)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Empties the page, for a split that deals its tuples out again.
+     *
+     * @return the tuples that were on it
+     */
+    synchronized List<Tuple> removeAll() {
+        takeBeforeImage();
+        ArrayList<Tuple> out = new ArrayList<Tuple>(tuples);
+        tuples.clear();
+        next = 0;
+        return out;
+    }
+
+    /**
+     * @return the tuples on the page, as they are now, with their
+     *         RecordIds set
+     */
+    synchronized List<Tuple> getTuples() {
+        ArrayList<Tuple> out = new ArrayList<Tuple>(tuples.size());
+        for (int i = 0; i < tuples.size(); i++) {
+            Tuple t = tuples.get(i);
+            t.setRecordId(new RecordId(pid, i));
+            out.add(t);
+        }
+        return out;
+    }
+
+    public synchronized byte[] getPageData() {
+        byte[] out = new byte[BufferPool.PAGE_SIZE];
+        int size = td.getSize();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(size);
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            dos.writeInt(depth);
+            dos.writeInt(next);
+            dos.writeInt(tuples.size());
+            System.arraycopy(baos.toByteArray(), 0, out, 0, HEADER_SIZE);
+            for (int i = 0; i < tuples.size(); i++) {
+                int offset = HEADER_SIZE + i * size;
+                Tuple t = tuples.get(i);
+                if (t.isStoredAt(data, offset)) {
+                    // unchanged since the page was read
+                    System.arraycopy(data, offset, out, offset, size);
+                    continue;
+                }
+                baos.reset();
+                for (int j = 0; j < td.numFields(); j++)
+                    t.getField(j).serialize(dos);
+                System.arraycopy(baos.toByteArray(), 0, out, offset, size);
+            }
+        } catch (IOException e) {
+            // a ByteArrayOutputStream does not throw
+            throw new RuntimeException(e);
+        }
+        return out;
+    }
+
+    /** Return a view of this page before it was modified -- used by recovery */
+    public HashBucketPage getBeforeImage() {
+        try {
+            return new HashBucketPage(pid, beforeImageData());
+        } catch (IOException e) {
+            // we parsed it OK before
+            throw new RuntimeException(e);
+        }
+    }
+}
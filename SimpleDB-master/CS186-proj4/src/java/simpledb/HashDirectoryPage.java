@@ -0,0 +1,120 @@
+package simpledb;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * A page of the directory of a HashFile. The directory has 2^d entries,
+ * for a global depth d: the bucket of a key whose hash value ends in the
+ * d bits i is the page in entry i. Buckets of a smaller local depth appear
+ * in every entry that ends in their bits.
+ * <p>
+ * Page 0 of the file is the root of the directory. It holds d, then, while
+ * the entries fit on it (d at most {@link #INLINE_DEPTH}), the entries
+ * themselves, and after that the page numbers of the directory pages that
+ * hold them, {@link #PER_PAGE} entries to a page, in order. So a lookup
+ * reads the root and a bucket, or in a large file, the root, one other
+ * directory page and a bucket.
+ *
+ * @see HashFile
+ */
+public class HashDirectoryPage extends HashPage {
+
+    /** entries on a directory page other than the root */
+    static final int PER_PAGE = Integer.highestOneBit(BufferPool.PAGE_SIZE / 4);
+    /** the greatest depth whose entries the root holds itself */
+    static final int INLINE_DEPTH = Integer.numberOfTrailingZeros(PER_PAGE) - 1;
+
+    private final boolean root;
+    private int depth;
+    /** the entries, or for a root past INLINE_DEPTH, the pages that hold them */
+    private int[] entries;
+
+    public HashDirectoryPage(HashPageId id, byte[] data) throws IOException {
+        super(id);
+        root = id.pageNumber() == 0;
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int n = PER_PAGE;
+        if (root) {
+            depth = in.readInt();
+            if (depth < 0 || depth > maxDepth())
+                throw new IOException("page " + id + " says its depth is " + depth);
+            n = depth <= INLINE_DEPTH ? 1 << depth : (1 << depth) / PER_PAGE;
+        }
+        entries = new int[n];
+        for (int i = 0; i < n; i++)
+            entries[i] = in.readInt();
+    }
+
+    /** @return the greatest global depth whose directory pages the root can list */
+    static int maxDepth() {
+        int d = INLINE_DEPTH + 1;
+        while (4 + 4 * ((1 << (d + 1)) / PER_PAGE) <= BufferPool.PAGE_SIZE)
+            d++;
+        return d;
+    }
+
+    /** @return the bytes of a root of depth 0 whose one bucket is page 1 */
+    static byte[] createEmptyPageData() {
+        byte[] data = new byte[BufferPool.PAGE_SIZE];
+        data[7] = 1;
+        return data;
+    }
+
+    /** @return the global depth; only the root knows it */
+    synchronized int getGlobalDepth() {
+        return depth;
+    }
+
+    /** @return whether this is the root, and holds the entries itself */
+    synchronized boolean isInline() {
+        return root && depth <= INLINE_DEPTH;
+    }
+
+    synchronized int numEntries() {
+        return entries.length;
+    }
+
+    /** @return entry i, or on a root past INLINE_DEPTH, the page of entries i */
+    synchronized int getEntry(int i) {
+        return entries[i];
+    }
+
+    synchronized void setEntry(int i, int value) {
+        takeBeforeImage();
+        entries[i] = value;
+    }
+
+    /** Sets the depth of the root, and its entries, for a directory that doubled. */
+    synchronized void setDirectory(int depth, int[] entries) {
+        takeBeforeImage();
+        this.depth = depth;
+        this.entries = Arrays.copyOf(entries, entries.length);
+    }
+
+    public synchronized byte[] getPageData() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(BufferPool.PAGE_SIZE);
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            if (root)
+                dos.writeInt(depth);
+            for (int e : entries)
+                dos.writeInt(e);
+            dos.write(new byte[BufferPool.PAGE_SIZE - baos.size()]);
+        } catch (IOException e) {
+            // a ByteArrayOutputStream does not throw
+            throw new RuntimeException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    /** Return a view of this page before it was modified -- used by recovery */
+    public HashDirectoryPage getBeforeImage() {
+        try {
+            return new HashDirectoryPage(pid, beforeImageData());
+        } catch (IOException e) {
+            // we parsed it OK before
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -77,6 +77,7 @@ public class HashEquiJoin extends Operator {
         child1.open();
         child2.open();
         loadMap();
+        super.open();
     }
 
     public void close() {
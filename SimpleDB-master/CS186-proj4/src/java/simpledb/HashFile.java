@@ -0,0 +1,514 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * HashFile is a DbFile that stores its tuples by the hash value of one
+ * field, the key, with extendible hashing: a table for lookups of a key,
+ * which read the directory and one bucket page instead of every page of
+ * the table, or a page per level of a BTreeFile. See {@link HashIndexScan}.
+ * <p>
+ * The directory, {@link HashDirectoryPage}s starting at page 0, maps the
+ * low d bits of a hash value to a bucket, so a lookup reads one or two
+ * directory pages and the bucket. The other pages are
+ * {@link HashBucketPage}s. A new file is a directory of depth 0 and one
+ * empty bucket. Every page is read and changed through the buffer pool,
+ * so pages are locked, logged and rolled back like those of a HeapFile.
+ * <p>
+ * A full bucket is split in place, by the next bit of its keys' hash
+ * values, into itself and a new bucket; the directory doubles first if
+ * the bucket already used all its bits. Nothing else is rebuilt. A bucket
+ * that a split would not make room in, because the keys on the new
+ * tuple's side of it share the next bit as well (most often, because
+ * they are equal), or because the directory is at
+ * {@link HashDirectoryPage#maxDepth}, grows a chain of overflow pages
+ * instead. Buckets are not
+ * merged: a tuple is deleted from its page, and a page that deletes empty
+ * stays. An insert locks the directory and the bucket for reading, the
+ * page it inserts into for writing, and for a split, the directory and
+ * every page of the bucket for writing.
+ *
+ * @see HashIndexScan
+ */
+public class HashFile implements DbFile, Closeable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final File file;
+    private final TupleDesc td;
+    private final int keyField;
+    private final int id;
+    /** open while pages are being read or written; null once closed */
+    private transient volatile FileChannel channel;
+
+    /**
+     * Constructs a hash file backed by the specified file.
+     *
+     * @param f the file that stores the table
+     * @param keyField the field the tuples are hashed and looked up by
+     * @param td the schema of the tuples
+     */
+    public HashFile(File f, int keyField, TupleDesc td) {
+        this.file = f;
+        this.keyField = keyField;
+        this.td = td;
+        id = f.getAbsoluteFile().hashCode();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /** Like a HeapFile's, the ID is the hash of the file's absolute path. */
+    public int getId() {
+        return id;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /** @return the field the tuples are hashed on */
+    public int keyField() {
+        return keyField;
+    }
+
+    /** @return the number of pages in the file, the directory included */
+    public int numPages() {
+        return (int) (file.length() / BufferPool.PAGE_SIZE);
+    }
+
+    /**
+     * @return the hash value of a key. Field hash codes are often the value
+     *         itself, so they are mixed, so that every bit depends on all
+     *         of them.
+     */
+    static int hash(Field key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private FileChannel channel() throws IOException {
+        FileChannel ch = channel;
+        if (ch != null && ch.isOpen())
+            return ch;
+        synchronized (this) {
+            if (channel == null || !channel.isOpen())
+                channel = new RandomAccessFile(file, "rw").getChannel();
+            return channel;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        HashPageId id = (HashPageId) pid;
+        try {
+            if (numPages() == 0)
+                create();
+            ByteBuffer buffer = ByteBuffer.allocate(BufferPool.PAGE_SIZE);
+            long offset = (long) pid.pageNumber() * BufferPool.PAGE_SIZE;
+            FileChannel ch = channel();
+            while (buffer.hasRemaining() && ch.read(buffer, offset + buffer.position()) >= 0)
+                ;
+            Database.getBufferPool().recordRead(this.id, BufferPool.PAGE_SIZE);
+            byte[] data = buffer.array();
+            if (id.category() == HashPageId.DIRECTORY)
+                return new HashDirectoryPage(id, data);
+            return new HashBucketPage(id, data);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        writePageData(page.getId().pageNumber(), page.getPageData());
+    }
+
+    private void writePageData(int pgNo, byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data, 0, BufferPool.PAGE_SIZE);
+        long offset = (long) pgNo * BufferPool.PAGE_SIZE;
+        FileChannel ch = channel();
+        while (buffer.hasRemaining())
+            ch.write(buffer, offset + buffer.position());
+        Database.getBufferPool().recordWrite(id, BufferPool.PAGE_SIZE);
+    }
+
+    /** Writes the directory and the one empty bucket of a new file. */
+    private synchronized void create() throws IOException {
+        if (numPages() > 0)
+            return;
+        writePageData(1, new byte[BufferPool.PAGE_SIZE]);
+        writePageData(0, HashDirectoryPage.createEmptyPageData());
+    }
+
+    /**
+     * Extends the file by one empty page, written straight to disk like a
+     * HeapFile's new pages; serialized so that two splits never pick the
+     * same page.
+     *
+     * @return the ID of the new page
+     */
+    private synchronized HashPageId appendEmptyPage(int category) throws IOException {
+        if (numPages() == 0)
+            create();
+        HashPageId pid = new HashPageId(id, numPages(), category);
+        writePageData(pid.pageNumber(), new byte[BufferPool.PAGE_SIZE]);
+        return pid;
+    }
+
+    private HashPageId directoryId(int pgNo) {
+        return new HashPageId(id, pgNo, HashPageId.DIRECTORY);
+    }
+
+    /**
+     * @return the ID of the first page of the bucket of the hash value.
+     *         Directory pages are locked for reading, and pinned only
+     *         while they are read.
+     */
+    private HashPageId findBucket(TransactionId tid, int hash)
+            throws DbException, TransactionAbortedException {
+        BufferPool pool = Database.getBufferPool();
+        HashDirectoryPage root = (HashDirectoryPage) pool.getPage(tid, directoryId(0), Permissions.READ_ONLY);
+        int i = hash & ((1 << root.getGlobalDepth()) - 1);
+        int pgNo;
+        if (root.isInline()) {
+            pgNo = root.getEntry(i);
+        } else {
+            HashDirectoryPage page = (HashDirectoryPage) pool.getPage(tid,
+                    directoryId(root.getEntry(i / HashDirectoryPage.PER_PAGE)), Permissions.READ_ONLY);
+            pgNo = page.getEntry(i % HashDirectoryPage.PER_PAGE);
+            pool.unpinPage(tid, page.getId());
+        }
+        pool.unpinPage(tid, root.getId());
+        return new HashPageId(id, pgNo, HashPageId.BUCKET);
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        if (!t.getTupleDesc().equals(td))
+            throw new DbException("Tuple Descriptors do not match");
+        int hash = hash(t.getField(keyField));
+        Pages pages = new Pages(tid);
+        try {
+            while (true) {
+                HashPageId bucket = findBucket(tid, hash);
+                ArrayList<HashBucketPage> chain = new ArrayList<HashBucketPage>();
+                for (HashPageId pid = bucket; pid != null; ) {
+                    HashBucketPage page = (HashBucketPage) pages.get(pid, Permissions.READ_ONLY);
+                    if (!page.isFull()) {
+                        ((HashBucketPage) pages.write(pid)).insertTuple(t);
+                        return pages.done();
+                    }
+                    chain.add(page);
+                    pid = page.getNextId();
+                }
+
+                // every page of the bucket is full
+                int depth = chain.get(0).getLocalDepth();
+                if (depth < HashDirectoryPage.maxDepth() && splits(chain, hash, depth)) {
+                    split(pages, chain, hash);
+                    continue;
+                }
+                HashBucketPage overflow = (HashBucketPage) pages.write(appendEmptyPage(HashPageId.BUCKET));
+                ((HashBucketPage) pages.write(chain.get(chain.size() - 1).getId())).setNextId(overflow.getId());
+                overflow.insertTuple(t);
+                return pages.done();
+            }
+        } catch (DbException e) {
+            pages.release();
+            throw e;
+        } catch (TransactionAbortedException e) {
+            pages.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return whether splitting the bucket by the next bit makes room for
+     *         a tuple of the hash value: whether its side of the split
+     *         needs fewer pages than the bucket does with the tuple added
+     */
+    private boolean splits(List<HashBucketPage> chain, int hash, int depth) {
+        int same = 1;
+        for (HashBucketPage page : chain) {
+            for (int i = 0; i < page.numTuples(); i++) {
+                if ((((hash(page.getKey(i)) ^ hash) >>> depth) & 1) == 0)
+                    same++;
+            }
+        }
+        int perPage = HashBucketPage.maxTuples(td);
+        return (same + perPage - 1) / perPage <= chain.size();
+    }
+
+    /**
+     * Splits the bucket of the hash value in two by the next bit of its
+     * keys' hash values, doubling the directory if it must. The tuples of
+     * every page of the bucket are dealt out again: those without the bit
+     * to the pages of the old bucket, those with it to a new bucket, which
+     * takes the old bucket's overflow pages that are not needed.
+     */
+    private void split(Pages pages, List<HashBucketPage> chain, int hash)
+            throws DbException, IOException, TransactionAbortedException {
+        HashDirectoryPage root = (HashDirectoryPage) pages.write(directoryId(0));
+        ArrayList<Tuple> stay = new ArrayList<Tuple>();
+        ArrayList<Tuple> move = new ArrayList<Tuple>();
+        LinkedList<HashBucketPage> spare = new LinkedList<HashBucketPage>();
+        HashBucketPage first = (HashBucketPage) pages.write(chain.get(0).getId());
+        int depth = first.getLocalDepth();
+        for (HashBucketPage page : chain) {
+            page = (HashBucketPage) pages.write(page.getId());
+            for (Tuple t : page.removeAll())
+                (((hash(t.getField(keyField)) >>> depth) & 1) == 0 ? stay : move).add(t);
+            if (page != first)
+                spare.add(page);
+        }
+        if (depth == root.getGlobalDepth())
+            grow(pages, root);
+        HashBucketPage added = (HashBucketPage) pages.write(appendEmptyPage(HashPageId.BUCKET));
+        first.setLocalDepth(depth + 1);
+        added.setLocalDepth(depth + 1);
+        // the entries that end in the bucket's bits and then a 1
+        int g = root.getGlobalDepth();
+        HashDirectoryPage dir = null;
+        for (int i = hash & ((1 << depth) - 1) | 1 << depth; i < 1 << g; i += 1 << (depth + 1)) {
+            if (root.isInline()) {
+                root.setEntry(i, added.getId().pageNumber());
+                continue;
+            }
+            int pgNo = root.getEntry(i / HashDirectoryPage.PER_PAGE);
+            if (dir == null || dir.getId().pageNumber() != pgNo)
+                dir = (HashDirectoryPage) pages.write(directoryId(pgNo));
+            dir.setEntry(i % HashDirectoryPage.PER_PAGE, added.getId().pageNumber());
+        }
+
+        HashBucketPage last = fill(pages, first, stay, spare);
+        fill(pages, added, move, spare);
+        // pages left over stay on the old bucket, empty, for its next inserts
+        for (HashBucketPage page : spare) {
+            last.setNextId(page.getId());
+            last = page;
+        }
+    }
+
+    /**
+     * Doubles the directory: entry i + 2^d points where entry i does. A
+     * root that no longer holds the entries moves them to a directory
+     * page; after that, each directory page gets a copy.
+     */
+    private void grow(Pages pages, HashDirectoryPage root)
+            throws DbException, IOException, TransactionAbortedException {
+        int d = root.getGlobalDepth();
+        int n = root.numEntries();
+        int[] entries = new int[2 * n];
+        if (d < HashDirectoryPage.INLINE_DEPTH) {
+            for (int i = 0; i < 2 * n; i++)
+                entries[i] = root.getEntry(i % n);
+        } else if (d == HashDirectoryPage.INLINE_DEPTH) {
+            HashDirectoryPage page = (HashDirectoryPage) pages.write(
+                    appendEmptyPage(HashPageId.DIRECTORY));
+            for (int i = 0; i < 2 * n; i++)
+                page.setEntry(i, root.getEntry(i % n));
+            entries = new int[] { page.getId().pageNumber() };
+        } else {
+            for (int j = 0; j < n; j++) {
+                HashDirectoryPage from = (HashDirectoryPage) pages.get(
+                        directoryId(root.getEntry(j)), Permissions.READ_ONLY);
+                HashDirectoryPage copy = (HashDirectoryPage) pages.write(
+                        appendEmptyPage(HashPageId.DIRECTORY));
+                for (int i = 0; i < HashDirectoryPage.PER_PAGE; i++)
+                    copy.setEntry(i, from.getEntry(i));
+                entries[j] = root.getEntry(j);
+                entries[n + j] = copy.getId().pageNumber();
+            }
+        }
+        root.setDirectory(d + 1, entries);
+    }
+
+    /**
+     * Inserts the tuples into the bucket that starts at the page, adding
+     * spare pages, or new ones, as it fills.
+     *
+     * @return the last page of the bucket
+     */
+    private HashBucketPage fill(Pages pages, HashBucketPage page, List<Tuple> tuples,
+            LinkedList<HashBucketPage> spare)
+            throws DbException, IOException, TransactionAbortedException {
+        for (Tuple t : tuples) {
+            if (page.isFull()) {
+                HashBucketPage next = spare.isEmpty()
+                        ? (HashBucketPage) pages.write(appendEmptyPage(HashPageId.BUCKET))
+                        : spare.removeFirst();
+                page.setNextId(next.getId());
+                page = next;
+            }
+            page.insertTuple(t);
+        }
+        return page;
+    }
+
+    /**
+     * Deletes the tuple: the one at its RecordId, or if it has none in this
+     * file, a tuple with the same fields.
+     */
+    public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t)
+            throws DbException, TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        boolean here = rid != null && rid.getPageId() instanceof HashPageId
+                && rid.getPageId().getTableId() == id;
+        Pages pages = new Pages(tid);
+        try {
+            HashPageId pid = here ? (HashPageId) rid.getPageId() : null;
+            if (pid == null || ((HashBucketPage) pages.get(pid, Permissions.READ_ONLY)).find(t) < 0) {
+                // a split moved it, or it was not read from this file: look
+                // through its bucket
+                pid = findBucket(tid, hash(t.getField(keyField)));
+                HashBucketPage page = (HashBucketPage) pages.get(pid, Permissions.READ_ONLY);
+                while (page.find(t) < 0) {
+                    pid = page.getNextId();
+                    if (pid == null)
+                        throw new DbException("tuple is not in table " + id);
+                    page = (HashBucketPage) pages.get(pid, Permissions.READ_ONLY);
+                }
+            }
+            ((HashBucketPage) pages.write(pid)).deleteTuple(t);
+            return pages.done();
+        } catch (DbException e) {
+            pages.release();
+            throw e;
+        } catch (TransactionAbortedException e) {
+            pages.release();
+            throw e;
+        }
+    }
+
+    /** @return an iterator over every tuple, a bucket page at a time in file order */
+    public DbFileIterator iterator(TransactionId tid) {
+        return new HashFileIterator(tid, null);
+    }
+
+    /**
+     * @return an iterator over the tuples whose key equals the operand of
+     *         the predicate, which reads the directory and the pages of
+     *         their bucket
+     * @throws IllegalArgumentException if the predicate is not an equality
+     *         on the key
+     */
+    public DbFileIterator indexIterator(TransactionId tid, Predicate p) {
+        if (p.getField() != keyField)
+            throw new IllegalArgumentException("field " + p.getField() + " is not the key of " + file);
+        if (p.getOp() != Predicate.Op.EQUALS)
+            throw new IllegalArgumentException("a hash lookup cannot evaluate " + p.getOp());
+        return new HashFileIterator(tid, p);
+    }
+
+    /**
+     * Walks the bucket pages: all of them, in file order past the directory
+     * pages, or the pages of the bucket of the key. The tuples of each page are copied when it is reached and
+     * the page unpinned, so a caller may delete the tuples it is given.
+     */
+    private class HashFileIterator implements DbFileIterator {
+
+        private static final long serialVersionUID = 1L;
+
+        private final TransactionId tid;
+        /** null for every tuple */
+        private final Predicate p;
+        /** the next page to read, or null after the last */
+        private HashPageId next;
+        /** the directory pages past the root, which a scan of every page skips */
+        private HashSet<Integer> directory;
+        private Iterator<Tuple> tuples;
+        private Tuple found;
+
+        HashFileIterator(TransactionId tid, Predicate p) {
+            this.tid = tid;
+            this.p = p;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            found = null;
+            tuples = Collections.<Tuple>emptyList().iterator();
+            if (p != null) {
+                next = findBucket(tid, hash(p.getOperand()));
+                return;
+            }
+            BufferPool pool = Database.getBufferPool();
+            HashDirectoryPage root = (HashDirectoryPage) pool.getPage(tid, directoryId(0), Permissions.READ_ONLY);
+            directory = new HashSet<Integer>();
+            for (int i = 0; !root.isInline() && i < root.numEntries(); i++)
+                directory.add(root.getEntry(i));
+            pool.unpinPage(tid, root.getId());
+            next = bucketFrom(1);
+        }
+
+        /** @return the first bucket page at or after pgNo, or null if none is */
+        private HashPageId bucketFrom(int pgNo) {
+            while (directory.contains(pgNo))
+                pgNo++;
+            return pgNo < numPages() ? new HashPageId(id, pgNo, HashPageId.BUCKET) : null;
+        }
+
+        private void read(HashPageId pid) throws DbException, TransactionAbortedException {
+            HashBucketPage page = (HashBucketPage) Database.getBufferPool().getPage(
+                    tid, pid, Permissions.READ_ONLY);
+            tuples = page.getTuples().iterator();
+            next = p != null ? page.getNextId() : bucketFrom(pid.pageNumber() + 1);
+            Database.getBufferPool().unpinPage(tid, pid);
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            if (tuples == null)
+                return false;
+            while (found == null) {
+                while (!tuples.hasNext()) {
+                    if (next == null)
+                        return false;
+                    read(next);
+                }
+                Tuple t = tuples.next();
+                if (p == null || p.filter(t))
+                    found = t;
+            }
+            return true;
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException,
+                NoSuchElementException {
+            if (!hasNext())
+                throw new NoSuchElementException("No more Tuples");
+            Tuple t = found;
+            found = null;
+            return t;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            close();
+            open();
+        }
+
+        public void close() {
+            tuples = null;
+            next = null;
+            found = null;
+            directory = null;
+        }
+    }
+
+    /** Closes the file; the next page read or written opens it again. */
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
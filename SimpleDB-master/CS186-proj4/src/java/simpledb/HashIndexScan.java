@@ -0,0 +1,103 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * HashIndexScan reads the tuples of a HashFile whose key equals a value:
+ * the lookup of <code>WHERE key = value</code>. It reads the directory
+ * and the pages of the one bucket the value hashes to. The planner uses
+ * it in place of a SeqScan and Filter for an equality filter on the key
+ * of a HashFile.
+ *
+ * @see HashFile#indexIterator
+ * @see LogicalPlan#physicalPlan
+ */
+public class HashIndexScan implements DbIterator {
+
+    private static final long serialVersionUID = 1L;
+    private final TransactionId tid;
+    private final int tableid;
+    private final String tableAlias;
+    private final Predicate p;
+    private DbFileIterator iter;
+
+    /**
+     * Creates a lookup of the tuples of a HashFile whose key equals a
+     * value, as a part of the specified transaction.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param tableid
+     *            the table to scan, which must be a HashFile
+     * @param tableAlias
+     *            the alias of this table; the returned tupleDesc has
+     *            fields named tableAlias.fieldName, as SeqScan's does
+     * @param p
+     *            the predicate, an EQUALS on the key field of the table
+     */
+    public HashIndexScan(TransactionId tid, int tableid, String tableAlias, Predicate p) {
+        this.tid = tid;
+        this.tableid = tableid;
+        this.tableAlias = tableAlias;
+        this.p = p;
+    }
+
+    /** @return the name of the table this operator looks up */
+    public String getTableName() {
+        return Database.getCatalog().getTableName(tableid);
+    }
+
+    /** @return the alias of the table this operator scans */
+    public String getAlias() {
+        return tableAlias;
+    }
+
+    public Predicate getPredicate() {
+        return p;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        HashFile f = (HashFile) Database.getCatalog().getDbFile(tableid);
+        iter = f.indexIterator(tid, p);
+        iter.open();
+    }
+
+    /**
+     * @return the TupleDesc of the table, with field names prefixed with
+     *         the tableAlias string from the constructor
+     */
+    public TupleDesc getTupleDesc() {
+        TupleDesc td = Database.getCatalog().getTupleDesc(tableid);
+        Type[] types = new Type[td.numFields()];
+        String[] names = new String[td.numFields()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = td.getFieldType(i);
+            names[i] = tableAlias + "." + td.getFieldName(i);
+        }
+        return new TupleDesc(types, names);
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        if (iter == null)
+            return false;
+        return iter.hasNext();
+    }
+
+    public Tuple next() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (iter == null || !iter.hasNext())
+            throw new NoSuchElementException();
+        return iter.next();
+    }
+
+    public void close() {
+        if (iter != null)
+            iter.close();
+        iter = null;
+    }
+
+    public void rewind() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        iter.rewind();
+    }
+}
@@ -0,0 +1,55 @@
+package simpledb;
+
+/**
+ * The state every page of a HashFile keeps for the buffer pool and
+ * recovery, as BTreePage does for a BTreeFile: the transaction that
+ * dirtied it, and its before-image, taken when it is first changed after
+ * it was committed.
+ *
+ * @see HashFile
+ */
+abstract class HashPage implements Page {
+
+    final HashPageId pid;
+    private volatile TransactionId dirty;
+    /** the image the page had when it was last committed; null until the
+        page is changed after that, since until then it is the current one */
+    private byte[] oldData;
+
+    HashPage(HashPageId pid) {
+        this.pid = pid;
+    }
+
+    public HashPageId getId() {
+        return pid;
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        if (dirty) {
+            takeBeforeImage();
+            this.dirty = tid;
+        } else {
+            this.dirty = null;
+        }
+    }
+
+    public TransactionId isDirty() {
+        return dirty;
+    }
+
+    /** Makes the current contents the before-image, copying nothing. */
+    public synchronized void setBeforeImage() {
+        oldData = null;
+    }
+
+    /** Called before every change to the page. */
+    synchronized void takeBeforeImage() {
+        if (oldData == null)
+            oldData = getPageData();
+    }
+
+    /** @return the bytes of the page before it was modified */
+    synchronized byte[] beforeImageData() {
+        return oldData != null ? oldData : getPageData();
+    }
+}
@@ -0,0 +1,67 @@
+package simpledb;
+
+/**
+ * Unique identifier for the pages of a HashFile. Besides the table and
+ * the page number it names the kind of page, which decides how the bytes
+ * of the page are read.
+ *
+ * @see HashFile
+ */
+public class HashPageId implements PageId {
+
+    /** page 0 of every HashFile, which maps hash values to buckets */
+    public static final int DIRECTORY = 0;
+    public static final int BUCKET = 1;
+
+    private final int tableId;
+    private final int pgNo;
+    private final int category;
+
+    /**
+     * @param tableId The table that is being referenced
+     * @param pgNo The page number in that table
+     * @param category DIRECTORY or BUCKET
+     */
+    public HashPageId(int tableId, int pgNo, int category) {
+        this.tableId = tableId;
+        this.pgNo = pgNo;
+        this.category = category;
+    }
+
+    public int getTableId() {
+        return tableId;
+    }
+
+    public int pageNumber() {
+        return pgNo;
+    }
+
+    /** @return DIRECTORY or BUCKET */
+    public int category() {
+        return category;
+    }
+
+    /** Like HeapPageId's, consecutive pages get consecutive codes. */
+    public int hashCode() {
+        return 31 * tableId + pgNo;
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof HashPageId))
+            return false;
+        HashPageId p = (HashPageId) o;
+        return p.tableId == tableId && p.pgNo == pgNo && p.category == category;
+    }
+
+    public String toString() {
+        return "HashPageId(" + tableId + ", " + pgNo + ", " + category + ")";
+    }
+
+    /**
+     * @return the table, the page number and the category, as the
+     *         constructor takes them, for writing to the log
+     */
+    public int[] serialize() {
+        return new int[] { tableId, pgNo, category };
+    }
+}
@@ -0,0 +1,65 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * Reads the tuples of a table stored in a HeapFile (or a file of one of
+ * its formats) at a sequence of RecordIds in page order, reading each
+ * heap page that holds any of them once. Used by the scans that find
+ * their RecordIds in an index first: {@link IndexScan} and
+ * {@link BitmapScan}. A RecordId whose slot is empty by the time it is
+ * read is skipped.
+ */
+abstract class HeapFetch {
+
+    private final TransactionId tid;
+    private final int tableid;
+    private final HeapFile file;
+    /** the next RecordId, as page &lt;&lt; 32 | slot; -1 after the last */
+    private long rid;
+    /** the tuples read from the last page, not returned yet */
+    private Iterator<Tuple> page;
+
+    HeapFetch(TransactionId tid, int tableid) {
+        this.tid = tid;
+        this.tableid = tableid;
+        this.file = (HeapFile) Database.getCatalog().getDbFile(tableid);
+        rid = nextRid();
+    }
+
+    /**
+     * @return the next RecordId to read, as page &lt;&lt; 32 | slot, no
+     *         smaller than the one before it; -1 after the last
+     */
+    abstract long nextRid();
+
+    /** @return whether to return a tuple that was read; here, every one */
+    boolean accept(Tuple t) {
+        return true;
+    }
+
+    boolean hasNext() throws TransactionAbortedException, DbException {
+        BufferPool pool = Database.getBufferPool();
+        while ((page == null || !page.hasNext()) && rid >= 0) {
+            // read each page once, for all its RecordIds
+            int pgNo = (int) (rid >>> 32);
+            HeapPageId pid = new HeapPageId(tableid, pgNo);
+            Page hp = pool.getPage(tid, pid, Permissions.READ_ONLY);
+            ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+            for (; rid >= 0 && (int) (rid >>> 32) == pgNo; rid = nextRid()) {
+                Tuple t = file.tuple(hp, (int) rid);
+                if (t != null && accept(t))
+                    tuples.add(t);
+            }
+            pool.unpinPage(tid, pid);
+            page = tuples.iterator();
+        }
+        return page != null && page.hasNext();
+    }
+
+    Tuple next() throws NoSuchElementException, TransactionAbortedException, DbException {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        return page.next();
+    }
+}
@@ -1,6 +1,8 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
 
 /**
@@ -9,16 +11,37 @@ import java.util.*;
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
  * constructor.
+ * <p>
+ * A HeapFile keeps its file open on one FileChannel and reads and writes
+ * pages with positional I/O, so threads do not share a file position. It
+ * also remembers its page count; all writes to the file must go through
+ * this HeapFile, or the count goes stale. {@link #close} releases the
+ * channel, and the next page read or written opens it again.
+ * <p>
+ * Inserts find a page with room through a {@link FreeSpaceMap}, kept in a
+ * file next to the table with the suffix ".fsm". A {@link ZoneMap} of the
+ * least and greatest value of each int column on each page, kept with the
+ * suffix ".zone", lets scans with predicates skip pages.
  * 
  * @see simpledb.HeapPage#HeapPage
  * @author Sam Madden
  */
 
-public class HeapFile implements DbFile {
+public class HeapFile implements DbFile, Closeable {
 
     private File file;
     private TupleDesc td;
     int id;
+    /** open while pages are being read or written; null once closed */
+    private transient volatile FileChannel channel;
+    /** number of pages in the file, or -1 until it is next needed */
+    private volatile int numPages = -1;
+    /** free slots by page; null until the first insert, delete or after close */
+    private transient volatile FreeSpaceMap freeSpace;
+    /** zones by page; null until first needed, and after close */
+    private transient volatile ZoneMap zones;
+    /** whether a page changed while the zones were not loaded */
+    private transient volatile boolean zonesStale;
     /**
      * Constructs a heap file backed by the specified file.
      * 
@@ -65,45 +88,266 @@ public class HeapFile implements DbFile {
 
     // see DbFile.java for javadocs
     public Page readPage(PageId pid) {
-	int pageSize = Database.getBufferPool().getPageSize();
-	int offset = pid.pageNumber() * BufferPool.PAGE_SIZE;
 	try {
-	RandomAccessFile random = new RandomAccessFile(file, "r");
-	byte[] buffer = new byte[BufferPool.PAGE_SIZE];
-	random.seek(offset);
-	random.read(buffer, 0, BufferPool.PAGE_SIZE);
-	HeapPageId hid = (HeapPageId) pid;
-	random.close();
-
-        return new HeapPage(hid, buffer);
+		return newPage((HeapPageId) pid, readPageData(pid.pageNumber()));
 	}
 	catch (IOException exception) {return null;}
     }
 
+    /**
+     * @return the bytes of the page on disk; past the end of the file a
+     *         page reads as zeros
+     */
+    byte[] readPageData(int pgNo) throws IOException {
+	// the page keeps this array as its image, so it cannot be reused
+	ByteBuffer buffer = ByteBuffer.allocate(BufferPool.PAGE_SIZE);
+	long offset = (long) pgNo * BufferPool.PAGE_SIZE;
+	FileChannel ch = channel();
+	while (buffer.hasRemaining() && ch.read(buffer, offset + buffer.position()) >= 0)
+		;
+	Database.getBufferPool().recordRead(id, BufferPool.PAGE_SIZE);
+	return buffer.array();
+    }
+
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
-        // some code goes here
-	try {
-		PageId pid = page.getId();
-		RandomAccessFile random = new RandomAccessFile(file,"rw");
-		int offset = pid.pageNumber()*BufferPool.PAGE_SIZE;
-		byte[] buffer = new byte[BufferPool.PAGE_SIZE];
-		buffer = page.getPageData();
-		random.seek(offset);
-		random.write(buffer, 0, BufferPool.PAGE_SIZE);
-		random.close();          
-        } 
-	catch (IOException exception){}
+	int pgNo = page.getId().pageNumber();
+	writePageData(pgNo, page.getPageData());
+	if (pgNo >= numPages())
+		grewTo(pgNo + 1);
+	FreeSpaceMap fsm = freeSpace;
+	if (fsm != null)
+		fsm.update(pgNo, freeSpace(page), emptyPageSpace());
+	ZoneMap zm = loadedZones();
+	if (zm != null)
+		zm.set(pgNo, tuples(page, zm.columns()));
+    }
+
+    /** Writes the bytes of a page to disk, at the page's place in the file. */
+    void writePageData(int pgNo, byte[] data) throws IOException {
+	ByteBuffer buffer = ByteBuffer.wrap(data, 0, BufferPool.PAGE_SIZE);
+	long offset = (long) pgNo * BufferPool.PAGE_SIZE;
+	FileChannel ch = channel();
+	while (buffer.hasRemaining())
+		ch.write(buffer, offset + buffer.position());
+	Database.getBufferPool().recordWrite(id, BufferPool.PAGE_SIZE);
     }
 
     /**
      * Returns the number of pages in this HeapFile.
      */
     public int numPages() {
-	int pageSize = Database.getBufferPool().getPageSize();
-	if( (int) file.length() % pageSize == 0)
-		return (int) file.length()/pageSize;
-        return ((int) file.length()/pageSize)+1;
+	int n = numPages;
+	if (n >= 0)
+		return n;
+	synchronized (this) {
+		if (numPages < 0) {
+			int pageSize = Database.getBufferPool().getPageSize();
+			long length = file.length();
+			// a partial last page counts as a page
+			numPages = (int) ((length + pageSize - 1) / pageSize);
+		}
+		return numPages;
+	}
+    }
+
+    private synchronized void grewTo(int pages) {
+	if (pages > numPages)
+		numPages = pages;
+    }
+
+    /**
+     * @return the channel of the file, opened if it is not open; a channel
+     *         is closed when a thread is interrupted during I/O on it
+     */
+    FileChannel channel() throws IOException {
+	FileChannel ch = channel;
+	if (ch != null && ch.isOpen())
+		return ch;
+	synchronized (this) {
+		if (channel == null || !channel.isOpen())
+			channel = new RandomAccessFile(file, "rw").getChannel();
+		return channel;
+	}
+    }
+
+    /*
+     * The page format of the file. VarHeapFile stores tuples on
+     * VarHeapPages by overriding these; free space is counted in slots
+     * here and in bytes there.
+     */
+
+    /** @return a page of this file, holding the given bytes from disk */
+    Page newPage(HeapPageId pid, byte[] data) throws IOException {
+	return new HeapPage(pid, data);
+    }
+
+    /** @return the free space of a page of this file */
+    int freeSpace(Page page) {
+	return ((HeapPage) page).getNumEmptySlots();
+    }
+
+    /** @return the free space of an empty page */
+    int emptyPageSpace() {
+	return slotsPerPage();
+    }
+
+    /** @return the free space a page needs to take the tuple */
+    int spaceNeeded(Tuple t) {
+	return 1;
+    }
+
+    /** @return the least free space any tuple needs */
+    int minSpaceNeeded() {
+	return 1;
+    }
+
+    void insert(Page page, Tuple t) throws DbException {
+	((HeapPage) page).insertTuple(t);
+    }
+
+    void delete(Page page, Tuple t) throws DbException {
+	((HeapPage) page).deleteTuple(t);
+    }
+
+    /** @return a cursor over the tuples of a page of this file */
+    Iterator<Tuple> tuples(Page page) {
+	return ((HeapPage) page).iterator();
+    }
+
+    /**
+     * @return the tuple in the given slot of a page of this file, or null
+     *         if the slot is empty
+     */
+    Tuple tuple(Page page, int slot) {
+	HeapPage hp = (HeapPage) page;
+	return hp.isSlotUsed(slot) ? hp.getTuple(slot) : null;
+    }
+
+    /**
+     * @return a cursor over the tuples of a page of this file, for a scan
+     *         that reads the given columns; here, the same as tuples(page)
+     */
+    Iterator<Tuple> tuples(Page page, int[] columns) {
+	return tuples(page);
+    }
+
+    /**
+     * @return the free space of the page as it is on disk, read without
+     *         going through the buffer pool; here, from the page's header
+     */
+    int readFreeSpace(int pgNo) throws IOException {
+	int slots = slotsPerPage();
+	ByteBuffer header = ByteBuffer.allocate((slots + 7) / 8);
+	long offset = (long) pgNo * BufferPool.PAGE_SIZE;
+	FileChannel ch = channel();
+	while (header.hasRemaining() && ch.read(header, offset + header.position()) >= 0)
+		;
+	int used = 0;
+	for (int i = 0; i < slots; i++) {
+		if ((header.get(i / 8) & (1 << (i % 8))) != 0)
+			used++;
+	}
+	return slots - used;
+    }
+
+    /**
+     * @return the most tuple slots a page of this file has; slots are
+     *         numbered below it. Here, every page has this many.
+     */
+    int maxSlots() {
+	return slotsPerPage();
+    }
+
+    /** @return the number of tuple slots on a page of this file */
+    private int slotsPerPage() {
+	return (BufferPool.PAGE_SIZE * 8) / (storedTupleDesc().getSize() * 8 + 1);
+    }
+
+    /**
+     * @return the layout HeapPages of this file store tuples in; here, the
+     *         file's TupleDesc
+     */
+    TupleDesc storedTupleDesc() {
+	return td;
+    }
+
+    private synchronized FreeSpaceMap freeSpace() throws IOException {
+	if (freeSpace == null)
+		freeSpace = FreeSpaceMap.load(this);
+	return freeSpace;
+    }
+
+    /** @return the zone map of the file, loaded when first needed */
+    ZoneMap zones() throws IOException {
+	ZoneMap zm = zones;
+	if (zm != null)
+		return zm;
+	synchronized (this) {
+		if (zones == null)
+			zones = ZoneMap.load(this);
+		return zones;
+	}
+    }
+
+    /**
+     * @return the zone map, if it is loaded and the table has int columns;
+     *         otherwise null, and the map file, which no longer matches
+     *         the table, is deleted the first time
+     */
+    private ZoneMap loadedZones() {
+	ZoneMap zm = zones;
+	if (zm == null) {
+		if (zonesStale)
+			return null;
+		synchronized (this) {
+			zm = zones;
+			if (zm == null) {
+				zoneMapFile(file).delete();
+				zonesStale = true;
+				return null;
+			}
+		}
+	}
+	return zm.columns().length > 0 ? zm : null;
+    }
+
+    /**
+     * @return the file the zone map of the given table file is kept in
+     */
+    public static File zoneMapFile(File f) {
+	return new File(f.getPath() + ".zone");
+    }
+
+    /**
+     * @return the file the free space map of the given table file is kept
+     *         in
+     */
+    public static File freeSpaceFile(File f) {
+	return new File(f.getPath() + ".fsm");
+    }
+
+    /**
+     * Closes the file, saving its free space and zone maps. The page count
+     * is read from the file again when it is next needed.
+     *
+     * @see Catalog#clear
+     */
+    public synchronized void close() throws IOException {
+	numPages = -1;
+	if (freeSpace != null) {
+		freeSpace.save();
+		freeSpace = null;
+	}
+	if (zones != null) {
+		zones.save();
+		zones = null;
+	}
+	zonesStale = false;
+	if (channel != null) {
+		channel.close();
+		channel = null;
+	}
     }
 
     // see DbFile.java for javadocs
@@ -113,37 +357,68 @@ public class HeapFile implements DbFile {
 	ArrayList<Page> modifiedPages = new ArrayList<Page>();
 	//get bufferpool
 	BufferPool B = Database.getBufferPool();
-	for (int i = 0; i < numPages(); i++)
+	FreeSpaceMap fsm = freeSpace();
+	int needed = spaceNeeded(t);
+	for (int i = fsm.pageWithRoom(needed); i >= 0; i = fsm.pageWithRoom(needed))
 	{
 		HeapPageId hpid =  new HeapPageId(getId(), i);
-		HeapPage hp = (HeapPage) B.getPage(tid, hpid, Permissions.READ_WRITE);
-		if (hp.getNumEmptySlots() > 0)
+		Page hp = B.getPage(tid, hpid, Permissions.READ_WRITE);
+		int free = freeSpace(hp);
+		if (free >= needed)
 		{
-			hp.insertTuple(t);
+			insert(hp, t);
+			fsm.update(i, freeSpace(hp), emptyPageSpace());
+			ZoneMap zm = loadedZones();
+			if (zm != null)
+				zm.widen(i, t);
 			modifiedPages.add(hp);
 			return modifiedPages;
 		}
+		// the map was out of date, as after an aborted delete
+		fsm.update(i, free, emptyPageSpace());
+		B.unpinPage(tid, hpid);
 	}
-	//otherwise there are no empty pages, add one
-	HeapPageId pid = new HeapPageId(getId(), numPages());
-	HeapPage page = (HeapPage) B.getPage(tid, pid, Permissions.READ_WRITE);
-	page.insertTuple(t);
-	writePage(page);
+	//otherwise there are no empty pages, add one. Only the empty page
+	//goes to disk here; the tuple stays in the buffer pool until commit
+	HeapPageId pid = appendEmptyPage();
+	Page page = B.getPage(tid, pid, Permissions.READ_WRITE);
+	insert(page, t);
+	fsm.update(pid.pageNumber(), freeSpace(page), emptyPageSpace());
+	ZoneMap zm = loadedZones();
+	if (zm != null)
+		zm.widen(pid.pageNumber(), t);
 	modifiedPages.add(page);
 	return modifiedPages;
     }
 
+    /**
+     * Extends the file by one empty page. Serialized so that two inserts
+     * never pick the same new page, and one cannot overwrite the other's
+     * committed page with an empty one.
+     *
+     * @return the ID of the new page
+     */
+    private synchronized HeapPageId appendEmptyPage() throws IOException {
+	HeapPageId pid = new HeapPageId(getId(), numPages());
+	writePage(newPage(pid, new byte[BufferPool.PAGE_SIZE]));
+	return pid;
+    }
+
     // see DbFile.java for javadocs
     public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException,
             TransactionAbortedException {
         // some code goes here
 	RecordId rid = t.getRecordId();
 	PageId pid = rid.getPageId();
-	Page p = Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE); //get page
-	HeapPage hp = (HeapPage) p;
-	hp.deleteTuple(t); //delete the tuple from page
+	Page hp = Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE); //get page
+	delete(hp, t); //delete the tuple from page
+	try {
+		freeSpace().update(pid.pageNumber(), freeSpace(hp), emptyPageSpace());
+	} catch (IOException e) {
+		// the page's count is corrected when the page is next written
+	}
 	ArrayList<Page> modifiedPages = new ArrayList<Page>();
-	modifiedPages.add(Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY));
+	modifiedPages.add(hp);
 	return modifiedPages;
     }
 
@@ -151,5 +426,59 @@ public class HeapFile implements DbFile {
         return new HeapFileIterator( tid, this );
     }
 
+    /**
+     * Returns an iterator for a scan that reads only the given columns of
+     * each tuple. The tuples are complete; a file stored by column decodes
+     * the given columns of a page together, and any other field only if
+     * it is asked for.
+     *
+     * @see SeqScan#setColumns
+     */
+    public DbFileIterator iterator(TransactionId tid, int[] columns) {
+        return new HeapFileIterator( tid, this, columns );
+    }
+
+    /**
+     * Returns an iterator for a scan that skips the pages whose zone map
+     * shows that none of their tuples meets all the given predicates.
+     * Tuples of the other pages are all returned, whether they meet the
+     * predicates or not; a Filter above the scan still applies them.
+     *
+     * @param columns the columns to read, as by {@link #iterator(TransactionId, int[])}
+     * @param predicates predicates on the fields of the table
+     * @see SeqScan#addPredicate
+     */
+    public DbFileIterator iterator(TransactionId tid, int[] columns, Predicate[] predicates) {
+        return new HeapFileIterator( tid, this, columns, predicates );
+    }
+
+    /**
+     * Appends the tuples to the file, filling new pages in order and
+     * writing them straight to disk. Used to load a new table; like
+     * HeapFileEncoder, it bypasses the buffer pool and transactions, and
+     * the table must not be in use. The file must be in the catalog.
+     */
+    public void bulkLoad(Iterator<Tuple> tuples) throws IOException {
+	// the zones of the new pages are known as they are written
+	zones();
+	int pgNo = numPages();
+	Page page = null;
+	while (tuples.hasNext()) {
+		Tuple t = tuples.next();
+		if (page == null || freeSpace(page) < spaceNeeded(t)) {
+			if (page != null)
+				writePage(page);
+			page = newPage(new HeapPageId(getId(), pgNo++), new byte[BufferPool.PAGE_SIZE]);
+		}
+		try {
+			insert(page, t);
+		} catch (DbException e) {
+			throw new IOException("cannot load " + t + ": " + e.getMessage());
+		}
+	}
+	if (page != null)
+		writePage(page);
+    }
+
 }
 
@@ -10,18 +10,80 @@ public class HeapFileIterator implements DbFileIterator {
         private TransactionId tid;
         private int pgNum;
         private  HeapFile f;
+        private BufferAccessStrategy strategy;
+        // reads pages ahead of the scan; null if the pool has no prefetcher
+        private Prefetcher.Scan readAhead;
+        // the page the iterator is on, pinned in the buffer pool
+        private PageId current;
+        // the columns to decode as each page is reached
+        private final int[] columns;
+        // pages whose zones no tuple of which can meet these are skipped
+        private final Predicate[] predicates;
+        // the file's zones; null if no pages are skipped
+        private ZoneMap zones;
          
         
         public HeapFileIterator(TransactionId tid, HeapFile f) {
+            this(tid, f, new int[0]);
+        }
+
+        /**
+         * An iterator that has each page decode the given columns of its
+         * tuples when the scan reaches it, as the file's format allows.
+         */
+        public HeapFileIterator(TransactionId tid, HeapFile f, int[] columns) {
+            this(tid, f, columns, new Predicate[0]);
+        }
+
+        /**
+         * An iterator that also skips the pages whose zones show that no
+         * tuple on them meets all the given predicates.
+         *
+         * @see ZoneMap#mayMatch
+         */
+        public HeapFileIterator(TransactionId tid, HeapFile f, int[] columns,
+                Predicate[] predicates) {
             this.tid = tid;
             this.f=f;
-             
+            this.columns = columns == null ? new int[0] : columns;
+            this.predicates = predicates;
         }
             
         @Override
         public void open() throws DbException, TransactionAbortedException {
             pgNum = 0;
-            i = getTupleLsFrPg(pgNum).iterator();
+            // large tables are read through a private ring of frames
+            strategy = BufferAccessStrategy.forScan(f);
+            Prefetcher prefetcher = Database.getBufferPool().getPrefetcher();
+            readAhead = prefetcher == null ? null : prefetcher.newScan(f.getId(), strategy);
+            zones = null;
+            if (predicates.length > 0) {
+                try {
+                    zones = f.zones();
+                    if (zones.columns().length == 0)
+                        zones = null;
+                } catch (IOException e) {
+                    // scan every page
+                }
+            }
+            pgNum = nextPage(0);
+            if (pgNum >= f.numPages() && pgNum > 0) {
+                // every page was skipped
+                i = Collections.<Tuple>emptyList().iterator();
+                return;
+            }
+            i = getTupleLsFrPg(pgNum);
+            current = new HeapPageId(f.getId(), pgNum);
+        }
+
+        /** @return the first page from the given one on that the scan reads */
+        private int nextPage(int from) {
+            int n = f.numPages();
+            if (zones != null) {
+                while (from < n && !zones.mayMatch(from, predicates))
+                    from++;
+            }
+            return from;
         }
 
         @Override
@@ -29,18 +91,21 @@ public class HeapFileIterator implements DbFileIterator {
             if( i == null){
                 return false;
             }
-            if(i.hasNext()){
-                return true;
-            } else if (pgNum < f.numPages()-1){
-                // if we have more pages to iterate
-                if(getTupleLsFrPg(pgNum + 1).size() != 0){
-                    return true;
-                } else {
+            // move on until a page has tuples; empty pages may sit
+            // between full ones after deletes
+            while (!i.hasNext()) {
+                if (pgNum >= f.numPages()-1) {
                     return false;
                 }
-            } else {
-                return false;
+                // done with this page: let the buffer pool evict it
+                unpinCurrent();
+                pgNum = nextPage(pgNum + 1);
+                if (pgNum >= f.numPages())
+                    return false;
+                i = getTupleLsFrPg(pgNum);
+                current = new HeapPageId(f.getId(), pgNum);
             }
+            return true;
         }
 
         @Override
@@ -50,42 +115,24 @@ public class HeapFileIterator implements DbFileIterator {
             if(i == null){
                 throw new NoSuchElementException("tuple is null");
             }
-            
-            if(i.hasNext()){
-            	//there are tuples available on page
-                Tuple t = i.next();
-                return t;
-            } else if(!i.hasNext() && pgNum < f.numPages()-1) {
-            	//tuples are on next page
-                pgNum ++;
-                i = getTupleLsFrPg(pgNum).iterator();
-                if (i.hasNext())
-                 return i.next();
-                else {
-                    throw new NoSuchElementException("No more Tuples");
-                }
-                
-            } else {
+            if (!hasNext()) {
                 // no more tuples on current page and no more pages in file
                 throw new NoSuchElementException("No more Tuples");
             }
-            
+            return i.next();
         }
-        // Returns a list of tuples from page 
-        private List<Tuple> getTupleLsFrPg(int pgNum) throws TransactionAbortedException, DbException{
+        // Returns a cursor over the tuples of the page; the page stays
+        // pinned while the cursor is in use
+        private Iterator<Tuple> getTupleLsFrPg(int pgNum) throws TransactionAbortedException, DbException{
             
             PageId pageId = new HeapPageId(f.getId(), pgNum);
-            Page page = Database.getBufferPool().getPage(tid, pageId, Permissions.READ_ONLY);
-                            
-            List<Tuple> tupleList = new ArrayList<Tuple>();
-            
-            // get all tuples from the first page in the file
-            HeapPage hp = (HeapPage)page;
-            Iterator<Tuple> itr = hp.iterator();
-            while(itr.hasNext()){
-                tupleList.add(itr.next());
-            }
-            return  tupleList;
+            if (readAhead != null)
+                readAhead.beforeRead(pgNum, f.numPages());
+            Page page = Database.getBufferPool().getPage(tid, pageId, Permissions.READ_ONLY, strategy);
+            // a page as it is on disk shows its zones
+            if (zones != null && page.isDirty() == null && !zones.isKnown(pgNum))
+                zones.set(pgNum, f.tuples(page, zones.columns()));
+            return f.tuples(page, columns);
         }
 
         @Override
@@ -98,7 +145,14 @@ public class HeapFileIterator implements DbFileIterator {
         @Override
         public void close() {
             i = null;
+            unpinCurrent();
+        }
 
+        private void unpinCurrent() {
+            if (current != null) {
+                Database.getBufferPool().unpinPage(tid, current);
+                current = null;
+            }
         }
 
     }
\ No newline at end of file
@@ -1,11 +1,18 @@
 package simpledb;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.io.*;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and 
  * implements the Page interface that is used by BufferPool.
+ * <p>
+ * A HeapPage keeps the bytes it was read from and makes a Tuple for a
+ * slot only when the slot is asked for, and that Tuple decodes each field
+ * from the bytes only when the field is asked for. A scan that filters on
+ * one column never builds the other Fields of the rows it drops.
+ * Inserted tuples are kept as objects until the page is written.
  *
  * @see HeapFile
  * @see BufferPool
@@ -13,15 +20,23 @@ import java.io.*;
  */
 public class HeapPage implements Page {
 
-    private ArrayList<Tuple> tupleArrayList;
     final HeapPageId pid;
     final TupleDesc td;
     final byte header[];
-    final Tuple tuples[];
+    /** the image the page was read from; never written to */
+    final byte[] data;
+    /** tuples by slot: decoded ones, and those inserted; null if not decoded yet */
+    final AtomicReferenceArray<Tuple> tuples;
     final int numSlots;
-    private TransactionId dirty;
-    byte[] oldData;
-    private final Byte oldDataLock=new Byte((byte)0);
+    private volatile TransactionId dirty;
+    /** the image the page had when it was last committed; null until the
+        page is changed after that, since until then it is the current one */
+    private byte[] oldData;
+    /** true while data still holds the current contents of the page */
+    private boolean imageCurrent = true;
+
+    /** decode every slot in the constructor, as HeapPage used to */
+    private static volatile boolean eagerDecoding = false;
 
 
     /**
@@ -36,33 +51,47 @@ public class HeapPage implements Page {
      * <p>
      *      ceiling(no. tuple slots / 8)
      * <p>
+     * <p>
+     * The page keeps data, without copying it, to decode slots from
+     * later; the caller must not change the array afterwards.
+     *
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
      * @see BufferPool#PAGE_SIZE
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
 	dirty = null;
-    	tupleArrayList = new ArrayList<Tuple>(0);	
         this.pid = id;
-        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        DbFile f = Database.getCatalog().getDbFile(id.getTableId());
+        // a file may store its tuples in another layout than it returns them
+        this.td = f instanceof HeapFile ? ((HeapFile) f).storedTupleDesc() : f.getTupleDesc();
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
-
-        // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++)
-            header[i] = dis.readByte();
-	tuples = new Tuple[numSlots];
-        try{
-            // allocate and read the actual records of this page
-            for (int i=0; i<tuples.length; i++)
-                tuples[i] = readNextTuple(dis,i);
-        } catch(NoSuchElementException e) {
-            e.printStackTrace();
+        if (data.length < getHeaderSize() + numSlots * td.getSize())
+            throw new EOFException("page " + id + " is " + data.length + " bytes long");
+        this.data = data;
+        header = Arrays.copyOf(data, getHeaderSize());
+        tuples = new AtomicReferenceArray<Tuple>(numSlots);
+        if (eagerDecoding) {
+            DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+            dis.skipBytes(header.length);
+            try{
+                // allocate and read the actual records of this page
+                for (int i=0; i<numSlots; i++)
+                    tuples.set(i, readNextTuple(dis,i));
+            } catch(NoSuchElementException e) {
+                e.printStackTrace();
+            }
+            dis.close();
         }
-        dis.close();
+    }
 
-        setBeforeImage();
+    /**
+     * Makes new HeapPages decode all their tuples up front, the way they
+     * did before decoding became lazy, or go back to lazy decoding.
+     * THIS FUNCTION SHOULD ONLY BE USED FOR TESTING AND BENCHMARKS!!
+     */
+    public static void setEagerDecoding(boolean eager) {
+        eagerDecoding = eager;
     }
 
     /** Retrieve the number of tuples on this page.
@@ -86,7 +115,7 @@ public class HeapPage implements Page {
         -- used by recovery */
     public HeapPage getBeforeImage(){
         try {
-            return new HeapPage(pid,oldData);
+            return new HeapPage(pid,beforeImageData());
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -95,11 +124,32 @@ public class HeapPage implements Page {
         return null;
     }
     
-    public void setBeforeImage() {
-	synchronized(oldDataLock)
-	{
-        oldData = getPageData().clone();
-	}
+    /** @return the bytes of the page before it was modified */
+    synchronized byte[] beforeImageData() {
+        return oldData != null ? oldData : currentImage();
+    }
+
+    /**
+     * Makes the current contents the before-image. Nothing is copied: the
+     * image is taken when the page is next changed, if it ever is.
+     */
+    public synchronized void setBeforeImage() {
+        oldData = null;
+    }
+
+    /**
+     * Keep the current contents as the before-image, unless a change since
+     * the last commit already did. Called before every change to the page.
+     * Images are never written to, so they are shared rather than copied.
+     */
+    private synchronized void takeBeforeImage() {
+        if (oldData == null)
+            oldData = currentImage();
+    }
+
+    /** @return the on-disk image of the current contents of the page */
+    private synchronized byte[] currentImage() {
+        return imageCurrent ? data : getPageData();
     }
 
     /**
@@ -109,6 +159,41 @@ public class HeapPage implements Page {
         return pid;
     }
 
+    /**
+     * @return the tuple in the given slot, created over the page image the
+     *   first time it is asked for; the slot must be in use
+     */
+    Tuple getTuple(int slot) {
+        Tuple t = tuples.get(slot);
+        if (t != null)
+            return t;
+        // fields are decoded from the image when they are asked for
+        t = new Tuple(td, data, header.length + slot * td.getSize());
+        t.setRecordId(new RecordId(pid, slot));
+        // another reader may have decoded it first, or a writer replaced it
+        if (!tuples.compareAndSet(slot, null, t) && tuples.get(slot) != null)
+            t = tuples.get(slot);
+        return t;
+    }
+
+    /**
+     * @return the first slot at or after from that is in use, or numSlots
+     *   if there is none
+     */
+    int nextUsedSlot(int from) {
+        int i = from;
+        while (i < numSlots) {
+            int bits = (header[i >>> 3] & 0xff) >>> (i & 7);
+            if (bits == 0)
+                i = (i | 7) + 1;  // nothing left in this header byte
+            else if ((bits & 1) != 0)
+                return i;
+            else
+                i++;
+        }
+        return numSlots;
+    }
+
     /**
      * Suck up tuples from the source file.
      */
@@ -154,65 +239,33 @@ public class HeapPage implements Page {
      * @see #HeapPage
      * @return A byte array correspond to the bytes of this page.
      */
-    public byte[] getPageData() {
-        int len = BufferPool.PAGE_SIZE;
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
+    public synchronized byte[] getPageData() {
+        byte[] out = new byte[BufferPool.PAGE_SIZE];
+        System.arraycopy(header, 0, out, 0, header.length);
+        int size = td.getSize();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(size);
         DataOutputStream dos = new DataOutputStream(baos);
 
-        // create the header of the page
-        for (int i=0; i<header.length; i++) {
-            try {
-                dos.writeByte(header[i]);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i=0; i<tuples.length; i++) {
-
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j=0; j<td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
+        // empty slots and padding stay zero
+        for (int i = nextUsedSlot(0); i < numSlots; i = nextUsedSlot(i + 1)) {
+            int offset = header.length + i * size;
+            Tuple t = tuples.get(i);
+            if (t == null || t.isStoredAt(data, offset)) {
+                // unchanged since the page was read
+                System.arraycopy(data, offset, out, offset, size);
                 continue;
             }
-
-            // non-empty slot
+            baos.reset();
             for (int j=0; j<td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
                 try {
-                    f.serialize(dos);
-                
+                    t.getField(j).serialize(dos);
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
             }
+            System.arraycopy(baos.toByteArray(), 0, out, offset, size);
         }
-
-        // padding
-        int zerolen = BufferPool.PAGE_SIZE - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        return baos.toByteArray();
+        return out;
     }
 
     /**
@@ -236,32 +289,38 @@ public class HeapPage implements Page {
      *         already empty.
      * @param t The tuple to delete
      */
-    public void deleteTuple(Tuple t) throws DbException {
+    public synchronized void deleteTuple(Tuple t) throws DbException {
 	RecordId rid = t.getRecordId(); //get the rid
 	if(!getId().equals(rid.getPageId())) //is this tuple on this page?
 		throw new DbException("Tuple is not on the current page");
 	int slotNum = rid.tupleno(); //get the tuple number (slot num)
 	if(!isSlotUsed(slotNum)) //is the slot used?
 		throw new DbException("slot number not used");
-	tuples[slotNum]=null; 
+	takeBeforeImage();
+	imageCurrent = false;
+	tuples.set(slotNum, null);
 	markSlotUsed(slotNum, false); //the slot is no longer used
     }	
 
-    public void insertTuple(Tuple t) throws DbException {
+    public synchronized void insertTuple(Tuple t) throws DbException {
 	if(getNumEmptySlots() == 0)
 		throw new DbException("Page is full");
 	if(!t.getTupleDesc().equals(this.td))
 		throw new DbException("Tuple Descriptors do not match");
 	int next = getNextFreeSlot();
+	takeBeforeImage();
+	imageCurrent = false;
 	markSlotUsed(next, true); //mark the slot as used
-	tuples[next] = t;
+	tuples.set(next, t);
 	RecordId rid = new RecordId(pid, next);
 	t.setRecordId(rid);
     }
 
     public void markDirty(boolean dirty, TransactionId tid) {
-	if(dirty == true)
+	if(dirty == true) {
+		takeBeforeImage();
 		this.dirty = tid;
+	}
 	else
 		this.dirty = null;
     }
@@ -271,13 +330,16 @@ public class HeapPage implements Page {
     }
 
     public int getNumEmptySlots() {
-        int count = 0;
-        for ( int i = 0; i < numSlots; i++)
-                 if (!isSlotUsed(i))
-                        count++;
-        return count;
-
+        int used = 0;
+        for (int i = 0; i < header.length; i++) {
+            int bits = header[i] & 0xff;
+            // the last header byte may cover fewer than 8 slots
+            if (i == header.length - 1 && numSlots % 8 != 0)
+                bits &= (1 << (numSlots % 8)) - 1;
+            used += Integer.bitCount(bits);
         }
+        return numSlots - used;
+    }
 
     
     
@@ -325,23 +387,13 @@ public class HeapPage implements Page {
 		header[byteLocation] = (byte) (header[byteLocation] & ~mask);
     }
 
-    public void initArrayList(){
-        tupleArrayList.clear();
-        for(int i = 0; i < numSlots; i++)
-        {
-                if( isSlotUsed(i) )
-                        tupleArrayList.add(tuples[i]);
-        }
-    }
-
     /**
      * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
      * (note that this iterator shouldn't return tuples in empty slots!)
      */
     public Iterator<Tuple> iterator() {
-        initArrayList();
-        return tupleArrayList.iterator();
-
+        // a cursor over the used slots; tuples are decoded as it reaches them
+        return new HeapPageIterator(this);
     }
 }
 
@@ -14,7 +14,6 @@ public class HeapPageId implements PageId {
     //I added this
     private int tableId;
     private int pgNo;
-    private int hashcode;
     public HeapPageId(int tableId, int pgNo) {
         // some code goes here
         this.tableId=tableId;
@@ -38,17 +37,15 @@ public class HeapPageId implements PageId {
     }
 
     /**
-     * @return a hash code for this page, represented by the concatenation of
-     *   the table number and the page number (needed if a PageId is used as a
-     *   key in a hash table in the BufferPool, for example.)
+     * @return a hash code for this page, combining the table number and the
+     *   page number (needed if a PageId is used as a key in a hash table in
+     *   the BufferPool, for example.) It is computed on every page lookup,
+     *   so it is plain arithmetic; consecutive pages of a table get
+     *   consecutive codes and so spread across BufferPool partitions.
      * @see BufferPool
      */
     public int hashCode() {
-        // some code goes here
-        Long longcode=Long.parseLong(String.valueOf(tableId)+ String.valueOf(pgNo));
-        int intcode=longcode.hashCode();
-        //System.out.println(intcode);
-        return intcode;
+        return 31 * tableId + pgNo;
     }
 
     /**
@@ -1,30 +1,37 @@
-
 package simpledb;
 
 import java.util.*;
-import java.io.*;
 
+/**
+ * Cursor over the used slots of a HeapPage, in slot order. Each tuple is
+ * decoded when the cursor reaches it. The cursor reads the page's header
+ * as it goes, so it sees the page as it is when next is called.
+ */
+public class HeapPageIterator implements Iterator<Tuple> {
+    private final HeapPage page;
+    private int slot;
 
-public class HeapPageIterator<Tuple> implements Iterator<Tuple>{
-    ArrayList<Tuple> tuples;
-    Iterator<Tuple> i;
-    public HeapPageIterator(ArrayList<Tuple> tuples) {
-        this.tuples = tuples;
-        i = tuples.iterator();
+    HeapPageIterator(HeapPage page) {
+        this.page = page;
+        slot = page.nextUsedSlot(0);
     }
 
     @Override
     public boolean hasNext() {
-        return i.hasNext();
+        return slot < page.numSlots;
     }
 
     @Override
     public Tuple next() {
-        return i.next();
+        if (!hasNext())
+            throw new NoSuchElementException();
+        Tuple t = page.getTuple(slot);
+        slot = page.nextUsedSlot(slot + 1);
+        return t;
     }
 
     @Override
     public void remove() {
-    throw new UnsupportedOperationException("remove");
+        throw new UnsupportedOperationException("remove");
     }
-}
\ No newline at end of file
+}
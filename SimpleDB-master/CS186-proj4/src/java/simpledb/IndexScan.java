@@ -0,0 +1,123 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * IndexScan reads the tuples of a table that satisfy a predicate on a
+ * column with a {@link SecondaryIndex}. It reads the entries that match
+ * from the index, sorts their RecordIds by page and slot, and then reads
+ * each heap page holding a match once, in file order, rather than a page
+ * per entry in key order. Tuples come out in that order, not in key
+ * order.
+ *
+ * @see Catalog#getIndex
+ */
+public class IndexScan implements DbIterator {
+
+    private static final long serialVersionUID = 1L;
+    private final TransactionId tid;
+    private final int tableid;
+    private final String tableAlias;
+    private final Predicate p;
+    /** reads the matches; null until opened */
+    private HeapFetch fetch;
+
+    /**
+     * Creates a scan of the tuples that satisfy a predicate on an indexed
+     * column, as a part of the specified transaction.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param tableid
+     *            the table to scan
+     * @param tableAlias
+     *            the alias of this table; the returned tupleDesc has
+     *            fields named tableAlias.fieldName, as SeqScan's does
+     * @param p
+     *            the predicate, on a column of the table that has an index
+     */
+    public IndexScan(TransactionId tid, int tableid, String tableAlias, Predicate p) {
+        this.tid = tid;
+        this.tableid = tableid;
+        this.tableAlias = tableAlias;
+        this.p = p;
+    }
+
+    /** @return the alias of the table this operator scans */
+    public String getAlias() {
+        return tableAlias;
+    }
+
+    public Predicate getPredicate() {
+        return p;
+    }
+
+    /**
+     * Reads the matching entries of the index.
+     *
+     * @throws DbException if the column has no index
+     */
+    public void open() throws DbException, TransactionAbortedException {
+        SecondaryIndex index = Database.getCatalog().getIndex(tableid, p.getField());
+        if (index == null)
+            throw new DbException("column " + p.getField() + " of table " + tableid + " has no index");
+        DbFileIterator entries = index.getFile().indexIterator(tid,
+                new Predicate(0, p.getOp(), p.getOperand()));
+        long[] found = new long[16];
+        int n = 0;
+        entries.open();
+        while (entries.hasNext()) {
+            Tuple e = entries.next();
+            if (n == found.length)
+                found = Arrays.copyOf(found, n * 2);
+            found[n++] = (long) ((IntField) e.getField(1)).getValue() << 32
+                    | ((IntField) e.getField(2)).getValue();
+        }
+        entries.close();
+        final long[] rids = Arrays.copyOf(found, n);
+        Arrays.sort(rids);
+        fetch = new HeapFetch(tid, tableid) {
+            private int at;
+
+            long nextRid() {
+                return at < rids.length ? rids[at++] : -1;
+            }
+        };
+    }
+
+    /**
+     * @return the TupleDesc of the table, with field names prefixed with
+     *         the tableAlias string from the constructor
+     */
+    public TupleDesc getTupleDesc() {
+        TupleDesc td = Database.getCatalog().getTupleDesc(tableid);
+        Type[] types = new Type[td.numFields()];
+        String[] names = new String[td.numFields()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = td.getFieldType(i);
+            names[i] = tableAlias + "." + td.getFieldName(i);
+        }
+        return new TupleDesc(types, names);
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        return fetch != null && fetch.hasNext();
+    }
+
+    public Tuple next() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (fetch == null)
+            throw new NoSuchElementException();
+        return fetch.next();
+    }
+
+    public void close() {
+        fetch = null;
+    }
+
+    public void rewind() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        close();
+        open();
+    }
+}
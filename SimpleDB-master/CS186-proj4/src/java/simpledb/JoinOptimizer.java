@@ -232,6 +232,9 @@ public class JoinOptimizer {
             HashMap<String, TableStats> stats,
             HashMap<String, Double> filterSelectivities, boolean explain)
             throws ParsingException {
+        // a query of one table has nothing to order
+        if (joins.isEmpty())
+            return joins;
         Set<LogicalJoinNode> joinSet = new HashSet<LogicalJoinNode>();
         joinSet.addAll(joins);                
         Set<Set<LogicalJoinNode>> j = enumerateSubsets(joins, 1);
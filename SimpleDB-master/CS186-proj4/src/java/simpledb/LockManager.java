@@ -0,0 +1,341 @@
+package simpledb;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LockManager grants page-level shared and exclusive locks to
+ * transactions for the BufferPool (strict two-phase locking: locks are
+ * normally held until {@link #releaseAll}).
+ * <p>
+ * Each page has its own lock state and monitor, so transactions working
+ * on different pages never contend here. A request that cannot be granted
+ * joins the page's FIFO wait queue; upgrades from shared to exclusive go
+ * to the front of the queue. Before blocking, a waiter records whom it
+ * waits for in a wait-for graph and aborts itself with
+ * TransactionAbortedException if that closes a cycle, so deadlocks are
+ * broken as soon as they form instead of after a timeout.
+ */
+public class LockManager {
+
+    /** One queued lock request. */
+    private static class Request {
+        final TransactionId tid;
+        final boolean exclusive;
+
+        Request(TransactionId tid, boolean exclusive) {
+            this.tid = tid;
+            this.exclusive = exclusive;
+        }
+    }
+
+    /** Holders and waiters of the lock on one page; guarded by its own monitor. */
+    private static class LockState {
+        final Set<TransactionId> sharers = new HashSet<TransactionId>();
+        TransactionId owner;
+        final LinkedList<Request> queue = new LinkedList<Request>();
+        /** set once the state is dropped from the lock table; holders must look again */
+        boolean retired;
+
+        boolean isFree() {
+            return owner == null && sharers.isEmpty() && queue.isEmpty();
+        }
+    }
+
+    private final ConcurrentHashMap<PageId, LockState> locks;
+    /** pages each transaction holds a lock on */
+    private final ConcurrentHashMap<TransactionId, Set<PageId>> held;
+    /** wait-for graph: each blocked transaction and the transactions it waits for */
+    private final Map<TransactionId, Set<TransactionId>> waitsFor;
+
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong contended = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong deadlocks = new AtomicLong();
+
+    public LockManager() {
+        locks = new ConcurrentHashMap<PageId, LockState>();
+        held = new ConcurrentHashMap<TransactionId, Set<PageId>>();
+        waitsFor = new HashMap<TransactionId, Set<TransactionId>>();
+    }
+
+    /**
+     * Acquire a lock on the page for the transaction, blocking until it
+     * can be granted.
+     *
+     * @param tid the transaction requesting the lock
+     * @param pid the page to lock
+     * @param exclusive true for an exclusive (write) lock, false for shared
+     * @throws TransactionAbortedException if waiting would deadlock
+     */
+    public void acquire(TransactionId tid, PageId pid, boolean exclusive)
+        throws TransactionAbortedException {
+        while (true) {
+            LockState ls = stateFor(pid);
+            synchronized (ls) {
+                if (ls.retired)
+                    continue;
+                if (holds(ls, tid, exclusive)) {
+                    acquisitions.incrementAndGet();
+                    return;
+                }
+                if (ls.queue.isEmpty() && compatible(ls, tid, exclusive)) {
+                    grant(ls, tid, pid, exclusive);
+                    return;
+                }
+                waitFor(ls, tid, pid, exclusive);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Queue a request on the lock and wait until it is granted.
+     * Called holding the monitor of ls.
+     */
+    private void waitFor(LockState ls, TransactionId tid, PageId pid, boolean exclusive)
+        throws TransactionAbortedException {
+        Request r = new Request(tid, exclusive);
+        if (exclusive && ls.sharers.contains(tid)) {
+            ls.queue.addFirst(r);
+            // the waiters now also wait for tid; have them record it and
+            // look for a cycle through it
+            ls.notifyAll();
+        } else {
+            ls.queue.addLast(r);
+        }
+        contended.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            while (true) {
+                if (grantable(ls, r)) {
+                    grant(ls, tid, pid, exclusive);
+                    return;
+                }
+                if (closesCycle(tid, blockers(ls, r))) {
+                    deadlocks.incrementAndGet();
+                    throw new TransactionAbortedException();
+                }
+                try {
+                    ls.wait();
+                } catch (InterruptedException e) {
+                    throw new TransactionAbortedException();
+                }
+            }
+        } finally {
+            // also reached if the waiting thread is stopped or interrupted
+            ls.queue.remove(r);
+            stopWaiting(tid);
+            if (ls.isFree()) {
+                ls.retired = true;
+                locks.remove(pid, ls);
+            }
+            waitNanos.addAndGet(System.nanoTime() - start);
+            // requests queued behind this one may be grantable now
+            ls.notifyAll();
+        }
+    }
+
+    /**
+     * Release the transaction's lock on the page, if it holds one.
+     */
+    public void release(TransactionId tid, PageId pid) {
+        LockState ls = locks.get(pid);
+        if (ls == null)
+            return;
+        synchronized (ls) {
+            ls.sharers.remove(tid);
+            if (tid.equals(ls.owner))
+                ls.owner = null;
+            Set<PageId> pages = held.get(tid);
+            if (pages != null)
+                pages.remove(pid);
+            if (ls.isFree()) {
+                ls.retired = true;
+                locks.remove(pid, ls);
+            }
+            ls.notifyAll();
+        }
+    }
+
+    /**
+     * Release every lock the transaction holds.
+     */
+    public void releaseAll(TransactionId tid) {
+        Set<PageId> pages = held.remove(tid);
+        if (pages != null) {
+            for (PageId pid : pages.toArray(new PageId[0]))
+                release(tid, pid);
+        }
+        stopWaiting(tid);
+    }
+
+    /** Return true if the transaction holds a lock of any kind on the page */
+    public boolean holdsLock(TransactionId tid, PageId pid) {
+        Set<PageId> pages = held.get(tid);
+        return pages != null && pages.contains(pid);
+    }
+
+    /** Return true if the transaction holds the exclusive lock on the page */
+    public boolean holdsExclusiveLock(TransactionId tid, PageId pid) {
+        LockState ls = locks.get(pid);
+        if (ls == null)
+            return false;
+        synchronized (ls) {
+            return tid.equals(ls.owner);
+        }
+    }
+
+    /** Return true if any transaction holds a lock on the page */
+    public boolean isLocked(PageId pid) {
+        LockState ls = locks.get(pid);
+        if (ls == null)
+            return false;
+        synchronized (ls) {
+            return ls.owner != null || !ls.sharers.isEmpty();
+        }
+    }
+
+    /** @return the pages the transaction currently holds locks on */
+    public Set<PageId> getLockedPages(TransactionId tid) {
+        Set<PageId> pages = held.get(tid);
+        if (pages == null)
+            return Collections.emptySet();
+        return new HashSet<PageId>(pages);
+    }
+
+    /** @return the number of lock requests granted */
+    public long getAcquisitionCount() {
+        return acquisitions.get();
+    }
+
+    /** @return the number of lock requests that had to wait */
+    public long getContendedCount() {
+        return contended.get();
+    }
+
+    /** @return total time, in nanoseconds, spent waiting for locks */
+    public long getWaitNanos() {
+        return waitNanos.get();
+    }
+
+    /** @return the number of requests aborted to break a deadlock */
+    public long getDeadlockCount() {
+        return deadlocks.get();
+    }
+
+    private LockState stateFor(PageId pid) {
+        LockState ls = locks.get(pid);
+        if (ls == null) {
+            LockState fresh = new LockState();
+            ls = locks.putIfAbsent(pid, fresh);
+            if (ls == null)
+                ls = fresh;
+        }
+        return ls;
+    }
+
+    /** @return true if tid already holds a lock at least as strong as requested */
+    private static boolean holds(LockState ls, TransactionId tid, boolean exclusive) {
+        if (tid.equals(ls.owner))
+            return true;
+        return !exclusive && ls.sharers.contains(tid);
+    }
+
+    /** @return true if the current holders allow tid the requested lock */
+    private static boolean compatible(LockState ls, TransactionId tid, boolean exclusive) {
+        if (ls.owner != null && !ls.owner.equals(tid))
+            return false;
+        if (!exclusive)
+            return true;
+        for (TransactionId sharer : ls.sharers) {
+            if (!sharer.equals(tid))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * A queued request may be granted once the holders allow it and every
+     * request ahead of it is a shared request that is being granted too.
+     */
+    private static boolean grantable(LockState ls, Request r) {
+        if (!compatible(ls, r.tid, r.exclusive))
+            return false;
+        for (Request ahead : ls.queue) {
+            if (ahead == r)
+                return true;
+            if (ahead.exclusive || r.exclusive)
+                return false;
+        }
+        return true;
+    }
+
+    /** @return the transactions request r is waiting for */
+    private static Set<TransactionId> blockers(LockState ls, Request r) {
+        Set<TransactionId> blockers = new HashSet<TransactionId>();
+        if (ls.owner != null)
+            blockers.add(ls.owner);
+        if (r.exclusive)
+            blockers.addAll(ls.sharers);
+        for (Request ahead : ls.queue) {
+            if (ahead == r)
+                break;
+            if (ahead.exclusive || r.exclusive)
+                blockers.add(ahead.tid);
+        }
+        blockers.remove(r.tid);
+        return blockers;
+    }
+
+    private void grant(LockState ls, TransactionId tid, PageId pid, boolean exclusive) {
+        acquisitions.incrementAndGet();
+        if (exclusive) {
+            ls.sharers.remove(tid);
+            ls.owner = tid;
+        } else {
+            ls.sharers.add(tid);
+        }
+        Set<PageId> pages = held.get(tid);
+        if (pages == null) {
+            Set<PageId> fresh = Collections.newSetFromMap(new ConcurrentHashMap<PageId, Boolean>());
+            pages = held.putIfAbsent(tid, fresh);
+            if (pages == null)
+                pages = fresh;
+        }
+        pages.add(pid);
+    }
+
+    /**
+     * Record that tid waits for the blockers and check whether that closes
+     * a cycle in the wait-for graph. If it does, tid is taken out of the
+     * graph again, since it is about to abort.
+     */
+    private boolean closesCycle(TransactionId tid, Set<TransactionId> blockers) {
+        synchronized (waitsFor) {
+            waitsFor.put(tid, blockers);
+            Set<TransactionId> visited = new HashSet<TransactionId>();
+            LinkedList<TransactionId> stack = new LinkedList<TransactionId>(blockers);
+            while (!stack.isEmpty()) {
+                TransactionId t = stack.removeFirst();
+                if (t.equals(tid)) {
+                    waitsFor.remove(tid);
+                    return true;
+                }
+                if (!visited.add(t))
+                    continue;
+                Set<TransactionId> next = waitsFor.get(t);
+                if (next != null)
+                    stack.addAll(next);
+            }
+            return false;
+        }
+    }
+
+    private void stopWaiting(TransactionId tid) {
+        synchronized (waitsFor) {
+            waitsFor.remove(tid);
+        }
+    }
+}
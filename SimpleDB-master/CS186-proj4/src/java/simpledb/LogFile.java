@@ -32,6 +32,12 @@ must not be declared synchronized and must begin with a block like:
        }
     }
 </pre>
+
+The BufferPool itself latches its partitions, not the BufferPool
+object, and a partition may call logWrite while latched (to log a
+page it is about to write).  So the LogFile monitor must be released
+before calling back into the BufferPool: lock order is BufferPool
+object, then partition, then LogFile.
 */
 
 /**
@@ -149,15 +155,16 @@ public class LogFile {
 
         synchronized (Database.getBufferPool()) {
 
+            // must do this here, since rollback only works for
+            // live transactions (needs tidToFirstLogRecord); it
+            // calls into the BufferPool, so not under our monitor
+            rollback(tid);
+
             synchronized(this) {
                 preAppend();
                 //Debug.log("ABORT");
                 //should we verify that this is a live transaction?
 
-                // must do this here, since rollback only works for
-                // live transactions (needs tidToFirstLogRecord)
-                rollback(tid);
-
                 raf.writeInt(ABORT_RECORD);
                 raf.writeLong(tid.getId());
                 raf.writeLong(currentOffset);
@@ -320,6 +327,8 @@ public class LogFile {
     public void logCheckpoint() throws IOException {
         //make sure we have buffer pool lock before proceeding
         synchronized (Database.getBufferPool()) {
+            // flushing logs each dirty page, so not under our monitor
+            Database.getBufferPool().flushAllPages();
             synchronized (this) {
                 //Debug.log("CHECKPOINT, offset = " + raf.getFilePointer());
                 preAppend();
@@ -327,7 +336,6 @@ public class LogFile {
                 Set<Long> keys = tidToFirstLogRecord.keySet();
                 Iterator<Long> els = keys.iterator();
                 force();
-                Database.getBufferPool().flushAllPages();
                 startCpOffset = raf.getFilePointer();
                 raf.writeInt(CHECKPOINT_RECORD);
                 raf.writeLong(-1); //no tid , but leave space for convenience
@@ -464,9 +472,43 @@ public class LogFile {
     public void rollback(TransactionId tid)
         throws NoSuchElementException, IOException {
         synchronized (Database.getBufferPool()) {
+            BufferPool bp = Database.getBufferPool();
+            // drop the cached changes first: once they are gone, no page
+            // of tid can be written (and logged) behind our back, so the
+            // scan below sees every update that reached the disk
+            bp.discardDirtyPages(tid);
+
+            // the earliest before-image of each page is its state before tid
+            LinkedHashMap<PageId, Page> befores = new LinkedHashMap<PageId, Page>();
             synchronized(this) {
                 preAppend();
-                // some code goes here
+                Long first = tidToFirstLogRecord.get(tid.getId());
+                raf.seek(first == null ? LONG_SIZE : first);
+                while (raf.getFilePointer() < currentOffset) {
+                    int type = raf.readInt();
+                    long recordTid = raf.readLong();
+                    switch (type) {
+                    case UPDATE_RECORD:
+                        Page before = readPageData(raf);
+                        readPageData(raf);
+                        if (recordTid == tid.getId() && !befores.containsKey(before.getId()))
+                            befores.put(before.getId(), before);
+                        break;
+                    case CHECKPOINT_RECORD:
+                        int numXactions = raf.readInt();
+                        raf.skipBytes(numXactions * 2 * LONG_SIZE);
+                        break;
+                    }
+                    raf.readLong();
+                }
+                raf.seek(currentOffset);
+            }
+
+            // pages written for tid may still be cached, clean, with its changes
+            for (Page before : befores.values()) {
+                PageId pid = before.getId();
+                Database.getCatalog().getDbFile(pid.getTableId()).writePage(before);
+                bp.discardPage(pid);
             }
         }
     }
@@ -271,6 +271,53 @@ public class LogicalPlan {
         throw new ParsingException("Unknown predicate " + s);
     }
 
+    /**
+     * @return whether the filter is an equality on the key of a table
+     *         stored in a HashFile, which a {@link HashIndexScan} can
+     *         look up instead of scanning the table
+     */
+    private boolean isHashLookup(LogicalFilterNode lf) {
+        Integer id = getTableId(lf.tableAlias);
+        if (lf.p != Predicate.Op.EQUALS || id == null)
+            return false;
+        DbFile f;
+        try {
+            f = Database.getCatalog().getDbFile(id);
+        } catch (NoSuchElementException e) {
+            return false;
+        }
+        if (!(f instanceof HashFile))
+            return false;
+        HashFile hf = (HashFile) f;
+        return lf.fieldPureName.equals(hf.getTupleDesc().getFieldName(hf.keyField()));
+    }
+
+    /**
+     * @return the filter as a condition a {@link BitmapScan} can evaluate,
+     *         if it is an equality or inequality on an int column with a
+     *         bitmap index; null if it is not
+     */
+    private BitmapPredicate bitmapPredicate(LogicalFilterNode lf) {
+        Integer id = getTableId(lf.tableAlias);
+        if ((lf.p != Predicate.Op.EQUALS && lf.p != Predicate.Op.NOT_EQUALS) || id == null)
+            return null;
+        int field;
+        try {
+            field = Database.getCatalog().getTupleDesc(id).fieldNameToIndex(lf.fieldPureName);
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+        if (Database.getCatalog().getBitmapIndex(id, field) == null)
+            return null;
+        BitmapPredicate p;
+        try {
+            p = BitmapPredicate.eq(field, Integer.parseInt(lf.c));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return lf.p == Predicate.Op.EQUALS ? p : BitmapPredicate.not(p);
+    }
+
     /** Convert this LogicalPlan into a physicalPlan represented by a {@link DbIterator}.  Attempts to
      *   find the optimal plan by using {@link JoinOptimizer#orderJoins} to order the joins in the plan.
      *  @param t The transaction that the returned DbIterator will run as a part of
@@ -307,8 +354,24 @@ public class LogicalPlan {
 
         }
 
-		//iterate through FilterNodes(field, op, constant)
-        Iterator<LogicalFilterNode> filterIt = filters.iterator();        
+		//iterate through FilterNodes(field, op, constant), the lookups of
+		//hash keys first, so that each replaces its table's SeqScan, then
+		//those a bitmap index answers, so that they combine into one
+		//BitmapScan
+        ArrayList<LogicalFilterNode> ordered = new ArrayList<LogicalFilterNode>();
+        for (LogicalFilterNode lf : filters) {
+            if (isHashLookup(lf))
+                ordered.add(lf);
+        }
+        for (LogicalFilterNode lf : filters) {
+            if (!isHashLookup(lf) && bitmapPredicate(lf) != null)
+                ordered.add(lf);
+        }
+        for (LogicalFilterNode lf : filters) {
+            if (!isHashLookup(lf) && bitmapPredicate(lf) == null)
+                ordered.add(lf);
+        }
+        Iterator<LogicalFilterNode> filterIt = ordered.iterator();
         while (filterIt.hasNext()) {
             LogicalFilterNode lf = filterIt.next();
             DbIterator subplan = subplanMap.get(lf.tableAlias);
@@ -336,7 +399,25 @@ public class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown field " + lf.fieldQuantifiedName);
             }
-            subplanMap.put(lf.tableAlias, new Filter(p, subplan));
+            BitmapPredicate bp = bitmapPredicate(lf);
+            if (subplan instanceof SeqScan && isHashLookup(lf))
+                subplanMap.put(lf.tableAlias, new HashIndexScan(t,
+                        this.getTableId(lf.tableAlias), lf.tableAlias, p));
+            else if (subplan instanceof SeqScan && bp != null)
+                subplanMap.put(lf.tableAlias, new BitmapScan(t,
+                        this.getTableId(lf.tableAlias), lf.tableAlias, bp));
+            else if (subplan instanceof BitmapScan && bp != null)
+                subplanMap.put(lf.tableAlias, new BitmapScan(t, this.getTableId(lf.tableAlias),
+                        lf.tableAlias, BitmapPredicate.and(((BitmapScan) subplan).getPredicate(), bp)));
+            else {
+                subplanMap.put(lf.tableAlias, new Filter(p, subplan));
+                // let the scan under the filters skip pages by zone
+                DbIterator scan = subplan;
+                while (scan instanceof Filter)
+                    scan = ((Filter) scan).getChildren()[0];
+                if (scan instanceof SeqScan)
+                    ((SeqScan) scan).addPredicate(p);
+            }
 
             TableStats s = statsMap.get(Database.getCatalog().getTableName(this.getTableId(lf.tableAlias)));
             
@@ -481,7 +562,10 @@ public class LogicalPlan {
             node = new OrderBy(node.getTupleDesc().fieldNameToIndex(oByField), oByAsc, node);
         }
 
-        return new Project(outFields, outTypes, node);
+        Project project = new Project(outFields, outTypes, node);
+        // tables stored by column decode only the columns the plan reads
+        ColumnPruning.pruneColumns(project);
+        return project;
     }
 
     public static void main(String argv[]) {
@@ -0,0 +1,128 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * LRU-K replacement (O'Neil, O'Neil and Weikum). The victim is the frame
+ * whose K-th most recent access is oldest; frames seen fewer than K times
+ * have an infinite backward distance and go first, oldest last access
+ * first. A page touched once by a scan therefore never pushes out a page
+ * that is read over and over.
+ * <p>
+ * The access history of evicted pages is retained for a while, so a page
+ * that comes back soon after eviction keeps its standing.
+ * <p>
+ * Hits are recorded in an {@link AccessBuffer} without the policy's
+ * monitor, and applied to the history before it is next used.
+ */
+class LruKPolicy implements BufferPool.EvictionPolicy {
+
+    public static final int DEFAULT_K = 2;
+
+    private final int k;
+    /** per frame, the times of its last K accesses, most recent first; 0 = none */
+    private long[][] history;
+    private PageId[] pids;
+    /** occupied frames, best victim first */
+    private final TreeSet<Integer> order;
+    /** history of recently evicted pages, as many as the pool holds pages */
+    private final LinkedHashMap<PageId, long[]> retained;
+    private int maxRetained;
+    private long clock;
+    /** hits not applied to the history yet */
+    private final AccessBuffer accesses = new AccessBuffer();
+    private final AccessBuffer.Sink applyAccess = new AccessBuffer.Sink() {
+        public void apply(int frame) {
+            if (frame >= pids.length || pids[frame] == null)
+                return;
+            order.remove(frame);
+            touch(frame);
+        }
+    };
+
+    public LruKPolicy(int numFrames, int k) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be at least 1");
+        this.k = k;
+        history = new long[numFrames][k];
+        pids = new PageId[numFrames];
+        order = new TreeSet<Integer>(new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                long ka = history[a][LruKPolicy.this.k - 1];
+                long kb = history[b][LruKPolicy.this.k - 1];
+                if (ka != kb)
+                    return ka < kb ? -1 : 1;
+                long la = history[a][0];
+                long lb = history[b][0];
+                if (la != lb)
+                    return la < lb ? -1 : 1;
+                return a.compareTo(b);
+            }
+        });
+        maxRetained = numFrames;
+        retained = new LinkedHashMap<PageId, long[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<PageId, long[]> eldest) {
+                return size() > maxRetained;
+            }
+        };
+        clock = 0;
+    }
+
+    public synchronized void pageLoaded(int frame, PageId pid) {
+        accesses.drain(applyAccess);
+        long[] old = retained.remove(pid);
+        if (old != null)
+            System.arraycopy(old, 0, history[frame], 0, k);
+        else
+            Arrays.fill(history[frame], 0);
+        pids[frame] = pid;
+        touch(frame);
+    }
+
+    public void pageAccessed(int frame) {
+        while (!accesses.add(frame))
+            drainAccesses();
+    }
+
+    private synchronized void drainAccesses() {
+        accesses.drain(applyAccess);
+    }
+
+    public synchronized void pageRemoved(int frame) {
+        accesses.drain(applyAccess);
+        if (pids[frame] == null)
+            return;
+        order.remove(frame);
+        retained.put(pids[frame], history[frame].clone());
+        pids[frame] = null;
+    }
+
+    public synchronized void resized(int numFrames, int capacity) {
+        accesses.drain(applyAccess);
+        int old = pids.length;
+        history = Arrays.copyOf(history, numFrames);
+        for (int i = old; i < numFrames; i++)
+            history[i] = new long[k];
+        pids = Arrays.copyOf(pids, numFrames);
+        maxRetained = capacity;
+    }
+
+    public synchronized int chooseVictim(BufferPool.FrameFilter filter) {
+        accesses.drain(applyAccess);
+        for (Integer frame : order) {
+            if (filter.canEvict(frame))
+                return frame;
+        }
+        return -1;
+    }
+
+    /** Shift the frame's history and re-file it in the victim order. */
+    private void touch(int frame) {
+        long[] h = history[frame];
+        System.arraycopy(h, 0, h, 1, k - 1);
+        h[0] = ++clock;
+        order.add(frame);
+    }
+}
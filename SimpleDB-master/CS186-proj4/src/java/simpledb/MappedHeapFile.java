@@ -0,0 +1,125 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * MappedHeapFile is a HeapFile that reads pages through memory maps of its
+ * file rather than read calls, for tables that are mostly read. The file is
+ * mapped in large segments, each on its first use; a segment that was
+ * mapped while the file was shorter is mapped again once a page past its
+ * end is read. Reading a page copies it from the mapping into the array the
+ * HeapPage keeps, without a system call.
+ * <p>
+ * Pages are written through the FileChannel, as in HeapFile. Mappings and
+ * writes of one file see each other's changes on systems with a unified
+ * page cache, such as Linux.
+ *
+ * @see HeapFile
+ */
+public class MappedHeapFile extends HeapFile {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Default size of one mapped segment of the file. */
+    public static final int DEFAULT_SEGMENT_BYTES = 64 << 20;
+
+    private final int segmentBytes;
+    /** mapped segments by number; null where a segment is not mapped yet */
+    private transient volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private transient volatile long mapCount;
+
+    /**
+     * Constructs a mapped heap file backed by the specified file.
+     *
+     * @param f the file that stores the on-disk backing store for this heap
+     *          file
+     */
+    public MappedHeapFile(File f, TupleDesc td) {
+        this(f, td, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * @param segmentBytes size of one mapped segment, a multiple of the page
+     *                     size so that no page spans two segments
+     */
+    MappedHeapFile(File f, TupleDesc td, int segmentBytes) {
+        super(f, td);
+        if (segmentBytes <= 0 || segmentBytes % BufferPool.PAGE_SIZE != 0)
+            throw new IllegalArgumentException("segment size " + segmentBytes
+                    + " is not a multiple of the page size");
+        this.segmentBytes = segmentBytes;
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        long offset = (long) pid.pageNumber() * BufferPool.PAGE_SIZE;
+        int seg = (int) (offset / segmentBytes);
+        int within = (int) (offset % segmentBytes);
+        byte[] data = new byte[BufferPool.PAGE_SIZE];
+        try {
+            ByteBuffer b = segment(seg, within + BufferPool.PAGE_SIZE);
+            // past the end of the file the page reads as zeros
+            if (b != null && within < b.capacity()) {
+                b = b.duplicate();
+                b.position(within);
+                b.get(data, 0, Math.min(data.length, b.remaining()));
+            }
+            Database.getBufferPool().recordRead(getId(), BufferPool.PAGE_SIZE);
+            return newPage((HeapPageId) pid, data);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the mapping of the given segment, covering at least the given
+     *         number of its bytes if the file is that long; null if the file
+     *         ends before the segment starts
+     */
+    private ByteBuffer segment(int seg, int bytes) throws IOException {
+        MappedByteBuffer[] segs = segments;
+        if (seg < segs.length && segs[seg] != null && segs[seg].capacity() >= bytes)
+            return segs[seg];
+        synchronized (this) {
+            segs = segments;
+            MappedByteBuffer m = seg < segs.length ? segs[seg] : null;
+            long start = (long) seg * segmentBytes;
+            FileChannel ch = channel();
+            long length = Math.min(segmentBytes, ch.size() - start);
+            if (length <= 0)
+                return null;
+            if (m != null && m.capacity() >= length)
+                return m;
+            m = ch.map(FileChannel.MapMode.READ_ONLY, start, length);
+            // readers go on using the old array, so it is never written
+            segs = Arrays.copyOf(segs, Math.max(segs.length, seg + 1));
+            segs[seg] = m;
+            segments = segs;
+            mapCount++;
+            return m;
+        }
+    }
+
+    /**
+     * Drops the mappings, which the garbage collector unmaps, and closes
+     * the file.
+     */
+    public synchronized void close() throws IOException {
+        segments = new MappedByteBuffer[0];
+        super.close();
+    }
+
+    /** @return the number of times a segment was mapped or mapped again */
+    public long getMapCount() {
+        return mapCount;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        segments = new MappedByteBuffer[0];
+    }
+}
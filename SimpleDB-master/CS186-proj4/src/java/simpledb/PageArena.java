@@ -0,0 +1,103 @@
+package simpledb;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * PageArena is the off-heap storage of a BufferPool in OFF_HEAP mode: one
+ * block of direct memory, outside the Java heap, cut into fixed-size page
+ * frames. Direct buffers are limited to 2GB each, so a large arena is
+ * allocated as several chunks of whole frames.
+ * <p>
+ * The arena stores pages in their on-disk format; {@link #decode} turns
+ * the bytes of a frame back into a Page when a transaction asks for it.
+ */
+class PageArena {
+
+    /** Largest single direct buffer the arena allocates. */
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+
+    /** (PageId, byte[]) constructors of page classes, by page class */
+    private static final ConcurrentHashMap<Class<?>, Constructor<?>> decoders =
+        new ConcurrentHashMap<Class<?>, Constructor<?>>();
+
+    private final ByteBuffer[] chunks;
+    private final int frameSize;
+    private final int framesPerChunk;
+    private final int numFrames;
+
+    PageArena(int numFrames, int frameSize) {
+        this.numFrames = numFrames;
+        this.frameSize = frameSize;
+        framesPerChunk = MAX_CHUNK_BYTES / frameSize;
+        int numChunks = (numFrames + framesPerChunk - 1) / framesPerChunk;
+        chunks = new ByteBuffer[numChunks];
+        for (int c = 0; c < numChunks; c++) {
+            int frames = Math.min(framesPerChunk, numFrames - c * framesPerChunk);
+            chunks[c] = ByteBuffer.allocateDirect(frames * frameSize);
+        }
+    }
+
+    /** @return a buffer covering exactly the given frame of the arena */
+    ByteBuffer frame(int frame) {
+        ByteBuffer chunk = chunks[frame / framesPerChunk].duplicate();
+        int offset = (frame % framesPerChunk) * frameSize;
+        chunk.limit(offset + frameSize);
+        chunk.position(offset);
+        return chunk.slice();
+    }
+
+    /** @return the bytes of direct memory the arena holds */
+    long capacity() {
+        return (long) numFrames * frameSize;
+    }
+
+    /** Copy the page's on-disk image into the frame buffer. */
+    static void encode(Page page, ByteBuffer frame) {
+        byte[] data = page.getPageData();
+        if (data.length > frame.capacity())
+            throw new IllegalArgumentException("page " + page.getId() + " does not fit a frame");
+        ByteBuffer b = frame.duplicate();
+        b.clear();
+        b.put(data);
+    }
+
+    /**
+     * Build a page of the given class from the image in the frame buffer,
+     * through its (PageId, byte[]) constructor, the one every page class
+     * has for reading pages from disk.
+     */
+    static Page decode(Class<? extends Page> pageClass, PageId pid, ByteBuffer frame)
+        throws DbException {
+        byte[] data = new byte[frame.capacity()];
+        ByteBuffer b = frame.duplicate();
+        b.clear();
+        b.get(data);
+        try {
+            return (Page) decoder(pageClass, pid).newInstance(pid, data);
+        } catch (InstantiationException e) {
+            throw new DbException("cannot decode page " + pid + ": " + e);
+        } catch (IllegalAccessException e) {
+            throw new DbException("cannot decode page " + pid + ": " + e);
+        } catch (InvocationTargetException e) {
+            throw new DbException("cannot decode page " + pid + ": " + e.getCause());
+        }
+    }
+
+    private static Constructor<?> decoder(Class<? extends Page> pageClass, PageId pid)
+        throws DbException {
+        Constructor<?> c = decoders.get(pageClass);
+        if (c != null)
+            return c;
+        for (Constructor<?> candidate : pageClass.getConstructors()) {
+            Class<?>[] params = candidate.getParameterTypes();
+            if (params.length == 2 && params[0].isInstance(pid) && params[1] == byte[].class) {
+                decoders.putIfAbsent(pageClass, candidate);
+                return candidate;
+            }
+        }
+        throw new DbException(pageClass.getName() + " has no (PageId, byte[]) constructor");
+    }
+}
@@ -0,0 +1,47 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * The pages one insert or delete of a paged index file, a BTreeFile or a
+ * HashFile, gets from the buffer pool. Each is pinned once per getPage;
+ * done() leaves one pin on each changed page, for BufferPool to release,
+ * and releases the rest.
+ */
+class Pages {
+    private final TransactionId tid;
+    private final ArrayList<PageId> pinned = new ArrayList<PageId>();
+    private final LinkedHashMap<PageId, Page> changed = new LinkedHashMap<PageId, Page>();
+
+    Pages(TransactionId tid) {
+        this.tid = tid;
+    }
+
+    Page get(PageId pid, Permissions perm) throws DbException, TransactionAbortedException {
+        Page p = Database.getBufferPool().getPage(tid, pid, perm);
+        pinned.add(pid);
+        return p;
+    }
+
+    /** Gets a page for writing, and counts it as changed. */
+    Page write(PageId pid) throws DbException, TransactionAbortedException {
+        Page p = get(pid, Permissions.READ_WRITE);
+        changed.put(pid, p);
+        return p;
+    }
+
+    ArrayList<Page> done() {
+        HashSet<PageId> kept = new HashSet<PageId>();
+        for (PageId pid : pinned) {
+            if (!changed.containsKey(pid) || !kept.add(pid))
+                Database.getBufferPool().unpinPage(tid, pid);
+        }
+        return new ArrayList<Page>(changed.values());
+    }
+
+    /** Releases every pin, after a failed change. */
+    void release() {
+        for (PageId pid : pinned)
+            Database.getBufferPool().unpinPage(tid, pid);
+    }
+}
@@ -0,0 +1,60 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * PaxFile is a HeapFile whose pages are PaxPages, which store their tuples
+ * by column. It is meant for analytic tables: a scan that the planner
+ * tells which columns a query uses ({@link SeqScan#setColumns}) decodes
+ * those columns a page at a time and leaves the rest of the page alone.
+ * Operators see no difference; the file is read, scanned and changed
+ * through the DbFile interface like a HeapFile, and a page holds as many
+ * tuples as a HeapPage does.
+ * <p>
+ * Pick it for a table in the catalog file by adding "pax" after the
+ * schema, e.g. <code>sales (id int, region string, amount int) pax</code>.
+ *
+ * @see PaxPage
+ * @see ColumnPruning
+ */
+public class PaxFile extends HeapFile {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a column-stored heap file backed by the specified file.
+     */
+    public PaxFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    Page newPage(HeapPageId pid, byte[] data) throws IOException {
+        return new PaxPage(pid, data);
+    }
+
+    int freeSpace(Page page) {
+        return ((PaxPage) page).getNumEmptySlots();
+    }
+
+    void insert(Page page, Tuple t) throws DbException {
+        ((PaxPage) page).insertTuple(t);
+    }
+
+    void delete(Page page, Tuple t) throws DbException {
+        ((PaxPage) page).deleteTuple(t);
+    }
+
+    Tuple tuple(Page page, int slot) {
+        PaxPage p = (PaxPage) page;
+        return p.isSlotUsed(slot) ? p.getTuple(slot) : null;
+    }
+
+    Iterator<Tuple> tuples(Page page) {
+        return ((PaxPage) page).iterator();
+    }
+
+    Iterator<Tuple> tuples(Page page, int[] columns) {
+        return ((PaxPage) page).iterator(columns);
+    }
+}
@@ -0,0 +1,274 @@
+package simpledb;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.io.*;
+
+/**
+ * PaxPage is a page of a PaxFile. It holds as many tuples as a HeapPage of
+ * the same schema, behind the same header of used-slot bits, but stores
+ * them by column: after the header comes one minipage per column, holding
+ * that field of every slot in slot order. A scan that reads one column of
+ * a wide table reads one contiguous run of the page instead of a field
+ * here and there in every row.
+ * <p>
+ * Like HeapPage, the page keeps the bytes it was read from and decodes a
+ * field only when it is asked for; {@link #iterator(int[])} decodes the
+ * columns a scan needs a whole minipage at a time.
+ *
+ * @see PaxFile
+ */
+public class PaxPage implements Page {
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    final byte header[];
+    /** the image the page was read from; never written to */
+    final byte[] data;
+    /** where each column's minipage starts */
+    final int[] columns;
+    /** tuples by slot: decoded ones, and those inserted; null if not decoded yet */
+    final AtomicReferenceArray<Tuple> tuples;
+    /** columns already decoded for every tuple on the page */
+    private final boolean[] decoded;
+    final int numSlots;
+    private volatile TransactionId dirty;
+    /** the image the page had when it was last committed; null until the
+        page is changed after that, since until then it is the current one */
+    private byte[] oldData;
+    /** true while data still holds the current contents of the page */
+    private boolean imageCurrent = true;
+
+    /**
+     * Create a PaxPage from the bytes of a page read from disk. The header
+     * is that of a HeapPage; column i follows the columns before it, and
+     * takes numSlots times the length of its type. The page keeps data,
+     * without copying it; the caller must not change the array afterwards.
+     */
+    public PaxPage(HeapPageId id, byte[] data) throws IOException {
+        this.pid = id;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.numSlots = (BufferPool.PAGE_SIZE * 8) / (td.getSize() * 8 + 1);
+        int headerSize = (numSlots + 7) / 8;
+        if (data.length < headerSize + numSlots * td.getSize())
+            throw new EOFException("page " + id + " is " + data.length + " bytes long");
+        this.data = data;
+        header = Arrays.copyOf(data, headerSize);
+        columns = new int[td.numFields()];
+        int start = headerSize;
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = start;
+            start += numSlots * td.getFieldType(i).getLen();
+        }
+        tuples = new AtomicReferenceArray<Tuple>(numSlots);
+        decoded = new boolean[columns.length];
+    }
+
+    /** @return the bytes of an empty page */
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.PAGE_SIZE];
+    }
+
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    /** Return a view of this page before it was modified -- used by recovery */
+    public PaxPage getBeforeImage() {
+        byte[] image;
+        synchronized (this) {
+            image = oldData != null ? oldData : currentImage();
+        }
+        try {
+            return new PaxPage(pid, image);
+        } catch (IOException e) {
+            // we parsed it OK before
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Makes the current contents the before-image, copying nothing. */
+    public synchronized void setBeforeImage() {
+        oldData = null;
+    }
+
+    private synchronized void takeBeforeImage() {
+        if (oldData == null)
+            oldData = currentImage();
+    }
+
+    private synchronized byte[] currentImage() {
+        return imageCurrent ? data : getPageData();
+    }
+
+    /** @return the tuple in the slot, created over the page image if it has not been */
+    Tuple getTuple(int slot) {
+        Tuple t = tuples.get(slot);
+        if (t != null)
+            return t;
+        t = new Tuple(td, data, slot, columns);
+        t.setRecordId(new RecordId(pid, slot));
+        // another reader may have decoded it first, or a writer replaced it
+        if (!tuples.compareAndSet(slot, null, t) && tuples.get(slot) != null)
+            t = tuples.get(slot);
+        return t;
+    }
+
+    /** @return the first slot at or after from that is in use, or numSlots if none is */
+    int nextUsedSlot(int from) {
+        for (int i = from; i < numSlots; i++) {
+            if ((header[i >>> 3] & (1 << (i & 7))) != 0)
+                return i;
+        }
+        return numSlots;
+    }
+
+    public synchronized byte[] getPageData() {
+        byte[] out = new byte[BufferPool.PAGE_SIZE];
+        System.arraycopy(header, 0, out, 0, header.length);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(Type.STRING_TYPE.getLen());
+        DataOutputStream dos = new DataOutputStream(baos);
+        // empty slots and padding stay zero
+        for (int i = nextUsedSlot(0); i < numSlots; i = nextUsedSlot(i + 1)) {
+            Tuple t = tuples.get(i);
+            boolean stored = t == null || t.isStoredAt(data, i);
+            for (int j = 0; j < columns.length; j++) {
+                int len = td.getFieldType(j).getLen();
+                int at = columns[j] + i * len;
+                if (stored) {
+                    // unchanged since the page was read
+                    System.arraycopy(data, at, out, at, len);
+                    continue;
+                }
+                baos.reset();
+                try {
+                    t.getField(j).serialize(dos);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                System.arraycopy(baos.toByteArray(), 0, out, at, len);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Delete the tuple from the page.
+     *
+     * @throws DbException if the tuple is not on this page, or its slot is
+     *         already empty
+     */
+    public synchronized void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId()))
+            throw new DbException("Tuple is not on the current page");
+        int slot = rid.tupleno();
+        if (!isSlotUsed(slot))
+            throw new DbException("slot number not used");
+        takeBeforeImage();
+        imageCurrent = false;
+        tuples.set(slot, null);
+        markSlotUsed(slot, false);
+    }
+
+    /**
+     * Add the tuple to the first empty slot of the page, and set its
+     * RecordId.
+     *
+     * @throws DbException if the page is full, or the tuple's schema is
+     *         not the page's
+     */
+    public synchronized void insertTuple(Tuple t) throws DbException {
+        if (!t.getTupleDesc().equals(td))
+            throw new DbException("Tuple Descriptors do not match");
+        int slot = 0;
+        while (slot < numSlots && isSlotUsed(slot))
+            slot++;
+        if (slot == numSlots)
+            throw new DbException("Page is full");
+        takeBeforeImage();
+        imageCurrent = false;
+        markSlotUsed(slot, true);
+        tuples.set(slot, t);
+        t.setRecordId(new RecordId(pid, slot));
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        if (dirty) {
+            takeBeforeImage();
+            this.dirty = tid;
+        } else {
+            this.dirty = null;
+        }
+    }
+
+    public TransactionId isDirty() {
+        return dirty;
+    }
+
+    public synchronized int getNumEmptySlots() {
+        int used = 0;
+        for (int i = nextUsedSlot(0); i < numSlots; i = nextUsedSlot(i + 1))
+            used++;
+        return numSlots - used;
+    }
+
+    /**
+     * Returns true if associated slot on this page is filled.
+     */
+    public boolean isSlotUsed(int i) {
+        if (i < 0 || i >= numSlots)
+            return false;
+        return (header[i >>> 3] & (1 << (i & 7))) != 0;
+    }
+
+    private void markSlotUsed(int i, boolean value) {
+        if (value)
+            header[i >>> 3] |= 1 << (i & 7);
+        else
+            header[i >>> 3] &= ~(1 << (i & 7));
+    }
+
+    /**
+     * @return a cursor over the tuples of the page; fields are decoded as
+     *         they are asked for
+     */
+    public Iterator<Tuple> iterator() {
+        return iterator(new int[0]);
+    }
+
+    /**
+     * @return a cursor over the tuples of the page, having decoded the
+     *         given columns of every tuple first, one minipage at a time.
+     *         Other fields are still decoded if they are asked for.
+     */
+    public Iterator<Tuple> iterator(int[] decode) {
+        for (int c : decode) {
+            // tuples inserted later have all their fields
+            if (decoded[c])
+                continue;
+            for (int i = nextUsedSlot(0); i < numSlots; i = nextUsedSlot(i + 1))
+                getTuple(i).getField(c);
+            decoded[c] = true;
+        }
+        return new Iterator<Tuple>() {
+            private int slot = nextUsedSlot(0);
+
+            public boolean hasNext() {
+                return slot < numSlots;
+            }
+
+            public Tuple next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                Tuple t = getTuple(slot);
+                slot = nextUsedSlot(slot + 1);
+                return t;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("remove");
+            }
+        };
+    }
+}
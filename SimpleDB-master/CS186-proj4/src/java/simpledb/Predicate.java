@@ -46,6 +46,10 @@ public class Predicate implements Serializable {
     private int m_field;
     private Op m_op;
     private Field m_operand;    
+    /** the operand as a field of the dictionary last compared against */
+    private transient DictStringField m_coded;
+    /** the size of that dictionary when the operand was not in it */
+    private transient int m_codedSize;
     /**
      * Constructor.
      * 
@@ -100,7 +104,30 @@ public class Predicate implements Serializable {
     public boolean filter(Tuple t) {
         if(t.getField(this.getField()) == null)
                 return false;
-        return t.getField(m_field).compare(getOp(), m_operand);
+        Field f = t.getField(m_field);
+        if (f instanceof DictStringField)
+            return f.compare(m_op, operandFor((DictStringField) f));
+        return f.compare(m_op, m_operand);
+    }
+
+    /**
+     * @return the operand to compare a field of a dictionary-encoded column
+     *         to: for = and <>, the operand as a field of that dictionary,
+     *         so that they compare by number
+     */
+    private Field operandFor(DictStringField f) {
+        if ((m_op != Op.EQUALS && m_op != Op.NOT_EQUALS) || !(m_operand instanceof StringField))
+            return m_operand;
+        StringDictionary d = f.getDictionary();
+        DictStringField coded = m_coded;
+        // a value missing from the dictionary may have been added since
+        if (coded == null || coded.getDictionary() != d
+                || (coded.getCode() < 0 && d.size() != m_codedSize)) {
+            m_codedSize = d.size();
+            coded = d.fieldFor(((StringField) m_operand).getValue());
+            m_coded = coded;
+        }
+        return coded;
     }
 
     /**
@@ -0,0 +1,230 @@
+package simpledb;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prefetcher reads pages into a BufferPool ahead of sequential scans, on a
+ * small pool of I/O threads, so that a scan finds its next pages cached
+ * instead of waiting for each read in turn.
+ * <p>
+ * Each scan reports the pages it is about to read to its own {@link Scan}.
+ * Once two pages in a row are consecutive, the scan keeps a window of the
+ * next pages requested. The window adapts to how fast the scan consumes
+ * pages: it doubles, up to a maximum, whenever the scan reaches a page
+ * whose read is still running, and halves whenever a page read ahead was
+ * evicted before the scan got to it.
+ * <p>
+ * Pages are read without taking locks and are not left pinned; the scan
+ * still locks and pins each page through getPage when it reaches it.
+ *
+ * @see BufferPool#startPrefetcher
+ */
+public class Prefetcher {
+
+    /** Window of a scan when it is first found sequential. */
+    static final int INITIAL_WINDOW = 2;
+
+    private final BufferPool pool;
+    private final ThreadPoolExecutor executor;
+    private final int threads;
+    private final int maxWindow;
+
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong pagesRead = new AtomicLong();
+    private final AtomicLong grows = new AtomicLong();
+    private final AtomicLong shrinks = new AtomicLong();
+
+    /**
+     * @param pool the buffer pool to read pages into
+     * @param threads number of I/O threads
+     * @param maxWindow most pages a scan may have requested ahead of it
+     */
+    Prefetcher(BufferPool pool, int threads, int maxWindow) {
+        if (threads < 1 || maxWindow < 1)
+            throw new IllegalArgumentException("bad prefetcher settings");
+        this.pool = pool;
+        this.threads = threads;
+        this.maxWindow = maxWindow;
+        final AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "simpledb-readahead-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Stop the I/O threads, dropping reads not started yet and waiting for
+     * the running ones. The threads are not interrupted: an interrupt in
+     * the middle of a read closes the table's FileChannel, which the scans
+     * share.
+     */
+    void shutdown() {
+        executor.shutdown();
+        List<Runnable> queued = new ArrayList<Runnable>();
+        executor.getQueue().drainTo(queued);
+        for (Runnable r : queued)
+            ((Future<?>) r).cancel(false);
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param tableId the table the scan reads
+     * @param strategy the strategy the scan reads pages with, or null
+     * @return the read-ahead state of a new scan
+     */
+    public Scan newScan(int tableId, BufferAccessStrategy strategy) {
+        return new Scan(tableId, strategy);
+    }
+
+    private Future<?> submit(final PageId pid, final BufferAccessStrategy strategy) {
+        Future<?> future = executor.submit(new Runnable() {
+            public void run() {
+                try {
+                    if (pool.prefetchPage(pid, strategy))
+                        pagesRead.incrementAndGet();
+                } catch (DbException e) {
+                    // the pool is full of pinned pages; the scan reads it itself
+                }
+            }
+        });
+        requested.incrementAndGet();
+        return future;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getMaxWindow() {
+        return maxWindow;
+    }
+
+    /** @return the number of pages scans asked to have read ahead */
+    public long getRequestCount() {
+        return requested.get();
+    }
+
+    /** @return the number of pages read from their files ahead of a scan */
+    public long getPagesRead() {
+        return pagesRead.get();
+    }
+
+    /** @return how many times a scan's window grew */
+    public long getGrowCount() {
+        return grows.get();
+    }
+
+    /** @return how many times a scan's window shrank */
+    public long getShrinkCount() {
+        return shrinks.get();
+    }
+
+    /**
+     * Read-ahead state of one scan. Like the scan, it is used by one
+     * thread.
+     */
+    public class Scan {
+        private final int tableId;
+        private final BufferAccessStrategy strategy;
+        /** a ring recycles its frames; reading further ahead than it holds wastes the reads */
+        private final int limit;
+        private int window;
+        private int lastPage = -1;
+        /** pages requested and not reached yet, in page order */
+        private final ArrayDeque<Request> inFlight = new ArrayDeque<Request>();
+        /** the first page not requested yet */
+        private int nextRequest;
+
+        Scan(int tableId, BufferAccessStrategy strategy) {
+            this.tableId = tableId;
+            this.strategy = strategy;
+            limit = strategy == null ? maxWindow
+                : Math.max(1, Math.min(maxWindow, strategy.getRingSize() - 1));
+            window = Math.min(INITIAL_WINDOW, limit);
+        }
+
+        /**
+         * Tell the prefetcher the scan is about to read the given page;
+         * pages after it are requested if the scan is sequential.
+         *
+         * @param pgNo the page the scan reads next
+         * @param numPages the number of pages in the table
+         */
+        public void beforeRead(int pgNo, int numPages) {
+            if (pgNo != lastPage + 1 || lastPage < 0) {
+                // a new run: wait for the next page to confirm it
+                inFlight.clear();
+                window = Math.min(INITIAL_WINDOW, limit);
+                nextRequest = pgNo + 1;
+                lastPage = pgNo;
+                return;
+            }
+            lastPage = pgNo;
+            while (!inFlight.isEmpty() && inFlight.peek().pgNo < pgNo)
+                inFlight.poll();
+            Request reached = inFlight.peek();
+            if (reached != null && reached.pgNo == pgNo) {
+                inFlight.poll();
+                if (!reached.future.isDone()) {
+                    // the scan is faster than the reads: read further ahead
+                    if (window < limit) {
+                        window = Math.min(limit, window * 2);
+                        grows.incrementAndGet();
+                    }
+                } else if (!pool.isCached(reached.pid)) {
+                    // the page did not stay until the scan came: too far ahead
+                    if (window > 1) {
+                        window = Math.max(1, window / 2);
+                        shrinks.incrementAndGet();
+                    }
+                }
+            }
+            nextRequest = Math.max(nextRequest, pgNo + 1);
+            int end = Math.min(pgNo + window, numPages - 1);
+            for (; nextRequest <= end; nextRequest++) {
+                PageId pid = new HeapPageId(tableId, nextRequest);
+                try {
+                    inFlight.add(new Request(nextRequest, pid, submit(pid, strategy)));
+                } catch (RejectedExecutionException e) {
+                    // the prefetcher was stopped
+                    return;
+                }
+            }
+        }
+
+        /** @return the number of pages the scan currently reads ahead */
+        public int getWindow() {
+            return window;
+        }
+    }
+
+    private static class Request {
+        final int pgNo;
+        final PageId pid;
+        final Future<?> future;
+
+        Request(int pgNo, PageId pid, Future<?> future) {
+            this.pgNo = pgNo;
+            this.pid = pid;
+            this.future = future;
+        }
+    }
+}
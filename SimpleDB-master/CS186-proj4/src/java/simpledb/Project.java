@@ -45,6 +45,11 @@ public class Project extends Operator {
         return td;
     }
 
+    /** @return the ids of the child's fields this operator projects out, in order */
+    public List<Integer> getFieldList() {
+        return outFieldIds;
+    }
+
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child.open();
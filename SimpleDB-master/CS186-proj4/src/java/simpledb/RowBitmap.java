@@ -0,0 +1,509 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * A compressed set of row numbers, in the manner of a Roaring bitmap. The
+ * numbers are split by their upper 16 bits into chunks of 65536; each
+ * chunk that has any rows is a container of their lower 16 bits: a sorted
+ * array while it holds at most {@link #ARRAY_MAX} of them, a bitmap of
+ * 65536 bits (8KB) once it holds more. A sparse set takes two bytes a row
+ * and a dense one a bit a row, and and, or and andNot work a container at
+ * a time, most of them word by word.
+ * <p>
+ * A RowBitmap is not thread-safe.
+ *
+ * @see BitmapIndex
+ */
+public class RowBitmap {
+
+    /** the most rows an array container holds; at 4096 it is as big as a bitmap */
+    static final int ARRAY_MAX = 4096;
+
+    /** the upper 16 bits of each container's rows, in order */
+    private int[] keys;
+    private Container[] containers;
+    private int size;
+
+    public RowBitmap() {
+        keys = new int[4];
+        containers = new Container[4];
+    }
+
+    private RowBitmap(int capacity) {
+        keys = new int[Math.max(4, capacity)];
+        containers = new Container[keys.length];
+    }
+
+    /** @return the position of the container of the key, or -(insertion point) - 1 */
+    private int find(int key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void append(int key, Container c) {
+        if (c == null || c.cardinality() == 0)
+            return;
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        keys[size] = key;
+        containers[size++] = c;
+    }
+
+    public void add(int row) {
+        int key = row >>> 16;
+        int i = find(key);
+        if (i < 0) {
+            i = -i - 1;
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                containers = Arrays.copyOf(containers, size * 2);
+            }
+            System.arraycopy(keys, i, keys, i + 1, size - i);
+            System.arraycopy(containers, i, containers, i + 1, size - i);
+            keys[i] = key;
+            containers[i] = new ArrayContainer();
+            size++;
+        }
+        containers[i] = containers[i].add((char) row);
+    }
+
+    public void remove(int row) {
+        int i = find(row >>> 16);
+        if (i < 0)
+            return;
+        containers[i] = containers[i].remove((char) row);
+        if (containers[i].cardinality() == 0) {
+            System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+            System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+            containers[--size] = null;
+        }
+    }
+
+    public boolean contains(int row) {
+        int i = find(row >>> 16);
+        return i >= 0 && containers[i].contains((char) row);
+    }
+
+    /** @return the number of rows in the set */
+    public int cardinality() {
+        int n = 0;
+        for (int i = 0; i < size; i++)
+            n += containers[i].cardinality();
+        return n;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** @return the rows in both sets */
+    public RowBitmap and(RowBitmap other) {
+        RowBitmap out = new RowBitmap(Math.min(size, other.size));
+        int i = 0, j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                out.append(keys[i], containers[i].and(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return out;
+    }
+
+    /** @return the rows in either set */
+    public RowBitmap or(RowBitmap other) {
+        RowBitmap out = new RowBitmap(size + other.size);
+        int i = 0, j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                out.append(keys[i], containers[i].copy());
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                out.append(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                out.append(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return out;
+    }
+
+    /** @return the rows in this set and not in the other */
+    public RowBitmap andNot(RowBitmap other) {
+        RowBitmap out = new RowBitmap(size);
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i])
+                j++;
+            if (j < other.size && other.keys[j] == keys[i])
+                out.append(keys[i], containers[i].andNot(other.containers[j]));
+            else
+                out.append(keys[i], containers[i].copy());
+        }
+        return out;
+    }
+
+    /** @return a copy of this set */
+    public RowBitmap copy() {
+        RowBitmap out = new RowBitmap(size);
+        for (int i = 0; i < size; i++)
+            out.append(keys[i], containers[i].copy());
+        return out;
+    }
+
+    /** @return the bytes the containers take, roughly */
+    public long sizeInBytes() {
+        long n = 8L * size;
+        for (int i = 0; i < size; i++)
+            n += containers[i].sizeInBytes();
+        return n;
+    }
+
+    /** @return a cursor over the rows, in increasing order */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /** Walks the rows of a RowBitmap in increasing order. */
+    public class Cursor {
+        private int container;
+        /** the next position in the container to look from */
+        private int at;
+
+        /** @return the next row, or -1 after the last */
+        public int next() {
+            while (container < size) {
+                int low = containers[container].nextFrom(at);
+                if (low >= 0) {
+                    at = low + 1;
+                    return keys[container] << 16 | low;
+                }
+                container++;
+                at = 0;
+            }
+            return -1;
+        }
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof RowBitmap))
+            return false;
+        RowBitmap b = (RowBitmap) o;
+        if (b.size != size)
+            return false;
+        for (int i = 0; i < size; i++) {
+            if (keys[i] != b.keys[i] || !containers[i].sameRows(b.containers[i]))
+                return false;
+        }
+        return true;
+    }
+
+    public int hashCode() {
+        return cardinality();
+    }
+
+    /**
+     * The lower 16 bits of the rows of one chunk. Changes return the
+     * container that holds the result, which may be a new one of the
+     * other kind.
+     */
+    private static abstract class Container {
+        abstract int cardinality();
+
+        abstract boolean contains(char low);
+
+        abstract Container add(char low);
+
+        abstract Container remove(char low);
+
+        /** @return the least row at or after from (a position in 0..65536), or -1 */
+        abstract int nextFrom(int from);
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container andNot(Container other);
+
+        abstract Container copy();
+
+        abstract long sizeInBytes();
+
+        boolean sameRows(Container other) {
+            if (other.cardinality() != cardinality())
+                return false;
+            for (int r = nextFrom(0); r >= 0; r = nextFrom(r + 1)) {
+                if (!other.contains((char) r))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /** A sorted array of up to ARRAY_MAX rows. */
+    private static final class ArrayContainer extends Container {
+        private char[] rows;
+        private int n;
+
+        ArrayContainer() {
+            rows = new char[4];
+        }
+
+        ArrayContainer(char[] rows, int n) {
+            this.rows = rows;
+            this.n = n;
+        }
+
+        int cardinality() {
+            return n;
+        }
+
+        private int find(char low) {
+            return Arrays.binarySearch(rows, 0, n, low);
+        }
+
+        boolean contains(char low) {
+            return find(low) >= 0;
+        }
+
+        Container add(char low) {
+            int i = find(low);
+            if (i >= 0)
+                return this;
+            if (n == ARRAY_MAX)
+                return toBitmap().add(low);
+            i = -i - 1;
+            if (n == rows.length)
+                rows = Arrays.copyOf(rows, Math.min(ARRAY_MAX, Math.max(4, n * 2)));
+            System.arraycopy(rows, i, rows, i + 1, n - i);
+            rows[i] = low;
+            n++;
+            return this;
+        }
+
+        Container remove(char low) {
+            int i = find(low);
+            if (i >= 0) {
+                System.arraycopy(rows, i + 1, rows, i, n - i - 1);
+                n--;
+                // give back the room of a container that lost most of its rows
+                if (n < rows.length / 4 && rows.length > 4)
+                    rows = Arrays.copyOf(rows, Math.max(4, n * 2));
+            }
+            return this;
+        }
+
+        int nextFrom(int from) {
+            if (from > 0xffff)
+                return -1;
+            int i = find((char) from);
+            if (i < 0)
+                i = -i - 1;
+            return i < n ? rows[i] : -1;
+        }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer b = new BitmapContainer();
+            for (int i = 0; i < n; i++)
+                b.words[rows[i] >>> 6] |= 1L << rows[i];
+            b.n = n;
+            return b;
+        }
+
+        Container and(Container other) {
+            char[] out = new char[Math.min(n, other.cardinality())];
+            int k = 0;
+            if (other instanceof ArrayContainer) {
+                ArrayContainer a = (ArrayContainer) other;
+                int i = 0, j = 0;
+                while (i < n && j < a.n) {
+                    if (rows[i] < a.rows[j])
+                        i++;
+                    else if (rows[i] > a.rows[j])
+                        j++;
+                    else {
+                        out[k++] = rows[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < n; i++) {
+                    if (other.contains(rows[i]))
+                        out[k++] = rows[i];
+                }
+            }
+            return new ArrayContainer(out, k);
+        }
+
+        Container or(Container other) {
+            if (other instanceof BitmapContainer)
+                return other.or(this);
+            ArrayContainer a = (ArrayContainer) other;
+            if (n + a.n > ARRAY_MAX) {
+                BitmapContainer b = toBitmap();
+                b.orWith(a);
+                return b.shrink();
+            }
+            char[] out = new char[n + a.n];
+            int i = 0, j = 0, k = 0;
+            while (i < n || j < a.n) {
+                if (j == a.n || (i < n && rows[i] < a.rows[j]))
+                    out[k++] = rows[i++];
+                else if (i == n || rows[i] > a.rows[j])
+                    out[k++] = a.rows[j++];
+                else {
+                    out[k++] = rows[i++];
+                    j++;
+                }
+            }
+            return new ArrayContainer(out, k);
+        }
+
+        Container andNot(Container other) {
+            char[] out = new char[n];
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                if (!other.contains(rows[i]))
+                    out[k++] = rows[i];
+            }
+            return new ArrayContainer(out, k);
+        }
+
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(rows, Math.max(n, 4)), n);
+        }
+
+        long sizeInBytes() {
+            return 2L * rows.length;
+        }
+    }
+
+    /** A bitmap of all 65536 rows of the chunk, for more than ARRAY_MAX of them. */
+    private static final class BitmapContainer extends Container {
+        final long[] words = new long[1024];
+        int n;
+
+        int cardinality() {
+            return n;
+        }
+
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        Container add(char low) {
+            long w = words[low >>> 6];
+            long bit = 1L << low;
+            if ((w & bit) == 0) {
+                words[low >>> 6] = w | bit;
+                n++;
+            }
+            return this;
+        }
+
+        Container remove(char low) {
+            long w = words[low >>> 6];
+            long bit = 1L << low;
+            if ((w & bit) != 0) {
+                words[low >>> 6] = w & ~bit;
+                n--;
+            }
+            return shrink();
+        }
+
+        int nextFrom(int from) {
+            int i = from >>> 6;
+            if (i >= words.length)
+                return -1;
+            long w = words[i] & (-1L << from);
+            while (w == 0) {
+                if (++i == words.length)
+                    return -1;
+                w = words[i];
+            }
+            return i * 64 + Long.numberOfTrailingZeros(w);
+        }
+
+        /** @return this, or an array of the same rows if they fit in one */
+        Container shrink() {
+            if (n > ARRAY_MAX)
+                return this;
+            char[] rows = new char[Math.max(n, 4)];
+            int k = 0;
+            for (int r = nextFrom(0); r >= 0; r = nextFrom(r + 1))
+                rows[k++] = (char) r;
+            return new ArrayContainer(rows, k);
+        }
+
+        private void count() {
+            n = 0;
+            for (long w : words)
+                n += Long.bitCount(w);
+        }
+
+        void orWith(ArrayContainer a) {
+            for (int i = 0; i < a.n; i++)
+                words[a.rows[i] >>> 6] |= 1L << a.rows[i];
+            count();
+        }
+
+        Container and(Container other) {
+            if (other instanceof ArrayContainer)
+                return other.and(this);
+            BitmapContainer b = (BitmapContainer) other;
+            BitmapContainer out = new BitmapContainer();
+            for (int i = 0; i < words.length; i++)
+                out.words[i] = words[i] & b.words[i];
+            out.count();
+            return out.shrink();
+        }
+
+        Container or(Container other) {
+            BitmapContainer out = (BitmapContainer) copy();
+            if (other instanceof ArrayContainer) {
+                out.orWith((ArrayContainer) other);
+                return out;
+            }
+            BitmapContainer b = (BitmapContainer) other;
+            for (int i = 0; i < words.length; i++)
+                out.words[i] |= b.words[i];
+            out.count();
+            return out;
+        }
+
+        Container andNot(Container other) {
+            BitmapContainer out = (BitmapContainer) copy();
+            if (other instanceof ArrayContainer) {
+                ArrayContainer a = (ArrayContainer) other;
+                for (int i = 0; i < a.n; i++)
+                    out.words[a.rows[i] >>> 6] &= ~(1L << a.rows[i]);
+            } else {
+                BitmapContainer b = (BitmapContainer) other;
+                for (int i = 0; i < words.length; i++)
+                    out.words[i] &= ~b.words[i];
+            }
+            out.count();
+            return out.shrink();
+        }
+
+        Container copy() {
+            BitmapContainer out = new BitmapContainer();
+            System.arraycopy(words, 0, out.words, 0, words.length);
+            out.n = n;
+            return out;
+        }
+
+        long sizeInBytes() {
+            return 8L * words.length;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * A secondary index of one column of a table stored in a HeapFile (or a
+ * file of one of its formats): a BTreeFile of entries (key, page, slot),
+ * one for each tuple, keyed on the column's value and pointing at the
+ * tuple's RecordId. Indexes are recorded in the {@link Catalog}, and
+ * BufferPool.insertTuple and deleteTuple keep them up to date in the same
+ * transaction as the table, so they are locked, logged and rolled back
+ * with it. {@link IndexScan} reads a table through one.
+ * <p>
+ * Entries with the same key are kept in no particular order, and a delete
+ * walks them to find the one of its tuple, so an index suits a column with
+ * many distinct values.
+ *
+ * @see Catalog#addIndex
+ */
+public class SecondaryIndex {
+
+    private final int tableId;
+    private final int field;
+    private final BTreeFile file;
+
+    /**
+     * @param tableId the table indexed
+     * @param field the column indexed
+     * @param file the entries, in a BTreeFile made by {@link #indexFile}
+     */
+    public SecondaryIndex(int tableId, int field, BTreeFile file) {
+        this.tableId = tableId;
+        this.field = field;
+        this.file = file;
+    }
+
+    /** @return the schema of the entries of an index of keys of the given type */
+    public static TupleDesc entryDesc(Type keyType) {
+        return new TupleDesc(new Type[] { keyType, Type.INT_TYPE, Type.INT_TYPE },
+                new String[] { "key", "page", "slot" });
+    }
+
+    /**
+     * @return a BTreeFile backed by the given file, for the entries of an
+     *         index of keys of the given type
+     */
+    public static BTreeFile indexFile(File f, Type keyType) {
+        return new BTreeFile(f, 0, entryDesc(keyType));
+    }
+
+    public int getTableId() {
+        return tableId;
+    }
+
+    /** @return the column indexed */
+    public int getField() {
+        return field;
+    }
+
+    /** @return the BTreeFile of the entries */
+    public BTreeFile getFile() {
+        return file;
+    }
+
+    /** @return the entry of a tuple of the table, which must have its RecordId */
+    Tuple entry(Tuple t) {
+        RecordId rid = t.getRecordId();
+        Tuple e = new Tuple(file.getTupleDesc());
+        e.setField(0, t.getField(field));
+        e.setField(1, new IntField(rid.getPageId().pageNumber()));
+        e.setField(2, new IntField(rid.tupleno()));
+        return e;
+    }
+
+    /**
+     * Adds an entry for every tuple of the table, for an index added to a
+     * table that has tuples. The table is read in one transaction, and the
+     * entries are inserted in transactions of their own, committed every
+     * batch entries so that the buffer pool holds their pages.
+     */
+    public void build(int batch) throws DbException, IOException, TransactionAbortedException {
+        Transaction scan = new Transaction();
+        scan.start();
+        DbFileIterator it = Database.getCatalog().getDbFile(tableId).iterator(scan.getId());
+        Transaction insert = null;
+        int n = 0;
+        it.open();
+        while (it.hasNext()) {
+            if (n++ % batch == 0) {
+                if (insert != null)
+                    insert.commit();
+                insert = new Transaction();
+                insert.start();
+            }
+            Database.getBufferPool().insertTuple(insert.getId(), file.getId(), entry(it.next()));
+        }
+        it.close();
+        if (insert != null)
+            insert.commit();
+        scan.commit();
+    }
+}
@@ -14,6 +14,10 @@ public class SeqScan implements DbIterator {
      private int tableid;
      private DbFileIterator iter;
      private TransactionId tid;
+     /** the columns the plan reads; null for all of them */
+     private int[] columns;
+     /** predicates a Filter above applies, which pages may be skipped by */
+     private final ArrayList<Predicate> predicates = new ArrayList<Predicate>();
      /**
       * Creates a sequential scan over the specified table as a part of the
       * specified transaction.
@@ -75,9 +79,50 @@ public class SeqScan implements DbIterator {
 	  this(tid, tableid, Database.getCatalog().getTableName(tableid));
      }
 
+     /**
+      * Tell the scan that only the given columns of its tuples are used, so
+      * that a file stored by column need not decode the others. Tuples
+      * stay whole; a field not named is still there if it is asked for.
+      *
+      * @param columns the used columns, or null for all of them
+      * @see ColumnPruning
+      */
+     public void setColumns(int[] columns) {
+	  this.columns = columns;
+     }
+
+     /** @return the columns the scan was told are used, or null for all */
+     public int[] getColumns() {
+	  return columns;
+     }
+
+     /**
+      * Tell the scan a predicate on its table that a Filter above it
+      * applies, so that a HeapFile can skip the pages whose zone map shows
+      * that none of their tuples meets it. Like setColumns, this is only a
+      * hint: the tuples of pages that are read are all returned.
+      *
+      * @param p a predicate on a field of the scan's tuples
+      * @see HeapFile#iterator(TransactionId, int[], Predicate[])
+      */
+     public void addPredicate(Predicate p) {
+	  predicates.add(p);
+     }
+
+     /** @return the predicates the scan was told of */
+     public List<Predicate> getPredicates() {
+	  return Collections.unmodifiableList(predicates);
+     }
+
      public void open() throws DbException, TransactionAbortedException {
 	  DbFile f = Database.getCatalog().getDbFile(tableid);
-	  iter = f.iterator(tid);
+	  if (!predicates.isEmpty() && f instanceof HeapFile)
+	       iter = ((HeapFile) f).iterator(tid, columns,
+			 predicates.toArray(new Predicate[predicates.size()]));
+	  else if (columns != null && f instanceof HeapFile)
+	       iter = ((HeapFile) f).iterator(tid, columns);
+	  else
+	       iter = f.iterator(tid);
 	  iter.open();
      }
 
@@ -55,7 +55,9 @@ public class StringAggregator implements Aggregator {
 	       if ( m_gbfieldtype == Type.INT_TYPE )
 		    group_val = ((IntField)tup.getField( m_gbfield )).getValue();
 	       else
-		    group_val = ((StringField)tup.getField( m_gbfield )).getValue();
+		    // the field itself, so that dictionary-encoded strings
+		    // group by number and are not copied
+		    group_val = tup.getField( m_gbfield );
 	  }
 
 	  // get the value of the aggregate field to be operated on
@@ -137,8 +139,8 @@ public class StringAggregator implements Aggregator {
 		    }
 		    else
 		    {
-			 assert( group_val instanceof String );
-			 f = new StringField( (String)group_val, m_gbfieldtype.getLen() );
+			 assert( group_val instanceof StringField );
+			 f = (Field)group_val;
 		    }
 		    
 		    // then insert (groupval, aggregateval) as a tuple
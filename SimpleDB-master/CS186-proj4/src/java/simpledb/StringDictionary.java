@@ -0,0 +1,75 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * The dictionary of one string column of a DictHeapFile: values numbered
+ * in the order they were first stored. Codes are never reused or removed,
+ * so a code written to a page always means the same value.
+ *
+ * @see DictHeapFile
+ */
+class StringDictionary {
+
+    private final DictHeapFile file;
+    private final int column;
+    private final ArrayList<DictStringField> fields = new ArrayList<DictStringField>();
+    private final HashMap<String, Integer> codes = new HashMap<String, Integer>();
+
+    StringDictionary(DictHeapFile file, int column) {
+        this.file = file;
+        this.column = column;
+    }
+
+    /** @return the field of the given code, shared by every tuple that has it */
+    synchronized DictStringField field(int code) {
+        return fields.get(code);
+    }
+
+    /** @return the number of values in the dictionary */
+    synchronized int size() {
+        return fields.size();
+    }
+
+    /**
+     * @return the code of the value, or -1 if no stored tuple has it; the
+     *         value is cut to Type.STRING_LEN as StringField cuts it
+     */
+    synchronized int lookup(String value) {
+        Integer code = codes.get(truncate(value));
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * @return the field comparing equal to value: the dictionary's own
+     *         field, or a field with code -1 if no stored tuple has it
+     */
+    synchronized DictStringField fieldFor(String value) {
+        int code = lookup(value);
+        return code >= 0 ? fields.get(code) : new DictStringField(this, -1, truncate(value));
+    }
+
+    /**
+     * @return the code of the value, adding the value to the dictionary
+     *         and its file if it is new
+     */
+    synchronized int encode(String value) throws DbException {
+        value = truncate(value);
+        Integer code = codes.get(value);
+        if (code != null)
+            return code;
+        file.appendValue(column, value);
+        add(value);
+        return fields.size() - 1;
+    }
+
+    /** Add a value read back from the dictionary file. */
+    synchronized void add(String value) {
+        codes.put(value, fields.size());
+        fields.add(new DictStringField(this, fields.size(), value));
+    }
+
+    private static String truncate(String value) {
+        return value.length() > Type.STRING_LEN ? value.substring(0, Type.STRING_LEN) : value;
+    }
+}
@@ -67,7 +67,7 @@ public class TableStats {
     static final int NUM_HIST_BINS = 100;
     private int m_tableid;
     private int m_ioCostPerPage;
-    private HeapFile file;
+    private DbFile file;
     private TupleDesc td;
     private int nFields;
     private int nTups;
@@ -97,7 +97,7 @@ public class TableStats {
 	nTups = 0;
 	m_tableid = tableid;
 	m_ioCostPerPage = ioCostPerPage;
-	file = (HeapFile) Database.getCatalog().getDbFile(tableid);
+	file = Database.getCatalog().getDbFile(tableid);
 
 	Transaction trans = new Transaction();
 	TransactionId tid = trans.getId();
@@ -179,7 +179,16 @@ public class TableStats {
      * @return The estimated cost of scanning the table.
      */
     public double estimateScanCost() {
-	return file.numPages()*m_ioCostPerPage;
+	return numPages()*m_ioCostPerPage;
+    }
+
+    /** @return the pages of the table; DbFile does not count them itself */
+    private int numPages() {
+	if (file instanceof BTreeFile)
+	    return ((BTreeFile) file).numPages();
+	if (file instanceof HashFile)
+	    return ((HashFile) file).numPages();
+	return ((HeapFile) file).numPages();
     }
 
     /**
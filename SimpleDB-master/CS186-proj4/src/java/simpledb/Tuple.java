@@ -17,6 +17,19 @@ public class Tuple implements Serializable {
     private TupleDesc tupleSchema;
     private RecordId recordId;
     private static final long serialVersionUID = 1L;
+    /**
+     * For a tuple read from a page: the page image its fields are decoded
+     * from as they are asked for, and where the tuple starts in it. null
+     * once every field has been decoded or one has been set.
+     */
+    private transient byte[] data;
+    private transient int offset;
+    /**
+     * For a tuple read from a page stored by column: where each column
+     * starts in data; offset is then the tuple's slot. null for a page
+     * stored by row.
+     */
+    private transient int[] columns;
 
     /**
      * Create a new tuple with the specified schema (type).
@@ -30,6 +43,37 @@ public class Tuple implements Serializable {
         tupleFields=new Field[td.numFields()];
         tupleSchema=td;
     }
+    /**
+     * Create a tuple stored in a page image in the on-disk format, starting
+     * at offset. Fields are decoded from data the first time they are
+     * asked for; data must not change afterwards.
+     */
+    Tuple(TupleDesc td, byte[] data, int offset) {
+        this(td);
+        this.data = data;
+        this.offset = offset;
+    }
+
+    /**
+     * Create a tuple stored in a page image that keeps each column together,
+     * as PaxPage does: field i is at columns[i] + slot * (length of field
+     * i). Fields are decoded from data the first time they are asked for;
+     * data must not change afterwards.
+     */
+    Tuple(TupleDesc td, byte[] data, int slot, int[] columns) {
+        this(td, data, slot);
+        this.columns = columns;
+    }
+
+    /**
+     * @return true if this tuple was created from the given image at the
+     *   given offset and no field has been set since, so that the image
+     *   still holds it
+     */
+    boolean isStoredAt(byte[] data, int offset) {
+        return this.data == data && this.offset == offset;
+    }
+
     /**
      * @return The TupleDesc representing the schema of this tuple.
      */
@@ -68,6 +112,8 @@ public class Tuple implements Serializable {
      */
     public void setField(int i, Field f) {
         // some code goes here
+        if (data != null)
+            decodeAll();
         tupleFields[i]=f;
     }
 
@@ -79,7 +125,36 @@ public class Tuple implements Serializable {
      */
     public Field getField(int i) {
         // some code goes here
-        return tupleFields[i];
+        Field f = tupleFields[i];
+        byte[] image = data;
+        if (f == null && image != null) {
+            Type type = tupleSchema.getFieldType(i);
+            int at;
+            if (columns != null) {
+                at = columns[i] + offset * type.getLen();
+            } else {
+                at = offset;
+                for (int j = 0; j < i; j++)
+                    at += tupleSchema.getFieldType(j).getLen();
+            }
+            f = type.parse(image, at);
+            tupleFields[i] = f;
+        }
+        return f;
+    }
+
+    /** Decode every field still in the page image, and let go of the image. */
+    private void decodeAll() {
+        for (int i = 0; i < tupleFields.length; i++)
+            getField(i);
+        data = null;
+        columns = null;
+    }
+
+    private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException {
+        if (data != null)
+            decodeAll();
+        out.defaultWriteObject();
     }
 
     /**
@@ -93,6 +168,8 @@ public class Tuple implements Serializable {
     public String toString() {
         // some code goes here
         String descrip = "";
+        if (data != null)
+            decodeAll();
         for (int i =0; i< tupleFields.length;i++){
             if (tupleFields[i]==null){
                 descrip+="null"+"\t";
@@ -112,6 +189,8 @@ public class Tuple implements Serializable {
     public Iterator<Field> fields()
     {
         // some code goes here
+        if (data != null)
+            decodeAll();
         return Arrays.asList(tupleFields).iterator();
     }
 
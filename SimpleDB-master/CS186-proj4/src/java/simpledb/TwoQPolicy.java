@@ -0,0 +1,106 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * Full 2Q replacement (Johnson and Shasha). A page read for the first time
+ * enters the FIFO queue A1in. When it is evicted from there its id is
+ * remembered in the ghost queue A1out; only a page that is read again
+ * while still remembered is admitted to the LRU queue Am. Pages that are
+ * touched once, such as those of a scan, never reach Am and so never push
+ * the hot set out.
+ * <p>
+ * Hits are recorded in an {@link AccessBuffer} without the policy's
+ * monitor, and applied to Am before the queues are next used.
+ */
+class TwoQPolicy implements BufferPool.EvictionPolicy {
+
+    private int kin;
+    private int kout;
+    /** first-time pages, oldest first */
+    private final LinkedHashSet<Integer> a1in;
+    /** ids of pages recently evicted from a1in, oldest first */
+    private final LinkedHashSet<PageId> a1out;
+    /** re-referenced pages, least recently used first */
+    private final LinkedHashSet<Integer> am;
+    private PageId[] pids;
+    /** hits not applied to am yet */
+    private final AccessBuffer accesses = new AccessBuffer();
+    private final AccessBuffer.Sink applyAccess = new AccessBuffer.Sink() {
+        public void apply(int frame) {
+            // hits in a1in are deliberately ignored (correlated references)
+            if (am.remove(frame))
+                am.add(frame);
+        }
+    };
+
+    public TwoQPolicy(int numFrames) {
+        kin = Math.max(1, numFrames / 4);
+        kout = Math.max(1, numFrames / 2);
+        a1in = new LinkedHashSet<Integer>();
+        a1out = new LinkedHashSet<PageId>();
+        am = new LinkedHashSet<Integer>();
+        pids = new PageId[numFrames];
+    }
+
+    public synchronized void pageLoaded(int frame, PageId pid) {
+        accesses.drain(applyAccess);
+        pids[frame] = pid;
+        if (a1out.remove(pid))
+            am.add(frame);
+        else
+            a1in.add(frame);
+    }
+
+    public void pageAccessed(int frame) {
+        while (!accesses.add(frame))
+            drainAccesses();
+    }
+
+    private synchronized void drainAccesses() {
+        accesses.drain(applyAccess);
+    }
+
+    public synchronized void pageRemoved(int frame) {
+        accesses.drain(applyAccess);
+        if (a1in.remove(frame)) {
+            a1out.add(pids[frame]);
+            if (a1out.size() > kout) {
+                Iterator<PageId> it = a1out.iterator();
+                it.next();
+                it.remove();
+            }
+        } else {
+            am.remove(frame);
+        }
+        pids[frame] = null;
+    }
+
+    public synchronized void resized(int numFrames, int capacity) {
+        accesses.drain(applyAccess);
+        kin = Math.max(1, capacity / 4);
+        kout = Math.max(1, capacity / 2);
+        pids = Arrays.copyOf(pids, numFrames);
+    }
+
+    public synchronized int chooseVictim(BufferPool.FrameFilter filter) {
+        accesses.drain(applyAccess);
+        int victim = -1;
+        if (a1in.size() > kin || am.isEmpty())
+            victim = firstEvictable(a1in, filter);
+        if (victim < 0)
+            victim = firstEvictable(am, filter);
+        if (victim < 0)
+            victim = firstEvictable(a1in, filter);
+        return victim;
+    }
+
+    private static int firstEvictable(Collection<Integer> queue,
+            BufferPool.FrameFilter filter) {
+        for (Integer frame : queue) {
+            if (filter.canEvict(frame))
+                return frame;
+        }
+        return -1;
+    }
+}
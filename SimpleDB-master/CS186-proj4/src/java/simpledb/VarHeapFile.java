@@ -0,0 +1,76 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * VarHeapFile is a HeapFile whose pages are VarHeapPages: slotted pages of
+ * variable-length records. Tables of short strings take a fraction of the
+ * space they take as a HeapFile, and scans read that many fewer pages.
+ * Operators see no difference; the file is read, scanned and changed
+ * through the DbFile interface like a HeapFile. Free space is counted in
+ * bytes.
+ * <p>
+ * Pick it for a table in the catalog file by adding "var" after the
+ * schema, e.g. <code>codes (id int, code string) var</code>.
+ *
+ * @see VarHeapPage
+ * @see Catalog#loadSchema
+ */
+public class VarHeapFile extends HeapFile {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a heap file of variable-length records backed by the
+     * specified file.
+     */
+    public VarHeapFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    Page newPage(HeapPageId pid, byte[] data) throws IOException {
+        return new VarHeapPage(pid, data);
+    }
+
+    int freeSpace(Page page) {
+        return ((VarHeapPage) page).getFreeSpace();
+    }
+
+    int emptyPageSpace() {
+        return BufferPool.PAGE_SIZE - VarHeapPage.HEADER_SIZE - VarHeapPage.SLOT_SIZE;
+    }
+
+    int spaceNeeded(Tuple t) {
+        return VarHeapPage.recordSize(t);
+    }
+
+    int minSpaceNeeded() {
+        return VarHeapPage.minRecordSize(getTupleDesc());
+    }
+
+    void insert(Page page, Tuple t) throws DbException {
+        ((VarHeapPage) page).insertTuple(t);
+    }
+
+    void delete(Page page, Tuple t) throws DbException {
+        ((VarHeapPage) page).deleteTuple(t);
+    }
+
+    Iterator<Tuple> tuples(Page page) {
+        return ((VarHeapPage) page).iterator();
+    }
+
+    Tuple tuple(Page page, int slot) {
+        VarHeapPage p = (VarHeapPage) page;
+        return p.isSlotUsed(slot) ? p.getTuple(slot) : null;
+    }
+
+    int maxSlots() {
+        return VarHeapPage.maxSlots(getTupleDesc());
+    }
+
+    int readFreeSpace(int pgNo) throws IOException {
+        return new VarHeapPage(new HeapPageId(getId(), pgNo), readPageData(pgNo)).getFreeSpace();
+    }
+}
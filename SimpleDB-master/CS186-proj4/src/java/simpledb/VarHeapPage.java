@@ -0,0 +1,396 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * VarHeapPage is a page of a VarHeapFile: a slotted page of variable-length
+ * records, so that a string takes the space of its characters rather than
+ * the Type.STRING_LEN bytes it takes on a HeapPage.
+ * <p>
+ * The page starts with a header of two unsigned shorts: the number of
+ * slots, and the offset where the record area starts (0 on a page that
+ * has never held a record, meaning the end of the page). A directory of
+ * one (offset, length) pair of unsigned shorts per slot follows; offset 0
+ * marks a free slot. Records are packed at the end of the page, growing
+ * towards the directory. In a record an INT field takes 4 bytes and a
+ * STRING field an unsigned short length and then its characters, one byte
+ * each.
+ * <p>
+ * A tuple keeps its slot for as long as it is on the page, so RecordIds
+ * stay valid. Deleting a tuple frees its slot; the bytes of its record are
+ * reclaimed when an insert needs them, by packing the remaining records
+ * together again.
+ * <p>
+ * Like HeapPage, the page keeps the bytes it was read from, copying them
+ * only when it is first changed, and decodes a tuple only when it is
+ * asked for.
+ *
+ * @see VarHeapFile
+ */
+public class VarHeapPage implements Page {
+
+    /** bytes of the page header */
+    static final int HEADER_SIZE = 4;
+    /** bytes of one slot directory entry */
+    static final int SLOT_SIZE = 4;
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    /** the image the page was read from; never written to */
+    final byte[] data;
+    /** the current contents of the page; replaced, not written to, while shared */
+    private volatile byte[] image;
+    /** whether image is also referenced elsewhere, and must be copied before a change */
+    private boolean shared = true;
+    /** tuples by slot: decoded ones, and those inserted; null if not decoded yet */
+    private final AtomicReferenceArray<Tuple> tuples;
+    private volatile TransactionId dirty;
+    /** the image the page had when it was last committed; null until changed after that */
+    private byte[] oldData;
+
+    /**
+     * Create a VarHeapPage from the bytes of a page read from disk. A page
+     * of zeros is an empty page. The page keeps data, without copying it;
+     * the caller must not change the array afterwards.
+     *
+     * @throws IOException if data is not a well-formed page
+     */
+    public VarHeapPage(HeapPageId id, byte[] data) throws IOException {
+        this.pid = id;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        if (data.length < BufferPool.PAGE_SIZE)
+            throw new EOFException("page " + id + " is " + data.length + " bytes long");
+        if (BufferPool.PAGE_SIZE > 1 << 16)
+            throw new IOException("pages of " + BufferPool.PAGE_SIZE + " bytes are too large for VarHeapPage");
+        this.data = data;
+        this.image = data;
+        int n = numSlots();
+        int maxSlots = maxSlots(td);
+        if (n > maxSlots || HEADER_SIZE + n * SLOT_SIZE > recordStart())
+            throw new IOException("page " + id + " has a corrupt slot directory");
+        for (int i = 0; i < n; i++) {
+            int off = slotOffset(i);
+            if (off != 0 && (off < recordStart() || off + slotLength(i) > BufferPool.PAGE_SIZE))
+                throw new IOException("page " + id + " has a corrupt slot " + i);
+        }
+        tuples = new AtomicReferenceArray<Tuple>(maxSlots);
+    }
+
+    /** @return the bytes of an empty page */
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.PAGE_SIZE];
+    }
+
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    private static int getShort(byte[] b, int off) {
+        return ((b[off] & 0xff) << 8) | (b[off + 1] & 0xff);
+    }
+
+    private static void putShort(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 8);
+        b[off + 1] = (byte) v;
+    }
+
+    private int numSlots() {
+        return getShort(image, 0);
+    }
+
+    private int recordStart() {
+        int start = getShort(image, 2);
+        return start == 0 ? BufferPool.PAGE_SIZE : start;
+    }
+
+    private int slotOffset(int slot) {
+        return getShort(image, HEADER_SIZE + slot * SLOT_SIZE);
+    }
+
+    private int slotLength(int slot) {
+        return getShort(image, HEADER_SIZE + slot * SLOT_SIZE + 2);
+    }
+
+    private void setSlot(int slot, int offset, int length) {
+        putShort(image, HEADER_SIZE + slot * SLOT_SIZE, offset);
+        putShort(image, HEADER_SIZE + slot * SLOT_SIZE + 2, length);
+    }
+
+    /** @return the number of bytes the tuple takes as a record */
+    static int recordSize(Tuple t) {
+        TupleDesc td = t.getTupleDesc();
+        int size = 0;
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.STRING_TYPE)
+                size += 2 + Math.min(((StringField) t.getField(i)).getValue().length(), Type.STRING_LEN);
+            else
+                size += td.getFieldType(i).getLen();
+        }
+        return size;
+    }
+
+    /**
+     * @return the most slots a page of the given schema can have: a slot is
+     *         added only when every other slot holds a record
+     */
+    static int maxSlots(TupleDesc td) {
+        return (BufferPool.PAGE_SIZE - HEADER_SIZE) / (SLOT_SIZE + minRecordSize(td));
+    }
+
+    /** @return the number of bytes the smallest record of the given schema takes */
+    static int minRecordSize(TupleDesc td) {
+        int size = 0;
+        for (int i = 0; i < td.numFields(); i++)
+            size += td.getFieldType(i) == Type.STRING_TYPE ? 2 : td.getFieldType(i).getLen();
+        return size;
+    }
+
+    /**
+     * @return the largest record that fits on the page, counting the bytes
+     *         of deleted records and the directory entry a new slot needs
+     */
+    public synchronized int getFreeSpace() {
+        int n = numSlots();
+        int used = HEADER_SIZE + n * SLOT_SIZE;
+        boolean freeSlot = false;
+        for (int i = 0; i < n; i++) {
+            if (slotOffset(i) == 0)
+                freeSlot = true;
+            else
+                used += slotLength(i);
+        }
+        if (!freeSlot)
+            used += SLOT_SIZE;
+        return Math.max(0, BufferPool.PAGE_SIZE - used);
+    }
+
+    /** @return the number of tuples on the page */
+    public synchronized int getNumTuples() {
+        int count = 0;
+        for (int i = 0; i < numSlots(); i++) {
+            if (slotOffset(i) != 0)
+                count++;
+        }
+        return count;
+    }
+
+    /** @return the first used slot at or after from, or the number of slots if none is */
+    int nextUsedSlot(int from) {
+        int n = numSlots();
+        while (from < n && slotOffset(from) == 0)
+            from++;
+        return from;
+    }
+
+    /** @return true if the slot holds a record */
+    boolean isSlotUsed(int slot) {
+        return slot >= 0 && slot < numSlots() && slotOffset(slot) != 0;
+    }
+
+    /** @return the tuple in the slot, decoding it if it has not been; the slot must be in use */
+    Tuple getTuple(int slot) {
+        Tuple t = tuples.get(slot);
+        if (t != null)
+            return t;
+        t = decode(slotOffset(slot));
+        t.setRecordId(new RecordId(pid, slot));
+        // another reader may have decoded it first, or a writer replaced it
+        if (!tuples.compareAndSet(slot, null, t) && tuples.get(slot) != null)
+            t = tuples.get(slot);
+        return t;
+    }
+
+    private Tuple decode(int offset) {
+        byte[] image = this.image;
+        Tuple t = new Tuple(td);
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.STRING_TYPE) {
+                int len = getShort(image, offset);
+                t.setField(i, new StringField(new String(image, offset + 2, len), Type.STRING_LEN));
+                offset += 2 + len;
+            } else {
+                t.setField(i, td.getFieldType(i).parse(image, offset));
+                offset += td.getFieldType(i).getLen();
+            }
+        }
+        return t;
+    }
+
+    private void encode(Tuple t, int offset) {
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.STRING_TYPE) {
+                String s = ((StringField) t.getField(i)).getValue();
+                int len = Math.min(s.length(), Type.STRING_LEN);
+                putShort(image, offset, len);
+                // one byte per character, as StringField.serialize writes them
+                for (int c = 0; c < len; c++)
+                    image[offset + 2 + c] = (byte) s.charAt(c);
+                offset += 2 + len;
+            } else {
+                int v = ((IntField) t.getField(i)).getValue();
+                image[offset] = (byte) (v >>> 24);
+                image[offset + 1] = (byte) (v >>> 16);
+                image[offset + 2] = (byte) (v >>> 8);
+                image[offset + 3] = (byte) v;
+                offset += 4;
+            }
+        }
+    }
+
+    /**
+     * Adds the tuple to the page, in the first free slot or a new one, and
+     * sets its RecordId.
+     *
+     * @throws DbException if the page has no room for the tuple, or the
+     *         tuple's schema is not the page's
+     */
+    public synchronized void insertTuple(Tuple t) throws DbException {
+        if (!t.getTupleDesc().equals(td))
+            throw new DbException("Tuple Descriptors do not match");
+        int size = recordSize(t);
+        if (size > getFreeSpace())
+            throw new DbException("Page is full");
+        beforeChange();
+        int n = numSlots();
+        int slot = 0;
+        while (slot < n && slotOffset(slot) != 0)
+            slot++;
+        int dirEnd = HEADER_SIZE + Math.max(n, slot + 1) * SLOT_SIZE;
+        if (recordStart() - size < dirEnd)
+            compact();
+        if (slot == n)
+            putShort(image, 0, n + 1);
+        int offset = recordStart() - size;
+        encode(t, offset);
+        putShort(image, 2, offset);
+        setSlot(slot, offset, size);
+        tuples.set(slot, t);
+        t.setRecordId(new RecordId(pid, slot));
+    }
+
+    /**
+     * Deletes the tuple from the page.
+     *
+     * @throws DbException if the tuple is not on this page, or its slot is
+     *         already free
+     */
+    public synchronized void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId()))
+            throw new DbException("Tuple is not on the current page");
+        int slot = rid.tupleno();
+        if (slot >= numSlots() || slotOffset(slot) == 0)
+            throw new DbException("slot number not used");
+        beforeChange();
+        setSlot(slot, 0, 0);
+        tuples.set(slot, null);
+        // free slots at the end of the directory give their space back
+        int n = numSlots();
+        while (n > 0 && slotOffset(n - 1) == 0)
+            n--;
+        putShort(image, 0, n);
+        if (n == 0)
+            putShort(image, 2, 0);
+    }
+
+    /** Packs the records at the end of the page, leaving slots unchanged. */
+    private void compact() {
+        byte[] old = image.clone();
+        int end = BufferPool.PAGE_SIZE;
+        for (int i = 0; i < numSlots(); i++) {
+            int off = getShort(old, HEADER_SIZE + i * SLOT_SIZE);
+            if (off == 0)
+                continue;
+            int len = getShort(old, HEADER_SIZE + i * SLOT_SIZE + 2);
+            end -= len;
+            System.arraycopy(old, off, image, end, len);
+            setSlot(i, end, len);
+        }
+        putShort(image, 2, end == BufferPool.PAGE_SIZE ? 0 : end);
+    }
+
+    /**
+     * @return a cursor over the tuples of the page, decoding each as it is
+     *         reached; like HeapPageIterator, it reads the slot directory as
+     *         it goes
+     */
+    public Iterator<Tuple> iterator() {
+        return new Iterator<Tuple>() {
+            private int slot = nextUsedSlot(0);
+
+            public boolean hasNext() {
+                return slot < numSlots();
+            }
+
+            public Tuple next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                Tuple t = getTuple(slot);
+                slot = nextUsedSlot(slot + 1);
+                return t;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("remove");
+            }
+        };
+    }
+
+    public synchronized byte[] getPageData() {
+        return image.clone();
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        if (dirty) {
+            takeBeforeImage();
+            this.dirty = tid;
+        } else {
+            this.dirty = null;
+        }
+    }
+
+    public TransactionId isDirty() {
+        return dirty;
+    }
+
+    /** Return a view of this page before it was modified -- used by recovery */
+    public VarHeapPage getBeforeImage() {
+        byte[] before;
+        synchronized (this) {
+            if (oldData == null) {
+                oldData = image;
+                shared = true;
+            }
+            before = oldData;
+        }
+        try {
+            return new VarHeapPage(pid, before);
+        } catch (IOException e) {
+            // we parsed it OK before
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Makes the current contents the before-image, copying nothing. */
+    public synchronized void setBeforeImage() {
+        oldData = null;
+    }
+
+    private synchronized void takeBeforeImage() {
+        if (oldData == null) {
+            oldData = image;
+            shared = true;
+        }
+    }
+
+    /** Called before every change to image. */
+    private void beforeChange() {
+        takeBeforeImage();
+        if (shared) {
+            image = image.clone();
+            shared = false;
+        }
+    }
+}
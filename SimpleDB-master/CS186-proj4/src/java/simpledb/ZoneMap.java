@@ -0,0 +1,225 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * ZoneMap records, for each page of a HeapFile and each int column of its
+ * table, the least and greatest value on the page, so that a scan with a
+ * range or equality predicate skips the pages that cannot hold a match.
+ * On a table filled in the order of a column, like a timestamp, each page
+ * covers a narrow range of it, and a range filter on it reads only the
+ * pages of that range.
+ * <p>
+ * A zone may be wider than the values on its page, never narrower. An
+ * insert widens the zone of its page at once; a delete narrows it only
+ * when the page is written, at commit, since an abort brings the tuple
+ * back. Once the map is loaded, every page HeapFile writes, including
+ * before-images written back by recovery, sets the zone of that page from
+ * its tuples; until then writes leave the map alone, and the first of
+ * them deletes the map file. Pages whose zone is not known yet, as in a
+ * table written by HeapFileEncoder, are never skipped; a scan that reads
+ * one while no transaction has changed it learns its zone. Tables with no
+ * int columns have no map.
+ * <p>
+ * The map is kept in a file next to the table, written when the HeapFile
+ * is closed. The file is deleted when it is read, so after a crash there
+ * is none, and a file older than its table is not trusted; either way
+ * the zones are learned again.
+ *
+ * @see HeapFile#iterator(TransactionId, int[], Predicate[])
+ */
+class ZoneMap {
+
+    private final File file;
+    /** the int columns of the table, which have zones */
+    private final int[] columns;
+    /** the position of each column's zone among a page's, or -1 if it has none */
+    private final int[] zoneOf;
+    /** the least and greatest value of each page and column, by page * columns.length + zone */
+    private int[] min;
+    private int[] max;
+    /** whether the zones of each page are known */
+    private boolean[] known;
+    private int numPages;
+    /** whether the zones differ from the map file */
+    private boolean changed;
+
+    private ZoneMap(File file, TupleDesc td) {
+        this.file = file;
+        zoneOf = new int[td.numFields()];
+        int n = 0;
+        for (int i = 0; i < zoneOf.length; i++)
+            zoneOf[i] = td.getFieldType(i) == Type.INT_TYPE ? n++ : -1;
+        columns = new int[n];
+        for (int i = 0; i < zoneOf.length; i++) {
+            if (zoneOf[i] >= 0)
+                columns[zoneOf[i]] = i;
+        }
+        known = new boolean[16];
+        min = new int[known.length * n];
+        max = new int[known.length * n];
+    }
+
+    /**
+     * Loads the map of the given table from its map file, if the file is
+     * up to date, and deletes the file. Zones the file does not have are
+     * unknown. The map of a table with no int columns is empty, and has no
+     * file.
+     */
+    static ZoneMap load(HeapFile table) throws IOException {
+        File file = HeapFile.zoneMapFile(table.getFile());
+        ZoneMap map = new ZoneMap(file, table.getTupleDesc());
+        if (map.columns.length == 0 || !file.exists())
+            return map;
+        if (file.lastModified() >= table.getFile().lastModified()) {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            try {
+                int pages = in.readInt();
+                if (in.readInt() == map.columns.length) {
+                    for (int p = 0; p < pages; p++) {
+                        if (!in.readBoolean())
+                            continue;
+                        map.grow(p);
+                        for (int z = 0; z < map.columns.length; z++) {
+                            map.min[p * map.columns.length + z] = in.readInt();
+                            map.max[p * map.columns.length + z] = in.readInt();
+                        }
+                        map.known[p] = true;
+                    }
+                }
+            } catch (EOFException e) {
+                Arrays.fill(map.known, false);
+            } finally {
+                in.close();
+            }
+        }
+        // from now on the zones change without the file
+        file.delete();
+        map.changed = true;
+        return map;
+    }
+
+    /** Makes room for the zones of the page. */
+    private void grow(int pgNo) {
+        if (pgNo >= known.length) {
+            int size = Math.max(pgNo + 1, known.length * 2);
+            known = Arrays.copyOf(known, size);
+            min = Arrays.copyOf(min, size * columns.length);
+            max = Arrays.copyOf(max, size * columns.length);
+        }
+        numPages = Math.max(numPages, pgNo + 1);
+    }
+
+    /** @return the int columns, which a scan decodes to learn a page's zones */
+    int[] columns() {
+        return columns;
+    }
+
+    /** Sets the zones of a page from its tuples, as the page is written or read. */
+    synchronized void set(int pgNo, Iterator<Tuple> tuples) {
+        grow(pgNo);
+        int at = pgNo * columns.length;
+        Arrays.fill(min, at, at + columns.length, Integer.MAX_VALUE);
+        Arrays.fill(max, at, at + columns.length, Integer.MIN_VALUE);
+        known[pgNo] = true;
+        while (tuples.hasNext())
+            widen(pgNo, tuples.next());
+        changed = true;
+    }
+
+    /** Widens the zones of a page, if they are known, to take the tuple. */
+    synchronized void widen(int pgNo, Tuple t) {
+        if (pgNo >= numPages || !known[pgNo])
+            return;
+        int at = pgNo * columns.length;
+        for (int z = 0; z < columns.length; z++) {
+            int v = ((IntField) t.getField(columns[z])).getValue();
+            if (v < min[at + z])
+                min[at + z] = v;
+            if (v > max[at + z])
+                max[at + z] = v;
+        }
+        changed = true;
+    }
+
+    /** @return whether the zones of the page are known */
+    synchronized boolean isKnown(int pgNo) {
+        return pgNo < numPages && known[pgNo];
+    }
+
+    /**
+     * @return whether a tuple of the page may meet all the predicates; true
+     *         if its zones are not known, or none of the predicates is a
+     *         comparison with an int on an int column
+     */
+    synchronized boolean mayMatch(int pgNo, Predicate[] predicates) {
+        if (pgNo >= numPages || !known[pgNo])
+            return true;
+        int at = pgNo * columns.length;
+        for (Predicate p : predicates) {
+            int z = zoneOf[p.getField()];
+            if (z < 0 || !(p.getOperand() instanceof IntField))
+                continue;
+            int lo = min[at + z];
+            int hi = max[at + z];
+            if (lo > hi)
+                return false; // no tuples
+            int v = ((IntField) p.getOperand()).getValue();
+            boolean may;
+            switch (p.getOp()) {
+            case EQUALS:
+                may = lo <= v && v <= hi;
+                break;
+            case GREATER_THAN:
+                may = hi > v;
+                break;
+            case GREATER_THAN_OR_EQ:
+                may = hi >= v;
+                break;
+            case LESS_THAN:
+                may = lo < v;
+                break;
+            case LESS_THAN_OR_EQ:
+                may = lo <= v;
+                break;
+            case NOT_EQUALS:
+                may = lo != v || hi != v;
+                break;
+            default:
+                may = true;
+            }
+            if (!may)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Write the map to its file, if it changed since it was read and the
+     * table has int columns.
+     */
+    synchronized void save() throws IOException {
+        if (!changed || columns.length == 0)
+            return;
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(numPages);
+            out.writeInt(columns.length);
+            for (int p = 0; p < numPages; p++) {
+                out.writeBoolean(known[p]);
+                if (!known[p])
+                    continue;
+                for (int z = 0; z < columns.length; z++) {
+                    out.writeInt(min[p * columns.length + z]);
+                    out.writeInt(max[p * columns.length + z]);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        changed = false;
+    }
+}
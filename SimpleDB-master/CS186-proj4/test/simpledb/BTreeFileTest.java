@@ -0,0 +1,174 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BTreeFileTest extends SimpleDbTestBase {
+
+    /** keyed on the string, so that pages hold few keys and trees grow tall */
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[] { Type.INT_TYPE, Type.STRING_TYPE },
+            new String[] { "id", "name" });
+    private static final int KEY = 1;
+    /** keys 0 to TUPLES / 2 - 1, each twice */
+    private static final int TUPLES = 3000;
+
+    private static StringField key(int i) {
+        return new StringField(String.format("k%05d", i), Type.STRING_LEN);
+    }
+
+    private static Tuple tuple(int id, int key) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(id));
+        t.setField(1, key(key));
+        return t;
+    }
+
+    private static BTreeFile open(File f) {
+        BTreeFile bf = new BTreeFile(f, KEY, TD);
+        Database.getCatalog().addTable(bf, SystemTestUtil.getUUID());
+        return bf;
+    }
+
+    /** @return a tree of TUPLES tuples, inserted in random order */
+    private static BTreeFile create() throws Exception {
+        File f = File.createTempFile("btree", ".dat");
+        f.deleteOnExit();
+        BTreeFile bf = open(f);
+        // room for the pages a transaction of random inserts dirties
+        Database.resetBufferPool(500);
+        ArrayList<Integer> ids = new ArrayList<Integer>();
+        for (int i = 0; i < TUPLES; i++)
+            ids.add(i);
+        Collections.shuffle(ids, new Random(3));
+        Transaction t = null;
+        for (int i = 0; i < TUPLES; i++) {
+            if (i % 100 == 0) {
+                if (t != null)
+                    t.commit();
+                t = new Transaction();
+                t.start();
+            }
+            int id = ids.get(i);
+            Database.getBufferPool().insertTuple(t.getId(), bf.getId(), tuple(id, id / 2));
+        }
+        t.commit();
+        return bf;
+    }
+
+    private static ArrayList<Tuple> run(DbIterator it) throws Exception {
+        ArrayList<Tuple> out = new ArrayList<Tuple>();
+        it.open();
+        while (it.hasNext())
+            out.add(it.next());
+        it.close();
+        return out;
+    }
+
+    /**
+     * Tuples scan back in key order, from a tree two internal levels deep.
+     */
+    @Test public void insertAndScan() throws Exception {
+        BTreeFile bf = create();
+        TransactionId tid = new TransactionId();
+        ArrayList<Tuple> tuples = run(new SeqScan(tid, bf.getId(), ""));
+        assertEquals(TUPLES, tuples.size());
+        boolean[] seen = new boolean[TUPLES];
+        for (int i = 0; i < TUPLES; i++) {
+            Tuple t = tuples.get(i);
+            assertEquals(key(i / 2), t.getField(KEY));
+            seen[((IntField) t.getField(0)).getValue()] = true;
+        }
+        for (boolean s : seen)
+            assertTrue(s);
+
+        BTreeHeaderPage header = (BTreeHeaderPage) Database.getBufferPool().getPage(
+                tid, new BTreePageId(bf.getId(), 0, BTreePageId.HEADER), Permissions.READ_ONLY);
+        BTreeInternalPage root = (BTreeInternalPage) Database.getBufferPool().getPage(
+                tid, header.getRootId(), Permissions.READ_ONLY);
+        assertEquals(BTreePageId.INTERNAL, root.getChildId(0).category());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * An index scan returns what a filter over the whole table does, and
+     * an equality lookup reads a page per level and the leaves of the
+     * answer.
+     */
+    @Test public void indexScan() throws Exception {
+        BTreeFile bf = create();
+        Predicate.Op[] ops = { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN,
+                Predicate.Op.LESS_THAN_OR_EQ, Predicate.Op.GREATER_THAN,
+                Predicate.Op.GREATER_THAN_OR_EQ, Predicate.Op.NOT_EQUALS };
+        TransactionId tid = new TransactionId();
+        for (int k : new int[] { -1, 0, 1, 700, TUPLES / 2 - 1, TUPLES }) {
+            for (Predicate.Op op : ops) {
+                Predicate p = new Predicate(KEY, op, key(k));
+                ArrayList<Tuple> index = run(new BTreeIndexScan(tid, bf.getId(), "", p));
+                ArrayList<Tuple> filter = run(new Filter(p, new SeqScan(tid, bf.getId(), "")));
+                assertEquals(op + " " + k, filter.size(), index.size());
+                for (int i = 0; i < index.size(); i++)
+                    assertEquals(filter.get(i).toString(), index.get(i).toString());
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        Predicate p = new Predicate(KEY, Predicate.Op.EQUALS, key(700));
+        assertEquals(2, run(new BTreeIndexScan(tid, bf.getId(), "", p)).size());
+        // the header, two internal pages and one or two leaves
+        assertTrue(Database.getBufferPool().getPageReads(tid) <= 5);
+        assertTrue(bf.numPages() > 100);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Deletes are committed and aborted like a HeapFile's, and the tree
+     * reads back from disk.
+     */
+    @Test public void deleteAbortAndReopen() throws Exception {
+        BTreeFile bf = create();
+        Transaction t = new Transaction();
+        t.start();
+        Delete delete = new Delete(t.getId(), new BTreeIndexScan(t.getId(), bf.getId(), "",
+                new Predicate(KEY, Predicate.Op.LESS_THAN, key(500))));
+        assertEquals(new IntField(1000), run(delete).get(0).getField(0));
+        t.commit();
+
+        t = new Transaction();
+        t.start();
+        for (int i = 0; i < 200; i++)
+            Database.getBufferPool().insertTuple(t.getId(), bf.getId(), tuple(TUPLES + i, 600));
+        delete = new Delete(t.getId(), new SeqScan(t.getId(), bf.getId(), ""));
+        assertEquals(new IntField(TUPLES - 1000 + 200), run(delete).get(0).getField(0));
+        t.transactionComplete(true);
+
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        BTreeFile reopened = open(bf.getFile());
+        TransactionId tid = new TransactionId();
+        ArrayList<Tuple> tuples = run(new SeqScan(tid, reopened.getId(), ""));
+        assertEquals(TUPLES - 1000, tuples.size());
+        assertEquals(key(500), tuples.get(0).getField(KEY));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BTreeFileTest.class);
+    }
+}
@@ -0,0 +1,187 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Test;
+
+import simpledb.systemtest.EvictionTest;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BackgroundWriterTest extends SimpleDbTestBase {
+
+    private static final int TUPLES_PER_PAGE = 504;
+
+    @After public void stopWriter() {
+        Database.getBufferPool().stopBackgroundWriter();
+    }
+
+    /** Wait up to a few seconds for the page to become clean. */
+    private static void awaitClean(Page page) throws InterruptedException {
+        for (int i = 0; i < 500 && page.isDirty() != null; i++)
+            Thread.sleep(10);
+    }
+
+    /**
+     * The writer cleans dirty pages until the pool has the requested
+     * number of clean frames, and leaves them cached.
+     */
+    @Test public void writesDirtyPages() throws Exception {
+        BufferPool bp = Database.resetBufferPool(10);
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10 * TUPLES_PER_PAGE, null, null);
+        TransactionId tid = new TransactionId();
+        Page[] pages = new Page[f.numPages()];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = bp.getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_WRITE);
+            pages[i].markDirty(true, tid);
+            bp.unpinPage(tid, pages[i].getId());
+        }
+
+        BackgroundWriter writer = bp.startBackgroundWriter(10, 4, 5);
+        for (Page page : pages)
+            awaitClean(page);
+        for (Page page : pages)
+            assertNull(page.isDirty());
+        assertEquals(pages.length, writer.getPagesWritten());
+        assertTrue(writer.getRoundCount() >= pages.length / 4);
+
+        long misses = bp.getMissCount();
+        for (int i = 0; i < pages.length; i++)
+            bp.getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+        assertEquals(misses, bp.getMissCount());
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * The writer leaves a dirty page alone while it is pinned, and writes
+     * it once the pin is released.
+     */
+    @Test public void skipsPinnedPages() throws Exception {
+        BufferPool bp = Database.resetBufferPool(10);
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 2 * TUPLES_PER_PAGE, null, null);
+        TransactionId tid = new TransactionId();
+        Page pinned = bp.getPage(tid, new HeapPageId(f.getId(), 0), Permissions.READ_WRITE);
+        pinned.markDirty(true, tid);
+        Page unpinned = bp.getPage(tid, new HeapPageId(f.getId(), 1), Permissions.READ_WRITE);
+        unpinned.markDirty(true, tid);
+        bp.unpinPage(tid, unpinned.getId());
+
+        BackgroundWriter writer = bp.startBackgroundWriter(10, 4, 5);
+        awaitClean(unpinned);
+        assertNull(unpinned.isDirty());
+        long rounds = writer.getRoundCount();
+        while (writer.getRoundCount() < rounds + 5)
+            Thread.sleep(5);
+        assertEquals(tid, pinned.isDirty());
+        assertEquals(1, writer.getPagesWritten());
+
+        bp.unpinPage(tid, pinned.getId());
+        awaitClean(pinned);
+        assertNull(pinned.isDirty());
+        assertEquals(2, writer.getPagesWritten());
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * Pages the writer wrote for a transaction that then aborts are
+     * rolled back from the log.
+     */
+    @Test public void abortUndoesWrittenPages() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 2 * TUPLES_PER_PAGE, null, null);
+        BufferPool bp = Database.resetBufferPool(10);
+
+        Transaction t = new Transaction();
+        t.start();
+        EvictionTest.insertRow(f, t);
+        assertTrue(EvictionTest.findMagicTuple(f, t));
+
+        // make the writer steal every dirty page of t
+        BackgroundWriter writer = bp.startBackgroundWriter(10, 10, 5);
+        for (int i = 0; i < 500 && writer.getPagesWritten() == 0; i++)
+            Thread.sleep(10);
+        assertTrue(writer.getPagesWritten() > 0);
+        bp.stopBackgroundWriter();
+        t.transactionComplete(true);
+
+        // not in the pool, and not on disk either
+        t = new Transaction();
+        t.start();
+        assertFalse(EvictionTest.findMagicTuple(f, t));
+        t.commit();
+        Database.resetBufferPool(10);
+        t = new Transaction();
+        t.start();
+        assertFalse(EvictionTest.findMagicTuple(f, t));
+        t.commit();
+    }
+
+    /**
+     * An abort through the buffer pool alone, without the log, also puts
+     * back the pages the writer wrote.
+     */
+    @Test public void poolAbortUndoesWrittenPages() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 2 * TUPLES_PER_PAGE, null, null);
+        BufferPool bp = Database.resetBufferPool(10);
+
+        // the row EvictionTest.findMagicTuple looks for
+        TransactionId tid = new TransactionId();
+        Tuple t = new Tuple(f.getTupleDesc());
+        t.setField(0, new IntField(-42));
+        t.setField(1, new IntField(-43));
+        bp.insertTuple(tid, f.getId(), t);
+        BackgroundWriter writer = bp.startBackgroundWriter(10, 10, 5);
+        for (int i = 0; i < 500 && writer.getPagesWritten() == 0; i++)
+            Thread.sleep(10);
+        assertTrue(writer.getPagesWritten() > 0);
+        bp.stopBackgroundWriter();
+        bp.transactionComplete(tid, false);
+
+        Transaction check = new Transaction();
+        check.start();
+        assertFalse(EvictionTest.findMagicTuple(f, check));
+        check.commit();
+        Database.resetBufferPool(10);
+        check = new Transaction();
+        check.start();
+        assertFalse(EvictionTest.findMagicTuple(f, check));
+        check.commit();
+    }
+
+    /**
+     * Stopping the writer wakes it from its sleep rather than waiting out
+     * the round, and leaves the pages it wrote readable from their file.
+     */
+    @Test public void shutdownWakesWriter() throws Exception {
+        BufferPool bp = Database.resetBufferPool(10);
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 4 * TUPLES_PER_PAGE, null, null);
+        TransactionId tid = new TransactionId();
+        Page[] pages = new Page[f.numPages()];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = bp.getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_WRITE);
+            pages[i].markDirty(true, tid);
+            bp.unpinPage(tid, pages[i].getId());
+        }
+        BackgroundWriter writer = bp.startBackgroundWriter(10, 10, 60000);
+        for (int i = 0; i < 500 && writer.getRoundCount() == 0; i++)
+            Thread.sleep(10);
+        long start = System.currentTimeMillis();
+        bp.stopBackgroundWriter();
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(pages.length, writer.getPagesWritten());
+        for (int i = 0; i < pages.length; i++)
+            assertTrue(f.readPage(new HeapPageId(f.getId(), i)) != null);
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BackgroundWriterTest.class);
+    }
+}
@@ -0,0 +1,275 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BitmapIndexTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 5000;
+    /** values of columns 1 and 2 are 0 to VALUES - 1 */
+    private static final int VALUES = 4;
+
+    private HeapFile table;
+
+    /** A table of three columns, with bitmap indexes of the second and third. */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        table = SystemTestUtil.createRandomHeapFile(3, ROWS, VALUES, null, null, "c");
+        Database.getCatalog().addBitmapIndex(table.getId(), 1);
+        Database.getCatalog().addBitmapIndex(table.getId(), 2);
+    }
+
+    private static ArrayList<String> run(DbIterator it) throws Exception {
+        ArrayList<String> out = new ArrayList<String>();
+        it.open();
+        while (it.hasNext())
+            out.add(it.next().toString());
+        it.close();
+        return out;
+    }
+
+    private Tuple tuple(int a, int b, int c) {
+        Tuple t = new Tuple(table.getTupleDesc());
+        t.setField(0, new IntField(a));
+        t.setField(1, new IntField(b));
+        t.setField(2, new IntField(c));
+        return t;
+    }
+
+    /** @return a set of rows from 0 to max, some sparse runs and some dense */
+    private static BitSet randomRows(Random r, int max) {
+        BitSet s = new BitSet();
+        for (int chunk = 0; chunk < max >>> 16; chunk++) {
+            double density = r.nextInt(3) == 0 ? 0.9 : r.nextDouble() * 0.05;
+            for (int i = 0; i < 1 << 16; i++) {
+                if (r.nextDouble() < density)
+                    s.set(chunk << 16 | i);
+            }
+        }
+        return s;
+    }
+
+    private static RowBitmap toBitmap(BitSet s) {
+        RowBitmap b = new RowBitmap();
+        for (int i = s.nextSetBit(0); i >= 0; i = s.nextSetBit(i + 1))
+            b.add(i);
+        return b;
+    }
+
+    private static void assertSame(BitSet expected, RowBitmap b) {
+        assertEquals(expected.cardinality(), b.cardinality());
+        RowBitmap.Cursor c = b.cursor();
+        for (int i = expected.nextSetBit(0); i >= 0; i = expected.nextSetBit(i + 1))
+            assertEquals(i, c.next());
+        assertEquals(-1, c.next());
+    }
+
+    /**
+     * AND, OR and AND NOT of RowBitmaps, sparse and dense, agree with
+     * those of BitSets, and removing rows turns a bitmap container back
+     * into an array one.
+     */
+    @Test public void rowBitmap() {
+        Random r = new Random(7);
+        for (int round = 0; round < 5; round++) {
+            BitSet a = randomRows(r, 8 << 16);
+            BitSet b = randomRows(r, 8 << 16);
+            RowBitmap x = toBitmap(a);
+            RowBitmap y = toBitmap(b);
+            assertSame(a, x);
+
+            BitSet and = (BitSet) a.clone();
+            and.and(b);
+            assertSame(and, x.and(y));
+            BitSet or = (BitSet) a.clone();
+            or.or(b);
+            assertSame(or, x.or(y));
+            BitSet andNot = (BitSet) a.clone();
+            andNot.andNot(b);
+            assertSame(andNot, x.andNot(y));
+            assertEquals(x, x.copy());
+        }
+
+        RowBitmap b = new RowBitmap();
+        for (int i = 0; i < 10000; i++)
+            b.add(i);
+        long dense = b.sizeInBytes();
+        for (int i = 100; i < 10000; i++)
+            b.remove(i);
+        assertEquals(100, b.cardinality());
+        assertTrue(b.contains(99));
+        assertFalse(b.contains(100));
+        assertTrue(b.sizeInBytes() < dense);
+    }
+
+    /** @return the tuples a BitmapScan returns, and those a filtered SeqScan does, sorted */
+    private List<List<String>> both(TransactionId tid, BitmapPredicate p) throws Exception {
+        final BitmapPredicate cond = p;
+        ArrayList<String> bitmap = run(new BitmapScan(tid, table.getId(), "t", p));
+        ArrayList<String> scan = new ArrayList<String>();
+        DbIterator it = new SeqScan(tid, table.getId(), "t");
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (cond.filter(t))
+                scan.add(t.toString());
+        }
+        it.close();
+        Collections.sort(bitmap);
+        Collections.sort(scan);
+        List<List<String>> out = new ArrayList<List<String>>();
+        out.add(bitmap);
+        out.add(scan);
+        return out;
+    }
+
+    /**
+     * A bitmap scan returns what a filter over the whole table does, and
+     * reads fewer pages than the table has for a selective predicate.
+     */
+    @Test public void bitmapScan() throws Exception {
+        TransactionId tid = new TransactionId();
+        BitmapPredicate[] preds = {
+                BitmapPredicate.eq(1, 0),
+                BitmapPredicate.eq(1, VALUES),
+                BitmapPredicate.and(BitmapPredicate.eq(1, 1), BitmapPredicate.eq(2, 3)),
+                BitmapPredicate.or(BitmapPredicate.eq(1, 1), BitmapPredicate.eq(2, 3)),
+                BitmapPredicate.and(BitmapPredicate.not(BitmapPredicate.eq(1, 2)),
+                        BitmapPredicate.or(BitmapPredicate.eq(2, 0), BitmapPredicate.eq(2, 1))),
+                BitmapPredicate.not(BitmapPredicate.eq(2, VALUES)) };
+        for (BitmapPredicate p : preds) {
+            List<List<String>> r = both(tid, p);
+            assertEquals(p.toString(), r.get(1), r.get(0));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        // one page in sixteen has a row with the value
+        Transaction t = new Transaction();
+        t.start();
+        for (int i = 0; i < 5; i++)
+            Database.getBufferPool().insertTuple(t.getId(), table.getId(), tuple(i, VALUES, VALUES));
+        t.commit();
+        tid = new TransactionId();
+        long before = Database.getBufferPool().getPageReads(tid);
+        ArrayList<String> out = run(new BitmapScan(tid, table.getId(), "t",
+                BitmapPredicate.and(BitmapPredicate.eq(1, VALUES), BitmapPredicate.eq(2, VALUES))));
+        assertEquals(5, out.size());
+        assertTrue(Database.getBufferPool().getPageReads(tid) - before < table.numPages());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Inserts and deletes through the buffer pool change the bitmaps with
+     * the table; a transaction sees its own changes, and an abort drops
+     * them.
+     */
+    @Test public void insertDeleteAbort() throws Exception {
+        BitmapPredicate added = BitmapPredicate.eq(1, VALUES);
+        BitmapPredicate gone = BitmapPredicate.eq(2, 0);
+        BitmapPredicate all = BitmapPredicate.not(added);
+
+        Transaction t = new Transaction();
+        t.start();
+        for (int i = 0; i < 300; i++)
+            Database.getBufferPool().insertTuple(t.getId(), table.getId(), tuple(i, VALUES, 1));
+        assertEquals(300, both(t.getId(), added).get(0).size());
+        Delete delete = new Delete(t.getId(), new BitmapScan(t.getId(), table.getId(), "t", gone));
+        delete.open();
+        int deleted = ((IntField) delete.next().getField(0)).getValue();
+        delete.close();
+        assertTrue(deleted > 0);
+        assertEquals(0, both(t.getId(), gone).get(0).size());
+        t.commit();
+
+        TransactionId tid = new TransactionId();
+        assertEquals(300, both(tid, added).get(0).size());
+        assertEquals(0, both(tid, gone).get(0).size());
+        List<List<String>> r = both(tid, all);
+        assertEquals(ROWS - deleted, r.get(0).size());
+        assertEquals(r.get(1), r.get(0));
+        Database.getBufferPool().transactionComplete(tid);
+
+        t = new Transaction();
+        t.start();
+        for (int i = 0; i < 50; i++)
+            Database.getBufferPool().insertTuple(t.getId(), table.getId(), tuple(i, 0, 0));
+        delete = new Delete(t.getId(), new BitmapScan(t.getId(), table.getId(), "t", added));
+        delete.open();
+        delete.next();
+        delete.close();
+        assertEquals(0, both(t.getId(), added).get(0).size());
+        t.transactionComplete(true);
+
+        tid = new TransactionId();
+        assertEquals(300, both(tid, added).get(0).size());
+        assertEquals(0, both(tid, gone).get(0).size());
+        r = both(tid, all);
+        assertEquals(ROWS - deleted, r.get(0).size());
+        assertEquals(r.get(1), r.get(0));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * The planner turns equality and inequality filters on columns with
+     * bitmap indexes into one BitmapScan, and leaves other filters above
+     * it.
+     */
+    @Test public void plannerChoosesBitmapScan() throws Exception {
+        String name = Database.getCatalog().getTableName(table.getId());
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put(name, new TableStats(table.getId(), 1000));
+
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(table.getId(), "t");
+        lp.addFilter("t.c0", Predicate.Op.GREATER_THAN, "-1");
+        lp.addFilter("t.c1", Predicate.Op.EQUALS, "1");
+        lp.addFilter("t.c2", Predicate.Op.NOT_EQUALS, "3");
+        lp.addProjectField("t.c0", null);
+        TransactionId tid = new TransactionId();
+        DbIterator plan = lp.physicalPlan(tid, stats, false);
+        DbIterator it = plan;
+        int filters = 0;
+        while (it instanceof Operator) {
+            if (it instanceof Filter)
+                filters++;
+            it = ((Operator) it).getChildren()[0];
+        }
+        assertTrue(it instanceof BitmapScan);
+        assertEquals(1, filters);
+        ArrayList<String> out = run(plan);
+        BitmapPredicate p = BitmapPredicate.and(BitmapPredicate.eq(1, 1),
+                BitmapPredicate.not(BitmapPredicate.eq(2, 3)));
+        assertEquals(both(tid, p).get(1).size(), out.size());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A scan on a column with no bitmap index fails when opened.
+     */
+    @Test(expected = DbException.class) public void noIndex() throws Exception {
+        new BitmapScan(new TransactionId(), table.getId(), "t", BitmapPredicate.eq(0, 1)).open();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BitmapIndexTest.class);
+    }
+}
@@ -0,0 +1,70 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferAccessStrategyTest extends SimpleDbTestBase {
+
+    private static final int POOL_PAGES = 20;
+    private static final int TUPLES_PER_PAGE = 504;
+
+    /**
+     * Small tables are scanned through the shared pool, large ones through a ring.
+     */
+    @Test public void forScan() throws Exception {
+        Database.resetBufferPool(POOL_PAGES);
+        HeapFile small = SystemTestUtil.createRandomHeapFile(2, 5 * TUPLES_PER_PAGE, null, null);
+        HeapFile large = SystemTestUtil.createRandomHeapFile(2, 40 * TUPLES_PER_PAGE, null, null);
+        assertNull(BufferAccessStrategy.forScan(small));
+        BufferAccessStrategy s = BufferAccessStrategy.forScan(large);
+        assertNotNull(s);
+        assertEquals(BufferAccessStrategy.Kind.BULK_READ, s.getKind());
+        assertTrue(s.getRingSize() < POOL_PAGES);
+    }
+
+    /**
+     * A scan of a table larger than the pool must not evict pages that
+     * point reads are using.
+     */
+    @Test public void scanKeepsHotPages() throws Exception {
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+        HeapFile hot = SystemTestUtil.createRandomHeapFile(2, 5 * TUPLES_PER_PAGE, null, null);
+        HeapFile large = SystemTestUtil.createRandomHeapFile(2, 60 * TUPLES_PER_PAGE, null, null);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < hot.numPages(); i++)
+            bp.getPage(tid, new HeapPageId(hot.getId(), i), Permissions.READ_ONLY);
+
+        SeqScan scan = new SeqScan(tid, large.getId(), "");
+        scan.open();
+        int count = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            count++;
+        }
+        scan.close();
+        assertEquals(60 * TUPLES_PER_PAGE, count);
+        assertTrue(bp.getRingReuseCount() > 0);
+        assertTrue(bp.getMissCount(BufferAccessStrategy.Kind.BULK_READ) >= large.numPages());
+
+        long normalMisses = bp.getMissCount(BufferAccessStrategy.Kind.NORMAL);
+        for (int i = 0; i < hot.numPages(); i++)
+            bp.getPage(tid, new HeapPageId(hot.getId(), i), Permissions.READ_ONLY);
+        assertEquals(normalMisses, bp.getMissCount(BufferAccessStrategy.Kind.NORMAL));
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferAccessStrategyTest.class);
+    }
+}
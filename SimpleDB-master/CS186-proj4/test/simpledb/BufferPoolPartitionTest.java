@@ -0,0 +1,93 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferPoolPartitionTest extends SimpleDbTestBase {
+
+    private static final int TUPLES_PER_PAGE = 504;
+
+    /**
+     * Small pools keep one partition; large ones are split.
+     */
+    @Test public void defaultPartitions() {
+        assertEquals(1, BufferPool.defaultPartitions(BufferPool.DEFAULT_PAGES));
+        assertEquals(4, BufferPool.defaultPartitions(4 * BufferPool.MIN_PARTITION_FRAMES));
+        assertEquals(BufferPool.DEFAULT_PARTITIONS, BufferPool.defaultPartitions(1 << 20));
+    }
+
+    /**
+     * A partitioned pool caches each page once and never holds more pages
+     * than its frames, however the pages hash.
+     */
+    @Test public void partitionedPool() throws Exception {
+        BufferPool bp = Database.resetBufferPool(64, BufferPool.DEFAULT_REPLACEMENT, 4);
+        assertEquals(4, bp.getNumPartitions());
+        assertEquals(64, bp.getNumPages());
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 100 * TUPLES_PER_PAGE, null, null);
+        TransactionId tid = new TransactionId();
+
+        Page first = bp.getPage(tid, new HeapPageId(f.getId(), 0), Permissions.READ_ONLY);
+        assertSame(first, bp.getPage(tid, new HeapPageId(f.getId(), 0), Permissions.READ_ONLY));
+        assertEquals(1, bp.getHitCount());
+
+        bp.unpinPage(tid, first.getId());
+        bp.unpinPage(tid, first.getId());
+        for (int i = 0; i < f.numPages(); i++) {
+            HeapPageId pid = new HeapPageId(f.getId(), i);
+            bp.getPage(tid, pid, Permissions.READ_ONLY);
+            bp.unpinPage(tid, pid);
+        }
+        assertEquals(f.numPages(), bp.getMissCount());
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * Threads reading the same pages through a partitioned pool all get the
+     * one cached copy.
+     */
+    @Test public void concurrentReaders() throws Exception {
+        final BufferPool bp = Database.resetBufferPool(128, BufferPool.DEFAULT_REPLACEMENT, 4);
+        final HeapFile f = SystemTestUtil.createRandomHeapFile(2, 32 * TUPLES_PER_PAGE, null, null);
+        final Page[][] seen = new Page[8][f.numPages()];
+        Thread[] threads = new Thread[seen.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int id = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    TransactionId tid = new TransactionId();
+                    try {
+                        for (int i = 0; i < f.numPages(); i++)
+                            seen[id][i] = bp.getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+                        bp.transactionComplete(tid);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        for (int i = 0; i < f.numPages(); i++) {
+            for (int t = 1; t < seen.length; t++)
+                assertSame(seen[0][i], seen[t][i]);
+        }
+        assertEquals(f.numPages(), bp.getMissCount());
+        assertTrue(bp.getHitCount() > 0);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolPartitionTest.class);
+    }
+}
@@ -0,0 +1,109 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferPoolPinTest extends SimpleDbTestBase {
+
+    private static final int TUPLES_PER_PAGE = 504;
+
+    private HeapFile f;
+    private TransactionId tid;
+
+    @Before public void setUp() throws Exception {
+        f = SystemTestUtil.createRandomHeapFile(2, 10 * TUPLES_PER_PAGE, null, null);
+        tid = new TransactionId();
+    }
+
+    private HeapPageId pid(int pgNo) {
+        return new HeapPageId(f.getId(), pgNo);
+    }
+
+    /**
+     * Pinned pages are never evicted; once every frame is pinned the pool
+     * says so, and an unpinned page makes room again.
+     */
+    @Test public void pinnedPagesStay() throws Exception {
+        BufferPool bp = Database.resetBufferPool(2);
+        Page p0 = bp.getPage(tid, pid(0), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(1), Permissions.READ_ONLY);
+        assertEquals(1, bp.getPinCount(pid(0)));
+        try {
+            bp.getPage(tid, pid(2), Permissions.READ_ONLY);
+            fail("expected every frame to be pinned");
+        } catch (DbException e) {
+            assertTrue(e.getMessage().contains("pinned"));
+        }
+
+        assertSame(p0, bp.getPage(tid, pid(0), Permissions.READ_ONLY));
+        assertEquals(2, bp.getPinCount(pid(0)));
+        bp.unpinPage(tid, pid(1));
+        assertEquals(0, bp.getPinCount(pid(1)));
+        bp.getPage(tid, pid(2), Permissions.READ_ONLY);
+        long misses = bp.getMissCount();
+        assertSame(p0, bp.getPage(tid, pid(0), Permissions.READ_ONLY));
+        assertEquals(misses, bp.getMissCount());
+
+        bp.transactionComplete(tid);
+        assertEquals(0, bp.getPinCount(pid(0)));
+        assertEquals(0, bp.getPinCount(pid(2)));
+    }
+
+    /**
+     * An unpinned dirty page stays in the pool while other pages come and
+     * go (NO STEAL).
+     */
+    @Test public void dirtyPagesStay() throws Exception {
+        BufferPool bp = Database.resetBufferPool(2);
+        Page dirty = bp.getPage(tid, pid(0), Permissions.READ_WRITE);
+        dirty.markDirty(true, tid);
+        bp.unpinPage(tid, pid(0));
+        for (int i = 1; i < f.numPages(); i++) {
+            bp.getPage(tid, pid(i), Permissions.READ_ONLY);
+            bp.unpinPage(tid, pid(i));
+        }
+        assertSame(dirty, bp.getPage(tid, pid(0), Permissions.READ_ONLY));
+        assertEquals(tid, dirty.isDirty());
+        bp.transactionComplete(tid, false);
+    }
+
+    /**
+     * A scan holds a pin only on the page it is on, so a table larger than
+     * the pool can be scanned within one transaction.
+     */
+    @Test public void scanUnpins() throws Exception {
+        BufferPool bp = Database.resetBufferPool(3);
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+            int pinned = 0;
+            for (int i = 0; i < f.numPages(); i++)
+                pinned += bp.getPinCount(pid(i));
+            assertEquals(1, pinned);
+        }
+        it.close();
+        assertEquals(10 * TUPLES_PER_PAGE, count);
+        for (int i = 0; i < f.numPages(); i++)
+            assertEquals(0, bp.getPinCount(pid(i)));
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolPinTest.class);
+    }
+}
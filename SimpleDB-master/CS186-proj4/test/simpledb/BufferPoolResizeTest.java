@@ -0,0 +1,162 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferPoolResizeTest extends SimpleDbTestBase {
+
+    private static final int TUPLES_PER_PAGE = 504;
+
+    private HeapFile f;
+
+    @Before public void setUp() throws Exception {
+        f = SystemTestUtil.createRandomHeapFile(2, 32 * TUPLES_PER_PAGE, null, null);
+    }
+
+    /** Read pages [from, to) and unpin them. */
+    private void read(BufferPool bp, TransactionId tid, int from, int to) throws Exception {
+        for (int i = from; i < to; i++) {
+            HeapPageId pid = new HeapPageId(f.getId(), i);
+            bp.getPage(tid, pid, Permissions.READ_ONLY);
+            bp.unpinPage(tid, pid);
+        }
+    }
+
+    /**
+     * Growing keeps the cached pages and makes room for more.
+     */
+    @Test public void grow() throws Exception {
+        BufferPool bp = Database.resetBufferPool(8);
+        TransactionId tid = new TransactionId();
+        read(bp, tid, 0, 8);
+        bp.resize(16);
+        assertEquals(16, bp.getNumPages());
+        assertEquals(16, bp.getFrameCount());
+        assertEquals(8, bp.getCachedPageCount());
+        assertEquals(1, bp.getResizeCount());
+
+        long misses = bp.getMissCount();
+        read(bp, tid, 0, 8);
+        assertEquals(misses, bp.getMissCount());
+        read(bp, tid, 8, 16);
+        assertEquals(16, bp.getCachedPageCount());
+        read(bp, tid, 0, 16);
+        assertEquals(misses + 8, bp.getMissCount());
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * Shrinking evicts down to the new size and keeps the freed frames.
+     */
+    @Test public void shrink() throws Exception {
+        BufferPool bp = Database.resetBufferPool(16);
+        TransactionId tid = new TransactionId();
+        read(bp, tid, 0, 16);
+        bp.resize(4);
+        assertEquals(4, bp.getCachedPageCount());
+        assertEquals(12, bp.getShrinkEvictionCount());
+        assertEquals(16, bp.getFrameCount());
+
+        read(bp, tid, 0, 32);
+        assertEquals(4, bp.getCachedPageCount());
+        bp.resize(8);
+        assertEquals(16, bp.getFrameCount());
+        read(bp, tid, 0, 32);
+        assertEquals(8, bp.getCachedPageCount());
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * Pinned and dirty pages survive a shrink; the pool gets down to its
+     * new size once their transaction completes.
+     */
+    @Test public void shrinkWaitsForPinnedPages() throws Exception {
+        BufferPool bp = Database.resetBufferPool(8);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 6; i++)
+            bp.getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+        Page dirty = bp.getPage(tid, new HeapPageId(f.getId(), 6), Permissions.READ_WRITE);
+        dirty.markDirty(true, tid);
+        bp.unpinPage(tid, dirty.getId());
+
+        bp.resize(2);
+        assertEquals(7, bp.getCachedPageCount());
+        bp.transactionComplete(tid, false);
+        assertTrue(bp.getCachedPageCount() <= 2);
+    }
+
+    /**
+     * An OFF_HEAP pool allocates direct memory for the frames it gains.
+     */
+    @Test public void growOffHeap() throws Exception {
+        BufferPool bp = Database.resetBufferPool(8, BufferPool.Storage.OFF_HEAP);
+        TransactionId tid = new TransactionId();
+        read(bp, tid, 0, 8);
+        bp.resize(24);
+        assertEquals(24L * BufferPool.getPageSize(), bp.getOffHeapBytes());
+        read(bp, tid, 0, 24);
+        assertEquals(24, bp.getCachedPageCount());
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * Readers keep getting the right pages while the pool is resized up
+     * and down under them.
+     */
+    @Test public void resizeUnderLoad() throws Exception {
+        final BufferPool bp = Database.resetBufferPool(8);
+        final Throwable[] failure = new Throwable[1];
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; t++) {
+            final long seed = t;
+            readers[t] = new Thread() {
+                public void run() {
+                    Random random = new Random(seed);
+                    try {
+                        while (!done.get()) {
+                            TransactionId tid = new TransactionId();
+                            for (int i = 0; i < 20; i++) {
+                                HeapPageId pid = new HeapPageId(f.getId(), random.nextInt(f.numPages()));
+                                Page page = bp.getPage(tid, pid, Permissions.READ_ONLY);
+                                assertEquals(pid, page.getId());
+                                bp.unpinPage(tid, pid);
+                            }
+                            bp.transactionComplete(tid);
+                        }
+                    } catch (Throwable e) {
+                        failure[0] = e;
+                    }
+                }
+            };
+            readers[t].start();
+        }
+        for (int i = 0; i < 50; i++) {
+            bp.resize(i % 2 == 0 ? 32 : 8);
+            Thread.sleep(2);
+        }
+        done.set(true);
+        for (Thread t : readers)
+            t.join();
+        assertNull(failure[0]);
+        assertTrue(bp.getCachedPageCount() <= 8);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolResizeTest.class);
+    }
+}
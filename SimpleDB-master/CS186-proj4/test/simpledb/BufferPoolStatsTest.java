@@ -0,0 +1,102 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import simpledb.systemtest.EvictionTest;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferPoolStatsTest extends SimpleDbTestBase {
+
+    private static final int TUPLES_PER_PAGE = 504;
+
+    /**
+     * Hits, misses, evictions and table reads of a scan that does not fit
+     * the pool, and the page reads of the transaction running it.
+     */
+    @Test public void readCounters() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10 * TUPLES_PER_PAGE, null, null);
+        BufferPool bp = Database.resetBufferPool(4);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        while (it.hasNext())
+            it.next();
+        it.close();
+        bp.getPage(tid, new HeapPageId(f.getId(), 9), Permissions.READ_ONLY);
+
+        BufferPoolStats stats = bp.getStats();
+        assertEquals(10, stats.getMisses());
+        assertEquals(1, stats.getHits());
+        // the scan recycles a ring of two frames
+        assertEquals(8, stats.getEvictions());
+        assertEquals(2, stats.getCachedPages());
+        assertEquals(10L, (long) stats.getTableReads().get(f.getId()));
+        assertEquals(10L * BufferPool.PAGE_SIZE, (long) stats.getTableReadBytes().get(f.getId()));
+        assertEquals(11L, (long) stats.getTransactionPageReads().get(tid));
+        assertEquals(10L, (long) stats.getTransactionDiskReads().get(tid));
+        assertEquals(11, bp.getPageReads(tid));
+
+        bp.transactionComplete(tid);
+        assertFalse(bp.getStats().getTransactionPageReads().containsKey(tid));
+    }
+
+    /**
+     * A commit flushes the dirty page and counts its write.
+     */
+    @Test public void writeCounters() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 2 * TUPLES_PER_PAGE, null, null);
+        BufferPool bp = Database.resetBufferPool(4);
+        Transaction t = new Transaction();
+        t.start();
+        EvictionTest.insertRow(f, t);
+        t.commit();
+
+        BufferPoolStats stats = bp.getStats();
+        assertEquals(1, stats.getDirtyFlushes());
+        assertTrue(stats.getPagesWritten() >= 1);
+        assertEquals(stats.getPagesWritten() * BufferPool.PAGE_SIZE,
+                (long) stats.getTableWriteBytes().get(f.getId()));
+    }
+
+    /**
+     * The MBean reports the counters of the current pool.
+     */
+    @Test public void mbean() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 2 * TUPLES_PER_PAGE, null, null);
+        BufferPool bp = Database.resetBufferPool(8);
+        TransactionId tid = new TransactionId();
+        bp.getPage(tid, new HeapPageId(f.getId(), 0), Permissions.READ_ONLY);
+        bp.getPage(tid, new HeapPageId(f.getId(), 0), Permissions.READ_ONLY);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("simpledb:type=BufferPool");
+        assertEquals(1L, server.getAttribute(name, "Hits"));
+        assertEquals(1L, server.getAttribute(name, "Misses"));
+        assertEquals(8, server.getAttribute(name, "NumPages"));
+        assertTrue(server.getAttribute(name, "TableReadBytes") != null);
+        bp.transactionComplete(tid);
+
+        server.setAttribute(name, new javax.management.Attribute("NumPages", 16));
+        assertEquals(16, bp.getNumPages());
+        assertNull(bp.getStats().getTransactionPageReads().get(tid));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolStatsTest.class);
+    }
+}
@@ -0,0 +1,105 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class CompressedHeapFileTest extends SimpleDbTestBase {
+
+    private static final int TUPLES_PER_PAGE = 504;
+
+    private static CompressedHeapFile create() throws Exception {
+        File f = File.createTempFile("compressed", ".dat");
+        f.deleteOnExit();
+        CompressedHeapFile.indexFile(f).deleteOnExit();
+        HeapFile.freeSpaceFile(f).deleteOnExit();
+        CompressedHeapFile cf = new CompressedHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+        return cf;
+    }
+
+    /**
+     * A loaded table reads the pages it was loaded from, in a fraction of
+     * the bytes, and again after its index is read back from disk.
+     */
+    @Test public void loadAndRead() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile plain = SystemTestUtil.createRandomHeapFile(2, 5 * TUPLES_PER_PAGE + 10,
+                100, null, tuples);
+        CompressedHeapFile cf = create();
+        cf.bulkLoad(plain);
+
+        assertEquals(6, cf.numPages());
+        assertTrue(cf.getFile().length() * 2 < plain.getFile().length());
+        for (int i = 0; i < 6; i++) {
+            assertTrue(Arrays.equals(plain.readPage(new HeapPageId(plain.getId(), i)).getPageData(),
+                    cf.readPage(new HeapPageId(cf.getId(), i)).getPageData()));
+        }
+        SystemTestUtil.matchTuples(cf, tuples);
+
+        cf.close();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        assertEquals(6, cf.numPages());
+        SystemTestUtil.matchTuples(cf, tuples);
+    }
+
+    /**
+     * Committed inserts and deletes survive; a page that no longer fits in
+     * its room moves to the end of the file.
+     */
+    @Test public void insertAndDelete() throws Exception {
+        CompressedHeapFile cf = create();
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        Transaction t = new Transaction();
+        t.start();
+        for (int i = 0; i < TUPLES_PER_PAGE + 1; i++) {
+            Tuple tup = Utility.getHeapTuple(new int[] { 0, 0 });
+            Database.getBufferPool().insertTuple(t.getId(), cf.getId(), tup);
+            tuples.add(SystemTestUtil.tupleToList(tup));
+        }
+        t.commit();
+        assertEquals(2, cf.numPages());
+        long length = cf.getFile().length();
+        SystemTestUtil.matchTuples(cf, tuples);
+
+        // values that do not compress make the first page larger
+        t = new Transaction();
+        t.start();
+        SeqScan scan = new SeqScan(t.getId(), cf.getId(), "");
+        scan.open();
+        for (int i = 0; i < TUPLES_PER_PAGE / 2; i++)
+            Database.getBufferPool().deleteTuple(t.getId(), scan.next());
+        scan.close();
+        Random r = new Random(1);
+        for (int i = 0; i < TUPLES_PER_PAGE / 2; i++) {
+            Tuple tup = Utility.getHeapTuple(new int[] { r.nextInt(), r.nextInt() });
+            Database.getBufferPool().insertTuple(t.getId(), cf.getId(), tup);
+            tuples.set(i, SystemTestUtil.tupleToList(tup));
+        }
+        t.commit();
+        assertEquals(2, cf.numPages());
+        assertTrue(cf.getFile().length() > length + BufferPool.PAGE_SIZE / 2);
+
+        cf.close();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(cf, tuples);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CompressedHeapFileTest.class);
+    }
+}
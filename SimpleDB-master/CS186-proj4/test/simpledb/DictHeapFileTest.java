@@ -0,0 +1,209 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class DictHeapFileTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.STRING_TYPE },
+            new String[] { "id", "country", "status" });
+
+    private static Tuple tuple(int i) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField("country" + i % 7, Type.STRING_LEN));
+        t.setField(2, new StringField(i % 2 == 0 ? "open" : "closed", Type.STRING_LEN));
+        return t;
+    }
+
+    private static DictHeapFile open(File f) {
+        DictHeapFile df = new DictHeapFile(f, TD);
+        Database.getCatalog().addTable(df, SystemTestUtil.getUUID());
+        return df;
+    }
+
+    private static DictHeapFile create(int tuples) throws Exception {
+        File f = File.createTempFile("dict", ".dat");
+        f.deleteOnExit();
+        HeapFile.freeSpaceFile(f).deleteOnExit();
+        DictHeapFile.dictionaryFile(f).deleteOnExit();
+        DictHeapFile df = open(f);
+        ArrayList<Tuple> list = new ArrayList<Tuple>();
+        for (int i = 0; i < tuples; i++)
+            list.add(tuple(i));
+        df.bulkLoad(list.iterator());
+        return df;
+    }
+
+    /** the transaction of the test's scans and inserts */
+    private final TransactionId tid = new TransactionId();
+
+    private static ArrayList<Tuple> run(DbIterator it) throws Exception {
+        ArrayList<Tuple> out = new ArrayList<Tuple>();
+        it.open();
+        while (it.hasNext())
+            out.add(it.next());
+        it.close();
+        return out;
+    }
+
+    private ArrayList<Tuple> scan(DbFile f) throws Exception {
+        return run(new SeqScan(tid, f.getId(), ""));
+    }
+
+    private int count(DbFile f, Predicate.Op op, String status) throws Exception {
+        SeqScan scan = new SeqScan(tid, f.getId(), "");
+        return run(new Filter(new Predicate(2, op,
+                new StringField(status, Type.STRING_LEN)), scan)).size();
+    }
+
+    /**
+     * Pages hold as many tuples as HeapPages of the schema with every
+     * string an int, and scan back the table's tuples with one field per
+     * value.
+     */
+    @Test public void layout() throws Exception {
+        TupleDesc stored = Utility.getTupleDesc(3);
+        int perPage = (BufferPool.PAGE_SIZE * 8) / (stored.getSize() * 8 + 1);
+        DictHeapFile df = create(perPage + 1);
+        assertEquals(2, df.numPages());
+
+        ArrayList<Tuple> tuples = scan(df);
+        assertEquals(perPage + 1, tuples.size());
+        for (int i = 0; i < tuples.size(); i++)
+            assertEquals(tuple(i).toString(), tuples.get(i).toString());
+        assertTrue(tuples.get(0).getField(1) instanceof DictStringField);
+        assertSame(tuples.get(0).getField(1), tuples.get(7).getField(1));
+        assertSame(tuples.get(0).getField(2), tuples.get(perPage - perPage % 2).getField(2));
+    }
+
+    /**
+     * Filters, aggregates and joins on encoded strings give the answers
+     * they give on plain strings, including for values not in the
+     * dictionary.
+     */
+    @Test public void operators() throws Exception {
+        DictHeapFile df = create(100);
+        assertEquals(50, count(df, Predicate.Op.EQUALS, "open"));
+        assertEquals(50, count(df, Predicate.Op.NOT_EQUALS, "open"));
+        assertEquals(0, count(df, Predicate.Op.EQUALS, "lost"));
+        assertEquals(100, count(df, Predicate.Op.NOT_EQUALS, "lost"));
+        assertEquals(100, count(df, Predicate.Op.GREATER_THAN, "a"));
+
+        // a value the predicate missed is found once it is inserted
+        Predicate lost = new Predicate(2, Predicate.Op.EQUALS, new StringField("lost", Type.STRING_LEN));
+        Tuple t = tuple(100);
+        t.setField(2, new StringField("lost", Type.STRING_LEN));
+        assertTrue(!lost.filter(scan(df).get(0)));
+        Database.getBufferPool().insertTuple(tid, df.getId(), t);
+        int found = 0;
+        for (Tuple s : scan(df)) {
+            if (lost.filter(s))
+                found++;
+        }
+        assertEquals(1, found);
+
+        SeqScan scan = new SeqScan(tid, df.getId(), "");
+        HashMap<String, Integer> counts = new HashMap<String, Integer>();
+        for (Tuple g : run(new Aggregate(scan, 0, 1, Aggregator.Op.COUNT)))
+            counts.put(((StringField) g.getField(0)).getValue(), ((IntField) g.getField(1)).getValue());
+        assertEquals(7, counts.size());
+        assertEquals(15, (int) counts.get("country0"));
+        assertEquals(14, (int) counts.get("country6"));
+
+        scan = new SeqScan(tid, df.getId(), "");
+        // open, closed and lost
+        assertEquals(3, run(new Aggregate(scan, 2, 2, Aggregator.Op.COUNT)).size());
+
+        SeqScan left = new SeqScan(tid, df.getId(), "l");
+        SeqScan right = new SeqScan(tid, df.getId(), "r");
+        HashEquiJoin join = new HashEquiJoin(new JoinPredicate(1, Predicate.Op.EQUALS, 1), left, right);
+        // 3 countries of 15 tuples, with the one inserted, and 4 of 14
+        assertEquals(3 * 15 * 15 + 4 * 14 * 14, run(join).size());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Fields for values not in the dictionary, which all have code -1,
+     * compare by their values, agreeing with their hash codes.
+     */
+    @Test public void unknownValues() throws Exception {
+        DictHeapFile df = create(10);
+        DictStringField open = (DictStringField) scan(df).get(0).getField(2);
+        StringDictionary d = open.getDictionary();
+        DictStringField lost = d.fieldFor("lost");
+        DictStringField gone = d.fieldFor("gone");
+        assertEquals(-1, lost.getCode());
+        assertEquals(-1, gone.getCode());
+        assertFalse(lost.equals(gone));
+        assertFalse(lost.compare(Predicate.Op.EQUALS, gone));
+        assertTrue(lost.compare(Predicate.Op.NOT_EQUALS, gone));
+        assertTrue(lost.compare(Predicate.Op.GREATER_THAN, gone));
+        DictStringField again = d.fieldFor("lost");
+        assertEquals(lost, again);
+        assertEquals(lost.hashCode(), again.hashCode());
+        assertTrue(lost.compare(Predicate.Op.EQUALS, again));
+        assertFalse(lost.equals(open));
+        assertTrue(open.equals(d.fieldFor("open")));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * The dictionaries are read back when the file is opened again; a
+     * record cut short by a crash is dropped, and values added after it
+     * are read back as well.
+     */
+    @Test public void reopen() throws Exception {
+        DictHeapFile df = create(10);
+        Database.getBufferPool().flushAllPages();
+        df.close();
+        File dict = DictHeapFile.dictionaryFile(df.getFile());
+        long length = dict.length();
+        FileOutputStream out = new FileOutputStream(dict, true);
+        out.write(new byte[] { 0, 0, 0, 1, 0, 9, 'x' });
+        out.close();
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        DictHeapFile reopened = open(df.getFile());
+        Tuple t = tuple(10);
+        t.setField(1, new StringField("atlantis", Type.STRING_LEN));
+        Database.getBufferPool().insertTuple(tid, reopened.getId(), t);
+        Database.getBufferPool().transactionComplete(tid);
+        assertTrue(dict.length() > length);
+        Database.getBufferPool().flushAllPages();
+        reopened.close();
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        reopened = open(df.getFile());
+        HashSet<String> seen = new HashSet<String>();
+        for (Tuple s : scan(reopened))
+            seen.add(s.toString());
+        assertEquals(11, seen.size());
+        for (int i = 0; i < 10; i++)
+            assertTrue(seen.contains(tuple(i).toString()));
+        assertTrue(seen.contains(t.toString()));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DictHeapFileTest.class);
+    }
+}
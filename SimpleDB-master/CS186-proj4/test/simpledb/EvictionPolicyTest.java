@@ -0,0 +1,118 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class EvictionPolicyTest extends SimpleDbTestBase {
+
+    private static final BufferPool.FrameFilter ANY = new BufferPool.FrameFilter() {
+        public boolean canEvict(int frame) {
+            return true;
+        }
+    };
+
+    /** Fill frames 0..n-1 with pages 0..n-1 of a dummy table. */
+    private static void fill(BufferPool.EvictionPolicy policy, int n) {
+        for (int i = 0; i < n; i++)
+            policy.pageLoaded(i, new HeapPageId(1, i));
+    }
+
+    /**
+     * Unit test for ClockPolicy: a referenced frame gets a second chance.
+     */
+    @Test public void clockSecondChance() {
+        BufferPool.EvictionPolicy policy = new ClockPolicy(3);
+        fill(policy, 3);
+        // first sweep clears every bit, so frame 0 goes
+        assertEquals(0, policy.chooseVictim(ANY));
+        policy.pageAccessed(1);
+        // frame 1 was referenced again and is skipped
+        assertEquals(2, policy.chooseVictim(ANY));
+    }
+
+    /**
+     * Unit test for LruKPolicy: pages seen once go before pages seen twice.
+     */
+    @Test public void lruKPrefersCorrelatedOnce() {
+        BufferPool.EvictionPolicy policy = new LruKPolicy(3, 2);
+        fill(policy, 3);
+        policy.pageAccessed(0);
+        policy.pageAccessed(2);
+        assertEquals(1, policy.chooseVictim(ANY));
+        policy.pageRemoved(1);
+        policy.pageLoaded(1, new HeapPageId(1, 7));
+        assertEquals(1, policy.chooseVictim(ANY));
+    }
+
+    /**
+     * Unit test for TwoQPolicy: a page read again after leaving A1in is
+     * admitted to Am and outlives first-time pages.
+     */
+    @Test public void twoQPromotesFromGhostQueue() {
+        BufferPool.EvictionPolicy policy = new TwoQPolicy(4);
+        fill(policy, 4);
+        assertEquals(0, policy.chooseVictim(ANY));
+        policy.pageRemoved(0);
+        policy.pageLoaded(0, new HeapPageId(1, 0));
+        // page 0 is now in Am; the oldest first-timer goes instead
+        assertEquals(1, policy.chooseVictim(ANY));
+    }
+
+    /**
+     * Hits recorded by many threads at once, more than fill the access
+     * buffer, all reach LruKPolicy's history.
+     */
+    @Test public void lruKBufferedHits() throws Exception {
+        final BufferPool.EvictionPolicy policy = new LruKPolicy(4, 2);
+        fill(policy, 4);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final int frame = 1 + i % 3;
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int n = 0; n < 10 * AccessBuffer.SIZE; n++)
+                        policy.pageAccessed(frame);
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        // only frame 0 was never hit
+        assertEquals(0, policy.chooseVictim(ANY));
+        policy.pageRemoved(0);
+        for (int frame = 2; frame <= 3; frame++) {
+            policy.pageAccessed(frame);
+            policy.pageAccessed(frame);
+        }
+        // frame 1's last two hits are now the oldest
+        assertEquals(1, policy.chooseVictim(ANY));
+    }
+
+    /**
+     * Every policy must honour the filter and report when nothing is evictable.
+     */
+    @Test public void filterRespected() {
+        BufferPool.FrameFilter none = new BufferPool.FrameFilter() {
+            public boolean canEvict(int frame) {
+                return false;
+            }
+        };
+        for (BufferPool.Replacement r : BufferPool.Replacement.values()) {
+            BufferPool.EvictionPolicy policy = r.newPolicy(4);
+            fill(policy, 4);
+            assertEquals(-1, policy.chooseVictim(none));
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(EvictionPolicyTest.class);
+    }
+}
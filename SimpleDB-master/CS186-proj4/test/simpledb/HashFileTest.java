@@ -0,0 +1,180 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class HashFileTest extends SimpleDbTestBase {
+
+    /** with the string, a bucket page holds 30 tuples, so buckets split often */
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[] { Type.INT_TYPE, Type.STRING_TYPE },
+            new String[] { "id", "name" });
+    private static final int KEY = 0;
+    /** keys 0 to TUPLES / 2 - 1, each twice */
+    private static final int TUPLES = 3000;
+    /** a key that also has DUPLICATES more tuples, more than a page of them */
+    private static final int HOT = 7;
+    private static final int DUPLICATES = 100;
+
+    private static Tuple tuple(int key, int n) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(key));
+        t.setField(1, new StringField("n" + n, Type.STRING_LEN));
+        return t;
+    }
+
+    private static HashFile open(File f) {
+        HashFile hf = new HashFile(f, KEY, TD);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    /** @return a file of TUPLES + DUPLICATES tuples, inserted in random order */
+    private static HashFile create() throws Exception {
+        File f = File.createTempFile("hash", ".dat");
+        f.deleteOnExit();
+        HashFile hf = open(f);
+        // room for the pages a transaction of random inserts dirties
+        Database.resetBufferPool(500);
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < TUPLES; i++)
+            tuples.add(tuple(i / 2, i));
+        for (int i = 0; i < DUPLICATES; i++)
+            tuples.add(tuple(HOT, TUPLES + i));
+        Collections.shuffle(tuples, new Random(3));
+        Transaction t = null;
+        for (int i = 0; i < tuples.size(); i++) {
+            if (i % 100 == 0) {
+                if (t != null)
+                    t.commit();
+                t = new Transaction();
+                t.start();
+            }
+            Database.getBufferPool().insertTuple(t.getId(), hf.getId(), tuples.get(i));
+        }
+        t.commit();
+        return hf;
+    }
+
+    private static ArrayList<String> run(DbIterator it) throws Exception {
+        ArrayList<String> out = new ArrayList<String>();
+        it.open();
+        while (it.hasNext())
+            out.add(it.next().toString());
+        it.close();
+        Collections.sort(out);
+        return out;
+    }
+
+    private static Predicate key(int k) {
+        return new Predicate(KEY, Predicate.Op.EQUALS, new IntField(k));
+    }
+
+    /**
+     * Every tuple scans back, and a lookup returns what a filter over the
+     * whole table does, reading the directory and one bucket page unless
+     * the bucket overflowed.
+     */
+    @Test public void insertAndLookup() throws Exception {
+        HashFile hf = create();
+        TransactionId tid = new TransactionId();
+        assertEquals(TUPLES + DUPLICATES, run(new SeqScan(tid, hf.getId(), "")).size());
+        for (int k : new int[] { -1, 0, 1, HOT, 700, TUPLES / 2 - 1, TUPLES }) {
+            ArrayList<String> lookup = run(new HashIndexScan(tid, hf.getId(), "", key(k)));
+            ArrayList<String> filter = run(new Filter(key(k), new SeqScan(tid, hf.getId(), "")));
+            assertEquals(filter, lookup);
+        }
+        assertEquals(2 + DUPLICATES, run(new HashIndexScan(tid, hf.getId(), "", key(HOT))).size());
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        assertEquals(2, run(new HashIndexScan(tid, hf.getId(), "", key(700))).size());
+        // the root of the directory, a directory page and the bucket
+        assertTrue(Database.getBufferPool().getPageReads(tid) <= 3);
+        assertTrue(hf.numPages() > 100);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Deletes are committed and aborted like a HeapFile's, and the file
+     * reads back from disk.
+     */
+    @Test public void deleteAbortAndReopen() throws Exception {
+        HashFile hf = create();
+        Transaction t = new Transaction();
+        t.start();
+        Delete delete = new Delete(t.getId(), new Filter(
+                new Predicate(KEY, Predicate.Op.LESS_THAN, new IntField(500)),
+                new SeqScan(t.getId(), hf.getId(), "")));
+        delete.open();
+        assertEquals(new IntField(1000 + DUPLICATES), delete.next().getField(0));
+        delete.close();
+        t.commit();
+
+        t = new Transaction();
+        t.start();
+        for (int i = 0; i < 200; i++)
+            Database.getBufferPool().insertTuple(t.getId(), hf.getId(), tuple(600, TUPLES + DUPLICATES + i));
+        delete = new Delete(t.getId(), new SeqScan(t.getId(), hf.getId(), ""));
+        delete.open();
+        assertEquals(new IntField(TUPLES - 1000 + 200), delete.next().getField(0));
+        delete.close();
+        t.transactionComplete(true);
+
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        HashFile reopened = open(hf.getFile());
+        TransactionId tid = new TransactionId();
+        assertEquals(TUPLES - 1000, run(new SeqScan(tid, reopened.getId(), "")).size());
+        assertEquals(0, run(new HashIndexScan(tid, reopened.getId(), "", key(HOT))).size());
+        assertEquals(2, run(new HashIndexScan(tid, reopened.getId(), "", key(600))).size());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * The planner looks up an equality filter on the key instead of
+     * scanning, whatever the order of the filters.
+     */
+    @Test public void plannerChoosesLookup() throws Exception {
+        HashFile hf = create();
+        String name = Database.getCatalog().getTableName(hf.getId());
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put(name, new TableStats(hf.getId(), 1000));
+
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(hf.getId(), "t");
+        lp.addFilter("t.name", Predicate.Op.NOT_EQUALS, "n0");
+        lp.addFilter("t.id", Predicate.Op.EQUALS, "700");
+        lp.addProjectField("t.name", null);
+        TransactionId tid = new TransactionId();
+        DbIterator plan = lp.physicalPlan(tid, stats, false);
+        DbIterator it = plan;
+        while (it instanceof Operator)
+            it = ((Operator) it).getChildren()[0];
+        assertTrue(it instanceof HashIndexScan);
+        ArrayList<String> out = run(plan);
+        assertEquals(2, out.size());
+        assertEquals("n1400", out.get(0).trim());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HashFileTest.class);
+    }
+}
@@ -5,6 +5,8 @@ import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
+
+import java.io.File;
 import junit.framework.JUnit4TestAdapter;
 
 public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
@@ -43,6 +45,57 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         assertEquals(3, empty.numPages());
     }
 
+    /**
+     * Inserts go to the first page with free slots, found through the free
+     * space map, which is saved when the file is closed.
+     */
+    @Test public void freeSpace() throws Exception {
+        for (int i = 0; i < 2 * 504; ++i)
+            empty.insertTuple(tid, Utility.getHeapTuple(i, 2));
+        assertEquals(2, empty.numPages());
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        HeapPage first = (HeapPage) Database.getBufferPool().getPage(tid,
+                new HeapPageId(empty.getId(), 0), Permissions.READ_ONLY);
+        Tuple victim = first.iterator().next();
+        empty.deleteTuple(tid, victim);
+        Tuple t = Utility.getHeapTuple(7, 2);
+        empty.insertTuple(tid, t);
+        assertEquals(0, t.getRecordId().getPageId().pageNumber());
+        t = Utility.getHeapTuple(8, 2);
+        empty.insertTuple(tid, t);
+        assertEquals(2, t.getRecordId().getPageId().pageNumber());
+        Database.getBufferPool().transactionComplete(tid);
+
+        File map = HeapFile.freeSpaceFile(empty.getFile());
+        map.delete();
+        empty.close();
+        assertEquals(4 + 3 * 4, map.length());
+    }
+
+    /**
+     * Unit test for HeapFile.close(): the file can still be used after it
+     * is closed, and its page count is read from disk again.
+     */
+    @Test public void close() throws Exception {
+        HeapPage page = new HeapPage(new HeapPageId(empty.getId(), 1),
+                HeapPage.createEmptyPageData());
+        page.insertTuple(Utility.getHeapTuple(7, 2));
+        empty.writePage(page);
+        assertEquals(2, empty.numPages());
+        assertEquals(2 * BufferPool.PAGE_SIZE, empty.getFile().length());
+
+        empty.close();
+        empty.close();
+        assertEquals(2, empty.numPages());
+        HeapPage read = (HeapPage) empty.readPage(page.getId());
+        assertTrue(TestUtil.compareTuples(Utility.getHeapTuple(7, 2), read.iterator().next()));
+
+        Database.getCatalog().clear();
+        assertEquals(2, empty.numPages());
+    }
+
     /**
      * JUnit suite target
      */
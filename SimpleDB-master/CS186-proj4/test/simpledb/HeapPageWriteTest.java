@@ -1,6 +1,7 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
@@ -126,6 +127,27 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage.getBeforeImage(): the image is the bytes the
+     * page was read from until a change is committed, and is taken again
+     * only at the next change.
+     */
+    @Test public void beforeImage() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        int free = page.getNumEmptySlots();
+        assertSame(page.data, page.getBeforeImage().data);
+
+        page.insertTuple(Utility.getHeapTuple(1, 2));
+        assertSame(page.data, page.getBeforeImage().data);
+        assertEquals(free, page.getBeforeImage().getNumEmptySlots());
+
+        page.setBeforeImage();
+        assertEquals(free - 1, page.getBeforeImage().getNumEmptySlots());
+        page.insertTuple(Utility.getHeapTuple(2, 2));
+        page.deleteTuple(page.iterator().next());
+        assertEquals(free - 1, page.getBeforeImage().getNumEmptySlots());
+    }
+
     /**
      * JUnit suite target
      */
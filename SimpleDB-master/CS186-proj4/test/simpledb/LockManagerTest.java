@@ -0,0 +1,174 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class LockManagerTest extends SimpleDbTestBase {
+
+    private LockManager lm;
+    private PageId p0;
+    private PageId p1;
+    private TransactionId tid1;
+    private TransactionId tid2;
+
+    @Before public void setUp() {
+        lm = new LockManager();
+        p0 = new HeapPageId(1, 0);
+        p1 = new HeapPageId(1, 1);
+        tid1 = new TransactionId();
+        tid2 = new TransactionId();
+    }
+
+    /**
+     * Acquire a lock from another thread and return it, started.
+     */
+    private Thread acquireAsync(final TransactionId tid, final PageId pid,
+                                final boolean exclusive, final boolean[] aborted) {
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    lm.acquire(tid, pid, exclusive);
+                } catch (TransactionAbortedException e) {
+                    aborted[0] = true;
+                }
+            }
+        };
+        t.start();
+        return t;
+    }
+
+    /**
+     * Shared locks are compatible; a sole sharer may upgrade.
+     */
+    @Test public void sharedAndUpgrade() throws Exception {
+        lm.acquire(tid1, p0, false);
+        lm.acquire(tid2, p0, false);
+        assertTrue(lm.holdsLock(tid1, p0));
+        assertTrue(lm.holdsLock(tid2, p0));
+
+        lm.release(tid2, p0);
+        assertFalse(lm.holdsLock(tid2, p0));
+        lm.acquire(tid1, p0, true);
+        assertEquals(0, lm.getContendedCount());
+    }
+
+    /**
+     * A waiter is granted the lock once the holder releases it.
+     */
+    @Test public void waitUntilReleased() throws Exception {
+        lm.acquire(tid1, p0, true);
+        boolean[] aborted = new boolean[1];
+        Thread t = acquireAsync(tid2, p0, false, aborted);
+        Thread.sleep(50);
+        assertFalse(lm.holdsLock(tid2, p0));
+
+        lm.releaseAll(tid1);
+        t.join(5000);
+        assertFalse(t.isAlive());
+        assertFalse(aborted[0]);
+        assertTrue(lm.holdsLock(tid2, p0));
+        assertEquals(1, lm.getContendedCount());
+    }
+
+    /**
+     * Two transactions that wait for each other: the one closing the
+     * cycle aborts right away, and the other proceeds once it releases.
+     */
+    @Test public void deadlockDetected() throws Exception {
+        lm.acquire(tid1, p0, true);
+        lm.acquire(tid2, p1, true);
+        boolean[] aborted1 = new boolean[1];
+        Thread t = acquireAsync(tid1, p1, true, aborted1);
+        Thread.sleep(50);
+
+        try {
+            lm.acquire(tid2, p0, true);
+            fail("expected deadlock to be detected");
+        } catch (TransactionAbortedException e) {
+            // expected
+        }
+        assertEquals(1, lm.getDeadlockCount());
+
+        lm.releaseAll(tid2);
+        t.join(5000);
+        assertFalse(t.isAlive());
+        assertFalse(aborted1[0]);
+        assertTrue(lm.holdsLock(tid1, p1));
+    }
+
+    /**
+     * Two sharers that both try to upgrade deadlock; one of them aborts.
+     */
+    @Test public void upgradeDeadlock() throws Exception {
+        lm.acquire(tid1, p0, false);
+        lm.acquire(tid2, p0, false);
+        boolean[] aborted1 = new boolean[1];
+        Thread t = acquireAsync(tid1, p0, true, aborted1);
+        Thread.sleep(50);
+
+        try {
+            lm.acquire(tid2, p0, true);
+            fail("expected deadlock to be detected");
+        } catch (TransactionAbortedException e) {
+            // expected
+        }
+        lm.releaseAll(tid2);
+        t.join(5000);
+        assertFalse(aborted1[0]);
+        assertEquals(1, lm.getLockedPages(tid1).size());
+    }
+
+    /**
+     * An upgrade goes ahead of an exclusive request already queued; a
+     * second upgrade then deadlocks with the first and aborts, and the
+     * queued request is granted once both upgraders are done.
+     */
+    @Test public void upgradeAheadOfQueuedRequest() throws Exception {
+        TransactionId tid3 = new TransactionId();
+        lm.acquire(tid1, p0, false);
+        lm.acquire(tid2, p0, false);
+        boolean[] aborted3 = new boolean[1];
+        Thread t3 = acquireAsync(tid3, p0, true, aborted3);
+        Thread.sleep(50);
+        boolean[] aborted1 = new boolean[1];
+        Thread t1 = acquireAsync(tid1, p0, true, aborted1);
+        Thread.sleep(50);
+        assertFalse(lm.holdsLock(tid3, p0));
+
+        try {
+            lm.acquire(tid2, p0, true);
+            fail("expected deadlock to be detected");
+        } catch (TransactionAbortedException e) {
+            // expected
+        }
+        lm.releaseAll(tid2);
+        t1.join(5000);
+        assertFalse(t1.isAlive());
+        assertFalse(aborted1[0]);
+        assertTrue(lm.holdsExclusiveLock(tid1, p0));
+        assertFalse(lm.holdsLock(tid3, p0));
+
+        lm.releaseAll(tid1);
+        t3.join(5000);
+        assertFalse(t3.isAlive());
+        assertFalse(aborted3[0]);
+        assertTrue(lm.holdsExclusiveLock(tid3, p0));
+        // tid1 and tid2 shared, tid1 upgraded, tid3 was granted
+        assertEquals(4, lm.getAcquisitionCount());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LockManagerTest.class);
+    }
+}
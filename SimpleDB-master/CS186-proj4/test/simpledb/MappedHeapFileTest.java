@@ -0,0 +1,79 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class MappedHeapFileTest extends SimpleDbTestBase {
+
+    private static final int TUPLES_PER_PAGE = 504;
+
+    /**
+     * Pages read through the mappings match pages read with read calls,
+     * and pages past the end of a segment mapped while the file was
+     * shorter are found once the file grows.
+     */
+    @Test public void readsAndGrows() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        File file = SystemTestUtil.createRandomHeapFileUnopened(2, 5 * TUPLES_PER_PAGE,
+                1 << 16, null, tuples);
+        HeapFile plain = new HeapFile(file, Utility.getTupleDesc(2));
+        MappedHeapFile mapped = new MappedHeapFile(file, Utility.getTupleDesc(2),
+                2 * BufferPool.PAGE_SIZE);
+        Database.getCatalog().addTable(mapped, SystemTestUtil.getUUID());
+
+        for (int i = 0; i < 5; i++) {
+            HeapPageId pid = new HeapPageId(mapped.getId(), i);
+            assertTrue(Arrays.equals(plain.readPage(pid).getPageData(),
+                    mapped.readPage(pid).getPageData()));
+        }
+        assertEquals(3, mapped.getMapCount());
+        SystemTestUtil.matchTuples(mapped, tuples);
+
+        Transaction t = new Transaction();
+        t.start();
+        Tuple extra = Utility.getHeapTuple(new int[] { 7, 7 });
+        Database.getBufferPool().insertTuple(t.getId(), mapped.getId(), extra);
+        t.commit();
+        tuples.add(SystemTestUtil.tupleToList(extra));
+        assertEquals(6, mapped.numPages());
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(mapped, tuples);
+        assertEquals(4, mapped.getMapCount());
+        plain.close();
+    }
+
+    /**
+     * The catalog makes a table a MappedHeapFile when its line says
+     * "mapped".
+     */
+    @Test public void loadSchema() throws Exception {
+        File catalog = File.createTempFile("catalog", ".txt");
+        catalog.deleteOnExit();
+        FileWriter w = new FileWriter(catalog);
+        w.write("events (id int, kind int) mapped\n");
+        w.close();
+        Database.getCatalog().loadSchema(catalog.getAbsolutePath());
+        Catalog c = Database.getCatalog();
+        assertTrue(c.getDbFile(c.getTableId("events")) instanceof MappedHeapFile);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MappedHeapFileTest.class);
+    }
+}
@@ -0,0 +1,165 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.EvictionTest;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class OffHeapBufferPoolTest extends SimpleDbTestBase {
+
+    private static final int TUPLES_PER_PAGE = 504;
+
+    /**
+     * Pages are decoded while a transaction uses them and only held in the
+     * arena afterwards; reading them again is still a hit.
+     */
+    @Test public void decodeOnAccess() throws Exception {
+        BufferPool bp = Database.resetBufferPool(32, BufferPool.Storage.OFF_HEAP);
+        assertEquals(BufferPool.Storage.OFF_HEAP, bp.getStorage());
+        assertEquals(32L * BufferPool.getPageSize(), bp.getOffHeapBytes());
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10 * TUPLES_PER_PAGE, null, null);
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < f.numPages(); i++)
+            bp.getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+        assertEquals(f.numPages(), bp.getDecodedPageCount());
+        bp.transactionComplete(tid);
+        assertEquals(0, bp.getDecodedPageCount());
+
+        long misses = bp.getMissCount();
+        tid = new TransactionId();
+        HeapPage page = (HeapPage) bp.getPage(tid, new HeapPageId(f.getId(), 3), Permissions.READ_ONLY);
+        assertEquals(misses, bp.getMissCount());
+        assertEquals(1, bp.getDecodeCount());
+        int count = 0;
+        for (java.util.Iterator<Tuple> it = page.iterator(); it.hasNext(); it.next())
+            count++;
+        assertEquals(TUPLES_PER_PAGE, count);
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * Committed changes are kept in the arena when the page is dropped from
+     * the heap, and aborted ones are not.
+     */
+    @Test public void changesSurvive() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 3 * TUPLES_PER_PAGE, null, null);
+        BufferPool bp = Database.resetBufferPool(32, BufferPool.Storage.OFF_HEAP);
+
+        // cache the whole table; the insert only reads the page it changes
+        Transaction t = new Transaction();
+        t.start();
+        assertFalse(EvictionTest.findMagicTuple(f, t));
+        t.commit();
+
+        t = new Transaction();
+        t.start();
+        EvictionTest.insertRow(f, t);
+        t.commit();
+        assertEquals(0, bp.getDecodedPageCount());
+
+        long misses = bp.getMissCount();
+        t = new Transaction();
+        t.start();
+        assertTrue(EvictionTest.findMagicTuple(f, t));
+        t.commit();
+        assertEquals(misses, bp.getMissCount());
+        assertTrue(bp.getDecodeCount() > 0);
+
+        t = new Transaction();
+        t.start();
+        EvictionTest.insertRow(f, t);
+        t.transactionComplete(true);
+        assertEquals(0, bp.getDecodedPageCount());
+    }
+
+    /**
+     * Readers whose commits park a page race with writers that lock it
+     * and change it; no committed insert is lost to a copy parked away
+     * under the writer.
+     */
+    @Test public void parkRacesWithWriters() throws Exception {
+        final HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        final BufferPool bp = Database.resetBufferPool(32, BufferPool.Storage.OFF_HEAP);
+        final int writers = 2;
+        final int inserts = 200;
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicInteger committed = new AtomicInteger();
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[writers + 2];
+        for (int i = 0; i < threads.length; i++) {
+            final boolean writer = i < writers;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        if (writer) {
+                            for (int n = 0; n < inserts; n++) {
+                                TransactionId tid = new TransactionId();
+                                Tuple t = new Tuple(f.getTupleDesc());
+                                t.setField(0, new IntField(n));
+                                t.setField(1, new IntField(n));
+                                try {
+                                    bp.insertTuple(tid, f.getId(), t);
+                                    bp.transactionComplete(tid, true);
+                                    committed.incrementAndGet();
+                                } catch (TransactionAbortedException e) {
+                                    bp.transactionComplete(tid, false);
+                                }
+                            }
+                        } else {
+                            while (!done.get()) {
+                                TransactionId tid = new TransactionId();
+                                try {
+                                    bp.getPage(tid, new HeapPageId(f.getId(), 0),
+                                            Permissions.READ_ONLY);
+                                } catch (TransactionAbortedException e) {
+                                    // retried
+                                }
+                                bp.transactionComplete(tid, true);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure[0] = e;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < writers; i++)
+            threads[i].join();
+        done.set(true);
+        for (Thread t : threads)
+            t.join();
+        assertNull(failure[0]);
+
+        TransactionId tid = new TransactionId();
+        DbIterator it = new SeqScan(tid, f.getId(), "");
+        int n = 0;
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        bp.transactionComplete(tid);
+        assertEquals(10 + committed.get(), n);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(OffHeapBufferPoolTest.class);
+    }
+}
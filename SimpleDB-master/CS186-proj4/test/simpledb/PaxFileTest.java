@@ -0,0 +1,147 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PaxFileTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE },
+            new String[] { "id", "name", "amount" });
+
+    private static Tuple tuple(int i) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField("n" + i, Type.STRING_LEN));
+        t.setField(2, new IntField(i % 10));
+        return t;
+    }
+
+    private static PaxFile create(int tuples) throws Exception {
+        File f = File.createTempFile("pax", ".dat");
+        f.deleteOnExit();
+        HeapFile.freeSpaceFile(f).deleteOnExit();
+        PaxFile pf = new PaxFile(f, TD);
+        Database.getCatalog().addTable(pf, SystemTestUtil.getUUID());
+        ArrayList<Tuple> list = new ArrayList<Tuple>();
+        for (int i = 0; i < tuples; i++)
+            list.add(tuple(i));
+        pf.bulkLoad(list.iterator());
+        return pf;
+    }
+
+    private static int sumAmount(DbFile f, int[] columns) throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        SeqScan scan = new SeqScan(t.getId(), f.getId(), "");
+        scan.setColumns(columns);
+        Aggregate sum = new Aggregate(scan, 2, Aggregator.NO_GROUPING, Aggregator.Op.SUM);
+        sum.open();
+        int total = ((IntField) sum.next().getField(0)).getValue();
+        sum.close();
+        t.commit();
+        return total;
+    }
+
+    /**
+     * Pages hold as many tuples as HeapPages, stored by column, and scan
+     * back whole whichever columns the scan decodes.
+     */
+    @Test public void layout() throws Exception {
+        int perPage = (BufferPool.PAGE_SIZE * 8) / (TD.getSize() * 8 + 1);
+        PaxFile pf = create(perPage + 1);
+        assertEquals(2, pf.numPages());
+
+        byte[] data = pf.readPage(new HeapPageId(pf.getId(), 0)).getPageData();
+        int header = (perPage + 7) / 8;
+        int amounts = header + perPage * (Type.INT_TYPE.getLen() + Type.STRING_TYPE.getLen());
+        // the amounts of slots 0 and 1 are next to each other
+        assertEquals(new IntField(3), Type.INT_TYPE.parse(data, amounts + 3 * 4));
+        assertEquals(new IntField(4), Type.INT_TYPE.parse(data, amounts + 4 * 4));
+
+        Transaction t = new Transaction();
+        t.start();
+        SeqScan scan = new SeqScan(t.getId(), pf.getId(), "");
+        scan.setColumns(new int[] { 2 });
+        scan.open();
+        for (int i = 0; i <= perPage; i++) {
+            Tuple tup = scan.next();
+            assertEquals(tuple(i).toString(), tup.toString());
+        }
+        scan.close();
+        t.commit();
+        assertEquals(sumAmount(pf, null), sumAmount(pf, new int[] { 2 }));
+    }
+
+    /**
+     * Inserts and deletes through the buffer pool are committed and
+     * aborted like a HeapFile's.
+     */
+    @Test public void insertAndDelete() throws Exception {
+        PaxFile pf = create(100);
+        int before = sumAmount(pf, new int[] { 2 });
+
+        Transaction t = new Transaction();
+        t.start();
+        Database.getBufferPool().insertTuple(t.getId(), pf.getId(), tuple(9));
+        t.transactionComplete(true);
+        assertEquals(before, sumAmount(pf, new int[] { 2 }));
+
+        t = new Transaction();
+        t.start();
+        Database.getBufferPool().insertTuple(t.getId(), pf.getId(), tuple(9));
+        SeqScan scan = new SeqScan(t.getId(), pf.getId(), "");
+        Delete delete = new Delete(t.getId(), new Filter(
+                new Predicate(0, Predicate.Op.LESS_THAN, new IntField(10)), scan));
+        delete.open();
+        assertEquals(new IntField(11), delete.next().getField(0));
+        delete.close();
+        t.commit();
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        // the committed insert had an id below 10 as well
+        assertEquals(before - 45, sumAmount(pf, new int[] { 2 }));
+    }
+
+    /**
+     * Scans below a projection, filter, aggregate and join are told the
+     * columns used above them.
+     */
+    @Test public void pruning() throws Exception {
+        PaxFile pf = create(10);
+        TransactionId tid = new TransactionId();
+        SeqScan left = new SeqScan(tid, pf.getId(), "l");
+        SeqScan right = new SeqScan(tid, pf.getId(), "r");
+        HashEquiJoin join = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0), left, right);
+        Filter filter = new Filter(new Predicate(5, Predicate.Op.GREATER_THAN, new IntField(3)), join);
+        Aggregate agg = new Aggregate(filter, 2, 1, Aggregator.Op.SUM);
+        ArrayList<Integer> fields = new ArrayList<Integer>(Arrays.asList(1));
+        Project project = new Project(fields, new Type[] { Type.INT_TYPE }, agg);
+        ColumnPruning.pruneColumns(project);
+        assertArrayEquals(new int[] { 0, 1, 2 }, left.getColumns());
+        assertArrayEquals(new int[] { 0, 2 }, right.getColumns());
+
+        SeqScan all = new SeqScan(tid, pf.getId(), "a");
+        ColumnPruning.pruneColumns(new OrderBy(0, true, all));
+        assertNull(all.getColumns());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PaxFileTest.class);
+    }
+}
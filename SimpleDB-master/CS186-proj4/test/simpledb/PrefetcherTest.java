@@ -0,0 +1,140 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PrefetcherTest extends SimpleDbTestBase {
+
+    private static final int TUPLES_PER_PAGE = 504;
+
+    /** A HeapFile whose reads take a while, like reads from a disk. */
+    private static class SlowHeapFile extends HeapFile {
+        private static final long serialVersionUID = 1L;
+
+        /** whether a read was interrupted */
+        volatile boolean interrupted;
+
+        SlowHeapFile(HeapFile f) {
+            super(f.getFile(), f.getTupleDesc());
+        }
+
+        public Page readPage(PageId pid) {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                interrupted = true;
+                Thread.currentThread().interrupt();
+            }
+            return super.readPage(pid);
+        }
+    }
+
+    /**
+     * A scan through a pool with a prefetcher returns every tuple, and
+     * finds the pages after the first ones already read.
+     */
+    @Test public void scanReadsAhead() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 20 * TUPLES_PER_PAGE, null, tuples);
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        Prefetcher prefetcher = bp.startPrefetcher(2, 8);
+
+        SystemTestUtil.matchTuples(f, tuples);
+        assertTrue(prefetcher.getPagesRead() > 0);
+        assertEquals(f.numPages(), bp.getMissCount());
+        assertEquals(f.numPages(), bp.getCachedPageCount());
+    }
+
+    /**
+     * The window grows while the scan keeps reaching pages whose reads
+     * are still running.
+     */
+    @Test public void windowGrows() throws Exception {
+        HeapFile slow = new SlowHeapFile(
+                SystemTestUtil.createRandomHeapFile(2, 40 * TUPLES_PER_PAGE, null, null));
+        Database.getCatalog().addTable(slow, SystemTestUtil.getUUID());
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        Prefetcher prefetcher = bp.startPrefetcher(1, 8);
+
+        Prefetcher.Scan scan = prefetcher.newScan(slow.getId(), null);
+        assertEquals(Prefetcher.INITIAL_WINDOW, scan.getWindow());
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < slow.numPages(); i++) {
+            scan.beforeRead(i, slow.numPages());
+            PageId pid = new HeapPageId(slow.getId(), i);
+            bp.getPage(tid, pid, Permissions.READ_ONLY);
+            bp.unpinPage(tid, pid);
+        }
+        bp.transactionComplete(tid);
+        assertEquals(8, scan.getWindow());
+        assertTrue(prefetcher.getGrowCount() >= 2);
+    }
+
+    /**
+     * Pages read ahead but evicted before the scan reached them shrink the
+     * window, and the pages are read again.
+     */
+    @Test public void windowShrinks() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 20 * TUPLES_PER_PAGE, null, null);
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        Prefetcher prefetcher = bp.startPrefetcher(1, 8);
+
+        Prefetcher.Scan scan = prefetcher.newScan(f.getId(), null);
+        scan.beforeRead(0, f.numPages());
+        scan.beforeRead(1, f.numPages());
+        // pages 2 and 3 are requested; wait for them, then lose them
+        PageId two = new HeapPageId(f.getId(), 2);
+        PageId three = new HeapPageId(f.getId(), 3);
+        for (int i = 0; i < 500 && !(bp.isCached(two) && bp.isCached(three)); i++)
+            Thread.sleep(10);
+        bp.discardPage(two);
+        scan.beforeRead(2, f.numPages());
+        assertEquals(1, scan.getWindow());
+        assertEquals(1, prefetcher.getShrinkCount());
+    }
+
+    /**
+     * Stopping the prefetcher in the middle of a scan lets the reads in
+     * progress finish without interrupting them, and the scan goes on to
+     * read every page.
+     */
+    @Test public void shutdownLetsReadsFinish() throws Exception {
+        HeapFile slow = new SlowHeapFile(
+                SystemTestUtil.createRandomHeapFile(2, 40 * TUPLES_PER_PAGE, null, null));
+        Database.getCatalog().addTable(slow, SystemTestUtil.getUUID());
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        bp.startPrefetcher(2, 8);
+
+        TransactionId tid = new TransactionId();
+        DbIterator it = new SeqScan(tid, slow.getId(), "");
+        it.open();
+        int n = 0;
+        for (; n < 5 * TUPLES_PER_PAGE; n++)
+            it.next();
+        bp.stopPrefetcher();
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        bp.transactionComplete(tid);
+        assertEquals(40 * TUPLES_PER_PAGE, n);
+        assertTrue(!((SlowHeapFile) slow).interrupted);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PrefetcherTest.class);
+    }
+}
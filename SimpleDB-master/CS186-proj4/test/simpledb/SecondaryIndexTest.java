@@ -0,0 +1,157 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class SecondaryIndexTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 5000;
+    /** values of column 1 are 0 to KEYS - 1 */
+    private static final int KEYS = 1000;
+
+    private HeapFile table;
+    private SecondaryIndex index;
+
+    /** A table of two columns, with an index of the second. */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        table = SystemTestUtil.createRandomHeapFile(2, ROWS, KEYS, null, null);
+        File f = File.createTempFile("index", ".idx");
+        f.deleteOnExit();
+        index = Database.getCatalog().addIndex(table.getId(), 1,
+                SecondaryIndex.indexFile(f, Type.INT_TYPE));
+        index.build(1000);
+    }
+
+    private static ArrayList<String> run(DbIterator it) throws Exception {
+        ArrayList<String> out = new ArrayList<String>();
+        it.open();
+        while (it.hasNext())
+            out.add(it.next().toString());
+        it.close();
+        return out;
+    }
+
+    private Tuple tuple(int a, int b) {
+        Tuple t = new Tuple(table.getTupleDesc());
+        t.setField(0, new IntField(a));
+        t.setField(1, new IntField(b));
+        return t;
+    }
+
+    /** @return the tuples an IndexScan returns, and those a filtered SeqScan does, sorted */
+    private List<List<String>> both(TransactionId tid, Predicate p) throws Exception {
+        ArrayList<String> index = run(new IndexScan(tid, table.getId(), "t", p));
+        ArrayList<String> filter = run(new Filter(p, new SeqScan(tid, table.getId(), "t")));
+        Collections.sort(index);
+        Collections.sort(filter);
+        List<List<String>> out = new ArrayList<List<String>>();
+        out.add(index);
+        out.add(filter);
+        return out;
+    }
+
+    /**
+     * An index scan returns what a filter over the whole table does, and
+     * reads the heap pages in file order.
+     */
+    @Test public void indexScan() throws Exception {
+        Predicate.Op[] ops = { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN,
+                Predicate.Op.GREATER_THAN_OR_EQ, Predicate.Op.NOT_EQUALS };
+        TransactionId tid = new TransactionId();
+        for (int k : new int[] { -1, 0, 500, KEYS - 1 }) {
+            for (Predicate.Op op : ops) {
+                List<List<String>> r = both(tid, new Predicate(1, op, new IntField(k)));
+                assertEquals(op + " " + k, r.get(1), r.get(0));
+            }
+        }
+
+        IndexScan scan = new IndexScan(tid, table.getId(), "t",
+                new Predicate(1, Predicate.Op.LESS_THAN, new IntField(KEYS / 2)));
+        scan.open();
+        int last = -1;
+        while (scan.hasNext()) {
+            RecordId rid = scan.next().getRecordId();
+            int at = rid.getPageId().pageNumber() * ROWS + rid.tupleno();
+            assertTrue(at > last);
+            last = at;
+        }
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Inserts and deletes through the buffer pool change the index with
+     * the table, and an abort rolls back both.
+     */
+    @Test public void insertDeleteAbort() throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        for (int i = 0; i < 300; i++)
+            Database.getBufferPool().insertTuple(t.getId(), table.getId(), tuple(i, KEYS));
+        Delete delete = new Delete(t.getId(), new IndexScan(t.getId(), table.getId(), "t",
+                new Predicate(1, Predicate.Op.LESS_THAN, new IntField(KEYS / 10))));
+        delete.open();
+        int deleted = ((IntField) delete.next().getField(0)).getValue();
+        delete.close();
+        assertTrue(deleted > 0);
+        t.commit();
+
+        TransactionId tid = new TransactionId();
+        Predicate added = new Predicate(1, Predicate.Op.EQUALS, new IntField(KEYS));
+        Predicate gone = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(KEYS / 10));
+        Predicate all = new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(-1));
+        assertEquals(300, both(tid, added).get(0).size());
+        assertEquals(0, both(tid, gone).get(0).size());
+        List<List<String>> r = both(tid, all);
+        assertEquals(ROWS + 300 - deleted, r.get(0).size());
+        assertEquals(r.get(1), r.get(0));
+        Database.getBufferPool().transactionComplete(tid);
+
+        t = new Transaction();
+        t.start();
+        for (int i = 0; i < 50; i++)
+            Database.getBufferPool().insertTuple(t.getId(), table.getId(), tuple(i, 0));
+        delete = new Delete(t.getId(), new IndexScan(t.getId(), table.getId(), "t", added));
+        delete.open();
+        delete.next();
+        delete.close();
+        t.transactionComplete(true);
+
+        tid = new TransactionId();
+        assertEquals(300, both(tid, added).get(0).size());
+        assertEquals(0, both(tid, gone).get(0).size());
+        r = both(tid, all);
+        assertEquals(ROWS + 300 - deleted, r.get(0).size());
+        assertEquals(r.get(1), r.get(0));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A scan of a column with no index fails when opened.
+     */
+    @Test(expected = DbException.class) public void noIndex() throws Exception {
+        new IndexScan(new TransactionId(), table.getId(), "t",
+                new Predicate(0, Predicate.Op.EQUALS, new IntField(1))).open();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SecondaryIndexTest.class);
+    }
+}
@@ -221,7 +221,7 @@ public class TestUtil {
             throw new RuntimeException("not implemented");
         }
 
-        public Page deleteTuple(TransactionId tid, Tuple t)
+        public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t)
             throws DbException, TransactionAbortedException {
             throw new RuntimeException("not implemented");
         }
@@ -381,6 +381,8 @@ public class TestUtil {
                 throw new RuntimeException(e);
             }
             emptyFile.deleteOnExit();
+            HeapFile.freeSpaceFile(emptyFile).deleteOnExit();
+            HeapFile.zoneMapFile(emptyFile).deleteOnExit();
         }
 
         protected void setUp() throws Exception {
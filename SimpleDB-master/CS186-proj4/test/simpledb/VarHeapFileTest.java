@@ -0,0 +1,128 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class VarHeapFileTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[] { Type.INT_TYPE, Type.STRING_TYPE }, new String[] { "id", "code" });
+
+    private static Tuple tuple(int i) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField("c" + i, Type.STRING_LEN));
+        return t;
+    }
+
+    private static VarHeapFile create() throws Exception {
+        File f = File.createTempFile("var", ".dat");
+        f.deleteOnExit();
+        HeapFile.freeSpaceFile(f).deleteOnExit();
+        VarHeapFile vf = new VarHeapFile(f, TD);
+        Database.getCatalog().addTable(vf, "var" + f.getName());
+        return vf;
+    }
+
+    private static int scanCount(DbFile f, int below) throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        Filter filter = new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(below)),
+                new SeqScan(t.getId(), f.getId(), ""));
+        int n = 0;
+        filter.open();
+        while (filter.hasNext()) {
+            Tuple tup = filter.next();
+            int id = ((IntField) tup.getField(0)).getValue();
+            assertEquals(new StringField("c" + id, Type.STRING_LEN), tup.getField(1));
+            n++;
+        }
+        filter.close();
+        t.commit();
+        return n;
+    }
+
+    /**
+     * A loaded table scans like a HeapFile, in a fraction of the pages.
+     */
+    @Test public void loadAndScan() throws Exception {
+        VarHeapFile vf = create();
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 10000; i++)
+            tuples.add(tuple(i));
+        vf.bulkLoad(tuples.iterator());
+
+        int fixedPages = 10000 / ((BufferPool.PAGE_SIZE * 8) / (TD.getSize() * 8 + 1)) + 1;
+        assertTrue(vf.numPages() * 5 < fixedPages);
+        assertEquals(10000, scanCount(vf, Integer.MAX_VALUE));
+        assertEquals(100, scanCount(vf, 100));
+    }
+
+    /**
+     * Inserts and deletes through the buffer pool are committed, and an
+     * insert reuses the room a delete left.
+     */
+    @Test public void insertAndDelete() throws Exception {
+        VarHeapFile vf = create();
+        Transaction t = new Transaction();
+        t.start();
+        for (int i = 0; i < 1000; i++)
+            Database.getBufferPool().insertTuple(t.getId(), vf.getId(), tuple(i));
+        t.commit();
+        int pages = vf.numPages();
+        assertEquals(1000, scanCount(vf, Integer.MAX_VALUE));
+
+        t = new Transaction();
+        t.start();
+        SeqScan scan = new SeqScan(t.getId(), vf.getId(), "");
+        Delete delete = new Delete(t.getId(), new Filter(
+                new Predicate(0, Predicate.Op.LESS_THAN, new IntField(500)), scan));
+        delete.open();
+        assertEquals(new IntField(500), delete.next().getField(0));
+        delete.close();
+        t.commit();
+        assertEquals(500, scanCount(vf, Integer.MAX_VALUE));
+
+        t = new Transaction();
+        t.start();
+        Tuple back = tuple(7);
+        Database.getBufferPool().insertTuple(t.getId(), vf.getId(), back);
+        t.commit();
+        assertEquals(0, back.getRecordId().getPageId().pageNumber());
+        assertEquals(pages, vf.numPages());
+        assertEquals(1, scanCount(vf, 8));
+    }
+
+    /**
+     * The catalog makes a table a VarHeapFile when its line says "var".
+     */
+    @Test public void loadSchema() throws Exception {
+        File catalog = File.createTempFile("catalog", ".txt");
+        catalog.deleteOnExit();
+        FileWriter w = new FileWriter(catalog);
+        w.write("fixed (id int, code string)\n");
+        w.write("codes (id int, code string) var\n");
+        w.close();
+        Database.getCatalog().loadSchema(catalog.getAbsolutePath());
+        Catalog c = Database.getCatalog();
+        assertTrue(c.getDbFile(c.getTableId("codes")) instanceof VarHeapFile);
+        assertEquals(HeapFile.class, c.getDbFile(c.getTableId("fixed")).getClass());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(VarHeapFileTest.class);
+    }
+}
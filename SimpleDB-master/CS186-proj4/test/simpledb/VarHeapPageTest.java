@@ -0,0 +1,136 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class VarHeapPageTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+
+    private HeapPageId pid;
+
+    @Before public void addTable() throws Exception {
+        pid = new HeapPageId(-1, -1);
+        Database.getCatalog().addTable(new SkeletonFile(-1, TD), SystemTestUtil.getUUID());
+    }
+
+    private static Tuple tuple(int i, String s) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField(s, Type.STRING_LEN));
+        return t;
+    }
+
+    private static int count(VarHeapPage page) {
+        int n = 0;
+        for (Iterator<Tuple> it = page.iterator(); it.hasNext(); it.next())
+            n++;
+        return n;
+    }
+
+    /**
+     * Records take the length of their strings, and survive a round trip
+     * through the page bytes.
+     */
+    @Test public void insertAndRead() throws Exception {
+        VarHeapPage page = new VarHeapPage(pid, VarHeapPage.createEmptyPageData());
+        int free = page.getFreeSpace();
+        assertEquals(0, page.getNumTuples());
+
+        page.insertTuple(tuple(1, "ab"));
+        // 4 bytes of int, 2 of length, 2 characters and a directory entry
+        assertEquals(free - 8 - VarHeapPage.SLOT_SIZE, page.getFreeSpace());
+        int n = 1;
+        while (page.getFreeSpace() >= 8)
+            page.insertTuple(tuple(++n, "c" + (n % 10)));
+        assertTrue(n > BufferPool.PAGE_SIZE / 16);
+
+        VarHeapPage read = new VarHeapPage(pid, page.getPageData());
+        assertEquals(n, read.getNumTuples());
+        Iterator<Tuple> it = read.iterator();
+        Tuple first = it.next();
+        assertEquals(new IntField(1), first.getField(0));
+        assertEquals(new StringField("ab", Type.STRING_LEN), first.getField(1));
+        assertEquals(new RecordId(pid, 0), first.getRecordId());
+        assertEquals(n, count(read));
+    }
+
+    /**
+     * Deleted records leave their slot free, and their bytes are reused
+     * once the page is full, without moving tuples to other slots.
+     */
+    @Test public void deleteAndCompact() throws Exception {
+        VarHeapPage page = new VarHeapPage(pid, VarHeapPage.createEmptyPageData());
+        ArrayList<Tuple> inserted = new ArrayList<Tuple>();
+        for (int i = 0; page.getFreeSpace() >= 4 + 2 + 20; i++) {
+            Tuple t = tuple(i, "twenty characters..");
+            page.insertTuple(t);
+            inserted.add(t);
+        }
+        for (int i = 0; i < inserted.size(); i += 2)
+            page.deleteTuple(inserted.get(i));
+        assertEquals((inserted.size() + 1) / 2, inserted.size() - page.getNumTuples());
+
+        // a longer record only fits once the page is compacted
+        Tuple big = tuple(-1, "a string longer than every record that was deleted");
+        page.insertTuple(big);
+        assertEquals(0, big.getRecordId().tupleno());
+
+        VarHeapPage read = new VarHeapPage(pid, page.getPageData());
+        Iterator<Tuple> it = read.iterator();
+        assertEquals(new StringField(
+                "a string longer than every record that was deleted", Type.STRING_LEN),
+                it.next().getField(1));
+        Tuple second = it.next();
+        assertEquals(new IntField(1), second.getField(0));
+        assertEquals(1, second.getRecordId().tupleno());
+    }
+
+    /**
+     * Deleting a tuple that is not on the page fails.
+     */
+    @Test(expected=DbException.class) public void deleteMissing() throws Exception {
+        VarHeapPage page = new VarHeapPage(pid, VarHeapPage.createEmptyPageData());
+        Tuple t = tuple(1, "x");
+        page.insertTuple(t);
+        page.deleteTuple(t);
+        page.deleteTuple(t);
+    }
+
+    /**
+     * The before-image is the image the page was read from until a change
+     * is committed.
+     */
+    @Test public void beforeImage() throws Exception {
+        VarHeapPage page = new VarHeapPage(pid, VarHeapPage.createEmptyPageData());
+        assertSame(page.data, page.getBeforeImage().data);
+        page.insertTuple(tuple(1, "x"));
+        page.markDirty(true, new TransactionId());
+        assertEquals(0, page.getBeforeImage().getNumTuples());
+        page.setBeforeImage();
+        assertEquals(1, page.getBeforeImage().getNumTuples());
+        assertFalse(page.getBeforeImage().data == page.data);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(VarHeapPageTest.class);
+    }
+}
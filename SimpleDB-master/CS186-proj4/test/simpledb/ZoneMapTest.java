@@ -0,0 +1,283 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ZoneMapTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE },
+            new String[] { "ts", "name", "amount" });
+    private static final int TUPLES = 5000;
+    /** tuples on a page; a range of n values of ts spans up to spanned(n) pages */
+    private static final int PER_PAGE = (BufferPool.PAGE_SIZE * 8) / (TD.getSize() * 8 + 1);
+
+    private static int spanned(int n) {
+        return (n + PER_PAGE - 1) / PER_PAGE + 1;
+    }
+
+    private static Tuple tuple(int ts, int amount) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(ts));
+        t.setField(1, new StringField("n" + ts, Type.STRING_LEN));
+        t.setField(2, new IntField(amount));
+        return t;
+    }
+
+    /** @return a HeapFile of TUPLES tuples, in order of ts */
+    private static HeapFile create() throws Exception {
+        File f = File.createTempFile("zone", ".dat");
+        f.deleteOnExit();
+        HeapFile.freeSpaceFile(f).deleteOnExit();
+        HeapFile.zoneMapFile(f).deleteOnExit();
+        HeapFile hf = new HeapFile(f, TD);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        ArrayList<Tuple> list = new ArrayList<Tuple>();
+        for (int i = 0; i < TUPLES; i++)
+            list.add(tuple(i, i % 7));
+        hf.bulkLoad(list.iterator());
+        return hf;
+    }
+
+    /**
+     * Runs Filters of the predicates over a SeqScan, told the predicates
+     * or not.
+     *
+     * @return the number of tuples, and the pages read
+     */
+    private static long[] count(TransactionId tid, HeapFile f, boolean push, Predicate... ps)
+            throws Exception {
+        long before = Database.getBufferPool().getPageReads(tid);
+        SeqScan scan = new SeqScan(tid, f.getId(), "t");
+        DbIterator it = scan;
+        for (Predicate p : ps) {
+            if (push)
+                scan.addPredicate(p);
+            it = new Filter(p, it);
+        }
+        long n = 0;
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        return new long[] { n, Database.getBufferPool().getPageReads(tid) - before };
+    }
+
+    private static Predicate p(int field, Predicate.Op op, int v) {
+        return new Predicate(field, op, new IntField(v));
+    }
+
+    /**
+     * On a table in order of ts, range and equality predicates on ts read
+     * only the pages of their range, and return what a full scan does.
+     */
+    @Test public void skipsPages() throws Exception {
+        HeapFile hf = create();
+        int pages = hf.numPages();
+        TransactionId tid = new TransactionId();
+        Predicate[][] cases = {
+                { p(0, Predicate.Op.LESS_THAN, 100) },
+                { p(0, Predicate.Op.GREATER_THAN_OR_EQ, TUPLES - 100) },
+                { p(0, Predicate.Op.EQUALS, 2500) },
+                { p(0, Predicate.Op.GREATER_THAN, 1000), p(0, Predicate.Op.LESS_THAN_OR_EQ, 1200) },
+                { p(0, Predicate.Op.GREATER_THAN, TUPLES) },
+                { p(2, Predicate.Op.EQUALS, 3) },
+                { p(0, Predicate.Op.NOT_EQUALS, 0) } };
+        for (Predicate[] ps : cases) {
+            long[] pushed = count(tid, hf, true, ps);
+            long[] full = count(tid, hf, false, ps);
+            assertEquals(full[0], pushed[0]);
+            assertEquals(pages, full[1]);
+            assertTrue(pushed[1] <= full[1]);
+        }
+        assertTrue(count(tid, hf, true, cases[0])[1] <= spanned(100));
+        assertTrue(count(tid, hf, true, cases[3])[1] <= spanned(200));
+        assertEquals(1, count(tid, hf, true, cases[2])[1]);
+        assertEquals(0, count(tid, hf, true, cases[4])[1]);
+        // every page has every amount
+        assertEquals(pages, count(tid, hf, true, cases[5])[1]);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Inserts widen the zone of their page at once, deletes narrow it when
+     * they commit, and aborts leave the zones wide enough.
+     */
+    @Test public void insertDeleteAbort() throws Exception {
+        HeapFile hf = create();
+        Predicate big = p(0, Predicate.Op.GREATER_THAN, 1000000);
+        Predicate first = p(0, Predicate.Op.LESS_THAN, 10);
+
+        // delete tuples from the first page to make room on it
+        Transaction t = new Transaction();
+        t.start();
+        Delete delete = new Delete(t.getId(), new Filter(first, new SeqScan(t.getId(), hf.getId())));
+        delete.open();
+        delete.next();
+        delete.close();
+        assertEquals(0, count(t.getId(), hf, true, first)[0]);
+        t.transactionComplete(true);
+        TransactionId tid = new TransactionId();
+        assertEquals(10, count(tid, hf, true, first)[0]);
+        Database.getBufferPool().transactionComplete(tid);
+
+        t = new Transaction();
+        t.start();
+        delete = new Delete(t.getId(), new Filter(first, new SeqScan(t.getId(), hf.getId())));
+        delete.open();
+        delete.next();
+        delete.close();
+        t.commit();
+
+        // the insert lands on the first page, whose zone it widens
+        t = new Transaction();
+        t.start();
+        Database.getBufferPool().insertTuple(t.getId(), hf.getId(), tuple(2000000, 0));
+        assertEquals(1, count(t.getId(), hf, true, big)[0]);
+        assertEquals(1, count(t.getId(), hf, true, big)[1]);
+        t.transactionComplete(true);
+        tid = new TransactionId();
+        assertEquals(0, count(tid, hf, true, big)[0]);
+        Database.getBufferPool().transactionComplete(tid);
+
+        t = new Transaction();
+        t.start();
+        Database.getBufferPool().insertTuple(t.getId(), hf.getId(), tuple(3000000, 0));
+        t.commit();
+        tid = new TransactionId();
+        long[] r = count(tid, hf, true, big);
+        assertEquals(1, r[0]);
+        assertEquals(1, r[1]);
+        Database.getBufferPool().transactionComplete(tid);
+
+        // once the delete commits, the page is no longer read
+        t = new Transaction();
+        t.start();
+        delete = new Delete(t.getId(), new Filter(big, new SeqScan(t.getId(), hf.getId())));
+        delete.open();
+        delete.next();
+        delete.close();
+        t.commit();
+        tid = new TransactionId();
+        r = count(tid, hf, true, big);
+        assertEquals(0, r[0]);
+        assertEquals(0, r[1]);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * The zones are saved when the file is closed and trusted when it is
+     * opened again; a table written behind the file's back has its zones
+     * learned by the first scan that reads it.
+     */
+    @Test public void saveAndLearn() throws Exception {
+        HeapFile hf = create();
+        Predicate few = p(0, Predicate.Op.LESS_THAN, 100);
+        hf.close();
+        assertTrue(HeapFile.zoneMapFile(hf.getFile()).exists());
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        assertTrue(count(tid, hf, true, few)[1] <= spanned(100));
+        Database.getBufferPool().transactionComplete(tid);
+
+        HeapFile random = SystemTestUtil.createRandomHeapFile(2, TUPLES, null, null);
+        File f = random.getFile();
+        HeapFile.zoneMapFile(f).deleteOnExit();
+        int pages = random.numPages();
+        Predicate none = p(0, Predicate.Op.LESS_THAN, -1);
+        tid = new TransactionId();
+        assertEquals(pages, count(tid, random, true, none)[1]);
+        assertEquals(0, count(tid, random, true, none)[1]);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A write to a table whose zones are not loaded makes its map file
+     * untrusted, and a table with no int columns gets no map file.
+     */
+    @Test public void writesBeforeLoad() throws Exception {
+        HeapFile hf = create();
+        Predicate big = p(0, Predicate.Op.GREATER_THAN, 1000000);
+        hf.close();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        Transaction t = new Transaction();
+        t.start();
+        Database.getBufferPool().insertTuple(t.getId(), hf.getId(), tuple(2000000, 0));
+        t.commit();
+        assertFalse(HeapFile.zoneMapFile(hf.getFile()).exists());
+        TransactionId tid = new TransactionId();
+        assertEquals(1, count(tid, hf, true, big)[0]);
+        Database.getBufferPool().transactionComplete(tid);
+
+        TupleDesc strings = new TupleDesc(new Type[] { Type.STRING_TYPE });
+        File f = File.createTempFile("zone", ".dat");
+        f.deleteOnExit();
+        HeapFile.freeSpaceFile(f).deleteOnExit();
+        HeapFile.zoneMapFile(f).deleteOnExit();
+        HeapFile names = new HeapFile(f, strings);
+        Database.getCatalog().addTable(names, SystemTestUtil.getUUID());
+        ArrayList<Tuple> list = new ArrayList<Tuple>();
+        for (int i = 0; i < 100; i++) {
+            Tuple n = new Tuple(strings);
+            n.setField(0, new StringField("n" + i, Type.STRING_LEN));
+            list.add(n);
+        }
+        names.bulkLoad(list.iterator());
+        names.close();
+        assertFalse(HeapFile.zoneMapFile(f).exists());
+    }
+
+    /**
+     * The planner tells the scan under its filters their predicates.
+     */
+    @Test public void plannerPushesPredicates() throws Exception {
+        HeapFile hf = create();
+        String name = Database.getCatalog().getTableName(hf.getId());
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put(name, new TableStats(hf.getId(), 1000));
+
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(hf.getId(), "t");
+        lp.addFilter("t.ts", Predicate.Op.GREATER_THAN_OR_EQ, "100");
+        lp.addFilter("t.ts", Predicate.Op.LESS_THAN, "110");
+        lp.addProjectField("t.amount", null);
+        TransactionId tid = new TransactionId();
+        DbIterator plan = lp.physicalPlan(tid, stats, false);
+        DbIterator it = plan;
+        while (it instanceof Operator)
+            it = ((Operator) it).getChildren()[0];
+        assertEquals(2, ((SeqScan) it).getPredicates().size());
+        long before = Database.getBufferPool().getPageReads(tid);
+        int n = 0;
+        plan.open();
+        while (plan.hasNext()) {
+            plan.next();
+            n++;
+        }
+        plan.close();
+        assertEquals(10, n);
+        assertEquals(1, Database.getBufferPool().getPageReads(tid) - before);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ZoneMapTest.class);
+    }
+}
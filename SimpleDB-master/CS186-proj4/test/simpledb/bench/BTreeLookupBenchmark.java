@@ -0,0 +1,118 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Measures point lookups in BTreeFiles of growing size against a filtered
+ * scan of the same table. The tables are (id int, name string) keyed on
+ * the name, so a page holds about 30 keys and the tree grows a level for
+ * every 20-fold growth of the table; they are built by inserts in random
+ * order through the buffer pool. Reported per size: the height of the
+ * tree, pages read (getPage calls) per lookup by BTreeIndexScan and by a
+ * Filter over a SeqScan, and lookups per second of each, with the table
+ * cached.
+ */
+public class BTreeLookupBenchmark {
+
+    private static final int[] SIZES = { 1000, 10000, 100000 };
+    private static final int LOOKUPS = 2000;
+    private static final int SCANS = 5;
+
+    public static void main(String[] args) throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE },
+                new String[] { "id", "name" });
+        Database.reset();
+        System.out.printf("%8s %6s %7s %12s %12s %12s %12s%n", "tuples", "pages", "height",
+                "index reads", "scan reads", "index /s", "scan /s");
+        for (int size : SIZES) {
+            File f = File.createTempFile("btree", ".dat");
+            f.deleteOnExit();
+            BTreeFile bf = new BTreeFile(f, 1, td);
+            Database.getCatalog().addTable(bf, "t" + size);
+            load(bf, td, size);
+            // room for the whole table, so lookups and scans hit the pool
+            Database.resetBufferPool(2 * bf.numPages());
+
+            Random r = new Random(11);
+            long indexReads = 0;
+            long fewest = Long.MAX_VALUE;
+            // warm up, and cache the table
+            lookups(bf, size, r, LOOKUPS, true);
+            long start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                long reads = lookups(bf, size, r, 1, true);
+                indexReads += reads;
+                fewest = Math.min(fewest, reads);
+            }
+            // a lookup reads the header, then a page per level; some read
+            // a second leaf as well
+            long height = fewest - 1;
+            double indexRate = LOOKUPS / (BenchUtil.millisSince(start) / 1000);
+
+            lookups(bf, size, r, 1, false);
+            long scanReads = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < SCANS; i++)
+                scanReads += lookups(bf, size, r, 1, false);
+            double scanRate = SCANS / (BenchUtil.millisSince(start) / 1000);
+            System.out.printf("%8d %6d %7d %12.2f %12.1f %12.0f %12.1f%n", size, bf.numPages(),
+                    height, (double) indexReads / LOOKUPS, (double) scanReads / SCANS,
+                    indexRate, scanRate);
+        }
+    }
+
+    private static StringField key(int i) {
+        return new StringField(String.format("name %07d", i), Type.STRING_LEN);
+    }
+
+    private static void load(BTreeFile bf, TupleDesc td, int size) throws Exception {
+        ArrayList<Integer> ids = new ArrayList<Integer>();
+        for (int i = 0; i < size; i++)
+            ids.add(i);
+        Collections.shuffle(ids, new Random(5));
+        Database.resetBufferPool(1000);
+        Transaction t = null;
+        for (int i = 0; i < size; i++) {
+            if (i % 100 == 0) {
+                if (t != null)
+                    t.commit();
+                t = new Transaction();
+                t.start();
+            }
+            Tuple tup = new Tuple(td);
+            tup.setField(0, new IntField(ids.get(i)));
+            tup.setField(1, key(ids.get(i)));
+            Database.getBufferPool().insertTuple(t.getId(), bf.getId(), tup);
+        }
+        t.commit();
+        Database.getBufferPool().flushAllPages();
+    }
+
+    /**
+     * Looks up random keys of the table, each in a transaction of its own.
+     *
+     * @return the pages the last lookup read
+     */
+    private static long lookups(BTreeFile bf, int size, Random r, int n, boolean index)
+            throws Exception {
+        long reads = 0;
+        for (int i = 0; i < n; i++) {
+            Transaction t = new Transaction();
+            t.start();
+            Predicate p = new Predicate(1, Predicate.Op.EQUALS,
+                    key(r.nextInt(size)));
+            DbIterator it = index ? new BTreeIndexScan(t.getId(), bf.getId(), "", p)
+                    : new Filter(p, new SeqScan(t.getId(), bf.getId(), ""));
+            if (BenchUtil.drain(it) != 1)
+                throw new AssertionError("key not found");
+            reads = Database.getBufferPool().getPageReads(t.getId());
+            t.commit();
+        }
+        return reads;
+    }
+}
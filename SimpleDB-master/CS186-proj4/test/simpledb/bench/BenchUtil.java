@@ -0,0 +1,85 @@
+package simpledb.bench;
+
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Helpers shared by the benchmarks in this package. Benchmarks are plain
+ * main programs; run one with <code>ant runbench -Dbench=ClassName</code>.
+ */
+public class BenchUtil {
+
+    /**
+     * Draws integers in [0, n) with a Zipfian distribution: item i has
+     * probability proportional to 1 / (i+1)^skew. Item 0 is the hottest.
+     */
+    public static class Zipf {
+        private final double[] cdf;
+        private final Random random;
+
+        public Zipf(int n, double skew, long seed) {
+            cdf = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1.0 / Math.pow(i + 1, skew);
+                cdf[i] = sum;
+            }
+            for (int i = 0; i < n; i++)
+                cdf[i] /= sum;
+            random = new Random(seed);
+        }
+
+        public int next() {
+            double u = random.nextDouble();
+            int lo = 0, hi = cdf.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cdf[mid] < u)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    /** Drain an iterator, returning the number of tuples it produced. */
+    public static int drain(DbIterator it)
+            throws DbException, TransactionAbortedException {
+        int count = 0;
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        return count;
+    }
+
+    /**
+     * Read a page the way an operator does: get it, then unpin it so the
+     * pool may evict it again.
+     */
+    public static Page read(BufferPool bp, TransactionId tid, PageId pid,
+            BufferAccessStrategy strategy)
+            throws DbException, TransactionAbortedException {
+        Page page = bp.getPage(tid, pid, Permissions.READ_ONLY, strategy);
+        bp.unpinPage(tid, pid);
+        return page;
+    }
+
+    /** Hit ratio of the current buffer pool since the given counts. */
+    public static double hitRatio(long hitsBefore, long missesBefore) {
+        BufferPool bp = Database.getBufferPool();
+        long hits = bp.getHitCount() - hitsBefore;
+        long misses = bp.getMissCount() - missesBefore;
+        if (hits + misses == 0)
+            return 0;
+        return (double) hits / (hits + misses);
+    }
+
+    public static double millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1e6;
+    }
+}
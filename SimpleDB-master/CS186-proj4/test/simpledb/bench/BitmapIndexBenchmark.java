@@ -0,0 +1,116 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Compares conjunctions of equality and inequality filters on
+ * low-cardinality columns, read by a chain of Filters over a SeqScan and
+ * by a BitmapScan over bitmap indexes of the columns. The table is
+ * (id int, region int, status int, channel int, amount int) in a
+ * HeapFile, with 16 regions, 8 statuses and 4 channels spread at random.
+ * Reported per query: the rows it returns, pages read (getPage calls)
+ * and milliseconds of each plan with the table cached, and the size of
+ * the bitmaps.
+ */
+public class BitmapIndexBenchmark {
+
+    private static final int TUPLES = 500000;
+    private static final int RUNS = 10;
+
+    public static void main(String[] args) throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE,
+                Type.INT_TYPE, Type.INT_TYPE },
+                new String[] { "id", "region", "status", "channel", "amount" });
+        Random r = new Random(7);
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < TUPLES; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new IntField(r.nextInt(16)));
+            t.setField(2, new IntField(r.nextInt(8)));
+            t.setField(3, new IntField(r.nextInt(4)));
+            t.setField(4, new IntField(r.nextInt(1000)));
+            tuples.add(t);
+        }
+        Database.reset();
+        File f = File.createTempFile("bitmap", ".dat");
+        f.deleteOnExit();
+        HeapFile.freeSpaceFile(f).deleteOnExit();
+        HeapFile heap = new HeapFile(f, td);
+        Database.getCatalog().addTable(heap, "sales");
+        heap.bulkLoad(tuples.iterator());
+        tuples = null;
+        // room for the whole table, so both plans read through the pool
+        Database.resetBufferPool(2 * heap.numPages());
+        long bytes = 0;
+        for (int field = 1; field <= 3; field++)
+            bytes += Database.getCatalog().addBitmapIndex(heap.getId(), field).sizeInBytes();
+
+        System.out.printf("%d tuples, %d pages, %d KB of bitmaps%n", TUPLES, heap.numPages(),
+                bytes / 1024);
+        System.out.printf("%-44s %7s %11s %11s %9s %9s%n", "query", "rows", "scan reads",
+                "bitmap reads", "scan ms", "bitmap ms");
+        report("region = 3", heap, new int[] { 1, 3 }, false);
+        report("region = 3 AND status = 1", heap, new int[] { 1, 3, 2, 1 }, false);
+        report("region = 3 AND status = 1 AND channel = 2", heap,
+                new int[] { 1, 3, 2, 1, 3, 2 }, false);
+        report("region = 3 AND status = 1 AND channel != 2", heap,
+                new int[] { 1, 3, 2, 1, 3, 2 }, true);
+    }
+
+    /**
+     * @param terms pairs of (column, value), ANDed together
+     * @param negateLast whether the last term is an inequality
+     */
+    private static void report(String label, HeapFile heap, int[] terms, boolean negateLast)
+            throws Exception {
+        long[] best = { Long.MAX_VALUE, Long.MAX_VALUE };
+        long[] reads = new long[2];
+        int[] rows = new int[2];
+        for (int run = 0; run < RUNS; run++) {
+            for (int i = 0; i < 2; i++) {
+                Transaction t = new Transaction();
+                t.start();
+                DbIterator it = i == 0 ? filters(t.getId(), heap, terms, negateLast)
+                        : bitmapScan(t.getId(), heap, terms, negateLast);
+                long start = System.nanoTime();
+                rows[i] = BenchUtil.drain(it);
+                best[i] = Math.min(best[i], System.nanoTime() - start);
+                reads[i] = Database.getBufferPool().getPageReads(t.getId());
+                t.commit();
+            }
+        }
+        if (rows[0] != rows[1])
+            throw new AssertionError(label + ": " + rows[0] + " rows scanned, " + rows[1]
+                    + " by bitmaps");
+        System.out.printf("%-44s %7d %11d %11d %9.1f %9.1f%n", label, rows[0], reads[0],
+                reads[1], best[0] / 1e6, best[1] / 1e6);
+    }
+
+    private static DbIterator filters(TransactionId tid, HeapFile heap, int[] terms,
+            boolean negateLast) {
+        DbIterator it = new SeqScan(tid, heap.getId(), "");
+        for (int i = 0; i < terms.length; i += 2) {
+            Predicate.Op op = negateLast && i == terms.length - 2 ? Predicate.Op.NOT_EQUALS
+                    : Predicate.Op.EQUALS;
+            it = new Filter(new Predicate(terms[i], op, new IntField(terms[i + 1])), it);
+        }
+        return it;
+    }
+
+    private static DbIterator bitmapScan(TransactionId tid, HeapFile heap, int[] terms,
+            boolean negateLast) {
+        BitmapPredicate p = null;
+        for (int i = 0; i < terms.length; i += 2) {
+            BitmapPredicate term = BitmapPredicate.eq(terms[i], terms[i + 1]);
+            if (negateLast && i == terms.length - 2)
+                term = BitmapPredicate.not(term);
+            p = p == null ? term : BitmapPredicate.and(p, term);
+        }
+        return new BitmapScan(tid, heap.getId(), "", p);
+    }
+}
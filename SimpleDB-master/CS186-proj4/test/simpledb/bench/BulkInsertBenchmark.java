@@ -0,0 +1,98 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import simpledb.*;
+
+/**
+ * Measures the cost of inserting a row as a table grows. Rows are
+ * inserted in batches, one transaction per batch, into a table that
+ * starts empty; each batch reports the microseconds per row at the table
+ * size it reached. Inserts that find a page through the free space map
+ * are compared with inserts that try every page from the first, as
+ * HeapFile used to. The pool holds both tables. One batch into throwaway
+ * tables warms up the JIT first.
+ */
+public class BulkInsertBenchmark {
+
+    private static final int BATCHES = 20;
+    private static final int ROWS_PER_BATCH = 10000;
+    private static final int POOL_PAGES = 1000;
+
+    /** Inserts the way HeapFile did before it had a free space map. */
+    private static class ScanInsertHeapFile extends HeapFile {
+        private static final long serialVersionUID = 1L;
+
+        ScanInsertHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+                throws DbException, IOException, TransactionAbortedException {
+            ArrayList<Page> modified = new ArrayList<Page>();
+            BufferPool bp = Database.getBufferPool();
+            for (int i = 0; i < numPages(); i++) {
+                HeapPageId pid = new HeapPageId(getId(), i);
+                HeapPage page = (HeapPage) bp.getPage(tid, pid, Permissions.READ_WRITE);
+                if (page.getNumEmptySlots() > 0) {
+                    page.insertTuple(t);
+                    modified.add(page);
+                    return modified;
+                }
+                bp.unpinPage(tid, pid);
+            }
+            HeapPageId pid = new HeapPageId(getId(), numPages());
+            writePage(new HeapPage(pid, HeapPage.createEmptyPageData()));
+            HeapPage page = (HeapPage) bp.getPage(tid, pid, Permissions.READ_WRITE);
+            page.insertTuple(t);
+            modified.add(page);
+            return modified;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%d batches of %d rows, one transaction each%n", BATCHES, ROWS_PER_BATCH);
+        System.out.printf("%8s %8s %16s %16s%n", "rows", "pages", "fsm us/row", "scan us/row");
+        TupleDesc td = Utility.getTupleDesc(2);
+        Database.resetBufferPool(POOL_PAGES);
+        HeapFile warmFsm = new HeapFile(tempFile(), td);
+        HeapFile warmScan = new ScanInsertHeapFile(tempFile(), td);
+        Database.getCatalog().addTable(warmFsm, "warm fsm");
+        Database.getCatalog().addTable(warmScan, "warm scan");
+        batch(warmFsm, 0);
+        batch(warmScan, 0);
+
+        HeapFile fsm = new HeapFile(tempFile(), td);
+        HeapFile scan = new ScanInsertHeapFile(tempFile(), td);
+        Database.getCatalog().addTable(fsm, "fsm");
+        Database.getCatalog().addTable(scan, "scan");
+        Database.resetBufferPool(POOL_PAGES);
+        for (int b = 1; b <= BATCHES; b++) {
+            double fsmMicros = batch(fsm, b);
+            double scanMicros = batch(scan, b);
+            System.out.printf("%8d %8d %16.2f %16.2f%n", b * ROWS_PER_BATCH, fsm.numPages(),
+                    fsmMicros, scanMicros);
+        }
+    }
+
+    /** @return microseconds per row inserted */
+    private static double batch(HeapFile f, int batch) throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        long start = System.nanoTime();
+        for (int i = 0; i < ROWS_PER_BATCH; i++)
+            Database.getBufferPool().insertTuple(t.getId(), f.getId(),
+                    Utility.getHeapTuple(batch * ROWS_PER_BATCH + i, 2));
+        t.commit();
+        return BenchUtil.millisSince(start) * 1000 / ROWS_PER_BATCH;
+    }
+
+    private static File tempFile() throws IOException {
+        File f = File.createTempFile("bulk", ".dat");
+        f.deleteOnExit();
+        HeapFile.freeSpaceFile(f).deleteOnExit();
+        return f;
+    }
+}
@@ -0,0 +1,92 @@
+package simpledb.bench;
+
+import java.io.File;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares scans of a table stored as a HeapFile and as a
+ * CompressedHeapFile, for two data sets: low-cardinality ints (values
+ * below 1000, as in code and status columns) and uniformly random ints,
+ * which hardly compress. Reported per table: pages, bytes on disk, the
+ * compression ratio, and tuples per second of a full scan
+ * <ul>
+ * <li>cached: every page in the buffer pool;</li>
+ * <li>cold: a fresh buffer pool, every page read from its file, which the
+ * operating system still caches; the difference to cached is the cost of
+ * reading and, for compressed pages, inflating;</li>
+ * <li>at 25 MB/s and 100 MB/s: the cold scan with the time a disk of that
+ * bandwidth takes for the bytes the scan read added, for tables that do
+ * not fit in any cache.</li>
+ * </ul>
+ */
+public class CompressionBenchmark {
+
+    private static final int COLUMNS = 4;
+    private static final int ROWS = 500000;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%d tuples of %d int columns, best of %d runs%n", ROWS, COLUMNS, RUNS);
+        System.out.printf("%-8s %-11s %6s %10s %6s %12s %12s %12s %12s%n", "values", "format",
+                "pages", "bytes", "ratio", "cached t/s", "cold t/s", "25MB/s t/s", "100MB/s t/s");
+        run("< 1000", 1000);
+        run("random", Integer.MAX_VALUE);
+    }
+
+    private static void run(String label, int maxValue) throws Exception {
+        Database.reset();
+        HeapFile plain = SystemTestUtil.createRandomHeapFile(COLUMNS, ROWS, maxValue, null, null);
+        File f = File.createTempFile("compressed", ".dat");
+        f.deleteOnExit();
+        CompressedHeapFile.indexFile(f).deleteOnExit();
+        CompressedHeapFile compressed = new CompressedHeapFile(f, plain.getTupleDesc());
+        Database.getCatalog().addTable(compressed, "compressed");
+        compressed.bulkLoad(plain);
+
+        // warm up both read paths
+        for (int i = 0; i < 3; i++) {
+            Database.resetBufferPool(2 * plain.numPages());
+            scan(plain);
+            scan(compressed);
+        }
+        long plainBytes = plain.getFile().length();
+        report(label, "heap", plain, plainBytes);
+        report(label, "compressed", compressed, plainBytes);
+    }
+
+    private static void report(String label, String format, HeapFile f, long plainBytes)
+            throws Exception {
+        long bytes = f.getFile().length();
+        if (f instanceof CompressedHeapFile)
+            bytes += CompressedHeapFile.indexFile(f.getFile()).length();
+        double cached = 0, cold = 0, slow = 0, fast = 0;
+        for (int run = 0; run < RUNS; run++) {
+            // room for the whole table, so scans read through the shared pool
+            Database.resetBufferPool(2 * f.numPages());
+            long readBefore = Database.getBufferPool().getStats().getReadBytes();
+            double seconds = scan(f);
+            long read = Database.getBufferPool().getStats().getReadBytes() - readBefore;
+            cold = Math.max(cold, ROWS / seconds);
+            slow = Math.max(slow, ROWS / (seconds + read / 25e6));
+            fast = Math.max(fast, ROWS / (seconds + read / 100e6));
+            cached = Math.max(cached, ROWS / scan(f));
+        }
+        System.out.printf("%-8s %-11s %6d %10d %6.2f %12.0f %12.0f %12.0f %12.0f%n", label, format,
+                f.numPages(), bytes, (double) plainBytes / bytes, cached, cold, slow, fast);
+    }
+
+    /** @return seconds a full scan takes */
+    private static double scan(HeapFile f) throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        long start = System.nanoTime();
+        int n = BenchUtil.drain(new SeqScan(t.getId(), f.getId(), ""));
+        double seconds = BenchUtil.millisSince(start) / 1000;
+        t.commit();
+        if (n != ROWS)
+            throw new AssertionError("scanned " + n + " tuples");
+        return seconds;
+    }
+}
@@ -0,0 +1,113 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Compares queries on low-cardinality string columns of a table stored as
+ * a HeapFile and as a DictHeapFile. The table is (id int, country string,
+ * status string, amount int), with 50 countries and 5 statuses; the
+ * queries are COUNT(*) WHERE status = 'shipped' (a Filter), COUNT(status)
+ * GROUP BY country (a StringAggregator) and SUM(amount) GROUP BY country
+ * (an IntegerAggregator), each over a SeqScan. Reported per query and
+ * layout: tuples per second, cold (a fresh buffer pool, every page read
+ * from the file, which the operating system caches) and warm (the table
+ * cached).
+ */
+public class DictionaryBenchmark {
+
+    private static final int TUPLES = 300000;
+    private static final int COUNTRIES = 50;
+    private static final String[] STATUSES = { "pending", "paid", "shipped", "delivered", "returned" };
+    private static final int RUNS = 10;
+
+    public static void main(String[] args) throws Exception {
+        TupleDesc td = new TupleDesc(
+                new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.STRING_TYPE, Type.INT_TYPE },
+                new String[] { "id", "country", "status", "amount" });
+        Random r = new Random(7);
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < TUPLES; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField("country " + r.nextInt(COUNTRIES), Type.STRING_LEN));
+            t.setField(2, new StringField(STATUSES[r.nextInt(STATUSES.length)], Type.STRING_LEN));
+            t.setField(3, new IntField(r.nextInt(1000)));
+            tuples.add(t);
+        }
+        Database.reset();
+        HeapFile heap = new HeapFile(tempFile(), td);
+        DictHeapFile dict = new DictHeapFile(tempFile(), td);
+        Database.getCatalog().addTable(heap, "heap");
+        Database.getCatalog().addTable(dict, "dict");
+        heap.bulkLoad(tuples.iterator());
+        dict.bulkLoad(tuples.iterator());
+        tuples = null;
+
+        // warm up every read path
+        for (int i = 0; i < 5; i++) {
+            Database.resetBufferPool(4 * heap.numPages());
+            for (int q = 0; q < 3; q++) {
+                query(heap, q);
+                query(dict, q);
+            }
+        }
+        System.out.printf("%d tuples, %d pages as a HeapFile, %d as a DictHeapFile%n",
+                TUPLES, heap.numPages(), dict.numPages());
+        System.out.printf("%-28s %14s %14s%n", "query, layout", "cold tuples/s", "warm tuples/s");
+        String[] queries = { "filter status", "count group by country", "sum group by country" };
+        for (int q = 0; q < 3; q++) {
+            report(queries[q] + ", heap", heap, q);
+            report(queries[q] + ", dict", dict, q);
+        }
+    }
+
+    private static File tempFile() throws Exception {
+        File f = File.createTempFile("dict", ".dat");
+        f.deleteOnExit();
+        HeapFile.freeSpaceFile(f).deleteOnExit();
+        DictHeapFile.dictionaryFile(f).deleteOnExit();
+        return f;
+    }
+
+    private static void report(String label, HeapFile f, int query) throws Exception {
+        double cold = 0, warm = 0;
+        for (int run = 0; run < RUNS; run++) {
+            // room for the whole table, so scans read through the shared pool
+            Database.resetBufferPool(2 * f.numPages());
+            cold = Math.max(cold, query(f, query));
+            warm = Math.max(warm, query(f, query));
+        }
+        System.out.printf("%-28s %14.0f %14.0f%n", label, cold, warm);
+    }
+
+    /** @return tuples per second of the query */
+    private static double query(HeapFile f, int query) throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        SeqScan scan = new SeqScan(t.getId(), f.getId(), "");
+        DbIterator root;
+        int groups;
+        if (query == 0) {
+            root = new Aggregate(new Filter(new Predicate(2, Predicate.Op.EQUALS,
+                    new StringField("shipped", Type.STRING_LEN)), scan),
+                    0, Aggregator.NO_GROUPING, Aggregator.Op.COUNT);
+            groups = 1;
+        } else if (query == 1) {
+            root = new Aggregate(scan, 2, 1, Aggregator.Op.COUNT);
+            groups = COUNTRIES;
+        } else {
+            root = new Aggregate(scan, 3, 1, Aggregator.Op.SUM);
+            groups = COUNTRIES;
+        }
+        long start = System.nanoTime();
+        if (BenchUtil.drain(root) != groups)
+            throw new AssertionError("wrong number of groups");
+        double seconds = BenchUtil.millisSince(start) / 1000;
+        t.commit();
+        return TUPLES / seconds;
+    }
+}
@@ -0,0 +1,101 @@
+package simpledb.bench;
+
+import java.util.HashMap;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares the buffer pool hit ratio of each replacement policy on
+ * workloads shaped like the system tests (looping scans, nested loop
+ * joins, a scan running next to point reads) and on Zipfian point reads.
+ */
+public class EvictionPolicyBenchmark {
+
+    private static final int POOL_PAGES = 64;
+    private static final int TUPLES_PER_PAGE = 504; // two int columns
+    private static final int POINT_READS = 100000;
+
+    public static void main(String[] args) throws Exception {
+        HeapFile big = table(POOL_PAGES * 3 / 2);
+        HeapFile inner = table(POOL_PAGES + POOL_PAGES / 4);
+        HeapFile huge = table(POOL_PAGES * 10);
+        HashMap<Integer, Integer> oneValue = new HashMap<Integer, Integer>();
+        oneValue.put(0, 1);
+        HeapFile outer = SystemTestUtil.createRandomHeapFile(2, 20, oneValue, null);
+
+        System.out.printf("pool of %d pages%n", POOL_PAGES);
+        System.out.printf("%-8s %12s %12s %12s %12s%n",
+                "policy", "scan-loop", "join", "scan+point", "zipf-0.99");
+        for (BufferPool.Replacement r : BufferPool.Replacement.values()) {
+            System.out.printf("%-8s %12.3f %12.3f %12.3f %12.3f%n", r,
+                    loopingScan(r, big), join(r, outer, inner),
+                    scanWithPointReads(r, big, huge), zipf(r, huge));
+        }
+    }
+
+    private static HeapFile table(int pages) throws Exception {
+        return SystemTestUtil.createRandomHeapFile(2, pages * TUPLES_PER_PAGE, null, null);
+    }
+
+    /** Scan a table half again as big as the pool five times. */
+    private static double loopingScan(BufferPool.Replacement r, HeapFile f)
+            throws Exception {
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES, r);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 5; i++)
+            BenchUtil.drain(new SeqScan(tid, f.getId(), ""));
+        bp.transactionComplete(tid);
+        return BenchUtil.hitRatio(0, 0);
+    }
+
+    /** Nested loop join whose inner table does not quite fit in the pool. */
+    private static double join(BufferPool.Replacement r, HeapFile outer, HeapFile inner)
+            throws Exception {
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES, r);
+        TransactionId tid = new TransactionId();
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        BenchUtil.drain(new Join(p, new SeqScan(tid, outer.getId(), ""),
+                new SeqScan(tid, inner.getId(), "")));
+        bp.transactionComplete(tid);
+        return BenchUtil.hitRatio(0, 0);
+    }
+
+    /**
+     * Zipfian point reads over a large table, with a full scan of another
+     * table interleaved one page per ten reads. Only the point reads count.
+     */
+    private static double scanWithPointReads(BufferPool.Replacement r,
+            HeapFile scanned, HeapFile f) throws Exception {
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES, r);
+        TransactionId tid = new TransactionId();
+        BenchUtil.Zipf zipf = new BenchUtil.Zipf(f.numPages(), 0.99, 42);
+        int scanPage = 0;
+        long hits = 0, misses = 0;
+        for (int i = 0; i < POINT_READS; i++) {
+            if (i % 10 == 0) {
+                BenchUtil.read(bp, tid, new HeapPageId(scanned.getId(), scanPage), null);
+                scanPage = (scanPage + 1) % scanned.numPages();
+            }
+            long h = bp.getHitCount();
+            BenchUtil.read(bp, tid, new HeapPageId(f.getId(), zipf.next()), null);
+            if (bp.getHitCount() > h)
+                hits++;
+            else
+                misses++;
+        }
+        bp.transactionComplete(tid);
+        return (double) hits / (hits + misses);
+    }
+
+    /** Zipfian point reads over a table ten times the size of the pool. */
+    private static double zipf(BufferPool.Replacement r, HeapFile f) throws Exception {
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES, r);
+        TransactionId tid = new TransactionId();
+        BenchUtil.Zipf zipf = new BenchUtil.Zipf(f.numPages(), 0.99, 42);
+        for (int i = 0; i < POINT_READS; i++)
+            BenchUtil.read(bp, tid, new HeapPageId(f.getId(), zipf.next()), null);
+        bp.transactionComplete(tid);
+        return BenchUtil.hitRatio(0, 0);
+    }
+}
@@ -0,0 +1,92 @@
+package simpledb.bench;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures getPage throughput from 1 to 32 threads, for a pool with a
+ * single partition and for the default partitioning. Each thread draws
+ * Zipfian page numbers from a table: one that fits in the pool, so every
+ * call hits, and one twice the size of the pool, so some calls miss and
+ * evict. Threads commit every READS_PER_TRANSACTION reads to release
+ * their locks.
+ */
+public class GetPageThroughputBenchmark {
+
+    private static final int POOL_PAGES = 1024;
+    private static final int TUPLES_PER_PAGE = 504; // two int columns
+    private static final int READS_PER_TRANSACTION = 1000;
+    private static final long RUN_MILLIS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        HeapFile fits = SystemTestUtil.createRandomHeapFile(2, POOL_PAGES * TUPLES_PER_PAGE, null, null);
+        HeapFile twice = SystemTestUtil.createRandomHeapFile(2, 2 * POOL_PAGES * TUPLES_PER_PAGE, null, null);
+        System.out.printf("pool of %d pages, %d cpus, getPage calls per second%n",
+                POOL_PAGES, Runtime.getRuntime().availableProcessors());
+        report("all hits", fits);
+        report("with misses", twice);
+    }
+
+    private static void report(String label, HeapFile f) throws Exception {
+        int[] partitionCounts = { 1, BufferPool.defaultPartitions(POOL_PAGES) };
+        System.out.printf("%s: table of %d pages%n", label, f.numPages());
+        System.out.printf("%-8s", "threads");
+        for (int p : partitionCounts)
+            System.out.printf(" %16s", p + " partition(s)");
+        System.out.println();
+        for (int threads = 1; threads <= 32; threads *= 2) {
+            System.out.printf("%-8d", threads);
+            for (int p : partitionCounts)
+                System.out.printf(" %16.0f", run(f, threads, p));
+            System.out.println();
+        }
+    }
+
+    private static double run(final HeapFile f, int threads, int partitions)
+            throws Exception {
+        Database.resetBufferPool(POOL_PAGES, BufferPool.DEFAULT_REPLACEMENT, partitions);
+        // warm the pool so every run starts from the same state
+        TransactionId warm = new TransactionId();
+        for (int i = 0; i < POOL_PAGES; i++)
+            BenchUtil.read(Database.getBufferPool(), warm, new HeapPageId(f.getId(), i), null);
+        Database.getBufferPool().transactionComplete(warm);
+
+        final AtomicLong calls = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final long[] deadline = new long[1];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            workers[t] = new Thread() {
+                public void run() {
+                    BenchUtil.Zipf zipf = new BenchUtil.Zipf(f.numPages(), 0.99, seed);
+                    BufferPool bp = Database.getBufferPool();
+                    long n = 0;
+                    try {
+                        start.await();
+                        while (System.nanoTime() < deadline[0]) {
+                            TransactionId tid = new TransactionId();
+                            for (int i = 0; i < READS_PER_TRANSACTION; i++)
+                                BenchUtil.read(bp, tid, new HeapPageId(f.getId(), zipf.next()), null);
+                            bp.transactionComplete(tid);
+                            n += READS_PER_TRANSACTION;
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                    calls.addAndGet(n);
+                }
+            };
+            workers[t].start();
+        }
+        long begin = System.nanoTime();
+        deadline[0] = begin + RUN_MILLIS * 1000000L;
+        start.countDown();
+        for (Thread w : workers)
+            w.join();
+        return calls.get() * 1000.0 / BenchUtil.millisSince(begin);
+    }
+}
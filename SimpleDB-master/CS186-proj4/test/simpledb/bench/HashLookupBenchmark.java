@@ -0,0 +1,103 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Measures point lookups, <code>WHERE id = ?</code>, in a HashFile against
+ * a BTreeFile of the same tuples. The tables are (id int, name string)
+ * keyed on the id, built by inserts in random order through the buffer
+ * pool. Reported per size: the pages of each file, pages read (getPage
+ * calls) per lookup by HashIndexScan and by BTreeIndexScan, and lookups
+ * per second of each, with both files cached.
+ */
+public class HashLookupBenchmark {
+
+    private static final int[] SIZES = { 1000, 10000, 100000 };
+    private static final int LOOKUPS = 20000;
+
+    public static void main(String[] args) throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE },
+                new String[] { "id", "name" });
+        Database.reset();
+        System.out.printf("%8s %11s %12s %11s %11s %10s %10s%n", "tuples", "hash pages",
+                "btree pages", "hash reads", "btree reads", "hash /s", "btree /s");
+        for (int size : SIZES) {
+            File f = File.createTempFile("hash", ".dat");
+            f.deleteOnExit();
+            HashFile hf = new HashFile(f, 0, td);
+            Database.getCatalog().addTable(hf, "h" + size);
+            f = File.createTempFile("btree", ".dat");
+            f.deleteOnExit();
+            BTreeFile bf = new BTreeFile(f, 0, td);
+            Database.getCatalog().addTable(bf, "b" + size);
+            load(hf.getId(), td, size);
+            load(bf.getId(), td, size);
+            // room for both files, so lookups hit the pool
+            Database.resetBufferPool(2 * (hf.numPages() + bf.numPages()));
+
+            long[] reads = new long[2];
+            double[] rates = new double[2];
+            for (int i = 0; i < 2; i++) {
+                int table = i == 0 ? hf.getId() : bf.getId();
+                // warm up, and cache the file
+                lookups(table, i == 0, size, new Random(11), LOOKUPS);
+                long start = System.nanoTime();
+                reads[i] = lookups(table, i == 0, size, new Random(13), LOOKUPS);
+                rates[i] = LOOKUPS / (BenchUtil.millisSince(start) / 1000);
+            }
+            System.out.printf("%8d %11d %12d %11.2f %11.2f %10.0f %10.0f%n", size,
+                    hf.numPages(), bf.numPages(), (double) reads[0] / LOOKUPS,
+                    (double) reads[1] / LOOKUPS, rates[0], rates[1]);
+        }
+    }
+
+    private static void load(int table, TupleDesc td, int size) throws Exception {
+        ArrayList<Integer> ids = new ArrayList<Integer>();
+        for (int i = 0; i < size; i++)
+            ids.add(i);
+        Collections.shuffle(ids, new Random(5));
+        Database.resetBufferPool(1000);
+        Transaction t = null;
+        for (int i = 0; i < size; i++) {
+            if (i % 100 == 0) {
+                if (t != null)
+                    t.commit();
+                t = new Transaction();
+                t.start();
+            }
+            Tuple tup = new Tuple(td);
+            tup.setField(0, new IntField(ids.get(i)));
+            tup.setField(1, new StringField("name " + ids.get(i), Type.STRING_LEN));
+            Database.getBufferPool().insertTuple(t.getId(), table, tup);
+        }
+        t.commit();
+        Database.getBufferPool().flushAllPages();
+    }
+
+    /**
+     * Looks up random keys of the table, each in a transaction of its own.
+     *
+     * @return the pages the lookups read
+     */
+    private static long lookups(int table, boolean hash, int size, Random r, int n)
+            throws Exception {
+        long reads = 0;
+        for (int i = 0; i < n; i++) {
+            Transaction t = new Transaction();
+            t.start();
+            Predicate p = new Predicate(0, Predicate.Op.EQUALS, new IntField(r.nextInt(size)));
+            DbIterator it = hash ? new HashIndexScan(t.getId(), table, "", p)
+                    : new BTreeIndexScan(t.getId(), table, "", p);
+            if (BenchUtil.drain(it) != 1)
+                throw new AssertionError("key not found");
+            reads += Database.getBufferPool().getPageReads(t.getId());
+            t.commit();
+        }
+        return reads;
+    }
+}
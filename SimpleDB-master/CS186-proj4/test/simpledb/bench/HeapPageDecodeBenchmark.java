@@ -0,0 +1,109 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares eager HeapPage decoding, which parses every slot into a Tuple
+ * and its Fields when a page is read, with lazy decoding, which builds a
+ * Tuple when a scan reaches the slot and a Field when an operator reads
+ * it. The query is a full scan with a filter on the first column that
+ * keeps about 1% of the rows.
+ * <p>
+ * Two tables: eight int columns, and one int column plus two string
+ * columns. Each is scanned through an OFF_HEAP pool that holds the whole
+ * table, where every scan decodes every page again, and through a small
+ * HEAP pool, where every scan reads every page from the file. Reported
+ * per run: rows scanned per second and bytes allocated per row scanned.
+ */
+public class HeapPageDecodeBenchmark {
+
+    private static final int ROWS = 200000;
+    private static final int SMALL_POOL_PAGES = 64;
+    private static final long RUN_MILLIS = 3000;
+    /** filter keeps values below this; columns are uniform in [0, 1<<16) */
+    private static final int THRESHOLD = (1 << 16) / 100;
+
+    public static void main(String[] args) throws Exception {
+        HeapFile ints = SystemTestUtil.createRandomHeapFile(8, ROWS, null, null);
+        HeapFile strings = createStringTable(ROWS);
+        System.out.printf("%d rows per table, filter keeps ~1%%, %d ms per run%n", ROWS, RUN_MILLIS);
+        System.out.printf("%-16s %-10s %-6s %14s %14s%n", "table", "pool", "decode", "rows/s", "bytes/row");
+        run("8 ints", ints);
+        run("int+2 strings", strings);
+        HeapPage.setEagerDecoding(false);
+    }
+
+    private static void run(String table, HeapFile f) throws Exception {
+        for (int pool = 0; pool < 2; pool++) {
+            for (int eager = 1; eager >= 0; eager--) {
+                HeapPage.setEagerDecoding(eager == 1);
+                if (pool == 0)
+                    Database.resetBufferPool(f.numPages(), BufferPool.Storage.OFF_HEAP);
+                else
+                    Database.resetBufferPool(SMALL_POOL_PAGES);
+                scan(f); // warm up
+                long rows = 0;
+                long bytes = allocatedBytes();
+                long start = System.nanoTime();
+                while (BenchUtil.millisSince(start) < RUN_MILLIS)
+                    rows += scan(f);
+                double seconds = BenchUtil.millisSince(start) / 1000;
+                bytes = allocatedBytes() - bytes;
+                System.out.printf("%-16s %-10s %-6s %14.0f %14.1f%n", table,
+                        pool == 0 ? "offheap" : "small", eager == 1 ? "eager" : "lazy",
+                        rows / seconds, (double) bytes / rows);
+            }
+        }
+    }
+
+    /** @return the number of rows the scan read */
+    private static long scan(HeapFile f) throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        SeqScan scan = new SeqScan(t.getId(), f.getId(), "");
+        Filter filter = new Filter(new Predicate(0, Predicate.Op.LESS_THAN,
+                new IntField(THRESHOLD)), scan);
+        BenchUtil.drain(filter);
+        t.commit();
+        return f.numPages() * (long) rowsPerPage(f);
+    }
+
+    private static int rowsPerPage(HeapFile f) {
+        return (BufferPool.getPageSize() * 8) / (f.getTupleDesc().getSize() * 8 + 1);
+    }
+
+    private static HeapFile createStringTable(int rows) throws Exception {
+        File file = File.createTempFile("decode", ".dat");
+        file.deleteOnExit();
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.STRING_TYPE });
+        HeapFile f = new HeapFile(file, td);
+        Database.getCatalog().addTable(f, "decode" + file.getName());
+        Random random = new Random(42);
+        HeapPage page = null;
+        int pgNo = 0;
+        for (int i = 0; i < rows; i++) {
+            if (page == null || page.getNumEmptySlots() == 0) {
+                if (page != null)
+                    f.writePage(page);
+                page = new HeapPage(new HeapPageId(f.getId(), pgNo++), HeapPage.createEmptyPageData());
+            }
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(random.nextInt(1 << 16)));
+            t.setField(1, new StringField("name-" + random.nextInt(), Type.STRING_LEN));
+            t.setField(2, new StringField("a somewhat longer comment " + random.nextLong(), Type.STRING_LEN));
+            page.insertTuple(t);
+        }
+        f.writePage(page);
+        return f;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
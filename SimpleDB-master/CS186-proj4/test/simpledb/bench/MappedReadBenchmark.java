@@ -0,0 +1,87 @@
+package simpledb.bench;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares three ways of reading pages of a HeapFile from the operating
+ * system's page cache: a RandomAccessFile opened for every page, as
+ * HeapFile used to read, one FileChannel with positional reads, as
+ * HeapFile reads now, and a MappedHeapFile. Pages are read with readPage,
+ * bypassing the buffer pool, in file order and in uniformly random order;
+ * the first field of the first tuple of each page is decoded so the page
+ * is used. Reported per run: pages read per second.
+ */
+public class MappedReadBenchmark {
+
+    private static final int PAGES = 8192;
+    private static final int TUPLES_PER_PAGE = 504; // two int columns
+    private static final long RUN_MILLIS = 3000;
+
+    /** keeps the decoded values live */
+    static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        HeapFile channel = SystemTestUtil.createRandomHeapFile(2, PAGES * TUPLES_PER_PAGE, null, null);
+        MappedHeapFile mapped = new MappedHeapFile(channel.getFile(), channel.getTupleDesc());
+        HeapFile raf = new RandomAccessHeapFile(channel);
+        System.out.printf("table of %d pages, %d ms per run%n", channel.numPages(), RUN_MILLIS);
+        System.out.printf("%-14s %-11s %14s%n", "read path", "order", "pages/s");
+        for (int random = 0; random < 2; random++) {
+            run("RandomAccess", raf, random == 1);
+            run("FileChannel", channel, random == 1);
+            run("mapped", mapped, random == 1);
+        }
+    }
+
+    private static void run(String label, HeapFile f, boolean random) {
+        int tableId = f.getId();
+        Random r = new Random(42);
+        long sum = 0;
+        // warm up
+        for (int i = 0; i < PAGES; i++)
+            sum += firstValue(f.readPage(new HeapPageId(tableId, i)));
+        long pages = 0;
+        long start = System.nanoTime();
+        while (BenchUtil.millisSince(start) < RUN_MILLIS) {
+            for (int i = 0; i < 1024; i++, pages++) {
+                int pgNo = random ? r.nextInt(PAGES) : (int) (pages % PAGES);
+                sum += firstValue(f.readPage(new HeapPageId(tableId, pgNo)));
+            }
+        }
+        double seconds = BenchUtil.millisSince(start) / 1000;
+        sink += sum;
+        System.out.printf("%-14s %-11s %14.0f%n", label, random ? "random" : "sequential",
+                pages / seconds);
+    }
+
+    private static int firstValue(Page page) {
+        return ((IntField) ((HeapPage) page).iterator().next().getField(0)).getValue();
+    }
+
+    /** Reads pages the way HeapFile did before it kept its file open. */
+    private static class RandomAccessHeapFile extends HeapFile {
+        private static final long serialVersionUID = 1L;
+
+        RandomAccessHeapFile(HeapFile f) {
+            super(f.getFile(), f.getTupleDesc());
+        }
+
+        public Page readPage(PageId pid) {
+            try {
+                RandomAccessFile random = new RandomAccessFile(getFile(), "r");
+                byte[] buffer = new byte[BufferPool.PAGE_SIZE];
+                random.seek((long) pid.pageNumber() * BufferPool.PAGE_SIZE);
+                random.read(buffer, 0, BufferPool.PAGE_SIZE);
+                random.close();
+                return new HeapPage((HeapPageId) pid, buffer);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package simpledb.bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares garbage collection cost and memory footprint of a HEAP and an
+ * OFF_HEAP buffer pool holding the same table. The pool is filled with the
+ * whole table, then short read-only transactions read Zipfian pages and
+ * walk their tuples for a fixed time. Reported per storage mode: retained
+ * heap after a full collection, the pause of one full collection with the
+ * pool filled, off-heap bytes, decoded pages, the number and total time of
+ * collections during the run, and reads per second.
+ */
+public class OffHeapGcBenchmark {
+
+    private static final int POOL_PAGES = 4096;
+    private static final int TUPLES_PER_PAGE = 504; // two int columns
+    private static final int READS_PER_TRANSACTION = 100;
+    private static final long RUN_MILLIS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, POOL_PAGES * TUPLES_PER_PAGE, null, null);
+        System.out.printf("pool of %d pages, table of %d pages, %d ms per run%n",
+                POOL_PAGES, f.numPages(), RUN_MILLIS);
+        System.out.printf("%-9s %10s %12s %10s %8s %6s %8s %12s%n", "storage", "heap MB",
+                "full GC ms", "offheap MB", "decoded", "GCs", "GC ms", "reads/s");
+        for (BufferPool.Storage storage : BufferPool.Storage.values())
+            run(storage, f);
+    }
+
+    private static void run(BufferPool.Storage storage, HeapFile f) throws Exception {
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES, storage);
+        TransactionId warm = new TransactionId();
+        for (int i = 0; i < f.numPages(); i++)
+            BenchUtil.read(bp, warm, new HeapPageId(f.getId(), i), null);
+        bp.transactionComplete(warm);
+        long heap = retainedHeap();
+        long gcStart = System.nanoTime();
+        System.gc();
+        double fullGcMillis = BenchUtil.millisSince(gcStart);
+
+        BenchUtil.Zipf zipf = new BenchUtil.Zipf(f.numPages(), 0.99, 42);
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        long reads = 0;
+        long sum = 0;
+        long start = System.nanoTime();
+        while (BenchUtil.millisSince(start) < RUN_MILLIS) {
+            TransactionId tid = new TransactionId();
+            for (int i = 0; i < READS_PER_TRANSACTION; i++) {
+                HeapPage page = (HeapPage) BenchUtil.read(bp, tid, new HeapPageId(f.getId(), zipf.next()), null);
+                Iterator<Tuple> it = page.iterator();
+                while (it.hasNext())
+                    sum += ((IntField) it.next().getField(0)).getValue();
+            }
+            bp.transactionComplete(tid);
+            reads += READS_PER_TRANSACTION;
+        }
+        double seconds = BenchUtil.millisSince(start) / 1000;
+        System.out.printf("%-9s %10.1f %12.1f %10.1f %8d %6d %8d %12.0f%n", storage,
+                heap / 1048576.0, fullGcMillis, bp.getOffHeapBytes() / 1048576.0, bp.getDecodedPageCount(),
+                gcCount() - gcCount, gcMillis() - gcMillis, reads / seconds);
+        if (sum == 42)
+            System.out.println(); // keep the tuple walk from being optimized away
+    }
+
+    /** @return heap in use after a full collection */
+    private static long retainedHeap() {
+        System.gc();
+        System.gc();
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static long gcCount() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            n += gc.getCollectionCount();
+        return n;
+    }
+
+    private static long gcMillis() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            n += gc.getCollectionTime();
+        return n;
+    }
+}
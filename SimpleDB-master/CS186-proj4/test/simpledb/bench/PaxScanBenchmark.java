@@ -0,0 +1,98 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Compares an aggregate over a wide table stored as a HeapFile and as a
+ * PaxFile: SUM(c1) WHERE c2 &lt; 500 over a table of eight int columns and
+ * a string column, read by Filter and Aggregate over a SeqScan. The PaxFile
+ * is scanned twice, once told the two columns the query reads (as the
+ * planner's ColumnPruning does) and once not. Reported per layout: tuples
+ * per second, cold (a fresh buffer pool, every page read from the file,
+ * which the operating system caches) and warm (the table cached).
+ */
+public class PaxScanBenchmark {
+
+    private static final int TUPLES = 300000;
+    private static final int INT_COLUMNS = 8;
+    private static final int RUNS = 10;
+
+    public static void main(String[] args) throws Exception {
+        Type[] types = new Type[INT_COLUMNS + 1];
+        for (int i = 0; i < INT_COLUMNS; i++)
+            types[i] = Type.INT_TYPE;
+        types[INT_COLUMNS] = Type.STRING_TYPE;
+        TupleDesc td = new TupleDesc(types);
+
+        Random r = new Random(7);
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < TUPLES; i++) {
+            Tuple t = new Tuple(td);
+            for (int c = 0; c < INT_COLUMNS; c++)
+                t.setField(c, new IntField(r.nextInt(1000)));
+            t.setField(INT_COLUMNS, new StringField("row " + i, Type.STRING_LEN));
+            tuples.add(t);
+        }
+        Database.reset();
+        HeapFile heap = new HeapFile(tempFile(), td);
+        PaxFile pax = new PaxFile(tempFile(), td);
+        Database.getCatalog().addTable(heap, "heap");
+        Database.getCatalog().addTable(pax, "pax");
+        heap.bulkLoad(tuples.iterator());
+        pax.bulkLoad(tuples.iterator());
+        tuples = null;
+
+        int[] used = new int[] { 1, 2 };
+        // warm up every read path
+        for (int i = 0; i < 5; i++) {
+            Database.resetBufferPool(4 * heap.numPages());
+            query(heap, null);
+            query(pax, null);
+            query(pax, used);
+        }
+        System.out.printf("%d tuples, %d pages per table%n", TUPLES, heap.numPages());
+        System.out.printf("%-16s %14s %14s%n", "layout", "cold tuples/s", "warm tuples/s");
+        report("heap", heap, null);
+        report("pax, all", pax, null);
+        report("pax, pruned", pax, used);
+    }
+
+    private static File tempFile() throws Exception {
+        File f = File.createTempFile("pax", ".dat");
+        f.deleteOnExit();
+        HeapFile.freeSpaceFile(f).deleteOnExit();
+        return f;
+    }
+
+    private static void report(String label, HeapFile f, int[] columns) throws Exception {
+        double cold = 0, warm = 0;
+        for (int run = 0; run < RUNS; run++) {
+            // room for the whole table, so scans read through the shared pool
+            Database.resetBufferPool(2 * f.numPages());
+            cold = Math.max(cold, query(f, columns));
+            warm = Math.max(warm, query(f, columns));
+        }
+        System.out.printf("%-16s %14.0f %14.0f%n", label, cold, warm);
+    }
+
+    /** @return tuples per second of the query */
+    private static double query(HeapFile f, int[] columns) throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        SeqScan scan = new SeqScan(t.getId(), f.getId(), "");
+        scan.setColumns(columns);
+        Aggregate sum = new Aggregate(new Filter(
+                new Predicate(2, Predicate.Op.LESS_THAN, new IntField(500)), scan),
+                1, Aggregator.NO_GROUPING, Aggregator.Op.SUM);
+        long start = System.nanoTime();
+        if (BenchUtil.drain(sum) != 1)
+            throw new AssertionError("no sum");
+        double seconds = BenchUtil.millisSince(start) / 1000;
+        t.commit();
+        return TUPLES / seconds;
+    }
+}
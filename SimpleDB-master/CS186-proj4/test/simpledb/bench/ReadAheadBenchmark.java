@@ -0,0 +1,73 @@
+package simpledb.bench;
+
+import java.util.concurrent.locks.LockSupport;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures sequential scans with and without read-ahead. The table is
+ * read through a HeapFile that waits a fixed time on every page read, to
+ * stand in for a disk; the file itself is in the page cache. Scans run
+ * through a pool much smaller than the table, so they use a ring and read
+ * every page from the file. Reported per prefetcher setting: scan time,
+ * pages per second, pages read ahead, and how often scan windows grew and
+ * shrank.
+ */
+public class ReadAheadBenchmark {
+
+    private static final int TABLE_PAGES = 2000;
+    private static final int POOL_PAGES = 256;
+    private static final int TUPLES_PER_PAGE = 504; // two int columns
+    private static final long READ_LATENCY_NANOS = 100000;
+    private static final int SCANS = 3;
+
+    /** A HeapFile with a fixed latency on every page read. */
+    private static class SlowHeapFile extends HeapFile {
+        private static final long serialVersionUID = 1L;
+
+        SlowHeapFile(HeapFile f) {
+            super(f.getFile(), f.getTupleDesc());
+        }
+
+        public Page readPage(PageId pid) {
+            LockSupport.parkNanos(READ_LATENCY_NANOS);
+            return super.readPage(pid);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        HeapFile slow = new SlowHeapFile(
+                SystemTestUtil.createRandomHeapFile(2, TABLE_PAGES * TUPLES_PER_PAGE, null, null));
+        Database.getCatalog().addTable(slow, "slow");
+        System.out.printf("table of %d pages, pool of %d pages, %d us per read, best of %d scans%n",
+                slow.numPages(), POOL_PAGES, READ_LATENCY_NANOS / 1000, SCANS);
+        System.out.printf("%-16s %10s %10s %12s %7s %7s%n", "read-ahead", "scan ms",
+                "pages/s", "read ahead", "grows", "shrinks");
+        run(slow, 0, 0);
+        run(slow, 1, 8);
+        run(slow, 1, 32);
+        run(slow, 4, 32);
+    }
+
+    private static void run(HeapFile f, int threads, int maxWindow) throws Exception {
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+        Prefetcher prefetcher = threads == 0 ? null : bp.startPrefetcher(threads, maxWindow);
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < SCANS; i++) {
+            long start = System.nanoTime();
+            Transaction t = new Transaction();
+            t.start();
+            BenchUtil.drain(new SeqScan(t.getId(), f.getId(), ""));
+            t.commit();
+            best = Math.min(best, BenchUtil.millisSince(start));
+        }
+        String label = threads == 0 ? "off" : threads + " thr, max " + maxWindow;
+        System.out.printf("%-16s %10.1f %10.0f %12d %7d %7d%n", label, best,
+                f.numPages() / (best / 1000),
+                prefetcher == null ? 0 : prefetcher.getPagesRead(),
+                prefetcher == null ? 0 : prefetcher.getGrowCount(),
+                prefetcher == null ? 0 : prefetcher.getShrinkCount());
+        bp.stopPrefetcher();
+    }
+}
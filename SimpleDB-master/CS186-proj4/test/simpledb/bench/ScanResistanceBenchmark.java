@@ -0,0 +1,60 @@
+package simpledb.bench;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures the hit ratio of Zipfian point reads while a large sequential
+ * scan runs alongside them, with and without scan rings. Each point read
+ * is followed by one page of scan progress.
+ */
+public class ScanResistanceBenchmark {
+
+    private static final int POOL_PAGES = 256;
+    private static final int TUPLES_PER_PAGE = 504; // two int columns
+    private static final int POINT_READS = 200000;
+
+    public static void main(String[] args) throws Exception {
+        HeapFile oltp = SystemTestUtil.createRandomHeapFile(2, POOL_PAGES * TUPLES_PER_PAGE, null, null);
+        HeapFile fact = SystemTestUtil.createRandomHeapFile(2, 4 * POOL_PAGES * TUPLES_PER_PAGE, null, null);
+
+        double defaultThreshold = BufferAccessStrategy.getScanRingThreshold();
+        System.out.printf("pool of %d pages, point table %d pages, scanned table %d pages%n",
+                POOL_PAGES, oltp.numPages(), fact.numPages());
+        System.out.printf("%-10s %12s %12s %12s%n", "scan ring", "point hits", "scan misses", "ring reuses");
+        BufferAccessStrategy.setScanRingThreshold(Double.MAX_VALUE);
+        run("off", oltp, fact);
+        BufferAccessStrategy.setScanRingThreshold(defaultThreshold);
+        run("on", oltp, fact);
+    }
+
+    private static void run(String label, HeapFile oltp, HeapFile fact) throws Exception {
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+        TransactionId tid = new TransactionId();
+        BenchUtil.Zipf zipf = new BenchUtil.Zipf(oltp.numPages(), 0.99, 42);
+        BufferAccessStrategy strategy = BufferAccessStrategy.forScan(fact);
+        BufferAccessStrategy.Kind scanKind = strategy == null
+            ? BufferAccessStrategy.Kind.NORMAL : strategy.getKind();
+
+        // warm the hot set
+        for (int i = 0; i < POINT_READS / 10; i++)
+            BenchUtil.read(bp, tid, new HeapPageId(oltp.getId(), zipf.next()), null);
+
+        long hits = 0;
+        long scanMisses = 0;
+        int scanPage = 0;
+        for (int i = 0; i < POINT_READS; i++) {
+            long m = bp.getMissCount(scanKind);
+            BenchUtil.read(bp, tid, new HeapPageId(fact.getId(), scanPage), strategy);
+            scanMisses += bp.getMissCount(scanKind) - m;
+            scanPage = (scanPage + 1) % fact.numPages();
+
+            long h = bp.getHitCount(BufferAccessStrategy.Kind.NORMAL);
+            BenchUtil.read(bp, tid, new HeapPageId(oltp.getId(), zipf.next()), null);
+            hits += bp.getHitCount(BufferAccessStrategy.Kind.NORMAL) - h;
+        }
+        bp.transactionComplete(tid);
+        System.out.printf("%-10s %12.3f %12d %12d%n", label,
+                (double) hits / POINT_READS, scanMisses, bp.getRingReuseCount());
+    }
+}
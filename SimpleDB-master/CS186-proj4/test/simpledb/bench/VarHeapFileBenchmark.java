@@ -0,0 +1,101 @@
+package simpledb.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+
+import simpledb.*;
+
+/**
+ * Compares a table of short string codes stored as a HeapFile, where every
+ * string takes Type.STRING_LEN bytes, and as a VarHeapFile. Reported per
+ * format: pages and bytes on disk, and tuples per second of a full scan
+ * with a string equality filter, cold (a fresh buffer pool, every page
+ * read from the file) and warm (the table cached).
+ */
+public class VarHeapFileBenchmark {
+
+    private static final int TUPLES = 200000;
+    private static final int RUNS = 10;
+
+    public static void main(String[] args) throws Exception {
+        Type[] types = new Type[] { Type.INT_TYPE, Type.STRING_TYPE };
+        TupleDesc td = new TupleDesc(types, new String[] { "id", "code" });
+
+        File text = File.createTempFile("codes", ".txt");
+        text.deleteOnExit();
+        BufferedWriter w = new BufferedWriter(new FileWriter(text));
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < TUPLES; i++) {
+            String code = code(i);
+            w.write(i + "," + code + "\n");
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField(code, Type.STRING_LEN));
+            tuples.add(t);
+        }
+        w.close();
+
+        File fixedFile = File.createTempFile("codes", ".dat");
+        fixedFile.deleteOnExit();
+        HeapFileEncoder.convert(text, fixedFile, BufferPool.PAGE_SIZE, 2, types);
+        File varFile = File.createTempFile("codes", ".var");
+        varFile.deleteOnExit();
+
+        Database.reset();
+        HeapFile fixed = new HeapFile(fixedFile, td);
+        VarHeapFile var = new VarHeapFile(varFile, td);
+        Database.getCatalog().addTable(fixed, "fixed");
+        Database.getCatalog().addTable(var, "var");
+        var.bulkLoad(tuples.iterator());
+        tuples = null;
+
+        // warm up both read paths
+        for (int i = 0; i < 5; i++) {
+            Database.resetBufferPool(2 * fixed.numPages());
+            scan(fixed);
+            scan(var);
+        }
+        System.out.printf("%d tuples of (int, code of 3-8 characters)%n", TUPLES);
+        System.out.printf("%-8s %8s %12s %14s %14s%n", "format", "pages", "bytes",
+                "cold tuples/s", "warm tuples/s");
+        report("heap", fixed);
+        report("var", var);
+    }
+
+    private static String code(int i) {
+        StringBuilder s = new StringBuilder();
+        int len = 3 + i % 6;
+        for (int c = 0; c < len; c++)
+            s.append((char) ('a' + (i / (c + 1) + c) % 26));
+        return s.toString();
+    }
+
+    private static void report(String label, HeapFile f) throws Exception {
+        double cold = 0, warm = 0;
+        for (int run = 0; run < RUNS; run++) {
+            // room for the whole table, so scans read through the shared pool
+            Database.resetBufferPool(2 * f.numPages());
+            cold = Math.max(cold, scan(f));
+            warm = Math.max(warm, scan(f));
+        }
+        System.out.printf("%-8s %8d %12d %14.0f %14.0f%n", label, f.numPages(),
+                f.getFile().length(), cold, warm);
+    }
+
+    /** @return tuples per second of a filtered full scan */
+    private static double scan(HeapFile f) throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        Filter filter = new Filter(new Predicate(1, Predicate.Op.EQUALS,
+                new StringField(code(42), Type.STRING_LEN)),
+                new SeqScan(t.getId(), f.getId(), ""));
+        long start = System.nanoTime();
+        if (BenchUtil.drain(filter) == 0)
+            throw new AssertionError("no tuple matched");
+        double seconds = BenchUtil.millisSince(start) / 1000;
+        t.commit();
+        return TUPLES / seconds;
+    }
+}
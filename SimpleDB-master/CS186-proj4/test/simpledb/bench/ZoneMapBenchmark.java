@@ -0,0 +1,89 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Measures page skipping by zone maps: range filters over a SeqScan that
+ * is told the filters' predicates, against one that is not. The table is
+ * (ts int, sensor int, reading int) in a HeapFile, loaded in order of ts,
+ * as a log of events is; sensor and reading are random. Reported per
+ * query: the rows it returns, pages read (getPage calls) and milliseconds
+ * of each scan with the table cached.
+ */
+public class ZoneMapBenchmark {
+
+    private static final int TUPLES = 500000;
+    private static final int RUNS = 10;
+
+    public static void main(String[] args) throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE },
+                new String[] { "ts", "sensor", "reading" });
+        Random r = new Random(7);
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < TUPLES; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new IntField(r.nextInt(100)));
+            t.setField(2, new IntField(r.nextInt(1000)));
+            tuples.add(t);
+        }
+        Database.reset();
+        File f = File.createTempFile("zone", ".dat");
+        f.deleteOnExit();
+        HeapFile.freeSpaceFile(f).deleteOnExit();
+        HeapFile.zoneMapFile(f).deleteOnExit();
+        HeapFile heap = new HeapFile(f, td);
+        Database.getCatalog().addTable(heap, "events");
+        heap.bulkLoad(tuples.iterator());
+        tuples = null;
+        // room for the whole table, so both scans read through the pool
+        Database.resetBufferPool(2 * heap.numPages());
+
+        System.out.printf("%d tuples, %d pages%n", TUPLES, heap.numPages());
+        System.out.printf("%-36s %7s %10s %12s %9s %11s%n", "query", "rows", "scan reads",
+                "pushed reads", "scan ms", "pushed ms");
+        report("ts = 250000", heap, new Predicate(0, Predicate.Op.EQUALS, new IntField(250000)));
+        report("ts >= 495000 (1%)", heap,
+                new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(TUPLES - 5000)));
+        report("100000 <= ts < 150000 (10%)", heap,
+                new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(100000)),
+                new Predicate(0, Predicate.Op.LESS_THAN, new IntField(150000)));
+        report("ts < 250000 (50%)", heap,
+                new Predicate(0, Predicate.Op.LESS_THAN, new IntField(TUPLES / 2)));
+        report("sensor = 42 (random order)", heap,
+                new Predicate(1, Predicate.Op.EQUALS, new IntField(42)));
+    }
+
+    private static void report(String label, HeapFile heap, Predicate... ps) throws Exception {
+        long[] best = { Long.MAX_VALUE, Long.MAX_VALUE };
+        long[] reads = new long[2];
+        int[] rows = new int[2];
+        for (int run = 0; run < RUNS; run++) {
+            for (int i = 0; i < 2; i++) {
+                Transaction t = new Transaction();
+                t.start();
+                SeqScan scan = new SeqScan(t.getId(), heap.getId(), "");
+                DbIterator it = scan;
+                for (Predicate p : ps) {
+                    if (i == 1)
+                        scan.addPredicate(p);
+                    it = new Filter(p, it);
+                }
+                long start = System.nanoTime();
+                rows[i] = BenchUtil.drain(it);
+                best[i] = Math.min(best[i], System.nanoTime() - start);
+                reads[i] = Database.getBufferPool().getPageReads(t.getId());
+                t.commit();
+            }
+        }
+        if (rows[0] != rows[1])
+            throw new AssertionError(label + ": " + rows[0] + " rows scanned, " + rows[1]
+                    + " with pages skipped");
+        System.out.printf("%-36s %7d %10d %12d %9.1f %11.1f%n", label, rows[0], reads[0],
+                reads[1], best[0] / 1e6, best[1] / 1e6);
+    }
+}
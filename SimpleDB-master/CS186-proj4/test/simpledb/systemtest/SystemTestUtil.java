@@ -81,6 +81,8 @@ public class SystemTestUtil {
         // Convert the tuples list to a heap file and open it
         File temp = File.createTempFile("table", ".dat");
         temp.deleteOnExit();
+        HeapFile.freeSpaceFile(temp).deleteOnExit();
+        HeapFile.zoneMapFile(temp).deleteOnExit();
         HeapFileEncoder.convert(tuples, temp, BufferPool.PAGE_SIZE, columns);
         return temp;
     }
@@ -226,6 +226,11 @@ public class TransactionTest extends SimpleDbTestBase {
         validateTransactions(10);
     }
 
+    @Test public void testSixtyFourThreads()
+    throws IOException, DbException, TransactionAbortedException {
+        validateTransactions(64);
+    }
+
     @Test public void testAllDirtyFails()
             throws IOException, DbException, TransactionAbortedException {
         // Allocate a file with ~10 pages of data